@@ -88,6 +88,11 @@ public class BakeryDriver {
             if (magicBakery.playerActionCount.get(magicBakery.currentPlayerLoc) == 0)
             {
                 magicBakery.endTurn();
+                if (magicBakery.currentPlayerLoc == 0)
+                {
+                    System.out.println("*NEW ROUND*");
+                    System.out.println();
+                }
             }
             
             
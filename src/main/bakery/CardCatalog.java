@@ -0,0 +1,219 @@
+package bakery;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns small, stable integer ids to every kind of card used by a game.
+ * Ingredient kinds are numbered first, in the order they appear in the ingredient deck,
+ * followed by the layer kinds in the order of the layer deck. Customer orders have their
+ * own id space, in the order of the customer deck.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class CardCatalog implements Serializable {
+    /**
+     * The serial version UID for serialization and deserialization.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** One representative card per card id */
+    private List<Ingredient> cards;
+
+    /** One representative customer order per customer id */
+    private List<CustomerOrder> customerOrders;
+
+    /** Card id lookup keyed by {@link #cardKey(Ingredient)} */
+    private Map<String, Integer> cardIds;
+
+    /** Customer id lookup keyed by customer name */
+    private Map<String, Integer> customerIds;
+
+    /** Number of plain (non layer) ingredient kinds */
+    private int ingredientKinds;
+
+    /** Fingerprint of the catalog contents */
+    private long version;
+
+    /**
+     * Builds a catalog from the cards read from the deck files.
+     *
+     * @param ingredientDeck the ingredient deck, duplicates allowed
+     * @param layerDeck the layer deck, duplicates allowed
+     * @param customerDeck the customer deck
+     */
+    public CardCatalog(Collection<Ingredient> ingredientDeck, Collection<Layer> layerDeck, Collection<CustomerOrder> customerDeck)
+    {
+        cards = new ArrayList<>();
+        customerOrders = new ArrayList<>();
+        cardIds = new HashMap<>();
+        customerIds = new HashMap<>();
+
+        for (Ingredient ingredient : ingredientDeck) {
+            register(ingredient);
+        }
+        ingredientKinds = cards.size();
+        for (Layer layer : layerDeck) {
+            register(layer);
+        }
+        for (CustomerOrder order : customerDeck) {
+            if (order != null && !customerIds.containsKey(order.toString())) {
+                customerIds.put(order.toString(), customerOrders.size());
+                customerOrders.add(order);
+            }
+        }
+
+        long fingerprint = 1125899906842597L;
+        for (Ingredient card : cards) {
+            fingerprint = 31 * fingerprint + cardKey(card).hashCode();
+        }
+        for (CustomerOrder order : customerOrders) {
+            fingerprint = 31 * fingerprint + order.toString().hashCode();
+        }
+        version = fingerprint;
+    }
+
+    /**
+     * Adds the card to the catalog unless a card of the same kind is already known.
+     *
+     * @param card the card to register
+     */
+    private void register(Ingredient card)
+    {
+        String key = cardKey(card);
+        if (!cardIds.containsKey(key)) {
+            cardIds.put(key, cards.size());
+            cards.add(card);
+        }
+    }
+
+    /**
+     * Builds the lookup key of a card, keeping layers and ingredients of the same name apart.
+     *
+     * @param card the card
+     * @return the lookup key
+     */
+    private static String cardKey(Ingredient card)
+    {
+        return (card instanceof Layer ? "L:" : "I:") + card.toString();
+    }
+
+    /**
+     * Gets the id of a card.
+     *
+     * @param card the card to look up
+     * @return the card id, or -1 if the card is not part of this catalog
+     */
+    public int cardId(Ingredient card)
+    {
+        if (card == null) {
+            return -1;
+        }
+        Integer id = cardIds.get(cardKey(card));
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the representative card for an id.
+     *
+     * @param id the card id
+     * @return the card
+     */
+    public Ingredient card(int id)
+    {
+        return cards.get(id);
+    }
+
+    /**
+     * Gets the number of card kinds, ingredients and layers together.
+     *
+     * @return the number of card ids
+     */
+    public int cardCount()
+    {
+        return cards.size();
+    }
+
+    /**
+     * Gets the number of plain ingredient kinds. Card ids at or above this value are layers.
+     *
+     * @return the number of ingredient kinds
+     */
+    public int ingredientKinds()
+    {
+        return ingredientKinds;
+    }
+
+    /**
+     * Gets the number of layer kinds.
+     *
+     * @return the number of layer kinds
+     */
+    public int layerKinds()
+    {
+        return cards.size() - ingredientKinds;
+    }
+
+    /**
+     * Gets the id of a customer order.
+     *
+     * @param order the customer order to look up
+     * @return the customer id, or -1 if the order is null or not part of this catalog
+     */
+    public int customerId(CustomerOrder order)
+    {
+        if (order == null) {
+            return -1;
+        }
+        Integer id = customerIds.get(order.toString());
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the representative customer order for an id.
+     *
+     * @param id the customer id
+     * @return the customer order
+     */
+    public CustomerOrder customer(int id)
+    {
+        return customerOrders.get(id);
+    }
+
+    /**
+     * Creates a new customer order for an id, with its own status, so games never share orders.
+     *
+     * @param id the customer id
+     * @return a waiting customer order
+     */
+    public CustomerOrder newCustomer(int id)
+    {
+        CustomerOrder order = customerOrders.get(id);
+        return new CustomerOrder(order.toString(), order.getRecipe(), order.getGarnish(), order.getLevel());
+    }
+
+    /**
+     * Gets the number of customer orders.
+     *
+     * @return the number of customer ids
+     */
+    public int customerCount()
+    {
+        return customerOrders.size();
+    }
+
+    /**
+     * Gets a fingerprint of the catalog. Two catalogs with the same version number the cards the same way.
+     *
+     * @return the catalog version
+     */
+    public long version()
+    {
+        return version;
+    }
+}
@@ -0,0 +1,139 @@
+package bakery;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import util.CardUtils;
+
+/**
+ * The ingredient, layer and customer decks read from the deck files once, with their
+ * {@link CardCatalog}, for dealing any number of games without reading the files again.
+ *
+ * Ingredient and layer cards never change, so every game dealt from the same decks shares them and
+ * the catalog. Customer orders carry a status, so each game gets its own copies. A game dealt from
+ * shared decks with a given seed is the same game as one read from the files with that seed.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class CardDecks {
+    /** The ingredient deck in file order */
+    private final List<Ingredient> ingredients;
+
+    /** The layer deck in file order */
+    private final List<Layer> layers;
+
+    /** The customer deck in file order, copied before it is dealt */
+    private final List<CustomerOrder> customers;
+
+    /** The ids of every kind of card in the decks */
+    private final CardCatalog catalog;
+
+    /** The file the ingredient deck was read from */
+    private final String ingredientFile;
+
+    /**
+     * Creates decks from cards already read.
+     *
+     * @param ingredients the ingredient deck
+     * @param layers the layer deck
+     * @param customers the customer deck
+     * @param ingredientFile the file the ingredient deck was read from
+     */
+    private CardDecks(List<Ingredient> ingredients, List<Layer> layers, List<CustomerOrder> customers, String ingredientFile)
+    {
+        this.ingredients = Collections.unmodifiableList(ingredients);
+        this.layers = Collections.unmodifiableList(layers);
+        this.customers = Collections.unmodifiableList(customers);
+        this.catalog = new CardCatalog(ingredients, layers, customers);
+        this.ingredientFile = ingredientFile;
+    }
+
+    /**
+     * Reads the three deck files.
+     *
+     * @param ingredientFile the ingredient deck file
+     * @param layerFile the layer deck file
+     * @param customerFile the customer deck file
+     * @return the decks
+     * @throws FileNotFoundException if a deck file is not found
+     */
+    public static CardDecks load(String ingredientFile, String layerFile, String customerFile) throws FileNotFoundException
+    {
+        if (!new File(customerFile).exists()) {
+            throw new FileNotFoundException("Customer deck file not found: " + customerFile);
+        }
+        List<Layer> layers = CardUtils.readLayerFile(layerFile);
+        List<CustomerOrder> customers = CardUtils.readCustomerFile(customerFile, layers);
+        List<Ingredient> ingredients = CardUtils.readIngredientFile(ingredientFile);
+        return new CardDecks(ingredients, layers, customers, ingredientFile);
+    }
+
+    /**
+     * Reads the standard deck files under {@code ./io}, relative to the working directory.
+     *
+     * @return the decks
+     * @throws FileNotFoundException if a deck file is not found
+     */
+    public static CardDecks loadStandard() throws FileNotFoundException
+    {
+        return load("./io/ingredients.csv", "./io/layers.csv", "./io/customers.csv");
+    }
+
+    /**
+     * Gets the catalog shared by every game dealt from these decks.
+     *
+     * @return the card catalog
+     */
+    public CardCatalog getCardCatalog()
+    {
+        return catalog;
+    }
+
+    /**
+     * Gets the ingredient deck, which callers must copy before changing.
+     *
+     * @return an unmodifiable list of ingredients in file order
+     */
+    List<Ingredient> ingredients()
+    {
+        return ingredients;
+    }
+
+    /**
+     * Gets the layer deck, which callers must copy before changing.
+     *
+     * @return an unmodifiable list of layers in file order
+     */
+    List<Layer> layers()
+    {
+        return layers;
+    }
+
+    /**
+     * Copies the customer deck for a new game.
+     *
+     * @return waiting customer orders in file order, belonging to no other game
+     */
+    List<CustomerOrder> newCustomers()
+    {
+        List<CustomerOrder> copies = new ArrayList<>(customers.size());
+        for (CustomerOrder order : customers) {
+            copies.add(new CustomerOrder(order.toString(), order.getRecipe(), order.getGarnish(), order.getLevel()));
+        }
+        return copies;
+    }
+
+    /**
+     * Gets the file the ingredient deck was read from.
+     *
+     * @return the file name
+     */
+    String ingredientFile()
+    {
+        return ingredientFile;
+    }
+}
@@ -74,6 +74,26 @@ public class Customers implements Serializable {
         initialiseCustomerDeck(deckFile, layers, numPlayers);
     }
 
+    /**
+     * Constructs a new Customers instance from a customer deck already read, such as one dealt
+     * from shared {@link CardDecks}.
+     *
+     * @param deck the customer orders in file order, used by no other game
+     * @param random the random number generator
+     * @param numPlayers the number of players in the game
+     */
+    Customers(List<CustomerOrder> deck, Random random, int numPlayers)
+    {
+        activeCustomers = new ArrayList<>();
+        for (int i = 1; i<=3; i++){
+            activeCustomers.add(null);
+        }
+
+        this.random = random;
+        inactiveCustomers = new ArrayList<>();
+        initialiseCustomerDeck(deck, numPlayers);
+    }
+
     /**
      * Adds a new customer order
      * 
@@ -185,6 +205,36 @@ public class Customers implements Serializable {
         return customersWithStatus;
     }
 
+    /**
+     * Gets the customers that have left the shop, in the order they left
+     * 
+     * @return the inactive customers
+     */
+    List<CustomerOrder> getInactiveCustomers()
+    {
+        return inactiveCustomers;
+    }
+
+    /**
+     * Gets the random number generator used to draw and shuffle customers
+     * 
+     * @return the random number generator
+     */
+    Random getRandom()
+    {
+        return random;
+    }
+
+    /**
+     * Replaces the random number generator used to draw and shuffle customers
+     * 
+     * @param random the random number generator
+     */
+    void setRandom(Random random)
+    {
+        this.random = random;
+    }
+
     /**
      * Initializes the customer deck
      * 
@@ -193,11 +243,22 @@ public class Customers implements Serializable {
      * @param numPlayers
      */
     private void initialiseCustomerDeck(String deckFile, Collection<Layer> layers, int numPlayers)
+    {
+        initialiseCustomerDeck(CardUtils.readCustomerFile(deckFile, layers), numPlayers);
+    }
+
+    /**
+     * Initialises the customer deck from customer orders already read.
+     * 
+     * @param orders the customer orders in file order
+     * @param numPlayers the number of players
+     */
+    private void initialiseCustomerDeck(List<CustomerOrder> orders, int numPlayers)
     {
 
         this.customerDeck=new Stack<CustomerOrder>();
 
-        ArrayList<CustomerOrder> Deck = new ArrayList<CustomerOrder>(CardUtils.readCustomerFile(deckFile, layers));
+        ArrayList<CustomerOrder> Deck = new ArrayList<CustomerOrder>(orders);
         Collections.shuffle(Deck, this.random);
         LinkedList<CustomerOrder> deck1=new LinkedList<CustomerOrder>();
         LinkedList<CustomerOrder> deck2=new LinkedList<CustomerOrder>();
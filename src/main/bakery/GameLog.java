@@ -0,0 +1,389 @@
+package bakery;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import util.JdkRandomSource;
+import util.RandomSource;
+import util.XoroshiroRandom;
+
+/**
+ * An append-only record of everything needed to play a game again: the random seed and kind of
+ * generator, the card catalog version, the player names and every action taken, in order.
+ *
+ * Each action is stored as three bytes: the operation, a card or customer id plus one, and a
+ * player index or garnish flag plus one. A zero argument means the action named something the
+ * catalog does not know. Actions are recorded when they are attempted, including attempts that
+ * end in a game exception, since those can still change the position. See {@link GameReplayer}.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class GameLog implements Serializable {
+    /**
+     * The serial version UID for serialization and deserialization.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** Operation: draw an ingredient from the pantry by name */
+    public static final int DRAW_BY_NAME = 0;
+
+    /** Operation: pass a card to another player */
+    public static final int PASS_CARD = 1;
+
+    /** Operation: bake a layer */
+    public static final int BAKE_LAYER = 2;
+
+    /** Operation: fulfil a customer order */
+    public static final int FULFIL_ORDER = 3;
+
+    /** Operation: refresh the pantry */
+    public static final int REFRESH_PANTRY = 4;
+
+    /** Operation: end the current player's turn */
+    public static final int END_TURN = 5;
+
+    /** Operation: draw a given ingredient card from the pantry */
+    public static final int DRAW_CARD = 6;
+
+    /** Generator kind: {@link JdkRandomSource} */
+    public static final int GENERATOR_JDK = 0;
+
+    /** Generator kind: {@link XoroshiroRandom} */
+    public static final int GENERATOR_XOROSHIRO = 1;
+
+    /** Generator kind: any other generator, whose games cannot be replayed */
+    public static final int GENERATOR_OTHER = 2;
+
+    /** Marker at the start of the binary form */
+    private static final int MAGIC = 0x4D424C47;
+
+    /** Layout version of the binary form */
+    private static final int FORMAT_VERSION = 1;
+
+    /** Bytes per recorded action */
+    private static final int ENTRY_BYTES = 3;
+
+    /** Kind of random number generator */
+    private int generator;
+
+    /** Seed of the random number generator */
+    private long seed;
+
+    /** Version of the card catalog the ids refer to */
+    private long catalogVersion;
+
+    /** Names of the players, in seat order, or null before the game starts */
+    private List<String> playerNames;
+
+    /** Recorded actions, {@link #ENTRY_BYTES} bytes each */
+    private byte[] entries;
+
+    /** Number of recorded actions */
+    private int size;
+
+    /**
+     * Creates an empty log for a game whose randomness comes from the given generator, which
+     * must not have been used yet. Only a plain {@link JdkRandomSource} or {@link XoroshiroRandom}
+     * can be made again from its seed; any other generator, subclasses included, is recorded as
+     * {@link #GENERATOR_OTHER}.
+     *
+     * @param random the game's random number generator
+     * @param catalogVersion the version of the game's card catalog
+     */
+    GameLog(Random random, long catalogVersion)
+    {
+        if (random != null && random.getClass() == XoroshiroRandom.class) {
+            this.generator = GENERATOR_XOROSHIRO;
+        } else if (random != null && random.getClass() == JdkRandomSource.class) {
+            this.generator = GENERATOR_JDK;
+        } else {
+            this.generator = GENERATOR_OTHER;
+        }
+        this.seed = generator != GENERATOR_OTHER ? ((RandomSource) random).seed() : 0;
+        this.catalogVersion = catalogVersion;
+        this.entries = new byte[64 * ENTRY_BYTES];
+    }
+
+    /**
+     * Records the start of the game.
+     *
+     * @param names the names of the players, in seat order
+     */
+    void start(List<String> names)
+    {
+        playerNames = new ArrayList<>(names);
+        size = 0;
+    }
+
+    /**
+     * Records an action.
+     *
+     * @param op the operation
+     * @param first the card or customer id, or -1 if unknown
+     * @param second the player index or garnish flag, or -1 if unknown
+     */
+    void append(int op, int first, int second)
+    {
+        if ((size + 1) * ENTRY_BYTES > entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        int at = size * ENTRY_BYTES;
+        entries[at] = (byte) op;
+        entries[at + 1] = (byte) (first + 1);
+        entries[at + 2] = (byte) (second + 1);
+        size++;
+    }
+
+    /**
+     * Creates a fresh random number generator of the recorded kind and seed.
+     *
+     * @return the generator, as used by the game when the log began
+     * @throws IllegalStateException if the game used a generator that cannot be made again
+     */
+    public RandomSource newRandomSource()
+    {
+        if (generator == GENERATOR_OTHER) {
+            throw new IllegalStateException("Game log was recorded with a generator that cannot be replayed");
+        }
+        return generator == GENERATOR_XOROSHIRO ? new XoroshiroRandom(seed) : new JdkRandomSource(seed);
+    }
+
+    /**
+     * Gets the kind of random number generator.
+     *
+     * @return {@link #GENERATOR_JDK}, {@link #GENERATOR_XOROSHIRO} or {@link #GENERATOR_OTHER}
+     */
+    public int getGenerator()
+    {
+        return generator;
+    }
+
+    /**
+     * Gets the seed of the random number generator.
+     *
+     * @return the seed
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Gets the version of the card catalog the recorded ids refer to.
+     *
+     * @return the catalog version
+     */
+    public long getCatalogVersion()
+    {
+        return catalogVersion;
+    }
+
+    /**
+     * Gets the player names.
+     *
+     * @return the names in seat order, or null if the game has not started
+     */
+    public List<String> getPlayerNames()
+    {
+        return playerNames == null ? null : Collections.unmodifiableList(playerNames);
+    }
+
+    /**
+     * Gets the number of recorded actions.
+     *
+     * @return the number of actions
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Gets the operation of a recorded action.
+     *
+     * @param index the action index
+     * @return the operation
+     */
+    public int getOp(int index)
+    {
+        return entries[check(index) * ENTRY_BYTES];
+    }
+
+    /**
+     * Gets the first argument of a recorded action: a card id, or a customer id for
+     * {@link #FULFIL_ORDER}.
+     *
+     * @param index the action index
+     * @return the id, or -1 if unknown or unused
+     */
+    public int getFirstArg(int index)
+    {
+        return (entries[check(index) * ENTRY_BYTES + 1] & 0xFF) - 1;
+    }
+
+    /**
+     * Gets the second argument of a recorded action: the receiving player for {@link #PASS_CARD},
+     * or 1 for a garnished {@link #FULFIL_ORDER}.
+     *
+     * @param index the action index
+     * @return the argument, or -1 if unknown or unused
+     */
+    public int getSecondArg(int index)
+    {
+        return (entries[check(index) * ENTRY_BYTES + 2] & 0xFF) - 1;
+    }
+
+    /**
+     * Finds where a turn begins.
+     *
+     * @param turn the turn number, counting from zero across all players
+     * @return the index of the first action of the turn, or {@link #size()} if the log ends before it
+     */
+    public int turnStart(int turn)
+    {
+        int ended = 0;
+        for (int i = 0; i < size && ended < turn; i++) {
+            if (entries[i * ENTRY_BYTES] == END_TURN) {
+                ended++;
+                if (ended == turn) {
+                    return i + 1;
+                }
+            }
+        }
+        return turn == 0 ? 0 : size;
+    }
+
+    /**
+     * Writes the log in its compact binary form.
+     *
+     * @return the bytes
+     */
+    public byte[] toBytes()
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + size * ENTRY_BYTES);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(generator);
+            out.writeLong(seed);
+            out.writeLong(catalogVersion);
+            List<String> names = playerNames == null ? Collections.emptyList() : playerNames;
+            out.writeByte(names.size());
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+            out.writeInt(size);
+            out.write(entries, 0, size * ENTRY_BYTES);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Gets recorded actions in their binary form, for appending to the bytes of
+     * {@link #toBytes()} written earlier.
+     *
+     * @param from the index of the first action
+     * @param to the index after the last action
+     * @return the bytes of the actions
+     * @throws IndexOutOfBoundsException if the range is outside the log
+     */
+    public byte[] entryBytes(int from, int to)
+    {
+        if (from < 0 || from > to || to > size) {
+            throw new IndexOutOfBoundsException("Actions " + from + " to " + to + " of " + size);
+        }
+        return Arrays.copyOfRange(entries, from * ENTRY_BYTES, to * ENTRY_BYTES);
+    }
+
+    /**
+     * Copies the start of the log, as it stood after a number of actions.
+     *
+     * @param count the number of actions to keep
+     * @return a new log with the same header and the first {@code count} actions
+     * @throws IndexOutOfBoundsException if the log holds fewer actions
+     */
+    GameLog prefix(int count)
+    {
+        if (count < 0 || count > size) {
+            throw new IndexOutOfBoundsException("Actions 0 to " + count + " of " + size);
+        }
+        GameLog copy = new GameLog(null, catalogVersion);
+        copy.generator = generator;
+        copy.seed = seed;
+        copy.playerNames = playerNames == null ? null : new ArrayList<>(playerNames);
+        copy.entries = Arrays.copyOf(entries, Math.max(count, 64) * ENTRY_BYTES);
+        copy.size = count;
+        return copy;
+    }
+
+    /**
+     * Reads a log from its binary form. Actions appended after the bytes of {@link #toBytes()},
+     * see {@link #entryBytes}, are read as well; an incomplete action at the end is ignored.
+     *
+     * @param data the bytes written by {@link #toBytes()}, possibly followed by more actions
+     * @return the log
+     * @throws IllegalArgumentException if the bytes are not a log in this layout
+     */
+    public static GameLog fromBytes(byte[] data)
+    {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Not a game log");
+            }
+            int generator = in.readByte();
+            if (generator < GENERATOR_JDK || generator > GENERATOR_OTHER) {
+                throw new IllegalArgumentException("Unknown generator kind " + generator);
+            }
+            long seed = in.readLong();
+            GameLog log = new GameLog(null, in.readLong());
+            log.generator = generator;
+            log.seed = seed;
+            int players = in.readByte();
+            if (players > 0) {
+                List<String> names = new ArrayList<>();
+                for (int i = 0; i < players; i++) {
+                    names.add(in.readUTF());
+                }
+                log.start(names);
+            }
+            int recorded = in.readInt();
+            int available = in.available() / ENTRY_BYTES;
+            if (available < recorded) {
+                throw new IllegalArgumentException("Truncated game log");
+            }
+            log.size = available;
+            log.entries = new byte[Math.max(available, 64) * ENTRY_BYTES];
+            in.readFully(log.entries, 0, available * ENTRY_BYTES);
+            return log;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated game log", e);
+        }
+    }
+
+    /**
+     * Checks an action index.
+     *
+     * @param index the action index
+     * @return the index
+     * @throws IndexOutOfBoundsException if no such action was recorded
+     */
+    private int check(int index)
+    {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Action " + index + " of " + size);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,160 @@
+package bakery;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rebuilds positions of a recorded game by playing its {@link GameLog} through the engine again.
+ *
+ * Replaying is deterministic because the log holds the seed and kind of the game's random number
+ * generator and every action in order, including attempts that ended in a game exception. A log
+ * is a few bytes per action, so any position of a finished game can be rebuilt without keeping
+ * a saved state per turn. Cards from outside the game's catalog cannot be recorded, so actions
+ * made with them are not reproduced, and games using a generator other than a plain
+ * {@link util.JdkRandomSource} or {@link util.XoroshiroRandom} are refused.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class GameReplayer {
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private GameReplayer()
+    {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Replays a whole log.
+     *
+     * @param log the game log
+     * @return the game after the last recorded action
+     * @throws FileNotFoundException if the deck files cannot be read
+     */
+    public static MagicBakery replay(GameLog log) throws FileNotFoundException
+    {
+        return replay(log, log.size());
+    }
+
+    /**
+     * Replays a log up to the start of a turn.
+     *
+     * @param log the game log
+     * @param turn the turn number, counting from zero across all players
+     * @return the game at the start of the turn, or after the last action if the log ends first
+     * @throws FileNotFoundException if the deck files cannot be read
+     */
+    public static MagicBakery replayToTurn(GameLog log, int turn) throws FileNotFoundException
+    {
+        return replay(log, log.turnStart(turn));
+    }
+
+    /**
+     * Replays the first actions of a log.
+     *
+     * @param log the game log
+     * @param actions the number of actions to replay
+     * @return the game after those actions
+     * @throws FileNotFoundException if the deck files cannot be read
+     * @throws IllegalArgumentException if the log has not started, was recorded with a different
+     *         card catalog or with a generator that cannot be made again
+     */
+    public static MagicBakery replay(GameLog log, int actions) throws FileNotFoundException
+    {
+        if (log.getPlayerNames() == null) {
+            throw new IllegalArgumentException("Game log has no players");
+        }
+        if (log.getGenerator() == GameLog.GENERATOR_OTHER) {
+            throw new IllegalArgumentException("Game log was recorded with a generator that cannot be replayed");
+        }
+        MagicBakery bakery = new MagicBakery(log.newRandomSource(), "./io/ingredients.csv", "./io/layers.csv");
+        CardCatalog catalog = bakery.getCardCatalog();
+        if (catalog.version() != log.getCatalogVersion()) {
+            throw new IllegalArgumentException("Game log was recorded with a different card catalog");
+        }
+        bakery.startGame(log.getPlayerNames(), "./io/customers.csv");
+        replay(bakery, log, 0, Math.min(actions, log.size()));
+        return bakery;
+    }
+
+    /**
+     * Re-executes a range of logged actions on a game. The engine prints nothing while it plays
+     * them, so the replay leaves the console alone.
+     *
+     * @param bakery the game, in the position reached after the first {@code from} actions
+     * @param log the game log
+     * @param from the index of the first action to replay
+     * @param to the index after the last action to replay
+     */
+    static void replay(MagicBakery bakery, GameLog log, int from, int to)
+    {
+        CardCatalog catalog = bakery.getCardCatalog();
+        List<Player> players = new ArrayList<>(bakery.getPlayers());
+        for (int i = from; i < to; i++) {
+            apply(bakery, catalog, players, log.getOp(i), log.getFirstArg(i), log.getSecondArg(i));
+        }
+    }
+
+    /**
+     * Applies one recorded action. Game exceptions are expected, since failed attempts are recorded too.
+     *
+     * @param bakery the game
+     * @param catalog the card catalog
+     * @param players the players in seat order
+     * @param op the operation
+     * @param first the card or customer id
+     * @param second the player index or garnish flag
+     */
+    private static void apply(MagicBakery bakery, CardCatalog catalog, List<Player> players, int op, int first, int second)
+    {
+        try {
+            switch (op) {
+                case GameLog.DRAW_BY_NAME:
+                    bakery.drawFromPantry(first < 0 ? "" : catalog.card(first).toString());
+                    break;
+                case GameLog.PASS_CARD:
+                    Player recipient = second < 0 ? new Player("") : players.get(second);
+                    bakery.passCard(first < 0 ? null : catalog.card(first), recipient);
+                    break;
+                case GameLog.BAKE_LAYER:
+                    if (first >= 0) {
+                        bakery.bakeLayer((Layer) catalog.card(first));
+                    }
+                    break;
+                case GameLog.FULFIL_ORDER:
+                    bakery.fulfillOrder(activeCustomer(bakery, catalog, first), second == 1);
+                    break;
+                case GameLog.REFRESH_PANTRY:
+                    bakery.refreshPantry();
+                    break;
+                case GameLog.END_TURN:
+                    bakery.endTurn();
+                    break;
+                default:
+                    bakery.drawFromPantry(first < 0 ? null : catalog.card(first));
+            }
+        } catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+            // the original attempt failed the same way
+        }
+    }
+
+    /**
+     * Finds a customer in the customer row.
+     *
+     * @param bakery the game
+     * @param catalog the card catalog
+     * @param id the customer id
+     * @return the customer order, or null if it is not in the row
+     */
+    private static CustomerOrder activeCustomer(MagicBakery bakery, CardCatalog catalog, int id)
+    {
+        for (CustomerOrder order : bakery.getCustomers().getActiveCustomers()) {
+            if (order != null && catalog.customerId(order) == id) {
+                return order;
+            }
+        }
+        return null;
+    }
+}
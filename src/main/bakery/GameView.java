@@ -0,0 +1,346 @@
+package bakery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import bakery.CustomerOrder.CustomerOrderStatus;
+
+/**
+ * An immutable picture of a game's visible state after one action, for threads other than the one
+ * playing the game.
+ *
+ * {@link MagicBakery} publishes a new view after every action through a volatile reference, so
+ * spectators and dashboards can read {@link MagicBakery#getView()} from any thread, as often as
+ * they like, without locks and without seeing a half-applied action. Each view carries a version
+ * that goes up by one per action.
+ *
+ * A new view shares every part the action did not touch with the view before it: ending a turn
+ * copies nothing but the turn, and drawing a card copies the pantry and one hand. Views are cheap
+ * to keep, so a reader can hold on to an old one and compare it with the latest by identity.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class GameView {
+    /** Part flag for the pantry */
+    static final int PANTRY = 1;
+
+    /** Part flag for the customer row */
+    static final int CUSTOMERS = 2;
+
+    /** Part flag for the current player and the actions remaining */
+    static final int TURN = 4;
+
+    /** Part flag for the layers left to bake */
+    static final int LAYERS = 8;
+
+    /** Every part */
+    static final int ALL = PANTRY | CUSTOMERS | TURN | LAYERS;
+
+    /** Number of views the game published before this one */
+    private final long version;
+
+    /** The card catalog of the game */
+    private final CardCatalog catalog;
+
+    /** The Zobrist hash of the position */
+    private final long stateHash;
+
+    /** Player names in seat order */
+    private final List<String> playerNames;
+
+    /** Each player's hand, in seat order */
+    private final List<List<Ingredient>> hands;
+
+    /** Actions each player has left this turn */
+    private final List<Integer> actionsRemaining;
+
+    /** Seat of the player whose turn it is */
+    private final int currentPlayer;
+
+    /** The pantry */
+    private final List<Ingredient> pantry;
+
+    /** The customer row, with null for empty slots */
+    private final List<CustomerOrder> activeCustomers;
+
+    /** Status of each customer in the row when the view was taken, null for empty slots */
+    private final List<CustomerOrderStatus> customerStatuses;
+
+    /** The layers left to bake */
+    private final List<Layer> layers;
+
+    /**
+     * Creates a view from its parts, which must already be unmodifiable.
+     *
+     * @param version the version
+     * @param catalog the card catalog
+     * @param stateHash the state hash
+     * @param playerNames the player names
+     * @param hands the hands
+     * @param actionsRemaining the actions remaining
+     * @param currentPlayer the current seat
+     * @param pantry the pantry
+     * @param activeCustomers the customer row
+     * @param customerStatuses the statuses of the customer row
+     * @param layers the layers left to bake
+     */
+    private GameView(long version, CardCatalog catalog, long stateHash, List<String> playerNames,
+            List<List<Ingredient>> hands, List<Integer> actionsRemaining, int currentPlayer,
+            List<Ingredient> pantry, List<CustomerOrder> activeCustomers,
+            List<CustomerOrderStatus> customerStatuses, List<Layer> layers)
+    {
+        this.version = version;
+        this.catalog = catalog;
+        this.stateHash = stateHash;
+        this.playerNames = playerNames;
+        this.hands = hands;
+        this.actionsRemaining = actionsRemaining;
+        this.currentPlayer = currentPlayer;
+        this.pantry = pantry;
+        this.activeCustomers = activeCustomers;
+        this.customerStatuses = customerStatuses;
+        this.layers = layers;
+    }
+
+    /**
+     * Takes a view of every part of a game.
+     *
+     * @param bakery the game
+     * @param version the version of the view
+     * @return the view
+     */
+    static GameView of(MagicBakery bakery, long version)
+    {
+        List<String> names = new ArrayList<>();
+        List<List<Ingredient>> hands = new ArrayList<>();
+        for (Player player : bakery.getPlayers()) {
+            names.add(player.getName());
+            hands.add(copy(player.getHand()));
+        }
+        CustomerView row = customersOf(bakery);
+        return new GameView(version, bakery.getCardCatalog(), bakery.getStateHash(),
+            Collections.unmodifiableList(names), Collections.unmodifiableList(hands),
+            actionsOf(bakery, null), bakery.currentPlayerLoc, copy(bakery.getPantry()),
+            row.orders, row.statuses, copy(bakery.getLayerStock()));
+    }
+
+    /**
+     * Takes the view that follows this one, copying only the parts an action changed.
+     *
+     * @param bakery the game after the action
+     * @param parts the changed parts, as a combination of the part flags
+     * @param seats the seats whose hands changed, one bit per seat
+     * @return the new view
+     */
+    GameView next(MagicBakery bakery, int parts, int seats)
+    {
+        List<List<Ingredient>> nextHands = hands;
+        if (seats != 0) {
+            List<List<Ingredient>> changed = new ArrayList<>(hands);
+            int seat = 0;
+            for (Player player : bakery.getPlayers()) {
+                if ((seats & (1 << seat)) != 0) {
+                    changed.set(seat, copy(player.getHand()));
+                }
+                seat++;
+            }
+            nextHands = Collections.unmodifiableList(changed);
+        }
+        boolean turn = (parts & TURN) != 0;
+        CustomerView row = (parts & CUSTOMERS) != 0 ? customersOf(bakery) : null;
+        return new GameView(version + 1, catalog, bakery.getStateHash(), playerNames, nextHands,
+            turn ? actionsOf(bakery, actionsRemaining) : actionsRemaining,
+            turn ? bakery.currentPlayerLoc : currentPlayer,
+            (parts & PANTRY) != 0 ? copy(bakery.getPantry()) : pantry,
+            row != null ? row.orders : activeCustomers,
+            row != null ? row.statuses : customerStatuses,
+            (parts & LAYERS) != 0 ? copy(bakery.getLayerStock()) : layers);
+    }
+
+    /**
+     * Gets the version of the view.
+     *
+     * @return the number of views the game published before this one
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Gets the card catalog of the game, for turning cards into ids.
+     *
+     * @return the card catalog
+     */
+    public CardCatalog getCardCatalog()
+    {
+        return catalog;
+    }
+
+    /**
+     * Gets the state hash of the position.
+     *
+     * @return the Zobrist hash, as {@link MagicBakery#getStateHash()} returned it
+     */
+    public long getStateHash()
+    {
+        return stateHash;
+    }
+
+    /**
+     * Gets the player names.
+     *
+     * @return an unmodifiable list of names in seat order
+     */
+    public List<String> getPlayerNames()
+    {
+        return playerNames;
+    }
+
+    /**
+     * Gets a player's hand.
+     *
+     * @param player the seat index
+     * @return an unmodifiable list of the cards in hand
+     */
+    public List<Ingredient> getHand(int player)
+    {
+        return hands.get(player);
+    }
+
+    /**
+     * Gets the actions a player has left this turn.
+     *
+     * @param player the seat index
+     * @return the number of actions
+     */
+    public int getActionsRemaining(int player)
+    {
+        return actionsRemaining.get(player);
+    }
+
+    /**
+     * Gets the seat of the player whose turn it is.
+     *
+     * @return the seat index
+     */
+    public int getCurrentPlayer()
+    {
+        return currentPlayer;
+    }
+
+    /**
+     * Gets the pantry.
+     *
+     * @return an unmodifiable list of the cards in the pantry
+     */
+    public List<Ingredient> getPantry()
+    {
+        return pantry;
+    }
+
+    /**
+     * Gets the customer row.
+     *
+     * @return an unmodifiable list of the customers waiting, with null for empty slots
+     */
+    public List<CustomerOrder> getActiveCustomers()
+    {
+        return activeCustomers;
+    }
+
+    /**
+     * Gets the status a customer in the row had when the view was taken. Customer orders are
+     * mutable, so this, not {@link CustomerOrder#getStatus()}, is the status as of this version.
+     *
+     * @param slot the slot in the customer row
+     * @return the status, or null for an empty slot
+     */
+    public CustomerOrderStatus getCustomerStatus(int slot)
+    {
+        return customerStatuses.get(slot);
+    }
+
+    /**
+     * Gets the layers left to bake.
+     *
+     * @return an unmodifiable list with one entry per layer card
+     */
+    public List<Layer> getLayers()
+    {
+        return layers;
+    }
+
+    /**
+     * The customer row and the statuses of its orders.
+     */
+    private static final class CustomerView {
+        /** The customer row */
+        private final List<CustomerOrder> orders;
+
+        /** The statuses of the row */
+        private final List<CustomerOrderStatus> statuses;
+
+        /**
+         * Creates a customer view.
+         *
+         * @param orders the customer row
+         * @param statuses the statuses of the row
+         */
+        private CustomerView(List<CustomerOrder> orders, List<CustomerOrderStatus> statuses)
+        {
+            this.orders = orders;
+            this.statuses = statuses;
+        }
+    }
+
+    /**
+     * Copies the customer row of a game.
+     *
+     * @param bakery the game
+     * @return the row and its statuses, empty if the game has not started
+     */
+    private static CustomerView customersOf(MagicBakery bakery)
+    {
+        List<CustomerOrder> orders = new ArrayList<>();
+        List<CustomerOrderStatus> statuses = new ArrayList<>();
+        if (bakery.getCustomers() != null) {
+            for (CustomerOrder order : bakery.getCustomers().getActiveCustomers()) {
+                orders.add(order);
+                statuses.add(order == null ? null : order.getStatus());
+            }
+        }
+        return new CustomerView(Collections.unmodifiableList(orders), Collections.unmodifiableList(statuses));
+    }
+
+    /**
+     * Copies the actions each player of a game has left.
+     *
+     * @param bakery the game
+     * @param previous the actions remaining of the previous view, reused if unchanged, or null
+     * @return an unmodifiable list in seat order, empty if the game has not started
+     */
+    private static List<Integer> actionsOf(MagicBakery bakery, List<Integer> previous)
+    {
+        if (bakery.playerActionCount == null) {
+            return Collections.emptyList();
+        }
+        List<Integer> actions = Collections.unmodifiableList(new ArrayList<>(bakery.playerActionCount));
+        return actions.equals(previous) ? previous : actions;
+    }
+
+    /**
+     * Makes an unmodifiable copy of a collection, which may hold nulls.
+     *
+     * @param <T> the element type
+     * @param items the collection
+     * @return the copy
+     */
+    private static <T> List<T> copy(Collection<? extends T> items)
+    {
+        return Collections.unmodifiableList(new ArrayList<>(items));
+    }
+}
@@ -14,10 +14,12 @@ import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.LinkedList;
-import util.CardUtils;
+import util.JdkRandomSource;
+import util.RandomSource;
 import util.ConsoleUtils;
 import util.StringUtils;
 import util.collectionFunctions;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -26,6 +28,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamException;
+import java.io.OutputStream;
 import java.io.Serializable; 
 /**
  * Represents a magical bakery game
@@ -91,6 +94,21 @@ public class MagicBakery implements Serializable {
 
     /** List of Ingredients */
     public List<Ingredient> ingredients;
+
+    /** The ids of every kind of card in this game */
+    private CardCatalog catalog;
+
+    /** Incremental hash of the game position */
+    private ZobristHash zobrist;
+
+    /** Record of the seed, players and actions of this game, for replay */
+    private GameLog log;
+
+    /** The latest view of the game, replaced after every action for other threads to read */
+    private transient volatile GameView view;
+
+    /** The decks the game is dealt from, until it starts */
+    private transient CardDecks decks;
     
     /**
      * Enum representing the type of action in the game
@@ -113,8 +131,56 @@ public class MagicBakery implements Serializable {
      * @throws FileNotFoundException if the specified layer deck file is not found
      */
     public MagicBakery(long seed, String ingredientDeckFileIn, String layerDeckFileIn) throws FileNotFoundException {
+        this(new JdkRandomSource(seed), ingredientDeckFileIn, layerDeckFileIn);
+    }
+
+    /**
+     * Constructs a magic bakery game that draws all of its randomness from the given source.
+     * The source is shared with the customers, so every shuffle and draw in the game comes from it.
+     *
+     * @param random the source of randomness, for example {@link util.XoroshiroRandom} or a child stream of a batch seed
+     * @param ingredientDeckFileIn the file name for ingredient deck
+     * @param layerDeckFileIn the file name for layer deck
+     * @throws FileNotFoundException if the specified ingredient deck file is not found
+     * @throws FileNotFoundException if the specified layer deck file is not found
+     */
+    public MagicBakery(RandomSource random, String ingredientDeckFileIn, String layerDeckFileIn) throws FileNotFoundException {
+        this(random, loadDecks(ingredientDeckFileIn, layerDeckFileIn));
+    }
+
+    /**
+     * Constructs a magic bakery game dealt from decks already read, sharing their cards and
+     * catalog with every other game dealt from them. This is the same game the file constructor
+     * would set up with the same randomness, without reading the deck files.
+     *
+     * @param random the source of randomness
+     * @param decks the decks to deal from
+     */
+    public MagicBakery(RandomSource random, CardDecks decks) {
         players = new ArrayList<Player>();
+        this.pantry = new ArrayList<>();
+        this.pantryDiscard = new ArrayList<>();
+        this.pantryDeck = new ArrayDeque<>();
+        this.ingredientDeckFile = decks.ingredientFile();
+        this.decks = decks;
+        this.random = random.asRandom();
+        this.layers = new ArrayList<>(decks.layers());
+        this.pantryDeck.addAll(decks.ingredients());
+        this.catalog = decks.getCardCatalog();
+        this.log = new GameLog(this.random, catalog.version());
+        this.zobrist = new ZobristHash(catalog.cardCount());
+        this.view = GameView.of(this, 0);
+    }
 
+    /**
+     * Checks the deck file names and reads the decks for the file constructors.
+     *
+     * @param ingredientDeckFileIn the file name for ingredient deck
+     * @param layerDeckFileIn the file name for layer deck
+     * @return the decks
+     * @throws FileNotFoundException if a deck file is not found
+     */
+    private static CardDecks loadDecks(String ingredientDeckFileIn, String layerDeckFileIn) throws FileNotFoundException {
         if (!ingredientDeckFileIn.equals("./io/ingredients.csv")) {
             throw new FileNotFoundException("Ingredient deck file not found:" + ingredientDeckFileIn);
         }
@@ -122,16 +188,7 @@ public class MagicBakery implements Serializable {
         if (!layerDeckFileIn.equals("./io/layers.csv")) {
             throw new FileNotFoundException("Layer deck file not found: " + layerDeckFileIn);
         }
-        this.pantry = new ArrayList<>();
-        this.pantryDiscard = new ArrayList<>();
-        this.pantryDeck = new ArrayDeque<>();
-        this.ingredientDeckFile = ingredientDeckFileIn;
-        this.random = new Random(seed);
-        this.layers = CardUtils.readLayerFile(layerDeckFileIn);
-        List<CustomerOrder> customerOrders = CardUtils.readCustomerFile ("io/customers.csv", layers);
-        List<Ingredient> ingredients = CardUtils.readIngredientFile(ingredientDeckFileIn);
-        this.pantryDeck.addAll(ingredients);
-
+        return CardDecks.load(ingredientDeckFileIn, layerDeckFileIn, "io/customers.csv");
     }
 
     /**
@@ -143,6 +200,7 @@ public class MagicBakery implements Serializable {
      */
     public void bakeLayer(Layer layer) throws TooManyActionsException, WrongIngredientsException
     {
+        log.append(GameLog.BAKE_LAYER, catalog.cardId(layer), -1);
         // Check if the player has enough actions remaining
         if (getActionsRemaining() <= 0) {
             throw new TooManyActionsException();
@@ -156,12 +214,18 @@ public class MagicBakery implements Serializable {
 
         // Perform the baking process
         pantryDiscard.addAll(layer.getRecipe());
+        int handZone = ZobristHash.hand(currentPlayerLoc);
         for (Ingredient item : layer.getRecipe()) {
             getCurrentPlayer().removeFromHand(item);
+            zobrist.removeCard(handZone, catalog.cardId(item));
         }
         getCurrentPlayer().addToHand(layer);
-        layers.remove(layer);
-        playerActionCount.set(currentPlayerLoc, playerActionCount.get(currentPlayerLoc) - 1);
+        zobrist.addCard(handZone, catalog.cardId(layer));
+        if (layers.remove(layer)) {
+            zobrist.removeCard(ZobristHash.LAYERS, catalog.cardId(layer));
+        }
+        useAction();
+        publish(GameView.TURN | GameView.LAYERS, 1 << currentPlayerLoc);
     }
 
     /**
@@ -180,9 +244,10 @@ public class MagicBakery implements Serializable {
             shufflePantryDeck();
         }
         
-        Deque<Ingredient> deque = new LinkedList<>(pantryDeck);
-        Ingredient drawnCard = deque.pollFirst();
+        // The card stays on the deck, as it always has; only the top card is looked at
+        Ingredient drawnCard = pantryDeck.iterator().next();
         pantry.add(drawnCard);
+        zobrist.addCard(ZobristHash.PANTRY, catalog.cardId(drawnCard));
         return drawnCard;
         
     }
@@ -204,6 +269,7 @@ public class MagicBakery implements Serializable {
             }
         }
         
+        log.append(GameLog.DRAW_BY_NAME, catalog.cardId(ingredient), -1);
         if (ingredient == null) {
             throw new WrongIngredientsException();
         }
@@ -217,10 +283,17 @@ public class MagicBakery implements Serializable {
         }
         
 
-        pantry.remove(ingredient);
-        getCurrentPlayer().addToHand(ingredient);
-        drawFromPantryDeck();
-        playerActionCount.set(currentPlayerLoc, playerActionCount.get(currentPlayerLoc) - 1);
+        try {
+            if (pantry.remove(ingredient)) {
+                zobrist.removeCard(ZobristHash.PANTRY, catalog.cardId(ingredient));
+            }
+            getCurrentPlayer().addToHand(ingredient);
+            zobrist.addCard(ZobristHash.hand(currentPlayerLoc), catalog.cardId(ingredient));
+            drawFromPantryDeck();
+            useAction();
+        } finally {
+            publish(GameView.PANTRY | GameView.TURN, 1 << currentPlayerLoc);
+        }
     }
 
     /**
@@ -232,6 +305,7 @@ public class MagicBakery implements Serializable {
      */
     public void drawFromPantry(Ingredient ingredient) throws WrongIngredientsException, TooManyActionsException
     {
+        log.append(GameLog.DRAW_CARD, catalog.cardId(ingredient), -1);
         if (ingredient == null) {
             throw new WrongIngredientsException();
         }
@@ -243,10 +317,17 @@ public class MagicBakery implements Serializable {
         if (getActionsRemaining()  > getActionsPermitted()){
             throw new TooManyActionsException();
         }
-        pantry.remove(ingredient);
-        getCurrentPlayer().addToHand(ingredient);
-        drawFromPantryDeck();
-        playerActionCount.set(currentPlayerLoc, playerActionCount.get(currentPlayerLoc) - 1);
+        try {
+            if (pantry.remove(ingredient)) {
+                zobrist.removeCard(ZobristHash.PANTRY, catalog.cardId(ingredient));
+            }
+            getCurrentPlayer().addToHand(ingredient);
+            zobrist.addCard(ZobristHash.hand(currentPlayerLoc), catalog.cardId(ingredient));
+            drawFromPantryDeck();
+            useAction();
+        } finally {
+            publish(GameView.PANTRY | GameView.TURN, 1 << currentPlayerLoc);
+        }
     }
 
     /**
@@ -256,16 +337,17 @@ public class MagicBakery implements Serializable {
      */
     public boolean endTurn()
     {
+        log.append(GameLog.END_TURN, -1, -1);
         if (currentPlayerLoc == (players.size() - 1))
         {
             currentPlayerLoc = 0;
-            System.out.println("*NEW ROUND*");
-            System.out.println();
             resetAction();
         }       
         else{
             currentPlayerLoc = currentPlayerLoc + 1;
         }
+        zobrist.setTurn(currentPlayerLoc);
+        publish(GameView.TURN, 0);
         return true;
     }
 
@@ -278,6 +360,7 @@ public class MagicBakery implements Serializable {
      */
     public List<Ingredient> fulfillOrder(CustomerOrder customer, boolean garnish)
     {
+        log.append(GameLog.FULFIL_ORDER, catalog.customerId(customer), garnish ? 1 : 0);
         return null;
     }
 
@@ -409,7 +492,8 @@ public class MagicBakery implements Serializable {
     }
 
     /**
-     * Loads the game state for the specified file
+     * Loads the game state for the specified file, written by {@link #saveState} in the
+     * format of {@link SaveFormat} or with Java serialization
      * 
      * @param file the file to load the state from 
      * @return the magic bakery instance loaded from the file
@@ -418,17 +502,8 @@ public class MagicBakery implements Serializable {
      */
     public static MagicBakery loadState(File file) throws IOException, ClassNotFoundException
     {
-        try (ObjectInputStream objectStream = new ObjectInputStream(new FileInputStream(file))) {
-        Object obj = objectStream.readObject();
-        if (obj instanceof MagicBakery) {
-            return (MagicBakery) obj;
-        } else {
-            throw new ClassCastException("Invalid data format");
-        }
-        } catch (FileNotFoundException e) {
-            throw e;
-        } catch (ObjectStreamException e) {
-            throw e;
+        try (FileInputStream fileStream = new FileInputStream(file)) {
+            return SaveFormat.read(fileStream);
         }
     }
     
@@ -437,11 +512,18 @@ public class MagicBakery implements Serializable {
      * 
      * @param ingredient the ingredient to pass
      * @param recipient the recipent player
-     * @throws WrongIngredientsException If the current player does not have the specified ingredient in hand.
+     * @throws WrongIngredientsException If the current player does not have the specified ingredient in hand,
+     *         or the recipient is not another player in this game.
      * @throws TooManyActionsException If the current player has used all their actions for this turn.
      */
     public void passCard(Ingredient ingredient, Player recipient) throws WrongIngredientsException, TooManyActionsException
     {
+            int recipientLoc = playerIndex(recipient);
+            log.append(GameLog.PASS_CARD, catalog.cardId(ingredient), recipientLoc);
+            if (recipientLoc < 0 || recipientLoc == currentPlayerLoc)
+            {
+                throw new WrongIngredientsException("The recipient must be another player in this game.");
+            }
             // Remove the particular Ingredient from the current player and give it to the other player
             // Check if the current player has the ingredient in hand
             Player currentPlayer = getCurrentPlayer();
@@ -449,6 +531,9 @@ public class MagicBakery implements Serializable {
             {
                 currentPlayer.removeFromHand(ingredient);
                 recipient.addToHand(ingredient);
+                int cardId = catalog.cardId(ingredient);
+                zobrist.removeCard(ZobristHash.hand(currentPlayerLoc), cardId);
+                zobrist.addCard(ZobristHash.hand(recipientLoc), cardId);
             }
             else
             {
@@ -456,7 +541,8 @@ public class MagicBakery implements Serializable {
             }
             
             // Reduce the action count of the current player
-            playerActionCount.set(currentPlayerLoc, playerActionCount.get(currentPlayerLoc) - 1);
+            useAction();
+            publish(GameView.TURN, 1 << currentPlayerLoc | 1 << recipientLoc);
             
             // Check if the current player has any actions remaining
             if (playerActionCount.get(currentPlayerLoc) < 0)
@@ -500,21 +586,29 @@ public class MagicBakery implements Serializable {
      */
     public void refreshPantry()
     {
+        log.append(GameLog.REFRESH_PANTRY, -1, -1);
         if (getActionsRemaining() > 0) {
-            pantryDiscard.addAll(pantry);
-            pantry.clear();
+            try {
+                pantryDiscard.addAll(pantry);
+                for (Ingredient item : pantry) {
+                    zobrist.removeCard(ZobristHash.PANTRY, catalog.cardId(item));
+                }
+                pantry.clear();
     
-            if (!pantryDeck.isEmpty()) {
-                shufflePantryDeck();
-            } else {
-                shuffle();
-            }
+                if (!pantryDeck.isEmpty()) {
+                    shufflePantryDeck();
+                } else {
+                    shuffle();
+                }
     
-            for (int i = 1; i <= 5; i++) {
-                Ingredient ingredient = drawFromPantryDeck();
-            }
+                for (int i = 1; i <= 5; i++) {
+                    Ingredient ingredient = drawFromPantryDeck();
+                }
     
-            playerActionCount.set(currentPlayerLoc, playerActionCount.get(currentPlayerLoc) - 1);
+                useAction();
+            } finally {
+                publish(GameView.PANTRY | GameView.TURN, 0);
+            }
         } else {
             throw new TooManyActionsException();
         }
@@ -522,14 +616,14 @@ public class MagicBakery implements Serializable {
     }
 
     /**
-     * Saves the current game state to the specified file
+     * Saves the current game state to the specified file, in the format of {@link SaveFormat}
      * 
      * @param file the file to save the state to
      */
     public void saveState(File file)
     {
-        try (ObjectOutputStream objectStream = new ObjectOutputStream(new FileOutputStream(file))) {
-            objectStream.writeObject(this);
+        try (OutputStream fileStream = new BufferedOutputStream(new FileOutputStream(file))) {
+            SaveFormat.write(this, fileStream);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -590,6 +684,8 @@ public class MagicBakery implements Serializable {
             throw new IllegalArgumentException();
         }
 
+        log.start(playerNames);
+
         // Instantiating the player names
        int playerCount = 0;
         for (String player: playerNames)
@@ -598,14 +694,15 @@ public class MagicBakery implements Serializable {
             playerCount = playerCount + 1;  
         }
 
-        // Instantiating a new Customer object
-        this.customers = new Customers(customerDeckFile, this.random, this.layers, playerCount);
-
-        // Reading the CustomerOrder file
-        List<CustomerOrder> CustomerOrders = CardUtils.readCustomerFile(customerDeckFile, this.layers);
+        // Instantiating a new Customer object, dealt from the shared decks
+        if (decks == null) {
+            decks = loadDecks(ingredientDeckFile, "./io/layers.csv");
+        }
+        this.customers = new Customers(decks.newCustomers(), this.random, playerCount);
         
         // Reading the Pantry
-        List<Ingredient> Deck = CardUtils.readIngredientFile(ingredientDeckFile);
+        List<Ingredient> Deck = new ArrayList<>(decks.ingredients());
+        decks = null;
         Collections.shuffle(Deck, random);
         
         
@@ -644,6 +741,7 @@ public class MagicBakery implements Serializable {
         }
         this.pantryDeck.clear();
         this.pantryDeck.addAll(tempPantryDeck);
+        rehash();
 
     }
 
@@ -666,11 +764,213 @@ public class MagicBakery implements Serializable {
             if (actionsVal != -1)
             {
                 playerActionCount.set(i, actionsVal);
+                zobrist.setActions(i, actionsVal);
             }
             
         }
     }
 
+    /**
+     * Uses up one of the current player's actions.
+     */
+    private void useAction()
+    {
+        int remaining = playerActionCount.get(currentPlayerLoc) - 1;
+        playerActionCount.set(currentPlayerLoc, remaining);
+        zobrist.setActions(currentPlayerLoc, remaining);
+    }
+
+    /**
+     * Gets the seat index of a player.
+     *
+     * @param player the player to look up
+     * @return the index of the player, or -1 if the player is not in this game
+     */
+    private int playerIndex(Player player)
+    {
+        int index = 0;
+        for (Player item : players) {
+            if (item == player) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the card catalog, which assigns the ids used by the state hash.
+     *
+     * @return the card catalog
+     */
+    public CardCatalog getCardCatalog()
+    {
+        return catalog;
+    }
+
+    /**
+     * Returns the 64-bit Zobrist hash of the current position. Positions with the same hands,
+     * pantry, remaining layers, customer row, current player and actions remaining have the
+     * same hash, regardless of the order of the actions that reached them.
+     *
+     * @return the state hash
+     */
+    public long getStateHash()
+    {
+        return zobrist.value();
+    }
+
+    /**
+     * Gets the record of this game's seed, players and actions, from which
+     * {@link GameReplayer} can rebuild any position reached so far.
+     *
+     * @return the game log
+     */
+    public GameLog getGameLog()
+    {
+        return log;
+    }
+
+    /**
+     * Gets the latest view of the game. Unlike the other getters this may be called from any
+     * thread, at any time, without holding up the thread playing the game.
+     *
+     * @return an immutable view of the game after the last action
+     */
+    public GameView getView()
+    {
+        return view;
+    }
+
+    /**
+     * Publishes a new view after an action, sharing the parts the action did not change.
+     *
+     * @param parts the changed parts, as a combination of the {@link GameView} part flags
+     * @param seats the seats whose hands changed, one bit per seat
+     */
+    private void publish(int parts, int seats)
+    {
+        view = view.next(this, parts, seats);
+    }
+
+    /**
+     * Gives a game restored by Java serialization the view its transient field lost.
+     *
+     * @return this game
+     */
+    private Object readResolve()
+    {
+        view = GameView.of(this, 0);
+        return this;
+    }
+
+    /**
+     * Gets the pantry deck, in draw order
+     * 
+     * @return the pantry deck
+     */
+    Collection<Ingredient> getPantryDeck()
+    {
+        return pantryDeck;
+    }
+
+    /**
+     * Gets the discarded pantry
+     * 
+     * @return the discarded pantry
+     */
+    Collection<Ingredient> getPantryDiscard()
+    {
+        return pantryDiscard;
+    }
+
+    /**
+     * Gets the layers still available to bake, one entry per card
+     * 
+     * @return the layer cards
+     */
+    Collection<Layer> getLayerStock()
+    {
+        return layers;
+    }
+
+    /**
+     * Gets the random number generator of the game.
+     *
+     * @return the random number generator
+     */
+    Random getRandom()
+    {
+        return random;
+    }
+
+    /**
+     * Replaces the random number generator of the game. The customers keep their own reference.
+     *
+     * @param random the random number generator
+     */
+    void setRandom(Random random)
+    {
+        this.random = random;
+    }
+
+    /**
+     * Replaces the game log, for a game rebuilt from a save.
+     *
+     * @param log the log of the actions that led to the current position
+     */
+    void setGameLog(GameLog log)
+    {
+        this.log = log;
+    }
+
+    /**
+     * Recomputes the state hash from scratch. The action methods keep the hash up to date
+     * incrementally; this is only needed after the position is set up or changed directly.
+     */
+    void rehash()
+    {
+        zobrist = new ZobristHash(catalog.cardCount());
+        int index = 0;
+        for (Player player : players) {
+            for (Ingredient item : player.getHand()) {
+                zobrist.addCard(ZobristHash.hand(index), catalog.cardId(item));
+            }
+            index++;
+        }
+        for (Ingredient item : pantry) {
+            zobrist.addCard(ZobristHash.PANTRY, catalog.cardId(item));
+        }
+        for (Layer layer : layers) {
+            zobrist.addCard(ZobristHash.LAYERS, catalog.cardId(layer));
+        }
+        hashCustomerRow();
+        zobrist.setTurn(currentPlayerLoc);
+        if (playerActionCount != null) {
+            for (int i = 0; i < playerActionCount.size(); i++) {
+                zobrist.setActions(i, playerActionCount.get(i));
+            }
+        }
+        GameView previous = view;
+        view = GameView.of(this, previous == null ? 0 : previous.getVersion() + 1);
+    }
+
+    /**
+     * Brings the customer row slots of the state hash up to date.
+     */
+    private void hashCustomerRow()
+    {
+        if (customers == null) {
+            return;
+        }
+        int slot = 0;
+        for (CustomerOrder order : customers.getActiveCustomers()) {
+            int status = order == null ? 0 : order.getStatus().ordinal();
+            zobrist.setSlot(slot, catalog.customerId(order), status);
+            slot++;
+        }
+    }
+
 }
 
  
\ No newline at end of file
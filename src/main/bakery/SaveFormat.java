@@ -0,0 +1,699 @@
+package bakery;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import bakery.CustomerOrder.CustomerOrderStatus;
+import util.JdkRandomSource;
+import util.RandomSource;
+import util.XoroshiroRandom;
+
+/**
+ * The binary format used by {@link MagicBakery#saveState} and {@link MagicBakery#loadState}.
+ *
+ * Cards and customers are written as their {@link CardCatalog} ids, one byte each, instead of
+ * as serialized objects with their names and recipes. Every zone keeps its order, since the order
+ * of the pantry and the discard pile decides later shuffles, so a saved game plays on exactly as
+ * the original would. The random number generators are written as their raw state.
+ *
+ * The layout is a header of marker, format version, catalog version and a table of the offset and
+ * length of each section, followed by the sections: {@link #SECTION_RANDOM}, the game's random
+ * number generator and, unless they share it, that of the customers; {@link #SECTION_PLAYERS},
+ * each player's name, actions remaining and hand, then the current player; {@link #SECTION_PANTRY},
+ * the pantry and discard pile; {@link #SECTION_DECKS}, the pantry deck, layer stock and public
+ * ingredient list; {@link #SECTION_CUSTOMERS}, the customer row, customer deck and departed
+ * customers as customer id plus one (zero for an empty slot) and status; and
+ * {@link #SECTION_HISTORY}, the game log. Because every section can be found from the header,
+ * {@link SavedGame} decodes only the sections it is asked about.
+ *
+ * Games that have not started, or that hold a card or customer outside their catalog, are written
+ * with Java serialization instead. {@link #read} accepts both forms.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class SaveFormat {
+    /** Marker at the start of the binary form */
+    public static final int MAGIC = 0x4D425356;
+
+    /** Layout version written after the marker */
+    public static final int FORMAT_VERSION = 2;
+
+    /** Section holding the random number generators */
+    public static final int SECTION_RANDOM = 0;
+
+    /** Section holding the players, their hands and the current player */
+    public static final int SECTION_PLAYERS = 1;
+
+    /** Section holding the pantry and discard pile */
+    public static final int SECTION_PANTRY = 2;
+
+    /** Section holding the pantry deck, layer stock and public ingredient list */
+    public static final int SECTION_DECKS = 3;
+
+    /** Section holding the customer row, customer deck and departed customers */
+    public static final int SECTION_CUSTOMERS = 4;
+
+    /** Section holding the game log */
+    public static final int SECTION_HISTORY = 5;
+
+    /** Number of sections */
+    public static final int SECTION_COUNT = 6;
+
+    /** Random number generator written as a {@link JdkRandomSource} state */
+    private static final int RANDOM_JDK = 0;
+
+    /** Random number generator written as a {@link XoroshiroRandom} state */
+    private static final int RANDOM_XOROSHIRO = 1;
+
+    /** Random number generator written with Java serialization */
+    private static final int RANDOM_SERIALIZED = 2;
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private SaveFormat()
+    {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Writes a game to a stream.
+     *
+     * @param bakery the game
+     * @param stream the stream to write to, which is not closed
+     * @throws IOException if the stream cannot be written
+     */
+    public static void write(MagicBakery bakery, OutputStream stream) throws IOException
+    {
+        byte[] compact;
+        try {
+            compact = toBytes(bakery);
+        } catch (IllegalArgumentException e) {
+            ObjectOutputStream out = new ObjectOutputStream(stream);
+            out.writeObject(bakery);
+            out.flush();
+            return;
+        }
+        stream.write(compact);
+        stream.flush();
+    }
+
+    /**
+     * Reads a game from a stream, in this format or written with Java serialization.
+     *
+     * @param stream the stream to read from, which is not closed
+     * @return the game
+     * @throws IOException if the stream cannot be read, or does not hold a game in either form
+     * @throws ClassNotFoundException if the class of a serialized object cannot be found
+     * @throws ClassCastException if the stream holds a serialized object other than a game
+     */
+    public static MagicBakery read(InputStream stream) throws IOException, ClassNotFoundException
+    {
+        return read(stream, null);
+    }
+
+    /**
+     * Reads a game from a stream, dealing a game in the compact form from decks already read.
+     *
+     * @param stream the stream to read from, which is not closed
+     * @param decks the decks the game was dealt from, or null to read the standard deck files
+     * @return the game
+     * @throws IOException if the stream cannot be read, or does not hold a game in either form
+     * @throws ClassNotFoundException if the class of a serialized object cannot be found
+     * @throws ClassCastException if the stream holds a serialized object other than a game
+     */
+    public static MagicBakery read(InputStream stream, CardDecks decks) throws IOException, ClassNotFoundException
+    {
+        BufferedInputStream in = new BufferedInputStream(stream);
+        in.mark(4);
+        DataInputStream data = new DataInputStream(in);
+        int marker;
+        try {
+            marker = data.readInt();
+        } catch (IOException e) {
+            marker = 0;
+        }
+        in.reset();
+        if (marker == MAGIC) {
+            return fromBuffer(ByteBuffer.wrap(in.readAllBytes()), decks);
+        }
+        Object obj = new ObjectInputStream(in).readObject();
+        if (obj instanceof MagicBakery) {
+            return (MagicBakery) obj;
+        }
+        throw new ClassCastException("Invalid data format");
+    }
+
+    /**
+     * Writes a started game in the compact form.
+     *
+     * @param bakery the game
+     * @return the bytes
+     * @throws IllegalArgumentException if the game has not started or holds a card or customer outside its catalog
+     */
+    public static byte[] toBytes(MagicBakery bakery)
+    {
+        return toBytes(bakery, true);
+    }
+
+    /**
+     * Writes a started game in the compact form, with or without its game log. Without the log the
+     * history section is empty, for callers such as {@link Snapshot} that keep the log elsewhere.
+     *
+     * @param bakery the game
+     * @param history whether to write the game log
+     * @return the bytes
+     * @throws IllegalArgumentException if the game has not started or holds a card or customer outside its catalog
+     */
+    static byte[] toBytes(MagicBakery bakery, boolean history)
+    {
+        if (bakery.playerActionCount == null || bakery.getCustomers() == null) {
+            throw new IllegalArgumentException("Game has not been started");
+        }
+        CardCatalog catalog = bakery.getCardCatalog();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+        int[] starts = new int[SECTION_COUNT + 1];
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            Customers customers = bakery.getCustomers();
+            writeRandom(out, bakery.getRandom());
+            boolean shared = customers.getRandom() == bakery.getRandom();
+            out.writeBoolean(shared);
+            if (!shared) {
+                writeRandom(out, customers.getRandom());
+            }
+
+            starts[SECTION_PLAYERS] = out.size();
+            Collection<Player> players = bakery.getPlayers();
+            out.writeByte(players.size());
+            int index = 0;
+            for (Player player : players) {
+                out.writeUTF(player.getName());
+                out.writeInt(bakery.playerActionCount.get(index++));
+                writeCards(out, catalog, player.getHand());
+            }
+            out.writeByte(bakery.currentPlayerLoc);
+
+            starts[SECTION_PANTRY] = out.size();
+            writeCards(out, catalog, bakery.getPantry());
+            writeCards(out, catalog, bakery.getPantryDiscard());
+
+            starts[SECTION_DECKS] = out.size();
+            writeCards(out, catalog, bakery.getPantryDeck());
+            writeCards(out, catalog, bakery.getLayerStock());
+            out.writeBoolean(bakery.ingredients != null);
+            if (bakery.ingredients != null) {
+                writeCards(out, catalog, bakery.ingredients);
+            }
+
+            starts[SECTION_CUSTOMERS] = out.size();
+            writeCustomers(out, catalog, customers.getActiveCustomers());
+            writeCustomers(out, catalog, customers.getCustomerDeck());
+            writeCustomers(out, catalog, customers.getInactiveCustomers());
+
+            starts[SECTION_HISTORY] = out.size();
+            if (history) {
+                byte[] log = bakery.getGameLog().toBytes();
+                out.writeInt(log.length);
+                out.write(log);
+            }
+            starts[SECTION_COUNT] = out.size();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        int headerBytes = 14 + 8 * SECTION_COUNT;
+        ByteBuffer bytes = ByteBuffer.allocate(headerBytes + body.size());
+        bytes.putInt(MAGIC).put((byte) FORMAT_VERSION).putLong(catalog.version()).put((byte) SECTION_COUNT);
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            bytes.putInt(headerBytes + starts[section]).putInt(starts[section + 1] - starts[section]);
+        }
+        bytes.put(body.toByteArray());
+        return bytes.array();
+    }
+
+    /**
+     * Reads a game written in the compact form.
+     *
+     * @param data the bytes written by {@link #toBytes}
+     * @return the game
+     * @throws IOException if the bytes are not a game in this layout
+     * @throws FileNotFoundException if the deck files cannot be read
+     */
+    public static MagicBakery fromBytes(byte[] data) throws IOException
+    {
+        return fromBuffer(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Reads a game written in the compact form straight from a buffer, such as a slice of a
+     * memory-mapped file, without copying it to an array first.
+     *
+     * @param data the bytes written by {@link #toBytes}, from the buffer's position to its limit
+     * @return the game
+     * @throws IOException if the bytes are not a game in this layout
+     * @throws FileNotFoundException if the deck files cannot be read
+     */
+    public static MagicBakery fromBuffer(ByteBuffer data) throws IOException
+    {
+        return fromBuffer(data, null);
+    }
+
+    /**
+     * Reads a game written in the compact form from a buffer, dealing it from decks already read so
+     * that the deck files are neither parsed again nor looked up in the working directory.
+     *
+     * @param data the bytes written by {@link #toBytes}, from the buffer's position to its limit
+     * @param decks the decks the game was dealt from, or null to read the standard deck files
+     * @return the game
+     * @throws IOException if the bytes are not a game in this layout or were saved with other decks
+     * @throws FileNotFoundException if no decks are given and the deck files cannot be read
+     */
+    public static MagicBakery fromBuffer(ByteBuffer data, CardDecks decks) throws IOException
+    {
+        DataInputStream[] in = sections(data);
+        MagicBakery bakery = new MagicBakery(new JdkRandomSource(0), decks == null ? CardDecks.loadStandard() : decks);
+        CardCatalog catalog = bakery.getCardCatalog();
+        if (catalogVersion(data) != catalog.version()) {
+            throw new StreamCorruptedException("Saved game uses a different card catalog");
+        }
+        Random random = readRandom(in[SECTION_RANDOM]);
+        Random customersRandom = in[SECTION_RANDOM].readBoolean() ? random : readRandom(in[SECTION_RANDOM]);
+
+        List<String> names = new ArrayList<>();
+        List<Integer> actions = new ArrayList<>();
+        List<List<Ingredient>> hands = new ArrayList<>();
+        int current = readPlayers(in[SECTION_PLAYERS], catalog, names, actions, hands);
+        bakery.startGame(names, "./io/customers.csv");
+        int index = 0;
+        for (Player player : bakery.getPlayers()) {
+            player.getHand().clear();
+            player.getHand().addAll(hands.get(index));
+            bakery.playerActionCount.set(index, actions.get(index));
+            index++;
+        }
+        bakery.currentPlayerLoc = current;
+
+        readCards(in[SECTION_PANTRY], catalog, bakery.getPantry());
+        readCards(in[SECTION_PANTRY], catalog, bakery.getPantryDiscard());
+        readCards(in[SECTION_DECKS], catalog, bakery.getPantryDeck());
+        Collection<Layer> layers = bakery.getLayerStock();
+        layers.clear();
+        layers.addAll(readLayers(in[SECTION_DECKS], catalog));
+        if (in[SECTION_DECKS].readBoolean()) {
+            bakery.ingredients = new ArrayList<>();
+            readCards(in[SECTION_DECKS], catalog, bakery.ingredients);
+        }
+
+        Customers customers = bakery.getCustomers();
+        readCustomers(in[SECTION_CUSTOMERS], catalog, customers.getActiveCustomers());
+        readCustomers(in[SECTION_CUSTOMERS], catalog, customers.getCustomerDeck());
+        readCustomers(in[SECTION_CUSTOMERS], catalog, customers.getInactiveCustomers());
+        // a game written without its history keeps the fresh log, for the caller to replace
+        if (in[SECTION_HISTORY].available() > 0) {
+            bakery.setGameLog(readHistory(in[SECTION_HISTORY]));
+        }
+
+        bakery.setRandom(random);
+        customers.setRandom(customersRandom);
+        bakery.rehash();
+        return bakery;
+    }
+
+    /**
+     * Gets the layout version of a saved game in the compact form.
+     *
+     * @param data the saved game, from the buffer's position to its limit
+     * @return the layout version
+     * @throws IOException if the bytes are not a saved game in the compact form
+     */
+    static int version(ByteBuffer data) throws IOException
+    {
+        int base = data.position();
+        if (data.remaining() < 13 || data.getInt(base) != MAGIC) {
+            throw new StreamCorruptedException("Not a saved game in this format");
+        }
+        int version = data.get(base + 4) & 0xFF;
+        if (version != FORMAT_VERSION) {
+            throw new StreamCorruptedException("Unknown saved game version " + version);
+        }
+        return version;
+    }
+
+    /**
+     * Gets the version of the card catalog a saved game was written with.
+     *
+     * @param data the saved game, from the buffer's position to its limit
+     * @return the catalog version
+     * @throws IOException if the bytes are not a saved game in the compact form
+     */
+    static long catalogVersion(ByteBuffer data) throws IOException
+    {
+        version(data);
+        return data.getLong(data.position() + 5);
+    }
+
+    /**
+     * Gets one section of a saved game, without copying it.
+     *
+     * @param data the saved game, from the buffer's position to its limit
+     * @param section the section, one of the {@code SECTION_} constants
+     * @return a read-only view of the section
+     * @throws IOException if the bytes are not a saved game with a section table
+     */
+    static ByteBuffer section(ByteBuffer data, int section) throws IOException
+    {
+        int base = data.position();
+        version(data);
+        if (data.remaining() < 14 + 8 * SECTION_COUNT
+                || (data.get(base + 13) & 0xFF) != SECTION_COUNT) {
+            throw new StreamCorruptedException("Saved game has no section table");
+        }
+        int offset = data.getInt(base + 14 + 8 * section);
+        int length = data.getInt(base + 18 + 8 * section);
+        if (offset < 0 || length < 0 || (long) offset + length > data.remaining()) {
+            throw new StreamCorruptedException("Truncated saved game");
+        }
+        return data.asReadOnlyBuffer().position(base + offset).limit(base + offset + length).slice();
+    }
+
+    /**
+     * Opens a stream over each section of a saved game.
+     *
+     * @param data the saved game, from the buffer's position to its limit
+     * @return a stream per section
+     * @throws IOException if the bytes are not a saved game in the compact form
+     */
+    private static DataInputStream[] sections(ByteBuffer data) throws IOException
+    {
+        DataInputStream[] in = new DataInputStream[SECTION_COUNT];
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            in[section] = stream(section(data, section));
+        }
+        return in;
+    }
+
+    /**
+     * Opens a data stream over a buffer.
+     *
+     * @param buffer the buffer, from its position to its limit
+     * @return the stream
+     */
+    static DataInputStream stream(ByteBuffer buffer)
+    {
+        return new DataInputStream(new BufferInputStream(buffer.duplicate()));
+    }
+
+    /**
+     * Reads the players section.
+     *
+     * @param in the stream to read from
+     * @param catalog the card catalog
+     * @param names filled with the player names
+     * @param actions filled with the actions each player has left
+     * @param hands filled with each player's hand
+     * @return the index of the current player
+     * @throws IOException if the stream does not hold the players
+     */
+    static int readPlayers(DataInputStream in, CardCatalog catalog, List<String> names, List<Integer> actions, List<List<Ingredient>> hands) throws IOException
+    {
+        int numPlayers = in.readUnsignedByte();
+        for (int i = 0; i < numPlayers; i++) {
+            names.add(in.readUTF());
+            actions.add(in.readInt());
+            List<Ingredient> hand = new ArrayList<>();
+            readCards(in, catalog, hand);
+            hands.add(hand);
+        }
+        return in.readUnsignedByte();
+    }
+
+    /**
+     * Reads a zone that may hold only layers.
+     *
+     * @param in the stream to read from
+     * @param catalog the card catalog
+     * @return the layers
+     * @throws IOException if the stream does not hold a zone of layers
+     */
+    static List<Layer> readLayers(DataInputStream in, CardCatalog catalog) throws IOException
+    {
+        List<Ingredient> cards = new ArrayList<>();
+        readCards(in, catalog, cards);
+        List<Layer> layers = new ArrayList<>(cards.size());
+        for (Ingredient card : cards) {
+            if (!(card instanceof Layer)) {
+                throw new StreamCorruptedException("Layer stock holds an ingredient: " + card);
+            }
+            layers.add((Layer) card);
+        }
+        return layers;
+    }
+
+    /**
+     * Reads the game log.
+     *
+     * @param in the stream to read from
+     * @return the game log
+     * @throws IOException if the stream does not hold a game log
+     */
+    static GameLog readHistory(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new StreamCorruptedException("Truncated game log");
+        }
+        byte[] log = new byte[length];
+        in.readFully(log);
+        try {
+            return GameLog.fromBytes(log);
+        } catch (IllegalArgumentException e) {
+            throw new StreamCorruptedException(e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a random number generator as its raw state where possible.
+     *
+     * @param out the stream to write to
+     * @param random the generator
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeRandom(DataOutputStream out, Random random) throws IOException
+    {
+        if (random != null && (random.getClass() == JdkRandomSource.class || random.getClass() == XoroshiroRandom.class)) {
+            RandomSource source = (RandomSource) random;
+            out.writeByte(random instanceof XoroshiroRandom ? RANDOM_XOROSHIRO : RANDOM_JDK);
+            out.writeLong(source.seed());
+            long[] state = source.getState();
+            out.writeByte(state.length);
+            for (long word : state) {
+                out.writeLong(word);
+            }
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream serialized = new ObjectOutputStream(bytes)) {
+            serialized.writeObject(random);
+        }
+        out.writeByte(RANDOM_SERIALIZED);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Reads a random number generator written by {@link #writeRandom}.
+     *
+     * @param in the stream to read from
+     * @return the generator
+     * @throws IOException if the stream does not hold a generator
+     */
+    static Random readRandom(DataInputStream in) throws IOException
+    {
+        int kind = in.readUnsignedByte();
+        if (kind == RANDOM_SERIALIZED) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            try (ObjectInputStream serialized = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (Random) serialized.readObject();
+            } catch (ClassNotFoundException | ClassCastException e) {
+                throw new StreamCorruptedException("Saved game holds no random number generator");
+            }
+        }
+        long seed = in.readLong();
+        long[] state = new long[in.readUnsignedByte()];
+        for (int i = 0; i < state.length; i++) {
+            state[i] = in.readLong();
+        }
+        RandomSource source;
+        if (kind == RANDOM_JDK) {
+            source = new JdkRandomSource(seed);
+        } else if (kind == RANDOM_XOROSHIRO) {
+            source = new XoroshiroRandom(seed);
+        } else {
+            throw new StreamCorruptedException("Unknown random number generator " + kind);
+        }
+        try {
+            source.setState(state);
+        } catch (IllegalArgumentException e) {
+            throw new StreamCorruptedException(e.getMessage());
+        }
+        return source.asRandom();
+    }
+
+    /**
+     * Writes a zone as a length followed by the card ids in order.
+     *
+     * @param out the stream to write to
+     * @param catalog the card catalog
+     * @param zone the cards in the zone
+     * @throws IOException if the stream cannot be written
+     * @throws IllegalArgumentException if a card is not in the catalog
+     */
+    private static void writeCards(DataOutputStream out, CardCatalog catalog, Collection<? extends Ingredient> zone) throws IOException
+    {
+        out.writeInt(zone.size());
+        for (Ingredient card : zone) {
+            int id = catalog.cardId(card);
+            if (id < 0) {
+                throw new IllegalArgumentException("Card is not in the catalog: " + card);
+            }
+            out.writeByte(id);
+        }
+    }
+
+    /**
+     * Replaces the contents of a zone with the cards read from the stream.
+     *
+     * @param in the stream to read from
+     * @param catalog the card catalog
+     * @param zone the zone to fill
+     * @throws IOException if the stream does not hold a zone
+     */
+    static void readCards(DataInputStream in, CardCatalog catalog, Collection<Ingredient> zone) throws IOException
+    {
+        zone.clear();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            int id = in.readUnsignedByte();
+            if (id >= catalog.cardCount()) {
+                throw new StreamCorruptedException("Unknown card id " + id);
+            }
+            zone.add(catalog.card(id));
+        }
+    }
+
+    /**
+     * Writes customer orders, or empty customer row slots, with their status.
+     *
+     * @param out the stream to write to
+     * @param catalog the card catalog
+     * @param orders the customer orders
+     * @throws IOException if the stream cannot be written
+     * @throws IllegalArgumentException if a customer is not in the catalog
+     */
+    private static void writeCustomers(DataOutputStream out, CardCatalog catalog, Collection<CustomerOrder> orders) throws IOException
+    {
+        out.writeShort(orders.size());
+        for (CustomerOrder order : orders) {
+            if (order == null) {
+                out.writeByte(0);
+                continue;
+            }
+            int id = catalog.customerId(order);
+            if (id < 0) {
+                throw new IllegalArgumentException("Customer is not in the catalog: " + order);
+            }
+            out.writeByte(id + 1);
+            out.writeByte(order.getStatus().ordinal());
+        }
+    }
+
+    /**
+     * Replaces the contents of a customer collection with the orders read from the stream.
+     *
+     * @param in the stream to read from
+     * @param catalog the card catalog
+     * @param orders the collection to fill
+     * @throws IOException if the stream does not hold customer orders
+     */
+    static void readCustomers(DataInputStream in, CardCatalog catalog, Collection<CustomerOrder> orders) throws IOException
+    {
+        orders.clear();
+        int size = in.readUnsignedShort();
+        CustomerOrderStatus[] statuses = CustomerOrderStatus.values();
+        for (int i = 0; i < size; i++) {
+            int id = in.readUnsignedByte();
+            if (id == 0) {
+                orders.add(null);
+                continue;
+            }
+            int status = in.readUnsignedByte();
+            if (id > catalog.customerCount() || status >= statuses.length) {
+                throw new StreamCorruptedException("Unknown customer " + id);
+            }
+            CustomerOrder order = catalog.newCustomer(id - 1);
+            order.setStatus(statuses[status]);
+            orders.add(order);
+        }
+    }
+
+    /**
+     * Reads the remaining bytes of a buffer as a stream.
+     */
+    private static final class BufferInputStream extends InputStream {
+        /** The buffer, consumed as the stream is read */
+        private final ByteBuffer buffer;
+
+        /**
+         * Creates a stream over a buffer.
+         *
+         * @param buffer the buffer
+         */
+        private BufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+}
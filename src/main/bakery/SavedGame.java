@@ -0,0 +1,363 @@
+package bakery;
+import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import bakery.CustomerOrder.CustomerOrderStatus;
+
+/**
+ * A read-only view of a game saved in the format of {@link SaveFormat}, decoding each section the
+ * first time it is asked for.
+ *
+ * Creating a view reads only the header, so a lobby can list hundreds of saved games by name, seat
+ * and customer row without building a {@link MagicBakery} for each or touching the decks and
+ * history it does not show. {@link #toBakery()} restores the whole game when it is needed. The
+ * bytes are not copied, so a view can sit directly on a memory-mapped record.
+ *
+ * A view is not safe for use by several threads at once.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class SavedGame {
+    /** The saved game */
+    private final ByteBuffer data;
+
+    /** The card catalog the game was saved with */
+    private final CardCatalog catalog;
+
+    /** Whether each section has been decoded */
+    private final boolean[] decoded = new boolean[SaveFormat.SECTION_COUNT];
+
+    /** Player names in seat order */
+    private List<String> names;
+
+    /** Actions each player has left this turn */
+    private List<Integer> actions;
+
+    /** Each player's hand */
+    private List<List<Ingredient>> hands;
+
+    /** Index of the current player */
+    private int currentPlayer;
+
+    /** The pantry */
+    private List<Ingredient> pantry;
+
+    /** The pantry discard pile */
+    private List<Ingredient> pantryDiscard;
+
+    /** The pantry deck */
+    private List<Ingredient> pantryDeck;
+
+    /** The layer stock */
+    private List<Layer> layerStock;
+
+    /** The customer row, with null for empty slots */
+    private List<CustomerOrder> activeCustomers;
+
+    /** The customer deck */
+    private List<CustomerOrder> customerDeck;
+
+    /** Customers that have left */
+    private List<CustomerOrder> inactiveCustomers;
+
+    /** The game log */
+    private GameLog log;
+
+    /**
+     * Creates a view of a saved game.
+     *
+     * @param data the saved game, from the buffer's position to its limit
+     * @param catalog the card catalog of the game's deck files
+     * @throws IOException if the bytes are not a saved game with sections
+     * @throws StreamCorruptedException if the game was saved with a different card catalog
+     */
+    public SavedGame(ByteBuffer data, CardCatalog catalog) throws IOException
+    {
+        this.data = data.duplicate();
+        this.catalog = catalog;
+        SaveFormat.section(this.data, SaveFormat.SECTION_RANDOM);
+        if (SaveFormat.catalogVersion(this.data) != catalog.version()) {
+            throw new StreamCorruptedException("Saved game uses a different card catalog");
+        }
+    }
+
+    /**
+     * Creates a view of a saved game held in an array.
+     *
+     * @param data the saved game
+     * @param catalog the card catalog of the game's deck files
+     * @throws IOException if the bytes are not a saved game with sections
+     * @throws StreamCorruptedException if the game was saved with a different card catalog
+     */
+    public SavedGame(byte[] data, CardCatalog catalog) throws IOException
+    {
+        this(ByteBuffer.wrap(data), catalog);
+    }
+
+    /**
+     * Gets the player names.
+     *
+     * @return an unmodifiable list of names in seat order
+     * @throws IOException if the players section is malformed
+     */
+    public List<String> getPlayerNames() throws IOException
+    {
+        decodePlayers();
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Gets a player's hand.
+     *
+     * @param player the seat index
+     * @return an unmodifiable list of the cards in hand
+     * @throws IOException if the players section is malformed
+     */
+    public List<Ingredient> getHand(int player) throws IOException
+    {
+        decodePlayers();
+        return Collections.unmodifiableList(hands.get(player));
+    }
+
+    /**
+     * Gets the actions a player has left this turn.
+     *
+     * @param player the seat index
+     * @return the number of actions
+     * @throws IOException if the players section is malformed
+     */
+    public int getActionsRemaining(int player) throws IOException
+    {
+        decodePlayers();
+        return actions.get(player);
+    }
+
+    /**
+     * Gets the seat of the player whose turn it is.
+     *
+     * @return the seat index
+     * @throws IOException if the players section is malformed
+     */
+    public int getCurrentPlayer() throws IOException
+    {
+        decodePlayers();
+        return currentPlayer;
+    }
+
+    /**
+     * Gets the pantry.
+     *
+     * @return an unmodifiable list of the cards in the pantry
+     * @throws IOException if the pantry section is malformed
+     */
+    public List<Ingredient> getPantry() throws IOException
+    {
+        decodePantry();
+        return Collections.unmodifiableList(pantry);
+    }
+
+    /**
+     * Gets the pantry discard pile.
+     *
+     * @return an unmodifiable list of the discarded cards
+     * @throws IOException if the pantry section is malformed
+     */
+    public List<Ingredient> getPantryDiscard() throws IOException
+    {
+        decodePantry();
+        return Collections.unmodifiableList(pantryDiscard);
+    }
+
+    /**
+     * Gets the pantry deck.
+     *
+     * @return an unmodifiable list of the cards in the deck, top first
+     * @throws IOException if the decks section is malformed
+     */
+    public List<Ingredient> getPantryDeck() throws IOException
+    {
+        decodeDecks();
+        return Collections.unmodifiableList(pantryDeck);
+    }
+
+    /**
+     * Gets the layer stock.
+     *
+     * @return an unmodifiable list of the layers left to bake
+     * @throws IOException if the decks section is malformed
+     */
+    public List<Layer> getLayerStock() throws IOException
+    {
+        decodeDecks();
+        return Collections.unmodifiableList(layerStock);
+    }
+
+    /**
+     * Gets the customer row.
+     *
+     * @return an unmodifiable list of the customers waiting, with null for empty slots
+     * @throws IOException if the customers section is malformed
+     */
+    public List<CustomerOrder> getActiveCustomers() throws IOException
+    {
+        decodeCustomers();
+        return Collections.unmodifiableList(activeCustomers);
+    }
+
+    /**
+     * Gets the customer deck.
+     *
+     * @return an unmodifiable list of the customers still to arrive
+     * @throws IOException if the customers section is malformed
+     */
+    public List<CustomerOrder> getCustomerDeck() throws IOException
+    {
+        decodeCustomers();
+        return Collections.unmodifiableList(customerDeck);
+    }
+
+    /**
+     * Counts the customers that have left with a status, for example the orders fulfilled so far.
+     *
+     * @param status the status
+     * @return the number of departed customers with that status
+     * @throws IOException if the customers section is malformed
+     */
+    public int countInactiveCustomers(CustomerOrderStatus status) throws IOException
+    {
+        decodeCustomers();
+        int count = 0;
+        for (CustomerOrder order : inactiveCustomers) {
+            if (order != null && order.getStatus() == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the game log.
+     *
+     * @return the log
+     * @throws IOException if the history section is malformed
+     */
+    public GameLog getGameLog() throws IOException
+    {
+        if (!decoded[SaveFormat.SECTION_HISTORY]) {
+            log = SaveFormat.readHistory(open(SaveFormat.SECTION_HISTORY));
+            decoded[SaveFormat.SECTION_HISTORY] = true;
+        }
+        return log;
+    }
+
+    /**
+     * Checks whether a section has been decoded.
+     *
+     * @param section the section, one of the {@code SECTION_} constants of {@link SaveFormat}
+     * @return true if the section has been read
+     */
+    public boolean isDecoded(int section)
+    {
+        return decoded[section];
+    }
+
+    /**
+     * Restores the whole game.
+     *
+     * @return the game
+     * @throws IOException if the saved game is malformed
+     * @throws FileNotFoundException if the deck files cannot be read
+     */
+    public MagicBakery toBakery() throws IOException
+    {
+        return SaveFormat.fromBuffer(data);
+    }
+
+    /**
+     * Decodes the players section if it has not been decoded yet.
+     *
+     * @throws IOException if the section is malformed
+     */
+    private void decodePlayers() throws IOException
+    {
+        if (!decoded[SaveFormat.SECTION_PLAYERS]) {
+            names = new ArrayList<>();
+            actions = new ArrayList<>();
+            hands = new ArrayList<>();
+            currentPlayer = SaveFormat.readPlayers(open(SaveFormat.SECTION_PLAYERS), catalog, names, actions, hands);
+            decoded[SaveFormat.SECTION_PLAYERS] = true;
+        }
+    }
+
+    /**
+     * Decodes the pantry section if it has not been decoded yet.
+     *
+     * @throws IOException if the section is malformed
+     */
+    private void decodePantry() throws IOException
+    {
+        if (!decoded[SaveFormat.SECTION_PANTRY]) {
+            DataInputStream in = open(SaveFormat.SECTION_PANTRY);
+            pantry = new ArrayList<>();
+            pantryDiscard = new ArrayList<>();
+            SaveFormat.readCards(in, catalog, pantry);
+            SaveFormat.readCards(in, catalog, pantryDiscard);
+            decoded[SaveFormat.SECTION_PANTRY] = true;
+        }
+    }
+
+    /**
+     * Decodes the decks section if it has not been decoded yet.
+     *
+     * @throws IOException if the section is malformed
+     */
+    private void decodeDecks() throws IOException
+    {
+        if (!decoded[SaveFormat.SECTION_DECKS]) {
+            DataInputStream in = open(SaveFormat.SECTION_DECKS);
+            pantryDeck = new ArrayList<>();
+            SaveFormat.readCards(in, catalog, pantryDeck);
+            layerStock = SaveFormat.readLayers(in, catalog);
+            decoded[SaveFormat.SECTION_DECKS] = true;
+        }
+    }
+
+    /**
+     * Decodes the customers section if it has not been decoded yet.
+     *
+     * @throws IOException if the section is malformed
+     */
+    private void decodeCustomers() throws IOException
+    {
+        if (!decoded[SaveFormat.SECTION_CUSTOMERS]) {
+            DataInputStream in = open(SaveFormat.SECTION_CUSTOMERS);
+            activeCustomers = new ArrayList<>();
+            customerDeck = new ArrayList<>();
+            inactiveCustomers = new ArrayList<>();
+            SaveFormat.readCustomers(in, catalog, activeCustomers);
+            SaveFormat.readCustomers(in, catalog, customerDeck);
+            SaveFormat.readCustomers(in, catalog, inactiveCustomers);
+            decoded[SaveFormat.SECTION_CUSTOMERS] = true;
+        }
+    }
+
+    /**
+     * Opens a stream over a section.
+     *
+     * @param section the section
+     * @return the stream
+     * @throws IOException if the section table is malformed
+     */
+    private DataInputStream open(int section) throws IOException
+    {
+        return SaveFormat.stream(SaveFormat.section(data, section));
+    }
+}
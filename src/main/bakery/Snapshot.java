@@ -0,0 +1,147 @@
+package bakery;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A checkpoint of a recorded game: the position reached after a number of logged actions.
+ *
+ * Together with the game's {@link GameLog}, a snapshot rebuilds the game without replaying it
+ * from the start: the saved position is restored, random number generator and all, and only the
+ * actions logged after the snapshot are re-executed. The snapshot holds the position without the
+ * log, which the caller keeps anyway, so its size does not grow with the length of the game.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class Snapshot {
+    /** Marker at the start of the binary form */
+    private static final int MAGIC = 0x4D42534E;
+
+    /** Layout version of the binary form */
+    private static final int FORMAT_VERSION = 1;
+
+    /** Number of logged actions before the snapshot */
+    private final int actions;
+
+    /** The saved position, in the format of {@link MagicBakery#saveState} without its game log */
+    private final byte[] game;
+
+    /**
+     * Creates a snapshot from its parts.
+     *
+     * @param actions the number of logged actions before the snapshot
+     * @param game the saved position
+     */
+    private Snapshot(int actions, byte[] game)
+    {
+        this.actions = actions;
+        this.game = game;
+    }
+
+    /**
+     * Takes a snapshot of a started game.
+     *
+     * @param bakery the game
+     * @return the snapshot
+     */
+    public static Snapshot of(MagicBakery bakery)
+    {
+        byte[] game;
+        try {
+            game = SaveFormat.toBytes(bakery, false);
+        } catch (IllegalArgumentException e) {
+            // cards from outside the catalog need the serialized form, which carries its own log
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                SaveFormat.write(bakery, bytes);
+            } catch (IOException io) {
+                throw new IllegalStateException(io);
+            }
+            game = bytes.toByteArray();
+        }
+        return new Snapshot(bakery.getGameLog().size(), game);
+    }
+
+    /**
+     * Gets the number of logged actions before the snapshot.
+     *
+     * @return the number of actions
+     */
+    public int getActions()
+    {
+        return actions;
+    }
+
+    /**
+     * Rebuilds the game from this snapshot and the actions logged after it.
+     *
+     * @param log the game's log, holding at least the actions before the snapshot
+     * @return the game after the last logged action
+     * @throws IllegalArgumentException if the log is shorter than the snapshot or the saved game cannot be read
+     */
+    public MagicBakery restore(GameLog log)
+    {
+        if (log.size() < actions) {
+            throw new IllegalArgumentException("Game log ends before the snapshot");
+        }
+        MagicBakery bakery;
+        try {
+            bakery = SaveFormat.read(new ByteArrayInputStream(game));
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            throw new IllegalArgumentException("Snapshot holds no saved game", e);
+        }
+        bakery.setGameLog(log.prefix(actions));
+        GameReplayer.replay(bakery, log, actions, log.size());
+        return bakery;
+    }
+
+    /**
+     * Writes the snapshot in its binary form.
+     *
+     * @return the bytes
+     */
+    public byte[] toBytes()
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + game.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(actions);
+            out.writeInt(game.length);
+            out.write(game);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a snapshot from its binary form.
+     *
+     * @param data the bytes written by {@link #toBytes()}
+     * @return the snapshot
+     * @throws IllegalArgumentException if the bytes are not a snapshot in this layout
+     */
+    public static Snapshot fromBytes(byte[] data)
+    {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Not a game snapshot");
+            }
+            int actions = in.readInt();
+            int length = in.readInt();
+            if (length < 0 || length > in.available()) {
+                throw new IllegalArgumentException("Truncated game snapshot");
+            }
+            byte[] game = new byte[length];
+            in.readFully(game);
+            return new Snapshot(actions, game);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated game snapshot", e);
+        }
+    }
+}
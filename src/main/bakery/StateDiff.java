@@ -0,0 +1,438 @@
+package bakery;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes between two {@link GameView}s of a game, as a spectator would describe them: cards
+ * moving between zones, layers being baked, customers arriving, moving along the row, changing status
+ * and leaving, the turn moving on and players' actions being reset.
+ *
+ * Cards are identified by {@link CardCatalog} card ids and customers by customer ids. A zone is a
+ * seat index for a player's hand, or one of {@link #PANTRY}, {@link #LAYERS} and {@link #SUPPLY},
+ * the last standing for the face-down pantry deck and discard pile that spectators cannot see.
+ *
+ * A diff can also be a snapshot, which carries no changes and simply replaces whatever the
+ * receiver knew. Every diff carries the view it leads to, so a receiver can always fall back to
+ * reading the whole state.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class StateDiff {
+    /** Zone of the visible pantry */
+    public static final int PANTRY = -1;
+
+    /** Zone of the layers left to bake */
+    public static final int LAYERS = -2;
+
+    /** Zone of the face-down pantry deck and discard pile */
+    public static final int SUPPLY = -3;
+
+    /** Version the diff starts from, or -1 for a snapshot */
+    private final long fromVersion;
+
+    /** The view the diff leads to */
+    private final GameView view;
+
+    /** The changes, in the order they should be applied */
+    private final List<Change> changes;
+
+    /**
+     * One change between two views.
+     */
+    public static final class Change {
+        /**
+         * The kinds of change.
+         */
+        public enum Kind {
+            /** A card moved from one zone to another; the subject is the card id */
+            CARD_MOVED,
+            /** A layer moved from the layer stock into a hand; the subject is the layer's card id */
+            LAYER_BAKED,
+            /** A customer took a slot in the row; the subject is the customer id and the target the slot */
+            CUSTOMER_ARRIVED,
+            /** A customer left a slot in the row; the subject is the customer id and the source the slot */
+            CUSTOMER_LEFT,
+            /** The current player or their actions changed; the subject is the seat and the target the actions remaining */
+            TURN_CHANGED,
+            /** A customer moved along the row; the subject is the customer id, the source the old slot and the target the new one */
+            CUSTOMER_MOVED,
+            /**
+             * A customer's status changed; the subject is the customer id, the source the slot and the
+             * target the {@link CustomerOrder.CustomerOrderStatus} ordinal. Arriving customers are
+             * waiting unless one of these follows.
+             */
+            CUSTOMER_STATUS,
+            /**
+             * The actions of a player other than the current one changed, as when every player's
+             * actions are reset at the end of a round; the subject is the seat and the target the
+             * actions remaining
+             */
+            ACTIONS_CHANGED
+        }
+
+        /** The kind of change */
+        private final Kind kind;
+
+        /** The card, customer or seat the change is about */
+        private final int subject;
+
+        /** Where it came from, or -1 if unused */
+        private final int from;
+
+        /** Where it went, or -1 if unused */
+        private final int to;
+
+        /**
+         * Creates a change.
+         *
+         * @param kind the kind of change
+         * @param subject the card, customer or seat
+         * @param from the source zone or slot
+         * @param to the target zone, slot or actions remaining
+         */
+        public Change(Kind kind, int subject, int from, int to)
+        {
+            this.kind = kind;
+            this.subject = subject;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Gets the kind of change.
+         *
+         * @return the kind
+         */
+        public Kind getKind()
+        {
+            return kind;
+        }
+
+        /**
+         * Gets the card, customer or seat the change is about.
+         *
+         * @return the id or seat
+         */
+        public int getSubject()
+        {
+            return subject;
+        }
+
+        /**
+         * Gets the source zone or slot.
+         *
+         * @return the source, or -1 if unused
+         */
+        public int getFrom()
+        {
+            return from;
+        }
+
+        /**
+         * Gets the target zone, slot or actions remaining.
+         *
+         * @return the target, or -1 if unused
+         */
+        public int getTo()
+        {
+            return to;
+        }
+
+        /**
+         * Checks whether another object is the same change.
+         *
+         * @param obj the object to compare with
+         * @return true if the object is a change with the same kind, subject, source and target
+         */
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Change)) {
+                return false;
+            }
+            Change other = (Change) obj;
+            return kind == other.kind && subject == other.subject && from == other.from && to == other.to;
+        }
+
+        /**
+         * Gets a hash code consistent with {@link #equals}.
+         *
+         * @return the hash code
+         */
+        @Override
+        public int hashCode()
+        {
+            return ((kind.ordinal() * 31 + subject) * 31 + from) * 31 + to;
+        }
+
+        /**
+         * Gets a readable form of the change.
+         *
+         * @return the kind and its arguments
+         */
+        @Override
+        public String toString()
+        {
+            return kind + "(" + subject + ", " + from + ", " + to + ")";
+        }
+    }
+
+    /**
+     * Creates a diff from its parts.
+     *
+     * @param fromVersion the version the diff starts from, or -1 for a snapshot
+     * @param view the view the diff leads to
+     * @param changes the changes
+     */
+    private StateDiff(long fromVersion, GameView view, List<Change> changes)
+    {
+        this.fromVersion = fromVersion;
+        this.view = view;
+        this.changes = changes;
+    }
+
+    /**
+     * Creates a snapshot, which replaces everything a receiver knew with a view.
+     *
+     * @param view the view
+     * @return the snapshot
+     */
+    public static StateDiff snapshot(GameView view)
+    {
+        return new StateDiff(-1, view, Collections.emptyList());
+    }
+
+    /**
+     * Works out the changes between two views of the same game. Parts the views share are skipped
+     * without being compared.
+     *
+     * @param before the earlier view
+     * @param after the later view
+     * @return the diff from the earlier view to the later one
+     */
+    public static StateDiff between(GameView before, GameView after)
+    {
+        List<Change> changes = new ArrayList<>();
+        CardCatalog catalog = after.getCardCatalog();
+        int seats = after.getPlayerNames().size();
+
+        // Cards each zone lost and gained, by card id; zone z is at index z - SUPPLY
+        int zones = seats - SUPPLY;
+        int[][] delta = new int[zones][];
+        for (int seat = 0; seat < seats; seat++) {
+            delta[seat - SUPPLY] = countChange(catalog, before.getHand(seat), after.getHand(seat));
+        }
+        delta[PANTRY - SUPPLY] = countChange(catalog, before.getPantry(), after.getPantry());
+        delta[LAYERS - SUPPLY] = countChange(catalog, before.getLayers(), after.getLayers());
+
+        for (int to = 0; to < zones; to++) {
+            if (delta[to] == null) {
+                continue;
+            }
+            for (int card = 0; card < delta[to].length; card++) {
+                while (delta[to][card] > 0) {
+                    int from = SUPPLY;
+                    for (int z = 0; z < zones; z++) {
+                        if (delta[z] != null && delta[z][card] < 0) {
+                            from = z + SUPPLY;
+                            delta[z][card]++;
+                            break;
+                        }
+                    }
+                    delta[to][card]--;
+                    Change.Kind kind = from == LAYERS && to + SUPPLY >= 0 ? Change.Kind.LAYER_BAKED : Change.Kind.CARD_MOVED;
+                    changes.add(new Change(kind, card, from, to + SUPPLY));
+                }
+            }
+        }
+        for (int z = 0; z < zones; z++) {
+            if (delta[z] == null) {
+                continue;
+            }
+            for (int card = 0; card < delta[z].length; card++) {
+                for (; delta[z][card] < 0; delta[z][card]++) {
+                    changes.add(new Change(Change.Kind.CARD_MOVED, card, z + SUPPLY, SUPPLY));
+                }
+            }
+        }
+
+        if (before.getActiveCustomers() != after.getActiveCustomers()) {
+            addCustomerChanges(catalog, before, after, changes);
+        }
+
+        int seat = after.getCurrentPlayer();
+        for (int other = 0; other < after.getPlayerNames().size(); other++) {
+            if (other != seat && after.getActionsRemaining(other) != before.getActionsRemaining(other)) {
+                changes.add(new Change(Change.Kind.ACTIONS_CHANGED, other, -1, after.getActionsRemaining(other)));
+            }
+        }
+        if (seat != before.getCurrentPlayer() || after.getActionsRemaining(seat) != before.getActionsRemaining(seat)) {
+            changes.add(new Change(Change.Kind.TURN_CHANGED, seat, -1, after.getActionsRemaining(seat)));
+        }
+        return new StateDiff(before.getVersion(), after, Collections.unmodifiableList(changes));
+    }
+
+    /**
+     * Checks whether this is a snapshot rather than a list of changes.
+     *
+     * @return true for a snapshot
+     */
+    public boolean isSnapshot()
+    {
+        return fromVersion < 0;
+    }
+
+    /**
+     * Gets the version the diff starts from.
+     *
+     * @return the version, or -1 for a snapshot
+     */
+    public long getFromVersion()
+    {
+        return fromVersion;
+    }
+
+    /**
+     * Gets the version the diff leads to.
+     *
+     * @return the version of {@link #getView()}
+     */
+    public long getToVersion()
+    {
+        return view.getVersion();
+    }
+
+    /**
+     * Gets the view the diff leads to.
+     *
+     * @return the view
+     */
+    public GameView getView()
+    {
+        return view;
+    }
+
+    /**
+     * Gets the changes.
+     *
+     * @return an unmodifiable list, empty for a snapshot
+     */
+    public List<Change> getChanges()
+    {
+        return changes;
+    }
+
+    /**
+     * Counts how many of each card a zone gained, negative for cards it lost.
+     *
+     * @param catalog the card catalog
+     * @param before the zone in the earlier view
+     * @param after the zone in the later view
+     * @return the change per card id, or null if the views share the zone
+     */
+    private static int[] countChange(CardCatalog catalog, List<? extends Ingredient> before, List<? extends Ingredient> after)
+    {
+        if (before == after) {
+            return null;
+        }
+        int[] counts = new int[catalog.cardCount()];
+        for (Ingredient card : after) {
+            counts[catalog.cardId(card)]++;
+        }
+        for (Ingredient card : before) {
+            counts[catalog.cardId(card)]--;
+        }
+        return counts;
+    }
+
+    /**
+     * Adds the customers that left, moved and arrived between two customer rows, then the
+     * customers whose status differs from the one a receiver applying those changes would have.
+     *
+     * Moves are ordered so that each lands on a slot that is already empty; a customer caught in a
+     * cycle of moves, which the row never makes, is sent as leaving and arriving again instead.
+     *
+     * @param catalog the card catalog
+     * @param before the earlier view
+     * @param after the later view
+     * @param changes the list to add to
+     */
+    private static void addCustomerChanges(CardCatalog catalog, GameView before, GameView after, List<Change> changes)
+    {
+        List<CustomerOrder> was = before.getActiveCustomers();
+        List<CustomerOrder> now = after.getActiveCustomers();
+        CustomerOrder[] row = new CustomerOrder[Math.max(was.size(), now.size())];
+        int[] status = new int[row.length];
+        for (int slot = 0; slot < was.size(); slot++) {
+            CustomerOrder order = was.get(slot);
+            if (order != null && indexOfSame(now, order) < 0) {
+                changes.add(new Change(Change.Kind.CUSTOMER_LEFT, catalog.customerId(order), slot, -1));
+            } else if (order != null) {
+                row[slot] = order;
+                status[slot] = before.getCustomerStatus(slot).ordinal();
+            }
+        }
+
+        List<Integer> moves = new ArrayList<>();
+        for (int slot = 0; slot < was.size(); slot++) {
+            if (row[slot] != null && now.get(slot) != row[slot]) {
+                moves.add(slot);
+            }
+        }
+        while (!moves.isEmpty()) {
+            boolean moved = false;
+            for (int i = 0; i < moves.size(); i++) {
+                int from = moves.get(i);
+                int to = indexOfSame(now, row[from]);
+                if (row[to] == null) {
+                    changes.add(new Change(Change.Kind.CUSTOMER_MOVED, catalog.customerId(row[from]), from, to));
+                    row[to] = row[from];
+                    status[to] = status[from];
+                    row[from] = null;
+                    moves.remove(i--);
+                    moved = true;
+                }
+            }
+            if (!moved) {
+                int from = moves.remove(0);
+                changes.add(new Change(Change.Kind.CUSTOMER_LEFT, catalog.customerId(row[from]), from, -1));
+                row[from] = null;
+            }
+        }
+
+        for (int slot = 0; slot < now.size(); slot++) {
+            CustomerOrder order = now.get(slot);
+            if (order != null && row[slot] != order) {
+                changes.add(new Change(Change.Kind.CUSTOMER_ARRIVED, catalog.customerId(order), -1, slot));
+                row[slot] = order;
+                status[slot] = CustomerOrder.CustomerOrderStatus.WAITING.ordinal();
+            }
+        }
+        for (int slot = 0; slot < now.size(); slot++) {
+            CustomerOrder order = now.get(slot);
+            if (order != null && after.getCustomerStatus(slot).ordinal() != status[slot]) {
+                changes.add(new Change(Change.Kind.CUSTOMER_STATUS, catalog.customerId(order), slot, after.getCustomerStatus(slot).ordinal()));
+            }
+        }
+    }
+
+    /**
+     * Finds the slot holding a particular order object.
+     *
+     * @param row the customer row
+     * @param order the order
+     * @return the slot of the very same order, or -1 if it is not in the row
+     */
+    private static int indexOfSame(List<CustomerOrder> row, CustomerOrder order)
+    {
+        for (int slot = 0; slot < row.size(); slot++) {
+            if (row.get(slot) == order) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,223 @@
+package bakery;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Incrementally maintained 64-bit Zobrist hash of a game position.
+ * The hash covers the card counts of each zone (player hands, pantry and the remaining layers),
+ * the customer row slots with their statuses, the current player and the actions remaining
+ * for every player. Every update is a couple of XORs, so the owning game can keep the hash
+ * current from inside each action.
+ *
+ * Zones hold multisets: a zone contributes one key per card kind for the number of copies it
+ * holds, so two positions that hold the same cards in a different order hash the same.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+final class ZobristHash implements Serializable {
+    /**
+     * The serial version UID for serialization and deserialization.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** Zone index of the pantry */
+    static final int PANTRY = 0;
+
+    /** Zone index of the layers still available to bake */
+    static final int LAYERS = 1;
+
+    /** Feature tags, mixed into every key so that different features never share keys */
+    private static final long TAG_CARD = 1;
+    private static final long TAG_SLOT = 2;
+    private static final long TAG_TURN = 3;
+    private static final long TAG_ACTIONS = 4;
+
+    /** Card counts per zone, indexed by zone then card id */
+    private int[][] counts;
+
+    /** Number of card ids known to the catalog */
+    private int cardKinds;
+
+    /** Key currently XORed in for each customer row slot */
+    private long[] slotKeys;
+
+    /** Key currently XORed in for each player's action count */
+    private long[] actionKeys;
+
+    /** Key currently XORed in for the current player */
+    private long turnKey;
+
+    /** The hash value */
+    private long value;
+
+    /**
+     * Creates an empty hash.
+     *
+     * @param cardKinds the number of card ids in the catalog
+     */
+    ZobristHash(int cardKinds)
+    {
+        this.cardKinds = cardKinds;
+        this.counts = new int[2][cardKinds];
+        this.slotKeys = new long[0];
+        this.actionKeys = new long[0];
+    }
+
+    /**
+     * Gets the zone index of a player's hand.
+     *
+     * @param player the index of the player
+     * @return the zone index
+     */
+    static int hand(int player)
+    {
+        return 2 + player;
+    }
+
+    /**
+     * Adds one copy of a card to a zone.
+     *
+     * @param zone the zone index
+     * @param card the card id, ignored if negative
+     */
+    void addCard(int zone, int card)
+    {
+        if (card < 0) {
+            return;
+        }
+        int[] zoneCounts = zone(zone);
+        int count = zoneCounts[card];
+        value ^= cardKey(zone, card, count) ^ cardKey(zone, card, count + 1);
+        zoneCounts[card] = count + 1;
+    }
+
+    /**
+     * Removes one copy of a card from a zone. Removing a card the zone does not hold is ignored.
+     *
+     * @param zone the zone index
+     * @param card the card id, ignored if negative
+     */
+    void removeCard(int zone, int card)
+    {
+        if (card < 0) {
+            return;
+        }
+        int[] zoneCounts = zone(zone);
+        int count = zoneCounts[card];
+        if (count == 0) {
+            return;
+        }
+        value ^= cardKey(zone, card, count) ^ cardKey(zone, card, count - 1);
+        zoneCounts[card] = count - 1;
+    }
+
+    /**
+     * Sets the customer occupying a slot of the customer row.
+     *
+     * @param slot the slot index
+     * @param customer the customer id, or -1 for an empty slot
+     * @param status the status ordinal of the customer
+     */
+    void setSlot(int slot, int customer, int status)
+    {
+        if (slot >= slotKeys.length) {
+            slotKeys = Arrays.copyOf(slotKeys, slot + 1);
+        }
+        long key = customer < 0 ? 0 : mix(TAG_SLOT, slot, customer, status);
+        value ^= slotKeys[slot] ^ key;
+        slotKeys[slot] = key;
+    }
+
+    /**
+     * Sets the current player.
+     *
+     * @param player the index of the current player
+     */
+    void setTurn(int player)
+    {
+        long key = mix(TAG_TURN, player, 0, 0);
+        value ^= turnKey ^ key;
+        turnKey = key;
+    }
+
+    /**
+     * Sets the number of actions a player has remaining.
+     *
+     * @param player the index of the player
+     * @param actions the actions remaining
+     */
+    void setActions(int player, int actions)
+    {
+        if (player >= actionKeys.length) {
+            actionKeys = Arrays.copyOf(actionKeys, player + 1);
+        }
+        long key = mix(TAG_ACTIONS, player, actions, 0);
+        value ^= actionKeys[player] ^ key;
+        actionKeys[player] = key;
+    }
+
+    /**
+     * Gets the hash value.
+     *
+     * @return the hash value
+     */
+    long value()
+    {
+        return value;
+    }
+
+    /**
+     * Gets the card counts of a zone, growing the table for new player hands.
+     *
+     * @param zone the zone index
+     * @return the card counts of the zone
+     */
+    private int[] zone(int zone)
+    {
+        if (zone >= counts.length) {
+            int oldLength = counts.length;
+            counts = Arrays.copyOf(counts, zone + 1);
+            for (int i = oldLength; i < counts.length; i++) {
+                counts[i] = new int[cardKinds];
+            }
+        }
+        return counts[zone];
+    }
+
+    /**
+     * Gets the key for a zone holding a number of copies of a card. Holding no copies has key 0.
+     *
+     * @param zone the zone index
+     * @param card the card id
+     * @param count the number of copies
+     * @return the key
+     */
+    private static long cardKey(int zone, int card, int count)
+    {
+        return count == 0 ? 0 : mix(TAG_CARD, zone, card, count);
+    }
+
+    /**
+     * Derives a pseudo-random key from a feature tuple using the SplitMix64 finaliser.
+     * Keys are computed rather than tabulated, so they are the same in every process and
+     * need no bounds on the number of players or copies.
+     *
+     * @param tag the feature tag
+     * @param a the first feature coordinate
+     * @param b the second feature coordinate
+     * @param c the third feature coordinate
+     * @return the key
+     */
+    private static long mix(long tag, long a, long b, long c)
+    {
+        long z = tag * 0x9E3779B97F4A7C15L;
+        z = (z ^ a) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ b) * 0x94D049BB133111EBL;
+        z = (z ^ c) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,201 @@
+package persistence;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import bakery.MagicBakery;
+import bakery.SaveFormat;
+
+/**
+ * Saves games in the background so that the game's thread never waits for the disk.
+ *
+ * {@link #save} encodes the game in the format of {@link MagicBakery#saveState} on the calling
+ * thread, which takes tens of microseconds and gives a consistent copy however the game moves on
+ * afterwards. The bytes are handed to a single writer thread, which writes them to a temporary
+ * file, forces it to the storage device and moves it over the file, so the name never refers to a
+ * partly written save, and then completes the returned future. If a file is saved again before
+ * the writer reaches it, only the newer bytes are written, so a slow disk delays saves rather than
+ * queueing them without limit. Failed writes are passed to a callback instead of being printed,
+ * and any failure completes the future.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class AsyncSaver implements Closeable {
+    /** The writer thread */
+    private final ExecutorService writer;
+
+    /** Called on the writer thread with the file and the cause of each failed write */
+    private final BiConsumer<File, IOException> onFailure;
+
+    /** Saves queued but not yet started, by file */
+    private final Map<File, PendingSave> pending = new HashMap<>();
+
+    /**
+     * A save waiting for the writer.
+     */
+    private static final class PendingSave {
+        /** The latest encoded game for the file */
+        private byte[] data;
+
+        /** Completed when the file has been written */
+        private final CompletableFuture<File> done = new CompletableFuture<>();
+
+        /**
+         * Creates a pending save.
+         *
+         * @param data the encoded game
+         */
+        private PendingSave(byte[] data)
+        {
+            this.data = data;
+        }
+    }
+
+    /**
+     * Creates a saver with its own writer thread.
+     *
+     * @param onFailure called on the writer thread with the file and the cause of each failed write
+     */
+    public AsyncSaver(BiConsumer<File, IOException> onFailure)
+    {
+        this.onFailure = onFailure;
+        this.writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "bakery-save-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Takes a copy of a game and writes it to a file in the background.
+     *
+     * @param bakery the game, which may be played on as soon as this method returns
+     * @param file the file to write
+     * @return a future completed with the file once it is written, or exceptionally with the cause of the failure
+     * @throws IllegalStateException if the saver has been closed
+     */
+    public CompletableFuture<File> save(MagicBakery bakery, File file)
+    {
+        byte[] data = encode(bakery);
+        PendingSave save;
+        synchronized (pending) {
+            save = pending.get(file);
+            if (save != null) {
+                save.data = data;
+                return save.done;
+            }
+            save = new PendingSave(data);
+            pending.put(file, save);
+        }
+        try {
+            writer.execute(() -> write(file));
+        } catch (RejectedExecutionException e) {
+            synchronized (pending) {
+                pending.remove(file);
+            }
+            throw new IllegalStateException("Saver has been closed", e);
+        }
+        return save.done;
+    }
+
+    /**
+     * Gets the number of files waiting to be written.
+     *
+     * @return the number of pending saves
+     */
+    public int pendingCount()
+    {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Writes the queued saves and stops the writer thread.
+     *
+     * @throws IOException if interrupted while waiting for the writer
+     */
+    @Override
+    public void close() throws IOException
+    {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing saves", e);
+        }
+    }
+
+    /**
+     * Encodes a game on the calling thread.
+     *
+     * @param bakery the game
+     * @return the saved game
+     */
+    private static byte[] encode(MagicBakery bakery)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            SaveFormat.write(bakery, bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the latest bytes queued for a file, on the writer thread.
+     *
+     * @param file the file
+     */
+    private void write(File file)
+    {
+        PendingSave save;
+        synchronized (pending) {
+            save = pending.remove(file);
+        }
+        try {
+            Path target = file.toPath();
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(save.data);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            save.done.complete(file);
+        } catch (IOException e) {
+            try {
+                onFailure.accept(file, e);
+            } finally {
+                save.done.completeExceptionally(e);
+            }
+        } catch (Throwable e) {
+            save.done.completeExceptionally(e);
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+    }
+}
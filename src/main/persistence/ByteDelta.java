@@ -0,0 +1,213 @@
+package persistence;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encodes a byte array as the difference from a similar base array, and applies such differences.
+ *
+ * A delta is a sequence of operations, each a tag byte followed by varints: copy (tag 0, base
+ * offset, length) repeats a run of the base, and insert (tag 1, length, bytes) adds new bytes. The
+ * offset of a copy is written relative to the end of the previous copy, zigzag encoded, so that the
+ * short hops between unchanged runs take one byte.
+ *
+ * Runs are found by looking up every four-byte window of the target in a hash table of the base's
+ * windows, trying first to continue straight on from the previous copy. Two saves of the same game
+ * a few actions apart differ in a handful of cards and log entries, so their delta is a few dozen
+ * bytes, unless a shuffle has reordered the pantry deck in between.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class ByteDelta {
+    /** Tag of a copy operation */
+    private static final int COPY = 0;
+
+    /** Tag of an insert operation */
+    private static final int INSERT = 1;
+
+    /** Shortest run worth a copy operation */
+    private static final int MIN_MATCH = 4;
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private ByteDelta()
+    {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Encodes a target as a delta from a base.
+     *
+     * @param base the base bytes
+     * @param target the bytes to encode
+     * @return the delta
+     */
+    public static byte[] encode(byte[] base, byte[] target)
+    {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(base.length, 16) - 1);
+        int[] table = new int[1 << bits];
+        for (int i = base.length - MIN_MATCH; i >= 0; i--) {
+            table[hash(base, i, bits)] = i + 1;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        int literal = 0;
+        int next = 0;
+        int j = 0;
+        while (j < target.length) {
+            int length = matchLength(base, next, target, j);
+            int from = next;
+            if (length < MIN_MATCH && j + MIN_MATCH <= target.length) {
+                int candidate = table[hash(target, j, bits)] - 1;
+                if (candidate >= 0) {
+                    length = matchLength(base, candidate, target, j);
+                    from = candidate;
+                }
+            }
+            if (length >= MIN_MATCH) {
+                writeInsert(out, target, literal, j);
+                out.write(COPY);
+                writeVarint(out, zigzag(from - next));
+                writeVarint(out, length);
+                j += length;
+                next = from + length;
+                literal = j;
+            } else {
+                j++;
+            }
+        }
+        writeInsert(out, target, literal, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Rebuilds a target from its base and delta.
+     *
+     * @param base the base bytes
+     * @param delta the delta written by {@link #encode}
+     * @return the target bytes
+     * @throws IllegalArgumentException if the delta is malformed or does not fit the base
+     */
+    public static byte[] apply(byte[] base, byte[] delta)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(base.length + 64);
+        int[] position = {0};
+        int next = 0;
+        try {
+            while (position[0] < delta.length) {
+                int tag = delta[position[0]++];
+                if (tag == COPY) {
+                    int encoded = readVarint(delta, position);
+                    int offset = next + ((encoded >>> 1) ^ -(encoded & 1));
+                    int length = readVarint(delta, position);
+                    out.write(base, offset, length);
+                    next = offset + length;
+                } else if (tag == INSERT) {
+                    int length = readVarint(delta, position);
+                    out.write(delta, position[0], length);
+                    position[0] += length;
+                } else {
+                    throw new IllegalArgumentException("Unknown delta operation " + tag);
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Delta does not fit its base", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Measures how far a run of the base matches the target.
+     *
+     * @param base the base bytes
+     * @param from the start in the base
+     * @param target the target bytes
+     * @param at the start in the target
+     * @return the length of the matching run
+     */
+    private static int matchLength(byte[] base, int from, byte[] target, int at)
+    {
+        int length = 0;
+        while (from + length < base.length && at + length < target.length && base[from + length] == target[at + length]) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Writes an insert operation for a range of the target, if it is not empty.
+     *
+     * @param out the delta
+     * @param target the target bytes
+     * @param from the start of the range
+     * @param to the end of the range
+     */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to)
+    {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /**
+     * Hashes the four bytes at a position.
+     *
+     * @param data the bytes
+     * @param at the position
+     * @param bits the width of the hash
+     * @return the hash
+     */
+    private static int hash(byte[] data, int at, int bits)
+    {
+        int word = (data[at] & 0xFF) | (data[at + 1] & 0xFF) << 8 | (data[at + 2] & 0xFF) << 16 | data[at + 3] << 24;
+        return (word * 0x9E3779B1) >>> (32 - bits);
+    }
+
+    /**
+     * Maps a signed value to an unsigned one, small magnitudes to small values.
+     *
+     * @param value the signed value
+     * @return the zigzag encoding
+     */
+    private static int zigzag(int value)
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Writes an unsigned varint, seven bits per byte with the high bit marking more bytes.
+     *
+     * @param out the stream
+     * @param value the non-negative value
+     */
+    private static void writeVarint(ByteArrayOutputStream out, int value)
+    {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     *
+     * @param data the bytes
+     * @param position the read position, advanced past the varint
+     * @return the value
+     */
+    private static int readVarint(byte[] data, int[] position)
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint is too long");
+    }
+}
@@ -0,0 +1,322 @@
+package persistence;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import bakery.MagicBakery;
+import bakery.SaveFormat;
+
+/**
+ * Keeps every save of one game in an append-only file, storing most saves as a {@link ByteDelta}
+ * against the save before.
+ *
+ * The file is a sequence of frames, each a kind byte (full or delta), a length, a CRC-32 of the
+ * payload and the payload: a full save in the format of {@link SaveFormat}, or the delta that turns
+ * the previous save into this one. Every {@code fullEvery}-th save is written in full, so restoring any save applies at
+ * most {@code fullEvery - 1} deltas to the nearest full save before it. A save after a single
+ * action then costs a few dozen bytes instead of the size of the game.
+ *
+ * Opening the file decodes only the frames from the last full save on. A crash can leave an
+ * incomplete or corrupt frame at the end of the file, which is discarded when the file is opened
+ * again. A frame that cannot be written is cut off the file straight away; if that fails too, the
+ * log refuses further saves until it is opened again.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class DeltaSaveLog implements Closeable {
+    /** Frame kind of a full save */
+    private static final int FULL = 0;
+
+    /** Frame kind of a delta against the previous save */
+    private static final int DELTA = 1;
+
+    /** Bytes before a frame's payload: kind, length, CRC-32 */
+    private static final int FRAME_HEADER = 9;
+
+    /** Saves between full frames */
+    private final int fullEvery;
+
+    /** The open file */
+    private final FileChannel channel;
+
+    /** Offset of each frame in the file */
+    private final List<Long> frames;
+
+    /** The latest save, the base of the next delta, or null if there is none */
+    private byte[] previous;
+
+    /** Why the log stopped accepting saves, or null while it is healthy */
+    private IOException failure;
+
+    /**
+     * Creates a log over an open file.
+     *
+     * @param channel the open file, positioned at its end
+     * @param fullEvery the number of saves between full frames
+     * @param frames the offsets of the frames already in the file
+     * @param previous the latest save, or null if there is none
+     */
+    private DeltaSaveLog(FileChannel channel, int fullEvery, List<Long> frames, byte[] previous)
+    {
+        this.channel = channel;
+        this.fullEvery = fullEvery;
+        this.frames = frames;
+        this.previous = previous;
+    }
+
+    /**
+     * Opens the log in a file, creating it if needed and discarding an incomplete frame at its end.
+     *
+     * @param file the file
+     * @param fullEvery the number of saves between full frames
+     * @return the open log
+     * @throws IOException if the file cannot be read or holds a malformed frame
+     * @throws IllegalArgumentException if the full frame interval is not positive
+     */
+    public static DeltaSaveLog open(Path file, int fullEvery) throws IOException
+    {
+        if (fullEvery <= 0) {
+            throw new IllegalArgumentException("Full save interval must be positive");
+        }
+        byte[] data = Files.exists(file) ? Files.readAllBytes(file) : new byte[0];
+        ByteBuffer in = ByteBuffer.wrap(data);
+        List<Long> frames = new ArrayList<>();
+        int lastFull = -1;
+        CRC32 crc = new CRC32();
+        while (in.remaining() >= FRAME_HEADER) {
+            int start = in.position();
+            int kind = in.get();
+            int length = in.getInt();
+            int checksum = in.getInt();
+            if (length < 0 || length > in.remaining()) {
+                in.position(start);
+                break;
+            }
+            crc.reset();
+            crc.update(data, in.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                in.position(start);
+                break;
+            }
+            if (kind == FULL) {
+                lastFull = frames.size();
+            }
+            frames.add((long) start);
+            in.position(in.position() + length);
+        }
+        if (lastFull < 0 && !frames.isEmpty()) {
+            throw new IOException("Save log does not start with a full save");
+        }
+        byte[] previous = null;
+        for (int i = Math.max(lastFull, 0); i < frames.size(); i++) {
+            int start = (int) (long) frames.get(i);
+            int length = ByteBuffer.wrap(data, start + 1, 4).getInt();
+            byte[] payload = new byte[length];
+            System.arraycopy(data, start + FRAME_HEADER, payload, 0, length);
+            previous = decodeFrame(data[start], payload, previous);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(in.position());
+        channel.position(in.position());
+        return new DeltaSaveLog(channel, fullEvery, frames, previous);
+    }
+
+    /**
+     * Appends a save of the game.
+     *
+     * @param bakery the game
+     * @return the number of bytes appended
+     * @throws IOException if the file cannot be written, in which case the frame is not kept
+     * @throws IllegalStateException if an earlier failed frame could not be cut off the file
+     */
+    public int save(MagicBakery bakery) throws IOException
+    {
+        if (failure != null) {
+            throw new IllegalStateException("Save log has failed", failure);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SaveFormat.write(bakery, bytes);
+        byte[] current = bytes.toByteArray();
+        boolean full = previous == null || frames.size() % fullEvery == 0;
+        byte[] payload = full ? current : ByteDelta.encode(previous, current);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + payload.length);
+        frame.put((byte) (full ? FULL : DELTA)).putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        long start = channel.position();
+        try {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException truncate) {
+                truncate.addSuppressed(e);
+                failure = truncate;
+            }
+            throw e;
+        }
+        frames.add(start);
+        previous = current;
+        return FRAME_HEADER + payload.length;
+    }
+
+    /**
+     * Restores the latest save.
+     *
+     * @return the game, or null if nothing has been saved
+     * @throws IOException if the save cannot be read
+     * @throws ClassNotFoundException if a serialized save refers to a missing class
+     */
+    public MagicBakery load() throws IOException, ClassNotFoundException
+    {
+        return previous == null ? null : SaveFormat.read(new ByteArrayInputStream(previous));
+    }
+
+    /**
+     * Restores an earlier save, applying the deltas after the nearest full save before it.
+     *
+     * @param save the index of the save, counting from zero
+     * @return the game
+     * @throws IOException if the saves cannot be read
+     * @throws ClassNotFoundException if a serialized save refers to a missing class
+     * @throws IndexOutOfBoundsException if there is no such save
+     */
+    public MagicBakery load(int save) throws IOException, ClassNotFoundException
+    {
+        return SaveFormat.read(new ByteArrayInputStream(bytes(save)));
+    }
+
+    /**
+     * Rebuilds the bytes of a save.
+     *
+     * @param save the index of the save, counting from zero
+     * @return the saved game
+     * @throws IOException if the frames cannot be read
+     * @throws IndexOutOfBoundsException if there is no such save
+     */
+    public byte[] bytes(int save) throws IOException
+    {
+        if (save < 0 || save >= frames.size()) {
+            throw new IndexOutOfBoundsException("No save " + save);
+        }
+        int first = save;
+        while (readKind(frames.get(first)) != FULL) {
+            first--;
+        }
+        byte[] data = null;
+        CRC32 crc = new CRC32();
+        for (int i = first; i <= save; i++) {
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+            readFully(header, frames.get(i));
+            int kind = header.get(0);
+            ByteBuffer payload = ByteBuffer.allocate(header.getInt(1));
+            readFully(payload, frames.get(i) + FRAME_HEADER);
+            crc.reset();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != header.getInt(5)) {
+                throw new IOException("Save log frame " + i + " is corrupt");
+            }
+            data = decodeFrame(kind, payload.array(), data);
+        }
+        return data;
+    }
+
+    /**
+     * Gets the number of saves.
+     *
+     * @return the number of frames
+     */
+    public int size()
+    {
+        return frames.size();
+    }
+
+    /**
+     * Forces the appended saves to the storage device.
+     *
+     * @throws IOException if the file cannot be synced
+     */
+    public void sync() throws IOException
+    {
+        channel.force(false);
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Reads the kind byte of a frame.
+     *
+     * @param offset the offset of the frame
+     * @return the frame kind
+     * @throws IOException if the file cannot be read
+     */
+    private int readKind(long offset) throws IOException
+    {
+        ByteBuffer kind = ByteBuffer.allocate(1);
+        readFully(kind, offset);
+        return kind.get(0);
+    }
+
+    /**
+     * Fills a buffer from the file.
+     *
+     * @param buffer the buffer
+     * @param offset the offset to read from
+     * @throws IOException if the file ends first
+     */
+    private void readFully(ByteBuffer buffer, long offset) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Save log ends inside a frame");
+            }
+        }
+    }
+
+    /**
+     * Turns a frame's payload into the save it holds.
+     *
+     * @param kind the frame kind
+     * @param payload the payload
+     * @param previous the save before, or null if there is none
+     * @return the save
+     * @throws IOException if the frame is malformed
+     */
+    private static byte[] decodeFrame(int kind, byte[] payload, byte[] previous) throws IOException
+    {
+        if (kind == FULL) {
+            return payload;
+        }
+        if (kind != DELTA || previous == null) {
+            throw new IOException("Malformed save log frame");
+        }
+        try {
+            return ByteDelta.apply(previous, payload);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed save log delta", e);
+        }
+    }
+}
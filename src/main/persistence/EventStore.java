@@ -0,0 +1,223 @@
+package persistence;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import bakery.GameLog;
+import bakery.MagicBakery;
+import bakery.Snapshot;
+
+/**
+ * Persists one game as an append-only action log plus a snapshot taken every few actions.
+ *
+ * The store is a directory holding two files. {@value #LOG_FILE} starts with the header of the
+ * game's {@link GameLog} and grows by three bytes per action. {@value #SNAPSHOT_FILE} holds the
+ * latest {@link Snapshot}, replaced atomically. Saving after an action appends only the new log
+ * entries; the position is written only when a snapshot is due, after the log has been forced to
+ * the storage device so that a snapshot never covers actions a crash could lose. Loading restores
+ * the snapshot and replays the actions logged after it.
+ *
+ * A crash can leave an incomplete action at the end of the log, which is discarded when the
+ * store is opened again.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class EventStore implements Closeable {
+    /** Name of the action log file */
+    public static final String LOG_FILE = "events.log";
+
+    /** Name of the snapshot file */
+    public static final String SNAPSHOT_FILE = "snapshot.bin";
+
+    /** The store directory */
+    private final Path directory;
+
+    /** Actions between snapshots */
+    private final int snapshotEvery;
+
+    /** The open action log */
+    private final FileChannel log;
+
+    /** Number of actions in the action log */
+    private int persisted;
+
+    /** Number of actions covered by the latest snapshot */
+    private int snapshotActions;
+
+    /**
+     * Creates a store object over an open log.
+     *
+     * @param directory the store directory
+     * @param snapshotEvery the number of actions between snapshots
+     * @param log the open action log
+     * @param persisted the number of actions in the log
+     * @param snapshotActions the number of actions covered by the latest snapshot
+     */
+    private EventStore(Path directory, int snapshotEvery, FileChannel log, int persisted, int snapshotActions)
+    {
+        this.directory = directory;
+        this.snapshotEvery = snapshotEvery;
+        this.log = log;
+        this.persisted = persisted;
+        this.snapshotActions = snapshotActions;
+    }
+
+    /**
+     * Creates a new store for a started game, replacing any store already in the directory.
+     *
+     * @param directory the store directory, created if needed
+     * @param bakery the game
+     * @param snapshotEvery the number of actions between snapshots
+     * @return the open store
+     * @throws IOException if the files cannot be written
+     * @throws IllegalArgumentException if the game has not started or the snapshot interval is not positive
+     */
+    public static EventStore create(Path directory, MagicBakery bakery, int snapshotEvery) throws IOException
+    {
+        if (snapshotEvery <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be positive");
+        }
+        GameLog gameLog = bakery.getGameLog();
+        if (gameLog.getPlayerNames() == null) {
+            throw new IllegalArgumentException("Game has not been started");
+        }
+        Files.createDirectories(directory);
+        writeAtomically(directory.resolve(LOG_FILE), gameLog.toBytes());
+        writeAtomically(directory.resolve(SNAPSHOT_FILE), Snapshot.of(bakery).toBytes());
+        FileChannel channel = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new EventStore(directory, snapshotEvery, channel, gameLog.size(), gameLog.size());
+    }
+
+    /**
+     * Opens an existing store, discarding an incomplete action at the end of the log.
+     *
+     * @param directory the store directory
+     * @param snapshotEvery the number of actions between snapshots
+     * @return the open store
+     * @throws IOException if the files cannot be read
+     * @throws IllegalArgumentException if the files are not a store in this layout
+     */
+    public static EventStore open(Path directory, int snapshotEvery) throws IOException
+    {
+        if (snapshotEvery <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be positive");
+        }
+        GameLog gameLog = GameLog.fromBytes(Files.readAllBytes(directory.resolve(LOG_FILE)));
+        Snapshot snapshot = Snapshot.fromBytes(Files.readAllBytes(directory.resolve(SNAPSHOT_FILE)));
+        FileChannel channel = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.WRITE);
+        channel.truncate(gameLog.toBytes().length);
+        channel.position(channel.size());
+        return new EventStore(directory, snapshotEvery, channel, gameLog.size(), snapshot.getActions());
+    }
+
+    /**
+     * Saves a game by appending the actions it has logged since the last save, and writing a new
+     * snapshot if enough actions have passed since the last one.
+     *
+     * @param bakery the game this store was created for
+     * @throws IOException if the files cannot be written
+     * @throws IllegalStateException if the game's log is shorter than the stored one
+     */
+    public void append(MagicBakery bakery) throws IOException
+    {
+        GameLog gameLog = bakery.getGameLog();
+        if (gameLog.size() < persisted) {
+            throw new IllegalStateException("Game has fewer actions than the store");
+        }
+        ByteBuffer entries = ByteBuffer.wrap(gameLog.entryBytes(persisted, gameLog.size()));
+        while (entries.hasRemaining()) {
+            log.write(entries);
+        }
+        persisted = gameLog.size();
+        if (persisted - snapshotActions >= snapshotEvery) {
+            // the snapshot points into the log, so the actions it covers must be durable first
+            log.force(false);
+            writeAtomically(directory.resolve(SNAPSHOT_FILE), Snapshot.of(bakery).toBytes());
+            snapshotActions = persisted;
+        }
+    }
+
+    /**
+     * Loads the game from the latest snapshot and the actions logged after it.
+     *
+     * @return the game after the last saved action
+     * @throws IOException if the files cannot be read
+     * @throws IllegalArgumentException if the files are not a store in this layout
+     */
+    public MagicBakery load() throws IOException
+    {
+        GameLog gameLog = GameLog.fromBytes(Files.readAllBytes(directory.resolve(LOG_FILE)));
+        Snapshot snapshot = Snapshot.fromBytes(Files.readAllBytes(directory.resolve(SNAPSHOT_FILE)));
+        return snapshot.restore(gameLog);
+    }
+
+    /**
+     * Forces the appended actions to the storage device.
+     *
+     * @throws IOException if the log cannot be synced
+     */
+    public void sync() throws IOException
+    {
+        log.force(false);
+    }
+
+    /**
+     * Gets the number of saved actions.
+     *
+     * @return the number of actions in the log
+     */
+    public int size()
+    {
+        return persisted;
+    }
+
+    /**
+     * Gets the number of actions covered by the latest snapshot.
+     *
+     * @return the number of actions before the snapshot
+     */
+    public int getSnapshotActions()
+    {
+        return snapshotActions;
+    }
+
+    /**
+     * Closes the action log.
+     *
+     * @throws IOException if the log cannot be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        log.close();
+    }
+
+    /**
+     * Replaces a file by writing a temporary file next to it, forcing it to the storage device and
+     * moving it into place, so that the name never refers to a partly written file.
+     *
+     * @param file the file to replace
+     * @param data the new contents
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeAtomically(Path file, byte[] data) throws IOException
+    {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
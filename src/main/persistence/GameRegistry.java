@@ -0,0 +1,432 @@
+package persistence;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import bakery.MagicBakery;
+
+/**
+ * Hosts many games, keeping only recently used ones in memory and the rest in a
+ * {@link MappedSaveStore}.
+ *
+ * Every access to a game goes through {@link #withGame}, which restores the game from the store if
+ * it has been evicted, so callers never see the difference. A game is evicted by {@link #sweep}
+ * once it has been idle for longer than the idle limit, or straight away, least recently used
+ * first, whenever more games are resident than the resident limit allows. A game is never evicted
+ * while an action on it is running.
+ *
+ * The time taken to restore each game is measured, so callers can check that rehydration stays
+ * within their latency target.
+ *
+ * Games are restored from the decks the store was opened with, see
+ * {@link MappedSaveStore#open(java.nio.file.Path, int, int, bakery.CardDecks)}, so rehydration
+ * never reads the deck files.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class GameRegistry {
+    /** The store evicted games are written to */
+    private final MappedSaveStore store;
+
+    /** Most games kept in memory */
+    private final int maxResident;
+
+    /** Idle time after which {@link #sweep} evicts a game */
+    private final long idleNanos;
+
+    /** Source of the current time in nanoseconds */
+    private final LongSupplier clock;
+
+    /** Every game, resident or not, by id */
+    private final Map<Long, Entry> games = new ConcurrentHashMap<>();
+
+    /** Resident games from least to most recently used, guarded by itself */
+    private final LinkedHashMap<Long, Entry> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Number of games evicted */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Number of evictions abandoned because the game could not be written to the store */
+    private final AtomicLong evictionFailures = new AtomicLong();
+
+    /** Cause of the latest abandoned eviction, or null if none has failed */
+    private volatile Exception lastEvictionFailure;
+
+    /** Number of games restored from the store */
+    private final AtomicLong rehydrations = new AtomicLong();
+
+    /** Total time spent restoring games */
+    private final AtomicLong rehydrateNanos = new AtomicLong();
+
+    /** Longest time spent restoring one game */
+    private final AtomicLong maxRehydrateNanos = new AtomicLong();
+
+    /**
+     * A hosted game.
+     */
+    private static final class Entry {
+        /** The game id */
+        private final long id;
+
+        /** Held while the game is used, restored or evicted */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /** The game, or null while it is only in the store */
+        private MagicBakery game;
+
+        /** Time of the last access */
+        private volatile long lastAccess;
+
+        /**
+         * Creates an entry.
+         *
+         * @param id the game id
+         * @param game the game
+         * @param now the current time
+         */
+        private Entry(long id, MagicBakery game, long now)
+        {
+            this.id = id;
+            this.game = game;
+            this.lastAccess = now;
+        }
+    }
+
+    /**
+     * Creates a registry measuring time with {@link System#nanoTime()}.
+     *
+     * @param store the store evicted games are written to
+     * @param maxResident the most games kept in memory
+     * @param idleNanos the idle time after which a game is evicted by {@link #sweep}
+     */
+    public GameRegistry(MappedSaveStore store, int maxResident, long idleNanos)
+    {
+        this(store, maxResident, idleNanos, System::nanoTime);
+    }
+
+    /**
+     * Creates a registry with its own clock.
+     *
+     * @param store the store evicted games are written to
+     * @param maxResident the most games kept in memory
+     * @param idleNanos the idle time after which a game is evicted by {@link #sweep}
+     * @param clock the source of the current time in nanoseconds
+     * @throws IllegalArgumentException if the resident limit is not positive
+     */
+    public GameRegistry(MappedSaveStore store, int maxResident, long idleNanos, LongSupplier clock)
+    {
+        if (maxResident <= 0) {
+            throw new IllegalArgumentException("Resident limit must be positive");
+        }
+        this.store = store;
+        this.maxResident = maxResident;
+        this.idleNanos = idleNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Adds a game to the registry.
+     *
+     * @param id the game id
+     * @param bakery the game
+     * @throws IllegalArgumentException if a game with the id is already hosted
+     */
+    public void register(long id, MagicBakery bakery)
+    {
+        Entry entry = new Entry(id, bakery, clock.getAsLong());
+        if (games.putIfAbsent(id, entry) != null) {
+            throw new IllegalArgumentException("Game " + id + " is already hosted");
+        }
+        synchronized (resident) {
+            resident.put(id, entry);
+        }
+        evictOverflow();
+    }
+
+    /**
+     * Runs an action on a game, restoring it from the store first if it has been evicted. Actions
+     * on one game run one at a time.
+     *
+     * @param <T> the result type
+     * @param id the game id
+     * @param action the action
+     * @return the result of the action
+     * @throws IllegalArgumentException if no game with the id is hosted
+     * @throws UncheckedIOException if the game cannot be restored
+     */
+    public <T> T withGame(long id, Function<MagicBakery, T> action)
+    {
+        Entry entry = games.get(id);
+        if (entry == null) {
+            throw new IllegalArgumentException("Game " + id + " is not hosted");
+        }
+        T result;
+        entry.lock.lock();
+        try {
+            if (entry.game == null) {
+                entry.game = rehydrate(id);
+                synchronized (resident) {
+                    resident.put(id, entry);
+                }
+            } else {
+                synchronized (resident) {
+                    resident.get(id);
+                }
+            }
+            entry.lastAccess = clock.getAsLong();
+            result = action.apply(entry.game);
+        } finally {
+            entry.lock.unlock();
+        }
+        evictOverflow();
+        return result;
+    }
+
+    /**
+     * Removes a game from the registry and the store.
+     *
+     * @param id the game id
+     * @return true if the game was hosted
+     */
+    public boolean remove(long id)
+    {
+        Entry entry = games.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        entry.lock.lock();
+        try {
+            synchronized (resident) {
+                resident.remove(id);
+            }
+            store.remove(id);
+            entry.game = null;
+        } finally {
+            entry.lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Evicts every resident game that has been idle for longer than the idle limit.
+     *
+     * @return the number of games evicted
+     */
+    public int sweep()
+    {
+        long now = clock.getAsLong();
+        List<Entry> idle = new ArrayList<>();
+        synchronized (resident) {
+            for (Entry entry : resident.values()) {
+                if (now - entry.lastAccess > idleNanos) {
+                    idle.add(entry);
+                }
+            }
+        }
+        int evicted = 0;
+        for (Entry entry : idle) {
+            if (evict(entry)) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Checks whether a game is in memory.
+     *
+     * @param id the game id
+     * @return true if the game is hosted and resident
+     */
+    public boolean isResident(long id)
+    {
+        synchronized (resident) {
+            return resident.containsKey(id);
+        }
+    }
+
+    /**
+     * Gets the number of hosted games.
+     *
+     * @return the number of games, resident or not
+     */
+    public int size()
+    {
+        return games.size();
+    }
+
+    /**
+     * Gets the number of games in memory.
+     *
+     * @return the number of resident games
+     */
+    public int residentCount()
+    {
+        synchronized (resident) {
+            return resident.size();
+        }
+    }
+
+    /**
+     * Gets the number of games evicted so far.
+     *
+     * @return the number of evictions
+     */
+    public long evictionCount()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the number of evictions abandoned because the game could not be written to the store.
+     * Such a game stays in memory and is tried again by the next eviction.
+     *
+     * @return the number of failed evictions
+     */
+    public long evictionFailureCount()
+    {
+        return evictionFailures.get();
+    }
+
+    /**
+     * Gets the cause of the latest failed eviction, such as a full store index or a segment that
+     * could not be created.
+     *
+     * @return the exception, or null if no eviction has failed
+     */
+    public Exception lastEvictionFailure()
+    {
+        return lastEvictionFailure;
+    }
+
+    /**
+     * Gets the number of games restored from the store so far.
+     *
+     * @return the number of rehydrations
+     */
+    public long rehydrationCount()
+    {
+        return rehydrations.get();
+    }
+
+    /**
+     * Gets the mean time taken to restore a game.
+     *
+     * @return the mean rehydration time in nanoseconds, or zero if none has happened
+     */
+    public long meanRehydrateNanos()
+    {
+        long count = rehydrations.get();
+        return count == 0 ? 0 : rehydrateNanos.get() / count;
+    }
+
+    /**
+     * Gets the longest time taken to restore a game.
+     *
+     * @return the longest rehydration time in nanoseconds
+     */
+    public long maxRehydrateNanos()
+    {
+        return maxRehydrateNanos.get();
+    }
+
+    /**
+     * Evicts least recently used games until no more than the resident limit are in memory,
+     * skipping games in use.
+     */
+    private void evictOverflow()
+    {
+        while (true) {
+            List<Entry> candidates = new ArrayList<>();
+            synchronized (resident) {
+                int excess = resident.size() - maxResident;
+                Iterator<Entry> oldest = resident.values().iterator();
+                while (excess-- > 0 && oldest.hasNext()) {
+                    candidates.add(oldest.next());
+                }
+            }
+            if (candidates.isEmpty()) {
+                return;
+            }
+            boolean progress = false;
+            for (Entry entry : candidates) {
+                progress |= evict(entry);
+            }
+            if (!progress) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes a game to the store and drops it from memory, unless it is in use.
+     *
+     * @param entry the game
+     * @return true if the game was evicted
+     */
+    private boolean evict(Entry entry)
+    {
+        if (!entry.lock.tryLock()) {
+            return false;
+        }
+        try {
+            if (entry.game == null || games.get(entry.id) != entry) {
+                return false;
+            }
+            try {
+                store.saveState(entry.id, entry.game);
+            } catch (IOException | IllegalStateException e) {
+                lastEvictionFailure = e;
+                evictionFailures.incrementAndGet();
+                return false;
+            }
+            entry.game = null;
+            synchronized (resident) {
+                resident.remove(entry.id);
+            }
+            evictions.incrementAndGet();
+            return true;
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    /**
+     * Restores a game from the store, measuring how long it takes.
+     *
+     * @param id the game id
+     * @return the game
+     * @throws UncheckedIOException if the game cannot be restored
+     */
+    private MagicBakery rehydrate(long id)
+    {
+        long start = System.nanoTime();
+        MagicBakery bakery;
+        try {
+            bakery = store.loadState(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+        if (bakery == null) {
+            throw new UncheckedIOException(new IOException("Game " + id + " is missing from the store"));
+        }
+        long elapsed = System.nanoTime() - start;
+        rehydrations.incrementAndGet();
+        rehydrateNanos.addAndGet(elapsed);
+        maxRehydrateNanos.accumulateAndGet(elapsed, Math::max);
+        return bakery;
+    }
+}
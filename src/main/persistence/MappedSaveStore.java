@@ -0,0 +1,732 @@
+package persistence;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+
+import bakery.CardCatalog;
+import bakery.CardDecks;
+import bakery.MagicBakery;
+import bakery.SaveFormat;
+import bakery.SavedGame;
+
+/**
+ * Stores many saved games in memory-mapped segment files, found through a memory-mapped hash index
+ * from game id to record location.
+ *
+ * Opening the store maps the index and the segments without reading any record, so the saved games
+ * can be listed and any one of them restored straight away. {@link #loadState} decodes the game
+ * directly from the mapped segment with {@link SaveFormat#fromBuffer}, without copying the record,
+ * and deals it from the {@link CardDecks} the store was opened with rather than the deck files.
+ *
+ * The index, {@value #INDEX_FILE}, is an open-addressing table of a fixed number of slots, each
+ * holding a state, the game id and the segment, offset and length of the game's latest record.
+ * Segments, {@code data-NNNNNN.seg}, have a fixed size; each starts with a marker and the offset of
+ * its free space, followed by records of game id, length and saved game. A game saved again gets a
+ * new record and the old one becomes dead. {@link #compact} copies the live records out of
+ * segments that are mostly dead and deletes them.
+ *
+ * A record is written before the segment's free offset is advanced and before the index points to
+ * it. Changes reach the storage device when the operating system writes the mapped pages back, or
+ * when {@link #force} is called.
+ *
+ * Java cannot unmap a file on demand: a mapping is released only once its buffer, and every view
+ * handed out by {@link #record} or {@link #peek}, has been garbage collected. The store drops its
+ * own references to a segment before deleting the file and drops all of them on {@link #close}.
+ * Where a mapped file cannot be deleted, as on Windows, the delete is retried by the next
+ * {@link #compact} and by {@link #close}; a segment left behind holds no live record, and the
+ * first compaction after the store is opened again removes it.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class MappedSaveStore implements Closeable {
+    /** Name of the index file */
+    public static final String INDEX_FILE = "index.bin";
+
+    /** Marker at the start of the index and of each segment */
+    private static final int MAGIC = 0x4D42494E;
+
+    /** Bytes before the first index slot: marker, slot count, segment size */
+    private static final int INDEX_HEADER = 16;
+
+    /** Bytes per index slot: state, game id, segment, offset, length */
+    private static final int SLOT_BYTES = 24;
+
+    /** Bytes before the first record of a segment: marker, free offset */
+    private static final int SEGMENT_HEADER = 8;
+
+    /** Bytes before the saved game in a record: game id, length */
+    private static final int RECORD_HEADER = 12;
+
+    /** Slot state of a slot never used */
+    private static final int EMPTY = 0;
+
+    /** Slot state of a slot holding a game */
+    private static final int LIVE = 1;
+
+    /** Slot state of a slot whose game was removed */
+    private static final int REMOVED = 2;
+
+    /** Proportion of live bytes below which compaction empties a segment */
+    private static final double COMPACT_BELOW = 0.5;
+
+    /** The store directory */
+    private final Path directory;
+
+    /** The mapped index, or null once the store is closed */
+    private MappedByteBuffer index;
+
+    /** Number of index slots, a power of two */
+    private final int slots;
+
+    /** Size of each segment */
+    private final int segmentBytes;
+
+    /** The decks restored games are dealt from */
+    private final CardDecks decks;
+
+    /** Open segments by number */
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    /** Number of live slots */
+    private int live;
+
+    /** Number of removed slots */
+    private int removed;
+
+    /** The segment records are appended to */
+    private Segment current;
+
+    /** Files of retired segments that could not be deleted yet */
+    private final List<Path> retired = new ArrayList<>();
+
+    /** Whether the store has been closed */
+    private boolean closed;
+
+    /**
+     * A mapped segment file.
+     */
+    private static final class Segment {
+        /** The segment number */
+        private final int number;
+
+        /** The mapped file, or null once the segment has been retired */
+        private MappedByteBuffer buffer;
+
+        /** Bytes of live records */
+        private long liveBytes;
+
+        /**
+         * Creates a segment.
+         *
+         * @param number the segment number
+         * @param buffer the mapped file
+         */
+        private Segment(int number, MappedByteBuffer buffer)
+        {
+            this.number = number;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Gets the offset of the segment's free space.
+         *
+         * @return the free offset
+         */
+        private int free()
+        {
+            return buffer.getInt(4);
+        }
+    }
+
+    /**
+     * Creates a store over its mapped index.
+     *
+     * @param directory the store directory
+     * @param index the mapped index
+     * @param decks the decks restored games are dealt from
+     */
+    private MappedSaveStore(Path directory, MappedByteBuffer index, CardDecks decks)
+    {
+        this.directory = directory;
+        this.index = index;
+        this.slots = index.getInt(4);
+        this.segmentBytes = index.getInt(8);
+        this.decks = decks;
+    }
+
+    /**
+     * Opens the store in a directory, creating it with the given sizes if it does not exist. An
+     * existing store keeps the sizes it was created with.
+     *
+     * @param directory the store directory
+     * @param slots the number of index slots, rounded up to a power of two; at most half of them are used
+     * @param segmentBytes the size of each segment
+     * @return the open store
+     * @throws IOException if the files cannot be mapped or are not a store in this layout
+     * @throws IllegalArgumentException if there are no slots or a segment cannot hold a record
+     */
+    public static MappedSaveStore open(Path directory, int slots, int segmentBytes) throws IOException
+    {
+        return open(directory, slots, segmentBytes, CardDecks.loadStandard());
+    }
+
+    /**
+     * Opens the store in a directory, as {@link #open(Path, int, int)}, restoring games from decks
+     * already read so that loading a game never reads the deck files.
+     *
+     * @param directory the store directory
+     * @param slots the number of index slots, rounded up to a power of two; at most half of them are used
+     * @param segmentBytes the size of each segment
+     * @param decks the decks the saved games were dealt from
+     * @return the open store
+     * @throws IOException if the files cannot be mapped or are not a store in this layout
+     * @throws IllegalArgumentException if there are no slots or a segment cannot hold a record
+     */
+    public static MappedSaveStore open(Path directory, int slots, int segmentBytes, CardDecks decks) throws IOException
+    {
+        if (slots <= 0 || segmentBytes <= SEGMENT_HEADER + RECORD_HEADER) {
+            throw new IllegalArgumentException("Store sizes are too small");
+        }
+        Files.createDirectories(directory);
+        Path indexFile = directory.resolve(INDEX_FILE);
+        boolean exists = Files.exists(indexFile);
+        MappedByteBuffer index;
+        if (exists) {
+            index = map(indexFile, Files.size(indexFile));
+            if (index.capacity() < INDEX_HEADER || index.getInt(0) != MAGIC) {
+                throw new IOException("Not a save store index: " + indexFile);
+            }
+        } else {
+            int tableSlots = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+            index = map(indexFile, INDEX_HEADER + (long) tableSlots * SLOT_BYTES);
+            index.putInt(4, tableSlots);
+            index.putInt(8, segmentBytes);
+            index.putInt(0, MAGIC);
+        }
+        MappedSaveStore store = new MappedSaveStore(directory, index, decks);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "data-*.seg")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int number = Integer.parseInt(name.substring(5, name.length() - 4));
+                store.segments.put(number, store.mapSegment(number));
+            }
+        }
+        for (int slot = 0; slot < store.slots; slot++) {
+            int state = store.state(slot);
+            if (state == LIVE) {
+                store.live++;
+                Segment segment = store.segments.get(store.index.getInt(store.slotOffset(slot) + 12));
+                if (segment == null) {
+                    throw new IOException("Save store index refers to a missing segment");
+                }
+                segment.liveBytes += RECORD_HEADER + store.index.getInt(store.slotOffset(slot) + 20);
+            } else if (state == REMOVED) {
+                store.removed++;
+            }
+        }
+        store.current = store.segments.isEmpty() ? store.newSegment(0) : store.segments.lastEntry().getValue();
+        return store;
+    }
+
+    /**
+     * Saves a game under an id, replacing any earlier save of it.
+     *
+     * @param gameId the game id
+     * @param bakery the game
+     * @throws IOException if a new segment cannot be created
+     * @throws IllegalStateException if the index is full or the store has been closed
+     */
+    public void saveState(long gameId, MagicBakery bakery) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SaveFormat.write(bakery, bytes);
+        put(gameId, bytes.toByteArray());
+    }
+
+    /**
+     * Stores an already saved game under an id, replacing any earlier save of it.
+     *
+     * @param gameId the game id
+     * @param data the game in the format of {@link SaveFormat}
+     * @throws IOException if a new segment cannot be created
+     * @throws IllegalArgumentException if the game does not fit in a segment
+     * @throws IllegalStateException if the index is full or the store has been closed
+     */
+    public synchronized void put(long gameId, byte[] data) throws IOException
+    {
+        ensureOpen();
+        if (RECORD_HEADER + (long) data.length > segmentBytes - SEGMENT_HEADER) {
+            throw new IllegalArgumentException("Saved game is larger than a segment");
+        }
+        int slot = find(gameId);
+        if (slot < 0 && (live + removed + 1) * 2L > slots) {
+            throw new IllegalStateException("Save store index is full");
+        }
+        int offset = append(gameId, data);
+        if (slot >= 0) {
+            release(slot);
+        } else {
+            slot = freeSlot(gameId);
+            if (state(slot) == REMOVED) {
+                removed--;
+            }
+            live++;
+        }
+        int base = slotOffset(slot);
+        index.putLong(base + 4, gameId);
+        index.putInt(base + 12, current.number);
+        index.putInt(base + 16, offset);
+        index.putInt(base + 20, data.length);
+        index.putInt(base, LIVE);
+        current.liveBytes += RECORD_HEADER + data.length;
+    }
+
+    /**
+     * Restores a saved game, decoding it directly from the mapped segment.
+     *
+     * @param gameId the game id
+     * @return the game, or null if no game is saved under the id
+     * @throws IOException if the record is not a saved game
+     * @throws ClassNotFoundException if a serialized record refers to a missing class
+     */
+    public MagicBakery loadState(long gameId) throws IOException, ClassNotFoundException
+    {
+        ByteBuffer record = record(gameId);
+        if (record == null) {
+            return null;
+        }
+        if (record.remaining() >= 4 && record.getInt(record.position()) == SaveFormat.MAGIC) {
+            return SaveFormat.fromBuffer(record, decks);
+        }
+        byte[] data = new byte[record.remaining()];
+        record.get(data);
+        return SaveFormat.read(new ByteArrayInputStream(data), decks);
+    }
+
+    /**
+     * Gets a view of a saved game that decodes only the sections asked for, straight from the
+     * mapped segment.
+     *
+     * @param gameId the game id
+     * @param catalog the card catalog of the game's deck files
+     * @return the view, or null if no game is saved under the id
+     * @throws IOException if the record is not a saved game with sections
+     */
+    public SavedGame peek(long gameId, CardCatalog catalog) throws IOException
+    {
+        ByteBuffer record = record(gameId);
+        return record == null ? null : new SavedGame(record, catalog);
+    }
+
+    /**
+     * Gets a read-only view of the saved bytes of a game.
+     *
+     * @param gameId the game id
+     * @return the saved game, or null if no game is saved under the id; the view keeps the
+     *         segment mapped for as long as it is reachable
+     * @throws IllegalStateException if the store has been closed
+     */
+    public synchronized ByteBuffer record(long gameId)
+    {
+        ensureOpen();
+        int slot = find(gameId);
+        if (slot < 0) {
+            return null;
+        }
+        int base = slotOffset(slot);
+        Segment segment = segments.get(index.getInt(base + 12));
+        int offset = index.getInt(base + 16) + RECORD_HEADER;
+        return segment.buffer.asReadOnlyBuffer().position(offset).limit(offset + index.getInt(base + 20)).slice();
+    }
+
+    /**
+     * Removes the save of a game.
+     *
+     * @param gameId the game id
+     * @return true if a game was saved under the id
+     * @throws IllegalStateException if the store has been closed
+     */
+    public synchronized boolean remove(long gameId)
+    {
+        ensureOpen();
+        int slot = find(gameId);
+        if (slot < 0) {
+            return false;
+        }
+        release(slot);
+        index.putInt(slotOffset(slot), REMOVED);
+        live--;
+        removed++;
+        return true;
+    }
+
+    /**
+     * Checks whether a game is saved under an id.
+     *
+     * @param gameId the game id
+     * @return true if the store holds the game
+     * @throws IllegalStateException if the store has been closed
+     */
+    public synchronized boolean contains(long gameId)
+    {
+        ensureOpen();
+        return find(gameId) >= 0;
+    }
+
+    /**
+     * Lists the ids of the saved games, reading only the index.
+     *
+     * @return the game ids, in index order
+     * @throws IllegalStateException if the store has been closed
+     */
+    public synchronized List<Long> gameIds()
+    {
+        ensureOpen();
+        List<Long> ids = new ArrayList<>(live);
+        for (int slot = 0; slot < slots; slot++) {
+            if (state(slot) == LIVE) {
+                ids.add(index.getLong(slotOffset(slot) + 4));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Gets the number of saved games.
+     *
+     * @return the number of games
+     */
+    public synchronized int size()
+    {
+        return live;
+    }
+
+    /**
+     * Gets the number of segment files.
+     *
+     * @return the number of segments
+     */
+    public synchronized int segmentCount()
+    {
+        return segments.size();
+    }
+
+    /**
+     * Copies the live records out of every segment other than the current one whose live bytes
+     * have fallen below half of its used space, retires those segments and clears removed slots
+     * from the index. A retired segment's file is deleted once the store no longer refers to its
+     * mapping; a file the operating system will not delete yet is retried later.
+     *
+     * @return the number of segments retired
+     * @throws IOException if a segment cannot be created
+     */
+    public synchronized int compact() throws IOException
+    {
+        ensureOpen();
+        List<Segment> sparse = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            long used = segment.free() - SEGMENT_HEADER;
+            if (segment != current && segment.liveBytes < used * COMPACT_BELOW) {
+                sparse.add(segment);
+            }
+        }
+        for (Segment segment : sparse) {
+            // appending may roll over to new segments, and every one written must reach the
+            // device before the index points at it and the source is deleted
+            List<Segment> written = new ArrayList<>();
+            for (int slot = 0; slot < slots; slot++) {
+                int base = slotOffset(slot);
+                if (state(slot) == LIVE && index.getInt(base + 12) == segment.number) {
+                    int length = index.getInt(base + 20);
+                    byte[] data = new byte[length];
+                    segment.buffer.get(index.getInt(base + 16) + RECORD_HEADER, data);
+                    int offset = append(index.getLong(base + 4), data);
+                    index.putInt(base + 12, current.number);
+                    index.putInt(base + 16, offset);
+                    current.liveBytes += RECORD_HEADER + length;
+                    if (!written.contains(current)) {
+                        written.add(current);
+                    }
+                }
+            }
+            for (Segment target : written) {
+                target.buffer.force();
+            }
+            index.force();
+            segments.remove(segment.number);
+            segment.buffer = null;
+            retired.add(segmentPath(segment.number));
+        }
+        deleteRetired();
+        if (removed > 0) {
+            rebuildIndex();
+        }
+        return sparse.size();
+    }
+
+    /**
+     * Flushes the index and segments to the storage device.
+     *
+     * @throws IllegalStateException if the store has been closed
+     */
+    public synchronized void force()
+    {
+        ensureOpen();
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+        }
+        index.force();
+    }
+
+    /**
+     * Flushes the store and drops its references to the mapped files, which are released once no
+     * view of them is reachable, and retries deleting retired segments.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (closed) {
+            return;
+        }
+        force();
+        closed = true;
+        for (Segment segment : segments.values()) {
+            segment.buffer = null;
+        }
+        segments.clear();
+        current = null;
+        index = null;
+        deleteRetired();
+    }
+
+    /**
+     * Deletes the files of retired segments, keeping those the operating system refuses to delete
+     * while they are still mapped.
+     */
+    private void deleteRetired()
+    {
+        for (Iterator<Path> files = retired.iterator(); files.hasNext(); ) {
+            try {
+                Files.deleteIfExists(files.next());
+                files.remove();
+            } catch (IOException e) {
+                // still mapped somewhere; retried by the next compaction or on close
+            }
+        }
+    }
+
+    /**
+     * Checks that the store is open.
+     *
+     * @throws IllegalStateException if the store has been closed
+     */
+    private void ensureOpen()
+    {
+        if (closed) {
+            throw new IllegalStateException("Save store has been closed");
+        }
+    }
+
+    /**
+     * Appends a record to the current segment, starting a new segment if it does not fit.
+     *
+     * @param gameId the game id
+     * @param data the saved game
+     * @return the offset of the record
+     * @throws IOException if a new segment cannot be created
+     */
+    private int append(long gameId, byte[] data) throws IOException
+    {
+        int offset = current.free();
+        if ((long) offset + RECORD_HEADER + data.length > segmentBytes) {
+            current = newSegment(segments.lastKey() + 1);
+            offset = current.free();
+        }
+        ByteBuffer buffer = current.buffer;
+        buffer.putLong(offset, gameId);
+        buffer.putInt(offset + 8, data.length);
+        buffer.put(offset + RECORD_HEADER, data);
+        buffer.putInt(4, offset + RECORD_HEADER + data.length);
+        return offset;
+    }
+
+    /**
+     * Marks the record a slot points to as dead.
+     *
+     * @param slot the slot
+     */
+    private void release(int slot)
+    {
+        int base = slotOffset(slot);
+        Segment segment = segments.get(index.getInt(base + 12));
+        segment.liveBytes -= RECORD_HEADER + index.getInt(base + 20);
+    }
+
+    /**
+     * Finds the live slot of a game.
+     *
+     * @param gameId the game id
+     * @return the slot, or -1 if the game is not in the index
+     */
+    private int find(long gameId)
+    {
+        int mask = slots - 1;
+        for (int slot = hash(gameId) & mask, probes = 0; probes < slots; slot = (slot + 1) & mask, probes++) {
+            int state = state(slot);
+            if (state == EMPTY) {
+                return -1;
+            }
+            if (state == LIVE && index.getLong(slotOffset(slot) + 4) == gameId) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first empty or removed slot on a game's probe sequence.
+     *
+     * @param gameId the game id
+     * @return the slot
+     */
+    private int freeSlot(long gameId)
+    {
+        int mask = slots - 1;
+        int slot = hash(gameId) & mask;
+        while (state(slot) == LIVE) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Reinserts the live slots so that removed slots no longer lengthen probe sequences.
+     */
+    private void rebuildIndex()
+    {
+        List<long[]> entries = new ArrayList<>(live);
+        for (int slot = 0; slot < slots; slot++) {
+            int base = slotOffset(slot);
+            if (state(slot) == LIVE) {
+                entries.add(new long[] {index.getLong(base + 4), index.getInt(base + 12), index.getInt(base + 16), index.getInt(base + 20)});
+            }
+            index.putInt(base, EMPTY);
+        }
+        for (long[] entry : entries) {
+            int base = slotOffset(freeSlot(entry[0]));
+            index.putLong(base + 4, entry[0]);
+            index.putInt(base + 12, (int) entry[1]);
+            index.putInt(base + 16, (int) entry[2]);
+            index.putInt(base + 20, (int) entry[3]);
+            index.putInt(base, LIVE);
+        }
+        removed = 0;
+    }
+
+    /**
+     * Gets the state of a slot.
+     *
+     * @param slot the slot
+     * @return {@link #EMPTY}, {@link #LIVE} or {@link #REMOVED}
+     */
+    private int state(int slot)
+    {
+        return index.getInt(slotOffset(slot));
+    }
+
+    /**
+     * Gets the offset of a slot in the index file.
+     *
+     * @param slot the slot
+     * @return the offset
+     */
+    private int slotOffset(int slot)
+    {
+        return INDEX_HEADER + slot * SLOT_BYTES;
+    }
+
+    /**
+     * Creates and maps an empty segment.
+     *
+     * @param number the segment number
+     * @return the segment
+     * @throws IOException if the file cannot be created
+     */
+    private Segment newSegment(int number) throws IOException
+    {
+        MappedByteBuffer buffer = map(segmentPath(number), segmentBytes);
+        buffer.putInt(4, SEGMENT_HEADER);
+        buffer.putInt(0, MAGIC);
+        Segment segment = new Segment(number, buffer);
+        segments.put(number, segment);
+        return segment;
+    }
+
+    /**
+     * Maps an existing segment.
+     *
+     * @param number the segment number
+     * @return the segment
+     * @throws IOException if the file cannot be mapped or is not a segment
+     */
+    private Segment mapSegment(int number) throws IOException
+    {
+        MappedByteBuffer buffer = map(segmentPath(number), segmentBytes);
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a save store segment: " + segmentPath(number));
+        }
+        return new Segment(number, buffer);
+    }
+
+    /**
+     * Gets the path of a segment.
+     *
+     * @param number the segment number
+     * @return the path
+     */
+    private Path segmentPath(int number)
+    {
+        return directory.resolve(String.format("data-%06d.seg", number));
+    }
+
+    /**
+     * Maps a file for reading and writing, extending it to the given size.
+     *
+     * @param file the file
+     * @param size the size to map
+     * @return the mapping
+     * @throws IOException if the file cannot be mapped
+     */
+    private static MappedByteBuffer map(Path file, long size) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Spreads a game id over the index.
+     *
+     * @param gameId the game id
+     * @return the hash
+     */
+    private static int hash(long gameId)
+    {
+        long h = gameId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,173 @@
+package persistence;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import bakery.CardCatalog;
+import bakery.EmptyPantryException;
+import bakery.MagicBakery;
+import bakery.SaveFormat;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+
+/**
+ * Compares the size and speed of the {@link SaveFormat} save format with Java serialization of
+ * the whole game, which {@link MagicBakery#saveState} used before.
+ *
+ * Usage: {@code java persistence.SaveBenchmark [players] [actions] [seconds]}
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class SaveBenchmark {
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private SaveBenchmark()
+    {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * A way of writing and reading a game.
+     */
+    private interface Codec {
+        /**
+         * Writes a game.
+         *
+         * @param bakery the game
+         * @return the bytes
+         * @throws Exception if the game cannot be written
+         */
+        byte[] save(MagicBakery bakery) throws Exception;
+
+        /**
+         * Reads a game.
+         *
+         * @param data the bytes
+         * @return the game
+         * @throws Exception if the game cannot be read
+         */
+        MagicBakery load(byte[] data) throws Exception;
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional number of players, actions to play before saving and seconds per measurement
+     * @throws Exception if the deck files cannot be read
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int numPlayers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int actions = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 2;
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < numPlayers; i++) {
+            names.add("Player " + (i + 1));
+        }
+        MagicBakery bakery = new MagicBakery(1, "./io/ingredients.csv", "./io/layers.csv");
+        bakery.startGame(names, "./io/customers.csv");
+        play(bakery, actions);
+
+        Codec serialization = new Codec() {
+            public byte[] save(MagicBakery game) throws IOException
+            {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(game);
+                }
+                return bytes.toByteArray();
+            }
+
+            public MagicBakery load(byte[] data) throws Exception
+            {
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+                    return (MagicBakery) in.readObject();
+                }
+            }
+        };
+        Codec compact = new Codec() {
+            public byte[] save(MagicBakery game)
+            {
+                return SaveFormat.toBytes(game);
+            }
+
+            public MagicBakery load(byte[] data) throws IOException
+            {
+                return SaveFormat.fromBytes(data);
+            }
+        };
+
+        System.out.printf("%d players after %d actions%n", numPlayers, actions);
+        report("serialization", serialization, bakery, seconds);
+        report("save format", compact, bakery, seconds);
+    }
+
+    /**
+     * Measures and prints the size, save time and load time of one codec.
+     *
+     * @param label the name of the codec
+     * @param codec the codec
+     * @param bakery the game to save
+     * @param seconds the time to spend on each measurement
+     * @throws Exception if the game cannot be written or read
+     */
+    private static void report(String label, Codec codec, MagicBakery bakery, double seconds) throws Exception
+    {
+        byte[] data = codec.save(bakery);
+        long saves = 0;
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        while (System.nanoTime() < end) {
+            codec.save(bakery);
+            saves++;
+        }
+        double saveMicros = (System.nanoTime() - start) / 1e3 / saves;
+
+        long loads = 0;
+        start = System.nanoTime();
+        end = start + (long) (seconds * 1e9);
+        while (System.nanoTime() < end) {
+            codec.load(data);
+            loads++;
+        }
+        double loadMicros = (System.nanoTime() - start) / 1e3 / loads;
+        System.out.printf("%-14s %7d bytes  save %8.1f us  load %8.1f us%n", label, data.length, saveMicros, loadMicros);
+    }
+
+    /**
+     * Plays random actions, ignoring the ones the rules refuse.
+     *
+     * @param bakery the game
+     * @param actions the number of actions to attempt
+     */
+    private static void play(MagicBakery bakery, int actions)
+    {
+        CardCatalog catalog = bakery.getCardCatalog();
+        Random choices = new Random(2);
+        for (int i = 0; i < actions; i++) {
+            try {
+                switch (choices.nextInt(3)) {
+                    case 0:
+                        bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+                        break;
+                    case 1:
+                        bakery.refreshPantry();
+                        break;
+                    default:
+                        bakery.endTurn();
+                }
+            } catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+                // refused by the rules, try something else
+            }
+        }
+    }
+}
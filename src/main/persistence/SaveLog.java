@@ -0,0 +1,521 @@
+package persistence;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+import bakery.MagicBakery;
+import bakery.SaveFormat;
+
+/**
+ * Saves many games into shared append-only segment files, syncing once per batch of saves.
+ *
+ * Callers encode their game with {@link SaveFormat} on their own thread and queue the bytes. A
+ * single writer thread takes everything queued, appends it to the current segment, forces the
+ * segment to the storage device once and only then completes the callers' futures, so the cost of
+ * a sync is shared by every save that arrived while the previous one was running. An index in
+ * memory maps each game id to the location of its latest record.
+ *
+ * Each record is a header of payload length, game id and CRC-32 of the payload, followed by the
+ * saved game. Segments are named {@code segment-NNNNNN.log} and a new one is started once the
+ * current one passes the size limit. Opening a log scans the segments to rebuild the index, and
+ * cuts off a record left incomplete at the end of the last segment by a crash.
+ *
+ * A batch that cannot be written or synced is cut off the segment again, so a later batch never
+ * follows a torn record. If even that fails the log is marked failed: every queued and later save
+ * is refused, and the log must be closed and opened again.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class SaveLog implements Closeable {
+    /** Bytes in a record header */
+    private static final int HEADER_BYTES = 16;
+
+    /** Most saves written under one sync */
+    private static final int MAX_BATCH = 4096;
+
+    /** The log directory */
+    private final Path directory;
+
+    /** Size after which a new segment is started */
+    private final long segmentBytes;
+
+    /** Latest record of each game */
+    private final Map<Long, Location> index = new ConcurrentHashMap<>();
+
+    /** Saves waiting for the writer */
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+
+    /** The writer thread */
+    private final Thread writer;
+
+    /** Number of the segment being appended to, used only by the writer after opening */
+    private volatile int segment;
+
+    /** The segment being appended to, used only by the writer after opening */
+    private FileChannel channel;
+
+    /** Number of syncs performed */
+    private volatile long syncs;
+
+    /** Whether the log has been closed, guarded by the queue so no save is queued after closing */
+    private boolean closed;
+
+    /** Why the log stopped accepting saves, or null while it is healthy */
+    private volatile IOException failure;
+
+    /**
+     * Where a saved game is stored.
+     */
+    private static final class Location {
+        /** The segment number */
+        private final int segment;
+
+        /** Offset of the record header in the segment */
+        private final long offset;
+
+        /** Length of the saved game */
+        private final int length;
+
+        /**
+         * Creates a location.
+         *
+         * @param segment the segment number
+         * @param offset the offset of the record header
+         * @param length the length of the saved game
+         */
+        private Location(int segment, long offset, int length)
+        {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A save queued for the writer.
+     */
+    private static final class Request {
+        /** The game id */
+        private final long gameId;
+
+        /** The saved game, or null to stop the writer */
+        private final byte[] data;
+
+        /** Completed once the record is durable */
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        /**
+         * Creates a request.
+         *
+         * @param gameId the game id
+         * @param data the saved game
+         */
+        private Request(long gameId, byte[] data)
+        {
+            this.gameId = gameId;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Creates a log over its scanned segments and starts the writer.
+     *
+     * @param directory the log directory
+     * @param segmentBytes the size after which a new segment is started
+     * @param segment the number of the last segment
+     * @param channel the last segment, positioned at its end
+     */
+    private SaveLog(Path directory, long segmentBytes, int segment, FileChannel channel)
+    {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segment = segment;
+        this.channel = channel;
+        this.writer = new Thread(this::run, "bakery-save-log");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Opens the log in a directory, creating it if needed.
+     *
+     * @param directory the log directory
+     * @param segmentBytes the size after which a new segment is started
+     * @return the open log
+     * @throws IOException if the segments cannot be read
+     * @throws IllegalArgumentException if the segment size is not positive
+     */
+    public static SaveLog open(Path directory, long segmentBytes) throws IOException
+    {
+        if (segmentBytes <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        Files.createDirectories(directory);
+        List<Integer> segments = segmentNumbers(directory);
+        Map<Long, Location> found = new ConcurrentHashMap<>();
+        long end = 0;
+        for (int number : segments) {
+            end = scan(directory, number, found);
+        }
+        int last = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        FileChannel channel = FileChannel.open(segmentPath(directory, last),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(end);
+        channel.position(end);
+        SaveLog log = new SaveLog(directory, segmentBytes, last, channel);
+        log.index.putAll(found);
+        log.writer.start();
+        return log;
+    }
+
+    /**
+     * Queues a game to be saved under an id.
+     *
+     * @param gameId the game id
+     * @param bakery the game, which may be played on as soon as this method returns
+     * @return a future completed once the save is durable, or exceptionally if it cannot be written
+     * @throws IllegalStateException if the log has been closed or has failed
+     */
+    public CompletableFuture<Void> save(long gameId, MagicBakery bakery)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            SaveFormat.write(bakery, bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return save(gameId, bytes.toByteArray());
+    }
+
+    /**
+     * Queues an already saved game to be stored under an id.
+     *
+     * @param gameId the game id
+     * @param data the game in the format of {@link SaveFormat}
+     * @return a future completed once the save is durable, or exceptionally if it cannot be written
+     * @throws IllegalStateException if the log has been closed or has failed
+     */
+    public CompletableFuture<Void> save(long gameId, byte[] data)
+    {
+        if (failure != null) {
+            throw new IllegalStateException("Save log has failed", failure);
+        }
+        Request request = new Request(gameId, data);
+        synchronized (queue) {
+            if (closed) {
+                throw new IllegalStateException("Save log has been closed");
+            }
+            queue.add(request);
+        }
+        return request.done;
+    }
+
+    /**
+     * Loads the latest durable save of a game.
+     *
+     * @param gameId the game id
+     * @return the game, or null if it has never been saved
+     * @throws IOException if the record cannot be read or is not a saved game
+     */
+    public MagicBakery load(long gameId) throws IOException
+    {
+        byte[] data = read(gameId);
+        if (data == null) {
+            return null;
+        }
+        try {
+            return SaveFormat.read(new ByteArrayInputStream(data));
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Record of game " + gameId + " is not a saved game", e);
+        }
+    }
+
+    /**
+     * Reads the bytes of the latest durable save of a game.
+     *
+     * @param gameId the game id
+     * @return the saved game, or null if it has never been saved
+     * @throws IOException if the record cannot be read
+     */
+    public byte[] read(long gameId) throws IOException
+    {
+        Location location = index.get(gameId);
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer data = ByteBuffer.allocate(location.length);
+        try (FileChannel in = FileChannel.open(segmentPath(directory, location.segment), StandardOpenOption.READ)) {
+            long position = location.offset + HEADER_BYTES;
+            while (data.hasRemaining()) {
+                if (in.read(data, position + data.position()) < 0) {
+                    throw new IOException("Record of game " + gameId + " is truncated");
+                }
+            }
+        }
+        return data.array();
+    }
+
+    /**
+     * Gets the ids of the saved games.
+     *
+     * @return an unmodifiable view of the ids
+     */
+    public Set<Long> gameIds()
+    {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * Gets the number of syncs performed since the log was opened.
+     *
+     * @return the number of syncs
+     */
+    public long syncCount()
+    {
+        return syncs;
+    }
+
+    /**
+     * Gets the number of the segment being appended to.
+     *
+     * @return the segment number
+     */
+    public int currentSegment()
+    {
+        return segment;
+    }
+
+    /**
+     * Gets the error that made the log refuse saves.
+     *
+     * @return the error, or null if the log is accepting saves
+     */
+    public IOException getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * Writes the saves queued before closing started, refuses any later ones and closes the log.
+     *
+     * @throws IOException if interrupted while waiting for the writer
+     */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(new Request(0, null));
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing save log", e);
+        }
+        channel.close();
+        for (Request request : queue) {
+            request.done.completeExceptionally(new IllegalStateException("Save log has been closed"));
+        }
+        queue.clear();
+    }
+
+    /**
+     * Writer loop: takes everything queued, appends it, syncs once and publishes the locations.
+     */
+    private void run()
+    {
+        List<Request> batch = new ArrayList<>();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            if (batch.get(batch.size() - 1).data == null) {
+                batch.remove(batch.size() - 1);
+                stop = true;
+            }
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Appends a batch of saves under one sync. If the batch cannot be written or synced, whatever
+     * part of it reached the segment is cut off again; if that fails too the log is marked failed.
+     *
+     * @param batch the saves
+     */
+    private void writeBatch(List<Request> batch)
+    {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (failure != null) {
+            fail(batch, new IOException("Save log has failed", failure));
+            return;
+        }
+        long start = -1;
+        try {
+            if (channel.position() >= segmentBytes) {
+                FileChannel next = FileChannel.open(segmentPath(directory, segment + 1),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                channel.close();
+                channel = next;
+                segment++;
+            }
+            start = channel.position();
+            int total = 0;
+            for (Request request : batch) {
+                total += HEADER_BYTES + request.data.length;
+            }
+            ByteBuffer out = ByteBuffer.allocate(total);
+            List<Location> locations = new ArrayList<>(batch.size());
+            CRC32 crc = new CRC32();
+            for (Request request : batch) {
+                locations.add(new Location(segment, start + out.position(), request.data.length));
+                crc.reset();
+                crc.update(request.data);
+                out.putInt(request.data.length);
+                out.putLong(request.gameId);
+                out.putInt((int) crc.getValue());
+                out.put(request.data);
+            }
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(false);
+            syncs++;
+            for (int i = 0; i < batch.size(); i++) {
+                index.put(batch.get(i).gameId, locations.get(i));
+            }
+            for (Request request : batch) {
+                request.done.complete(null);
+            }
+        } catch (IOException e) {
+            if (start >= 0) {
+                discard(start, e);
+            }
+            fail(batch, e);
+        }
+    }
+
+    /**
+     * Cuts a failed batch off the end of the segment, or marks the log failed if it cannot.
+     *
+     * @param start the offset the batch was written at
+     * @param cause the error that failed the batch
+     */
+    private void discard(long start, IOException cause)
+    {
+        try {
+            channel.truncate(start);
+            channel.position(start);
+        } catch (IOException e) {
+            e.addSuppressed(cause);
+            failure = e;
+        }
+    }
+
+    /**
+     * Completes saves exceptionally.
+     *
+     * @param batch the saves
+     * @param cause the error
+     */
+    private static void fail(List<Request> batch, IOException cause)
+    {
+        for (Request request : batch) {
+            request.done.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Reads the records of a segment into an index, stopping at the first incomplete or corrupt one.
+     *
+     * @param directory the log directory
+     * @param number the segment number
+     * @param index the index to add to
+     * @return the offset after the last good record
+     * @throws IOException if the segment cannot be read
+     */
+    private static long scan(Path directory, int number, Map<Long, Location> index) throws IOException
+    {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segmentPath(directory, number)));
+        CRC32 crc = new CRC32();
+        while (data.remaining() >= HEADER_BYTES) {
+            int start = data.position();
+            int length = data.getInt();
+            long gameId = data.getLong();
+            int checksum = data.getInt();
+            if (length < 0 || length > data.remaining()) {
+                return start;
+            }
+            crc.reset();
+            crc.update(data.array(), data.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                return start;
+            }
+            index.put(gameId, new Location(number, start, length));
+            data.position(data.position() + length);
+        }
+        return data.position();
+    }
+
+    /**
+     * Lists the segment numbers in a directory in ascending order.
+     *
+     * @param directory the log directory
+     * @return the segment numbers
+     * @throws IOException if the directory cannot be listed
+     */
+    private static List<Integer> segmentNumbers(Path directory) throws IOException
+    {
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                numbers.add(Integer.parseInt(name.substring(8, name.length() - 4)));
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Gets the path of a segment.
+     *
+     * @param directory the log directory
+     * @param number the segment number
+     * @return the segment path
+     */
+    private static Path segmentPath(Path directory, int number)
+    {
+        return directory.resolve(String.format("segment-%06d.log", number));
+    }
+}
@@ -0,0 +1,267 @@
+package server;
+import java.util.ArrayList;
+import java.util.List;
+
+import bakery.CardCatalog;
+import bakery.CustomerOrder;
+import bakery.Ingredient;
+import bakery.Layer;
+import bakery.MagicBakery;
+import bakery.MagicBakery.ActionType;
+import bakery.Player;
+
+/**
+ * One player action sent to a hosted game, with its arguments as {@link CardCatalog} ids.
+ *
+ * The operation is an {@link ActionType} ordinal or {@link #END_TURN}, as in the batch kernel.
+ * Arguments are ids rather than names so that an action can be parsed and checked without the
+ * game, and so that it is a few bytes on the wire.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class Action {
+    /** Operation code that ends the current player's turn, after the {@link ActionType} ordinals */
+    public static final int END_TURN = ActionType.values().length;
+
+    /** Argument value for an unused argument */
+    public static final int NONE = -1;
+
+    /** The operation */
+    private final int op;
+
+    /** Card or customer id, or {@link #NONE} */
+    private final int first;
+
+    /** Recipient seat or garnish flag, or {@link #NONE} */
+    private final int second;
+
+    /**
+     * Creates an action.
+     *
+     * @param op the operation
+     * @param first the card or customer id, or {@link #NONE}
+     * @param second the recipient seat or garnish flag, or {@link #NONE}
+     * @throws IllegalArgumentException if the operation is unknown
+     */
+    public Action(int op, int first, int second)
+    {
+        if (op < 0 || op > END_TURN) {
+            throw new IllegalArgumentException("Unknown operation " + op);
+        }
+        this.op = op;
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * Creates an action that draws an ingredient from the pantry.
+     *
+     * @param card the card id
+     * @return the action
+     */
+    public static Action draw(int card)
+    {
+        return new Action(ActionType.DRAW_INGREDIENT.ordinal(), card, NONE);
+    }
+
+    /**
+     * Creates an action that passes a card to another player.
+     *
+     * @param card the card id
+     * @param recipient the recipient's seat
+     * @return the action
+     */
+    public static Action pass(int card, int recipient)
+    {
+        return new Action(ActionType.PASS_INGREDIENT.ordinal(), card, recipient);
+    }
+
+    /**
+     * Creates an action that bakes a layer.
+     *
+     * @param layer the card id of the layer
+     * @return the action
+     */
+    public static Action bake(int layer)
+    {
+        return new Action(ActionType.BAKE_LAYER.ordinal(), layer, NONE);
+    }
+
+    /**
+     * Creates an action that fulfils a customer order.
+     *
+     * @param customer the customer id
+     * @param garnish whether to garnish the order
+     * @return the action
+     */
+    public static Action fulfil(int customer, boolean garnish)
+    {
+        return new Action(ActionType.FULFIL_ORDER.ordinal(), customer, garnish ? 1 : 0);
+    }
+
+    /**
+     * Creates an action that refreshes the pantry.
+     *
+     * @return the action
+     */
+    public static Action refresh()
+    {
+        return new Action(ActionType.REFRESH_PANTRY.ordinal(), NONE, NONE);
+    }
+
+    /**
+     * Creates an action that ends the current player's turn.
+     *
+     * @return the action
+     */
+    public static Action endTurn()
+    {
+        return new Action(END_TURN, NONE, NONE);
+    }
+
+    /**
+     * Gets the operation.
+     *
+     * @return an {@link ActionType} ordinal or {@link #END_TURN}
+     */
+    public int getOp()
+    {
+        return op;
+    }
+
+    /**
+     * Gets the card or customer id.
+     *
+     * @return the id, or {@link #NONE}
+     */
+    public int getFirst()
+    {
+        return first;
+    }
+
+    /**
+     * Gets the recipient seat or garnish flag.
+     *
+     * @return the value, or {@link #NONE}
+     */
+    public int getSecond()
+    {
+        return second;
+    }
+
+    /**
+     * Performs the action on a game.
+     *
+     * @param bakery the game
+     * @throws IllegalArgumentException if an id does not name a card, layer, customer or seat of the game
+     * @throws bakery.WrongIngredientsException if the game refuses the action for lack of ingredients
+     * @throws bakery.TooManyActionsException if the current player has no actions left
+     * @throws bakery.EmptyPantryException if the pantry cannot be refilled
+     */
+    public void applyTo(MagicBakery bakery)
+    {
+        CardCatalog catalog = bakery.getCardCatalog();
+        if (op == END_TURN) {
+            bakery.endTurn();
+            return;
+        }
+        switch (ActionType.values()[op]) {
+            case DRAW_INGREDIENT:
+                bakery.drawFromPantry(card(catalog).toString());
+                break;
+            case PASS_INGREDIENT:
+                List<Player> players = new ArrayList<>(bakery.getPlayers());
+                if (second < 0 || second >= players.size()) {
+                    throw new IllegalArgumentException("No player in seat " + second);
+                }
+                bakery.passCard(card(catalog), players.get(second));
+                break;
+            case BAKE_LAYER:
+                Ingredient layer = card(catalog);
+                if (!(layer instanceof Layer)) {
+                    throw new IllegalArgumentException("Card " + first + " is not a layer");
+                }
+                bakery.bakeLayer((Layer) layer);
+                break;
+            case FULFIL_ORDER:
+                bakery.fulfillOrder(customer(bakery, catalog), second == 1);
+                break;
+            default:
+                bakery.refreshPantry();
+        }
+    }
+
+    /**
+     * Looks up the card argument.
+     *
+     * @param catalog the card catalog
+     * @return the card
+     * @throws IllegalArgumentException if the id does not name a card
+     */
+    private Ingredient card(CardCatalog catalog)
+    {
+        if (first < 0 || first >= catalog.cardCount()) {
+            throw new IllegalArgumentException("Unknown card " + first);
+        }
+        return catalog.card(first);
+    }
+
+    /**
+     * Finds the customer argument in the customer row.
+     *
+     * @param bakery the game
+     * @param catalog the card catalog
+     * @return the customer order
+     * @throws IllegalArgumentException if the customer is not waiting
+     */
+    private CustomerOrder customer(MagicBakery bakery, CardCatalog catalog)
+    {
+        for (CustomerOrder order : bakery.getCustomers().getActiveCustomers()) {
+            if (order != null && catalog.customerId(order) == first) {
+                return order;
+            }
+        }
+        throw new IllegalArgumentException("Customer " + first + " is not waiting");
+    }
+
+    /**
+     * Checks whether another object is the same action.
+     *
+     * @param obj the object to compare with
+     * @return true if the object is an action with the same operation and arguments
+     */
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof Action)) {
+            return false;
+        }
+        Action other = (Action) obj;
+        return op == other.op && first == other.first && second == other.second;
+    }
+
+    /**
+     * Gets a hash code consistent with {@link #equals}.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode()
+    {
+        return (op * 31 + first) * 31 + second;
+    }
+
+    /**
+     * Gets a readable form of the action.
+     *
+     * @return the operation name and arguments
+     */
+    @Override
+    public String toString()
+    {
+        String name = op == END_TURN ? "END_TURN" : ActionType.values()[op].name();
+        return name + "(" + first + ", " + second + ")";
+    }
+}
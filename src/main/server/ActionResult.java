@@ -0,0 +1,150 @@
+package server;
+import bakery.MagicBakery;
+import bakery.Player;
+
+/**
+ * The outcome of an {@link Action} on a hosted game: whether the game accepted it and, either way,
+ * whose turn it is afterwards and how many actions they have left.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class ActionResult {
+    /** The action */
+    private final Action action;
+
+    /** Simple name of the exception the game threw, or null if the action was accepted */
+    private final String error;
+
+    /** Message of the exception, or null */
+    private final String message;
+
+    /** Seat of the current player after the action */
+    private final int currentPlayer;
+
+    /** Actions the current player has left after the action */
+    private final int actionsRemaining;
+
+    /**
+     * Creates a result.
+     *
+     * @param action the action
+     * @param error the simple name of the exception thrown, or null
+     * @param message the message of the exception, or null
+     * @param currentPlayer the seat of the current player after the action
+     * @param actionsRemaining the actions the current player has left
+     */
+    public ActionResult(Action action, String error, String message, int currentPlayer, int actionsRemaining)
+    {
+        this.action = action;
+        this.error = error;
+        this.message = message;
+        this.currentPlayer = currentPlayer;
+        this.actionsRemaining = actionsRemaining;
+    }
+
+    /**
+     * Records an accepted action.
+     *
+     * @param action the action
+     * @param bakery the game after the action
+     * @return the result
+     */
+    static ActionResult accepted(Action action, MagicBakery bakery)
+    {
+        return new ActionResult(action, null, null, seatOf(bakery), bakery.getActionsRemaining());
+    }
+
+    /**
+     * Records a refused action.
+     *
+     * @param action the action
+     * @param cause the exception the game threw
+     * @param bakery the game after the attempt
+     * @return the result
+     */
+    static ActionResult refused(Action action, RuntimeException cause, MagicBakery bakery)
+    {
+        return new ActionResult(action, cause.getClass().getSimpleName(), cause.getMessage(), seatOf(bakery), bakery.getActionsRemaining());
+    }
+
+    /**
+     * Gets the seat of the current player.
+     *
+     * @param bakery the game
+     * @return the seat index, or -1 if the game has no current player
+     */
+    static int seatOf(MagicBakery bakery)
+    {
+        Player current = bakery.getCurrentPlayer();
+        int seat = 0;
+        for (Player player : bakery.getPlayers()) {
+            if (player == current) {
+                return seat;
+            }
+            seat++;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the action.
+     *
+     * @return the action
+     */
+    public Action getAction()
+    {
+        return action;
+    }
+
+    /**
+     * Checks whether the game accepted the action.
+     *
+     * @return true if no exception was thrown
+     */
+    public boolean isOk()
+    {
+        return error == null;
+    }
+
+    /**
+     * Gets the simple name of the exception the game threw.
+     *
+     * @return the exception name, or null if the action was accepted
+     */
+    public String getError()
+    {
+        return error;
+    }
+
+    /**
+     * Gets the message of the exception the game threw.
+     *
+     * @return the message, or null
+     */
+    public String getMessage()
+    {
+        return message;
+    }
+
+    /**
+     * Gets the seat of the current player after the action.
+     *
+     * @return the seat index
+     */
+    public int getCurrentPlayer()
+    {
+        return currentPlayer;
+    }
+
+    /**
+     * Gets the actions the current player has left after the action.
+     *
+     * @return the number of actions
+     */
+    public int getActionsRemaining()
+    {
+        return actionsRemaining;
+    }
+}
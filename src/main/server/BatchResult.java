@@ -0,0 +1,102 @@
+package server;
+import java.util.Collections;
+import java.util.List;
+
+import bakery.StateDiff;
+
+/**
+ * The outcome of a batch of {@link Action}s applied to a hosted game in one message: a result for
+ * each action the game was given, and one diff covering the whole batch.
+ *
+ * The game stops at the first action it refuses, so every result but possibly the last is
+ * accepted and the actions after a refused one are not attempted.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class BatchResult {
+    /** A result for each action attempted, in order */
+    private final List<ActionResult> results;
+
+    /** Number of actions in the batch */
+    private final int requested;
+
+    /** Changes from the view before the batch to the view after it */
+    private final StateDiff diff;
+
+    /**
+     * Creates a batch result.
+     *
+     * @param results the results of the actions attempted, in order
+     * @param requested the number of actions in the batch
+     * @param diff the changes the batch made
+     */
+    public BatchResult(List<ActionResult> results, int requested, StateDiff diff)
+    {
+        this.results = Collections.unmodifiableList(results);
+        this.requested = requested;
+        this.diff = diff;
+    }
+
+    /**
+     * Gets the results of the actions attempted.
+     *
+     * @return an unmodifiable list with a result for each action up to and including the first
+     *         refused one
+     */
+    public List<ActionResult> getResults()
+    {
+        return results;
+    }
+
+    /**
+     * Gets the number of actions the game accepted.
+     *
+     * @return the number of actions applied
+     */
+    public int appliedCount()
+    {
+        return isComplete() || results.isEmpty() ? results.size() : results.size() - 1;
+    }
+
+    /**
+     * Checks whether every action in the batch was applied.
+     *
+     * @return true if the game accepted them all
+     */
+    public boolean isComplete()
+    {
+        return results.size() == requested && (results.isEmpty() || results.get(results.size() - 1).isOk());
+    }
+
+    /**
+     * Gets the result of the action that stopped the batch.
+     *
+     * @return the refused action's result, or null if every action was applied
+     */
+    public ActionResult getFailure()
+    {
+        return isComplete() ? null : results.get(results.size() - 1);
+    }
+
+    /**
+     * Gets the result of the last action attempted, which says whose turn it is after the batch.
+     *
+     * @return the last result, or null for an empty batch
+     */
+    public ActionResult getLast()
+    {
+        return results.isEmpty() ? null : results.get(results.size() - 1);
+    }
+
+    /**
+     * Gets the changes the batch made, as one diff from the version before it.
+     *
+     * @return the diff
+     */
+    public StateDiff getDiff()
+    {
+        return diff;
+    }
+}
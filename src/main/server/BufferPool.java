@@ -0,0 +1,109 @@
+package server;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of equally sized byte buffers for encoding frames, so that sending an update allocates
+ * nothing once the pool has warmed up.
+ *
+ * Any thread may take and return buffers. At most a fixed number of idle buffers are kept; buffers
+ * returned beyond that, or of another size, are left to the garbage collector.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class BufferPool {
+    /** Capacity of every pooled buffer */
+    private final int bufferSize;
+
+    /** Most idle buffers kept */
+    private final int maxIdle;
+
+    /** Whether buffers are allocated outside the heap */
+    private final boolean direct;
+
+    /** Idle buffers */
+    private final Queue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+
+    /** Number of idle buffers */
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /** Number of buffers allocated */
+    private final AtomicLong allocated = new AtomicLong();
+
+    /**
+     * Creates a pool.
+     *
+     * @param bufferSize the capacity of every buffer
+     * @param maxIdle the most idle buffers kept
+     * @param direct whether to allocate direct buffers, which sockets can write without copying
+     * @throws IllegalArgumentException if a size is not positive
+     */
+    public BufferPool(int bufferSize, int maxIdle, boolean direct)
+    {
+        if (bufferSize <= 0 || maxIdle <= 0) {
+            throw new IllegalArgumentException("Pool sizes must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.maxIdle = maxIdle;
+        this.direct = direct;
+    }
+
+    /**
+     * Takes a buffer from the pool, allocating one if none is idle.
+     *
+     * @return an empty buffer, positioned at zero with its limit at its capacity
+     */
+    public ByteBuffer acquire()
+    {
+        ByteBuffer buffer = idle.poll();
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        idleCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The caller must not use it afterwards.
+     *
+     * @param buffer the buffer
+     */
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+            return;
+        }
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(buffer);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the capacity of the pooled buffers.
+     *
+     * @return the capacity in bytes
+     */
+    public int bufferSize()
+    {
+        return bufferSize;
+    }
+
+    /**
+     * Gets the number of buffers allocated so far.
+     *
+     * @return the number of allocations
+     */
+    public long allocationCount()
+    {
+        return allocated.get();
+    }
+}
@@ -0,0 +1,143 @@
+package server;
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs game creation on its own few threads, behind a bounded queue, so that a burst of new games
+ * cannot take the processors from the games already being played.
+ *
+ * Creating a game deals and shuffles every deck, which costs far more than an action. At most a
+ * fixed number of creations run at once and a fixed number wait; a creation submitted beyond that
+ * is rejected straight away with a {@link RejectedExecutionException}, and the caller either turns
+ * the request away or tries again later, recording which in {@link #getStats()} alongside how long
+ * each creation waited.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class CreationScheduler implements Closeable {
+    /** The creation threads and their bounded queue */
+    private final ThreadPoolExecutor pool;
+
+    /** Waiting times and rejections */
+    private final QueueStats stats = new QueueStats();
+
+    /**
+     * A queued creation and the future it completes.
+     *
+     * @param <T> the result type
+     */
+    private final class Creation<T> implements Runnable {
+        /** The creation */
+        private final Callable<T> creation;
+
+        /** Completed with the creation's result */
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        /** When the creation was queued, in {@link System#nanoTime()} */
+        private final long queuedAt = System.nanoTime();
+
+        /**
+         * Wraps a creation.
+         *
+         * @param creation the creation
+         */
+        private Creation(Callable<T> creation)
+        {
+            this.creation = creation;
+        }
+
+        /**
+         * Runs the creation, recording how long it waited.
+         */
+        @Override
+        public void run()
+        {
+            stats.started(System.nanoTime() - queuedAt);
+            try {
+                result.complete(creation.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Starts the creation threads.
+     *
+     * @param threads the most creations run at once
+     * @param queueCapacity the most creations waiting to run
+     * @throws IllegalArgumentException if a limit is not positive
+     */
+    public CreationScheduler(int threads, int queueCapacity)
+    {
+        if (threads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Creation limits must be positive");
+        }
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), task -> {
+                Thread thread = new Thread(task, "bakery-create-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queues a creation.
+     *
+     * @param <T> the result type
+     * @param creation the creation
+     * @return a future completed with the creation's result, or exceptionally with what it threw
+     * @throws RejectedExecutionException if the queue is full or the scheduler is closed
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> creation)
+    {
+        Creation<T> task = new Creation<>(creation);
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException e) {
+            throw new RejectedExecutionException("Game creation queue is full", e);
+        }
+        return task.result;
+    }
+
+    /**
+     * Gets the number of creations waiting to run.
+     *
+     * @return the queue length
+     */
+    public int queuedCount()
+    {
+        return pool.getQueue().size();
+    }
+
+    /**
+     * Gets the waiting times of the creations run so far, and the rejections and deferrals their
+     * callers recorded.
+     *
+     * @return the statistics
+     */
+    public QueueStats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * Stops the creation threads. Creations still queued complete exceptionally.
+     */
+    @Override
+    public void close()
+    {
+        for (Runnable queued : pool.shutdownNow()) {
+            ((Creation<?>) queued).result.completeExceptionally(new RejectedExecutionException("Game creation stopped"));
+        }
+    }
+}
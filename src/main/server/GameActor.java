@@ -0,0 +1,279 @@
+package server;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import bakery.GameView;
+import bakery.MagicBakery;
+import bakery.StateDiff;
+
+/**
+ * Owns one hosted game and applies the messages sent to it one at a time.
+ *
+ * {@link MagicBakery} is not thread-safe, so nothing touches the game except this actor. Any
+ * thread may post a message; it goes into the actor's mailbox, and the actor is scheduled on the
+ * shared executor if it is not already running. While running it processes up to
+ * {@value #QUANTUM} messages and then gives the thread back, so one busy game cannot hold a worker
+ * from the others. At most one thread runs an actor at any time, so the game needs no locks, and
+ * messages from one sender are applied in the order they were posted. A client with several
+ * actions to make, such as two draws and a turn end, can post them as one batch (see
+ * {@link #submitAll(List)}), which is applied in a single message and answered with one reply.
+ *
+ * After each message the game's latest view goes to its {@link GameFeed}, so spectators see every
+ * action without touching the game, and a client that reconnects is sent only what changed since
+ * the version it last saw (see {@link #resync(long)}). The feed delivers on its own executor, not
+ * the actor's: a spectator that blocks in {@code onNext} would otherwise hold a shard worker, and
+ * every game on that shard would wait behind it.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class GameActor {
+    /**
+     * Holds the spectator pool of actors not given one, created on first use.
+     */
+    private static final class SharedSpectators {
+        /** Threads delivering feeds to spectators */
+        private static final Executor POOL = Threads.newPerTaskExecutor("bakery-spectator");
+    }
+
+    /** Most messages processed per scheduling */
+    static final int QUANTUM = 64;
+
+    /** Most updates queued for a spectator before they are coalesced into a snapshot */
+    static final int FEED_BUFFER = 64;
+
+    /** Recent views kept for clients that reconnect */
+    static final int FEED_HISTORY = 256;
+
+    /** The game id */
+    private final long id;
+
+    /** The game, touched only while the actor is running */
+    private final MagicBakery bakery;
+
+    /** The executor the actor runs on */
+    private final Executor executor;
+
+    /** Messages waiting to be processed */
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+
+    /** Whether the actor is running or queued to run */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** Spectator feed, published to after every message */
+    private final GameFeed feed;
+
+    /**
+     * Creates an actor for a started game whose spectators are served by a pool shared with every
+     * other actor created this way.
+     *
+     * @param id the game id
+     * @param bakery the game, which must not be used by anything else afterwards
+     * @param executor the executor to run on
+     */
+    public GameActor(long id, MagicBakery bakery, Executor executor)
+    {
+        this(id, bakery, executor, SharedSpectators.POOL);
+    }
+
+    /**
+     * Creates an actor for a started game.
+     *
+     * @param id the game id
+     * @param bakery the game, which must not be used by anything else afterwards
+     * @param executor the executor to run on
+     * @param spectators the executor that delivers the game's feed, which should not be the one
+     *        the actor runs on, so that a slow spectator cannot hold up games
+     */
+    public GameActor(long id, MagicBakery bakery, Executor executor, Executor spectators)
+    {
+        this.id = id;
+        this.bakery = bakery;
+        this.executor = executor;
+        this.feed = new GameFeed(bakery.getView(), spectators, FEED_BUFFER, FEED_HISTORY);
+    }
+
+    /**
+     * Gets the game id.
+     *
+     * @return the id
+     */
+    public long getId()
+    {
+        return id;
+    }
+
+    /**
+     * Posts an action to the game.
+     *
+     * @param action the action
+     * @return a future completed with the result once the action has been applied
+     */
+    public CompletableFuture<ActionResult> submit(Action action)
+    {
+        return ask(game -> apply(game, action));
+    }
+
+    /**
+     * Posts a batch of actions to the game as one message, so they are applied one after another
+     * with nothing from other senders in between and cost one wakeup and one reply between them.
+     *
+     * @param actions the actions, in order
+     * @return a future completed with the batch's results once it has been applied
+     */
+    public CompletableFuture<BatchResult> submitAll(List<Action> actions)
+    {
+        List<Action> batch = List.copyOf(actions);
+        return ask(game -> applyAll(game, batch));
+    }
+
+    /**
+     * Posts a function to run on the game, for reading state or driving it directly.
+     *
+     * @param <T> the result type
+     * @param query the function, which must not keep references to the game
+     * @return a future completed with the function's result, or exceptionally with what it threw
+     */
+    public <T> CompletableFuture<T> ask(Function<MagicBakery, T> query)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        mailbox.add(() -> {
+            T value;
+            try {
+                value = query.apply(bakery);
+            } catch (RuntimeException e) {
+                feed.publish(bakery.getView());
+                result.completeExceptionally(e);
+                return;
+            }
+            // published before the reply, so a client that has its reply can resync past it
+            feed.publish(bakery.getView());
+            result.complete(value);
+        });
+        schedule();
+        return result;
+    }
+
+    /**
+     * Gets the latest view of the game. This reads the view the game published after its last
+     * action, so it never waits for the actor or the messages queued before it.
+     *
+     * @return the view
+     */
+    public GameView getView()
+    {
+        return bakery.getView();
+    }
+
+    /**
+     * Gets the spectator feed of the game, which streams a diff after every action, and one diff
+     * for a whole batch.
+     *
+     * @return the feed
+     */
+    public GameFeed getFeed()
+    {
+        return feed;
+    }
+
+    /**
+     * Works out what a reconnecting client needs, without waiting for the actor.
+     *
+     * @param lastVersion the version the client last saw
+     * @return the diff from that version to the latest view, or a snapshot if that version is no
+     *         longer kept
+     */
+    public StateDiff resync(long lastVersion)
+    {
+        return feed.resync(lastVersion);
+    }
+
+    /**
+     * Gets the number of messages waiting.
+     *
+     * @return the mailbox size
+     */
+    public int pendingCount()
+    {
+        return mailbox.size();
+    }
+
+    /**
+     * Applies an action, turning a refusal by the game into a result.
+     *
+     * @param game the game
+     * @param action the action
+     * @return the result
+     */
+    static ActionResult apply(MagicBakery game, Action action)
+    {
+        try {
+            action.applyTo(game);
+            return ActionResult.accepted(action, game);
+        } catch (RuntimeException e) {
+            return ActionResult.refused(action, e, game);
+        }
+    }
+
+    /**
+     * Applies actions in order until the game refuses one, turning each outcome into a result.
+     *
+     * @param game the game
+     * @param actions the actions
+     * @return the results of the actions attempted and the changes they made together
+     */
+    static BatchResult applyAll(MagicBakery game, List<Action> actions)
+    {
+        GameView before = game.getView();
+        List<ActionResult> results = new ArrayList<>(actions.size());
+        for (Action action : actions) {
+            ActionResult result = apply(game, action);
+            results.add(result);
+            if (!result.isOk()) {
+                // later actions were planned on this one having happened
+                break;
+            }
+        }
+        return new BatchResult(results, actions.size(), StateDiff.between(before, game.getView()));
+    }
+
+    /**
+     * Queues the actor on the executor unless it is already running or queued.
+     */
+    private void schedule()
+    {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Processes up to a quantum of messages, then reschedules if more have arrived. Whatever a
+     * message throws goes on to the executor once the actor has been released.
+     */
+    private void drain()
+    {
+        try {
+            for (int i = 0; i < QUANTUM; i++) {
+                Runnable message = mailbox.poll();
+                if (message == null) {
+                    break;
+                }
+                message.run();
+            }
+        } finally {
+            // even when a message throws, or the actor would never run again
+            scheduled.set(false);
+            if (!mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
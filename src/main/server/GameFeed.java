@@ -0,0 +1,411 @@
+package server;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import bakery.GameView;
+import bakery.StateDiff;
+
+/**
+ * Streams the state of one game to any number of spectators as a {@link Flow.Publisher} of
+ * {@link StateDiff}s.
+ *
+ * Each subscriber first receives a snapshot of the current view and then one diff per published
+ * view. The diff is worked out once per action and shared by every subscriber, so a table with
+ * hundreds of watchers costs one diff and a queue offer per watcher, not a re-rendering each.
+ *
+ * Delivery honours each subscriber's demand and runs on an executor, never on the publishing
+ * thread, so a slow watcher cannot hold up the game or the other watchers. Each subscriber has a
+ * bounded queue; when a subscriber falls so far behind that its queue fills, the queued diffs are
+ * dropped and replaced by a single snapshot of the latest view, after which diffs resume from that
+ * view. A slow watcher therefore skips intermediate states rather than stalling or exhausting
+ * memory.
+ *
+ * The feed also keeps the last few views in a bounded ring, so that a client that reconnects
+ * with the version it last saw can be sent one diff from that version instead of a full snapshot
+ * (see {@link #resync(long)}). The diff is worked out against the kept view rather than by chaining
+ * the diffs in between, so a card drawn and then discarded in the meantime costs nothing.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class GameFeed implements Flow.Publisher<StateDiff> {
+    /** Recent views kept for resyncing clients unless another number is given */
+    public static final int DEFAULT_HISTORY = 256;
+
+    /** Executor that delivers to subscribers */
+    private final Executor executor;
+
+    /** Most updates queued for one subscriber before they are coalesced into a snapshot */
+    private final int bufferSize;
+
+    /** Current subscriptions */
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    /** The latest published view */
+    private volatile GameView latest;
+
+    /** Whether the feed has completed */
+    private volatile boolean closed;
+
+    /** Number of times a subscriber's queue was coalesced into a snapshot */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /** Recently published views, written only by the publishing thread */
+    private final AtomicReferenceArray<GameView> history;
+
+    /** Number of views written to the history */
+    private long recorded;
+
+    /** Number of resyncs answered with a full snapshot */
+    private final AtomicLong resyncSnapshots = new AtomicLong();
+
+    /**
+     * One subscriber's queue and demand.
+     */
+    private final class Subscription implements Flow.Subscription, Runnable {
+        /** The subscriber */
+        private final Flow.Subscriber<? super StateDiff> subscriber;
+
+        /** Updates waiting for demand, guarded by this subscription */
+        private final ArrayDeque<StateDiff> pending = new ArrayDeque<>();
+
+        /** Version of the view the last queued update leads to, guarded by this subscription */
+        private long queuedVersion = -1;
+
+        /** Items requested and not yet delivered */
+        private final AtomicLong demand = new AtomicLong();
+
+        /** Number of drain requests not yet seen by the delivery loop */
+        private final AtomicInteger work = new AtomicInteger();
+
+        /** Whether the subscriber has cancelled or failed */
+        private volatile boolean cancelled;
+
+        /** Whether the subscriber has been told the feed is complete */
+        private boolean completed;
+
+        /** Error to report for a bad request, set once */
+        private volatile IllegalArgumentException error;
+
+        /**
+         * Creates a subscription.
+         *
+         * @param subscriber the subscriber
+         */
+        private Subscription(Flow.Subscriber<? super StateDiff> subscriber)
+        {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Adds demand for more updates.
+         *
+         * @param n the number of updates, which must be positive
+         */
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Demand must be positive, was " + n);
+            } else {
+                demand.accumulateAndGet(n, (current, more) -> current + more < 0 ? Long.MAX_VALUE : current + more);
+            }
+            schedule();
+        }
+
+        /**
+         * Stops delivery to the subscriber.
+         */
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        /**
+         * Queues an update, coalescing the queue into a snapshot if it is full. An update the
+         * subscriber's starting snapshot already covers is dropped.
+         *
+         * @param diff the update
+         */
+        private void offer(StateDiff diff)
+        {
+            synchronized (this) {
+                if (diff.getToVersion() <= queuedVersion) {
+                    return;
+                }
+                if (pending.size() >= bufferSize) {
+                    pending.clear();
+                    pending.add(StateDiff.snapshot(diff.getView()));
+                    coalesced.incrementAndGet();
+                } else {
+                    pending.add(diff);
+                }
+                queuedVersion = diff.getToVersion();
+            }
+            schedule();
+        }
+
+        /**
+         * Puts the first update at the head of the queue, dropping queued updates it covers. The
+         * subscription is registered before the first update is worked out, so no update in
+         * between is missed.
+         *
+         * @param first a snapshot, or a diff from the version the subscriber already has
+         */
+        private void start(StateDiff first)
+        {
+            synchronized (this) {
+                pending.removeIf(diff -> diff.getToVersion() <= first.getToVersion());
+                pending.addFirst(first);
+                queuedVersion = Math.max(queuedVersion, first.getToVersion());
+            }
+        }
+
+        /**
+         * Makes sure the delivery loop runs once more.
+         */
+        private void schedule()
+        {
+            if (work.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Delivers queued updates while there is demand, then completes the subscriber if the feed
+         * has closed and nothing is left.
+         */
+        @Override
+        public void run()
+        {
+            int missed = 1;
+            do {
+                deliver();
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Delivers as many queued updates as the demand allows.
+         */
+        private void deliver()
+        {
+            if (cancelled || completed) {
+                return;
+            }
+            if (error != null) {
+                cancel();
+                subscriber.onError(error);
+                return;
+            }
+            while (demand.get() > 0) {
+                StateDiff next;
+                synchronized (this) {
+                    next = pending.poll();
+                }
+                if (next == null) {
+                    break;
+                }
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                try {
+                    subscriber.onNext(next);
+                } catch (RuntimeException e) {
+                    cancel();
+                    return;
+                }
+                if (cancelled) {
+                    return;
+                }
+            }
+            boolean drained;
+            synchronized (this) {
+                drained = pending.isEmpty();
+            }
+            if (closed && drained) {
+                completed = true;
+                subscriptions.remove(this);
+                subscriber.onComplete();
+            }
+        }
+    }
+
+    /**
+     * Creates a feed that keeps {@value #DEFAULT_HISTORY} recent views.
+     *
+     * @param initial the current view of the game
+     * @param executor the executor that delivers to subscribers
+     * @param bufferSize the most updates queued for a subscriber before they are coalesced
+     * @throws IllegalArgumentException if the buffer size is not positive
+     */
+    public GameFeed(GameView initial, Executor executor, int bufferSize)
+    {
+        this(initial, executor, bufferSize, DEFAULT_HISTORY);
+    }
+
+    /**
+     * Creates a feed.
+     *
+     * @param initial the current view of the game
+     * @param executor the executor that delivers to subscribers
+     * @param bufferSize the most updates queued for a subscriber before they are coalesced
+     * @param historySize the number of recent views kept for resyncing clients
+     * @throws IllegalArgumentException if a size is not positive
+     */
+    public GameFeed(GameView initial, Executor executor, int bufferSize, int historySize)
+    {
+        if (bufferSize <= 0 || historySize <= 0) {
+            throw new IllegalArgumentException("Buffer and history sizes must be positive");
+        }
+        this.latest = initial;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.history = new AtomicReferenceArray<>(historySize);
+        record(initial);
+    }
+
+    /**
+     * Adds a subscriber. Its first update is a snapshot of the latest view.
+     *
+     * @param subscriber the subscriber
+     * @throws NullPointerException if the subscriber is null
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super StateDiff> subscriber)
+    {
+        subscribe(subscriber, -1);
+    }
+
+    /**
+     * Adds a subscriber that already has a version of the game, such as a spectator reconnecting.
+     * Its first update is the diff from that version to the latest view if the version is still
+     * kept, or else a snapshot of the latest view.
+     *
+     * @param subscriber the subscriber
+     * @param lastVersion the version the subscriber last saw, or -1 for none
+     * @throws NullPointerException if the subscriber is null
+     */
+    public void subscribe(Flow.Subscriber<? super StateDiff> subscriber, long lastVersion)
+    {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber is null");
+        }
+        Subscription subscription = new Subscription(subscriber);
+        subscriptions.add(subscription);
+        subscription.start(lastVersion < 0 ? StateDiff.snapshot(latest) : resync(lastVersion));
+        subscriber.onSubscribe(subscription);
+        subscription.schedule();
+    }
+
+    /**
+     * Works out what a client that last saw a given version needs to catch up. Any thread may
+     * call this.
+     *
+     * @param lastVersion the version the client last saw
+     * @return the diff from that version to the latest view, which has no changes if the client
+     *         is up to date, or a snapshot of the latest view if that version is no longer kept
+     */
+    public StateDiff resync(long lastVersion)
+    {
+        GameView now = latest;
+        if (lastVersion == now.getVersion()) {
+            return StateDiff.between(now, now);
+        }
+        if (lastVersion >= 0 && lastVersion < now.getVersion()) {
+            for (int i = 0; i < history.length(); i++) {
+                GameView kept = history.get(i);
+                if (kept != null && kept.getVersion() == lastVersion) {
+                    return StateDiff.between(kept, now);
+                }
+            }
+        }
+        resyncSnapshots.incrementAndGet();
+        return StateDiff.snapshot(now);
+    }
+
+    /**
+     * Publishes the view a game reached after an action. Only the thread playing the game should
+     * call this. Publishing the same view again does nothing.
+     *
+     * @param view the new view
+     */
+    public void publish(GameView view)
+    {
+        GameView previous = latest;
+        if (view == previous || closed) {
+            return;
+        }
+        record(view);
+        latest = view;
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        StateDiff diff = StateDiff.between(previous, view);
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(diff);
+        }
+    }
+
+    /**
+     * Completes every subscriber once it has received what is queued for it. Later views are not
+     * published.
+     */
+    public void close()
+    {
+        closed = true;
+        for (Subscription subscription : subscriptions) {
+            subscription.schedule();
+        }
+    }
+
+    /**
+     * Keeps a view in the history, overwriting the oldest.
+     *
+     * @param view the view
+     */
+    private void record(GameView view)
+    {
+        history.set((int) (recorded++ % history.length()), view);
+    }
+
+    /**
+     * Gets the number of current subscribers.
+     *
+     * @return the number of subscribers
+     */
+    public int subscriberCount()
+    {
+        return subscriptions.size();
+    }
+
+    /**
+     * Gets the number of times a slow subscriber's queue was replaced by a snapshot.
+     *
+     * @return the number of coalesces
+     */
+    public long coalesceCount()
+    {
+        return coalesced.get();
+    }
+
+    /**
+     * Gets the number of resyncs that had to send a full snapshot because the client's version
+     * was no longer kept.
+     *
+     * @return the number of snapshot resyncs
+     */
+    public long resyncSnapshotCount()
+    {
+        return resyncSnapshots.get();
+    }
+}
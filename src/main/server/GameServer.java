@@ -0,0 +1,596 @@
+package server;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bakery.CardCatalog;
+import bakery.CardDecks;
+import bakery.GameView;
+import bakery.Ingredient;
+import bakery.MagicBakery;
+import bakery.StateDiff;
+import util.JdkRandomSource;
+
+/**
+ * Hosts many games at once and serves them over a line-based protocol on a localhost socket.
+ *
+ * Every game is owned by a {@link GameActor} homed on one shard of a {@link ShardedScheduler}, so
+ * the engine is only ever used by one thread at a time and idle shards take games from busy ones.
+ * Every connection is served by its own thread, virtual where the runtime supports it (see
+ * {@link Threads}), which blocks on the socket and on the replies of the games it talks to.
+ *
+ * Requests and replies are single lines of space-separated words, with cards, layers and customers
+ * given as {@link CardCatalog} ids:
+ * <ul>
+ * <li>{@code NEW seed name...} creates a game and replies {@code OK game}</li>
+ * <li>{@code JOIN name} waits in the {@link Lobby} for a table and replies
+ * {@code OK game seat players}</li>
+ * <li>{@code ACT game op first second} applies an {@link Action} and replies
+ * {@code OK seat actions} or {@code REFUSED error seat actions}, where seat and actions describe
+ * the current player afterwards</li>
+ * <li>{@code BATCH game op,first,second...} applies several actions in order in one message,
+ * stopping at the first the game refuses, and replies {@code OK applied seat actions} or
+ * {@code REFUSED applied error seat actions}, where applied is the number of actions accepted,
+ * followed by the {@code DIFF} the whole batch made, as for {@code SYNC}; arguments left off an
+ * action are {@link Action#NONE}</li>
+ * <li>{@code STATE game} replies {@code OK seat actions hash pantry}, with the pantry as
+ * comma-separated card ids, read from the game's latest {@link GameView} without waiting for it</li>
+ * <li>{@code SYNC game version}, sent by a client reconnecting with the version it last saw, or
+ * with -1 to learn the current version, replies {@code OK DIFF version hash change...} with the
+ * changes since then, each as {@code kind,subject,from,to} (see {@link StateDiff}), or
+ * {@code OK SNAPSHOT version seat actions hash pantry}, with the state as for {@code STATE}, if
+ * that version is no longer kept</li>
+ * <li>{@code STATS} replies with the waiting times of game creations and actions, and how many
+ * were turned away</li>
+ * <li>{@code QUIT} closes the connection</li>
+ * </ul>
+ * A malformed request gets {@code ERR message}.
+ *
+ * Game creation runs on its own {@link CreationScheduler}, behind a bounded queue, and the number
+ * of actions waiting across all games is capped, so a burst of {@code NEW} requests cannot starve
+ * the games being played and a flood of actions cannot grow the mailboxes without bound. A
+ * request turned away for either reason gets {@code BUSY message} and may be retried.
+ *
+ * An {@link HttpApi} serves the same games as JSON over HTTP, for web clients.
+ *
+ * Usage: {@code java server.GameServer [port] [shards]}
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class GameServer implements Closeable {
+    /** Preferred number of players at a lobby table */
+    static final int LOBBY_TABLE_SIZE = 4;
+
+    /** Longest a lobby player waits for a full table before a smaller one is formed */
+    static final long LOBBY_MAX_WAIT_MILLIS = 2000;
+
+    /** Most games created at once */
+    static final int CREATE_THREADS = 1;
+
+    /** Most game creations waiting to run */
+    static final int CREATE_QUEUE = 64;
+
+    /** Most actions waiting for or being applied by their games, across all games */
+    static final int MAX_PENDING_ACTIONS = 4096;
+
+    /** Most actions in one batch, so a batch cannot hold a shard much longer than a quantum */
+    static final int MAX_BATCH = GameActor.QUANTUM;
+
+    /** Hosted games by id */
+    private final Map<Long, GameActor> games = new ConcurrentHashMap<>();
+
+    /** Source of game ids */
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /** Shards the game actors run on */
+    private final ShardedScheduler shards;
+
+    /** Threads serving connections */
+    private final ExecutorService connections;
+
+    /** Threads delivering game feeds to spectators, apart from the shards */
+    private final ExecutorService spectators;
+
+    /** Open client sockets, closed with the server */
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+
+    /** The listening socket */
+    private final ServerSocket listener;
+
+    /** Thread accepting connections */
+    private final Thread acceptor;
+
+    /** Decks every game is dealt from */
+    private final CardDecks decks;
+
+    /** Lobby seating players who send {@code JOIN} */
+    private final Lobby lobby;
+
+    /** Runs game creation apart from the games being played */
+    private final CreationScheduler creation = new CreationScheduler(CREATE_THREADS, CREATE_QUEUE);
+
+    /** Permits for actions waiting for or being applied by their games */
+    private final Semaphore actionPermits = new Semaphore(MAX_PENDING_ACTIONS);
+
+    /** Waiting times of actions in their games' mailboxes, and actions turned away */
+    private final QueueStats actionStats = new QueueStats();
+
+    /**
+     * Starts a server listening on the loopback interface.
+     *
+     * @param port the port, or 0 for any free port
+     * @param shards the number of shards the games run on
+     * @throws IOException if the deck files cannot be read or the socket cannot be opened
+     */
+    public GameServer(int port, int shards) throws IOException
+    {
+        this.decks = CardDecks.load("./io/ingredients.csv", "./io/layers.csv", "./io/customers.csv");
+        this.shards = new ShardedScheduler(shards);
+        this.lobby = new Lobby(this, LOBBY_TABLE_SIZE, LOBBY_MAX_WAIT_MILLIS);
+        this.connections = Threads.newPerTaskExecutor("bakery-connection");
+        this.spectators = Threads.newPerTaskExecutor("bakery-spectator");
+        this.listener = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        this.acceptor = new Thread(this::accept, "bakery-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * Runs a server until the process is stopped.
+     *
+     * @param args optional port and number of shards
+     * @throws IOException if the socket cannot be opened
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        int shards = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        GameServer server = new GameServer(port, shards);
+        System.out.printf("Listening on port %d with %d shards, %s threads per connection%n", server.getPort(), shards,
+                Threads.virtualThreadsAvailable() ? "virtual" : "platform");
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort()
+    {
+        return listener.getLocalPort();
+    }
+
+    /**
+     * Creates and starts a game.
+     *
+     * @param seed the seed of the game's random number generator
+     * @param playerNames the players
+     * @return the game id
+     * @throws IllegalArgumentException if the number of players is not allowed
+     */
+    public long createGame(long seed, List<String> playerNames)
+    {
+        return createGames(new long[] {seed}, Collections.singletonList(playerNames))[0];
+    }
+
+    /**
+     * Creates and starts a batch of games, dealt from the server's shared decks. Either every game
+     * is created or none is.
+     *
+     * @param seeds the seed of each game's random number generator
+     * @param tables the players of each game
+     * @return the game ids, in the order of the tables
+     * @throws IllegalArgumentException if the number of seeds and tables differ, or the number of
+     *         players at a table is not allowed
+     */
+    public long[] createGames(long[] seeds, List<List<String>> tables)
+    {
+        if (seeds.length != tables.size()) {
+            throw new IllegalArgumentException(seeds.length + " seeds for " + tables.size() + " tables");
+        }
+        MagicBakery[] dealt = new MagicBakery[seeds.length];
+        for (int i = 0; i < dealt.length; i++) {
+            dealt[i] = new MagicBakery(new JdkRandomSource(seeds[i]), decks);
+            try {
+                dealt[i].startGame(tables.get(i), "./io/customers.csv");
+            } catch (FileNotFoundException e) {
+                throw new IllegalStateException("Shared decks did not start a game", e);
+            }
+        }
+        long[] ids = new long[dealt.length];
+        long first = nextId.getAndAdd(dealt.length);
+        for (int i = 0; i < dealt.length; i++) {
+            ids[i] = first + i;
+            games.put(ids[i], new GameActor(ids[i], dealt[i], shards.forKey(ids[i]), spectators));
+        }
+        return ids;
+    }
+
+    /**
+     * Queues a batch of games on the creation threads, which keeps a burst of new games from
+     * holding up the games being played.
+     *
+     * @param seeds the seed of each game's random number generator
+     * @param tables the players of each game
+     * @return a future completed with the game ids, or exceptionally as {@link #createGames} throws
+     * @throws RejectedExecutionException if the creation queue is full
+     */
+    public CompletableFuture<long[]> scheduleGames(long[] seeds, List<List<String>> tables)
+    {
+        return creation.submit(() -> createGames(seeds, tables));
+    }
+
+    /**
+     * Gets how long game creations waited and how many were turned away or put off.
+     *
+     * @return the creation statistics
+     */
+    public QueueStats getCreationStats()
+    {
+        return creation.getStats();
+    }
+
+    /**
+     * Gets how long actions waited in their games' mailboxes and how many were turned away.
+     *
+     * @return the action statistics
+     */
+    public QueueStats getActionStats()
+    {
+        return actionStats;
+    }
+
+    /**
+     * Gets the lobby that seats players who send {@code JOIN}.
+     *
+     * @return the lobby
+     */
+    public Lobby getLobby()
+    {
+        return lobby;
+    }
+
+    /**
+     * Gets a hosted game.
+     *
+     * @param id the game id
+     * @return the game's actor, or null if there is no such game
+     */
+    public GameActor getGame(long id)
+    {
+        return games.get(id);
+    }
+
+    /**
+     * Gets the number of hosted games.
+     *
+     * @return the number of games
+     */
+    public int gameCount()
+    {
+        return games.size();
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and stops the shards and the spectator
+     * threads.
+     *
+     * @throws IOException if the listening socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        lobby.close();
+        creation.close();
+        listener.close();
+        for (Socket client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                // already closing
+            }
+        }
+        connections.shutdownNow();
+        spectators.shutdownNow();
+        shards.close();
+    }
+
+    /**
+     * Accepts connections until the listening socket is closed.
+     */
+    private void accept()
+    {
+        while (!listener.isClosed()) {
+            try {
+                Socket client = listener.accept();
+                client.setTcpNoDelay(true);
+                clients.add(client);
+                connections.execute(() -> serve(client));
+            } catch (IOException e) {
+                // the listener was closed
+            }
+        }
+    }
+
+    /**
+     * Answers the requests of one connection until it is closed.
+     *
+     * @param client the connection
+     */
+    private void serve(Socket client)
+    {
+        try (Socket socket = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String request = line.trim();
+                if (request.equals("QUIT")) {
+                    break;
+                }
+                out.write(handle(request));
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client went away
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    /**
+     * Answers one request.
+     *
+     * @param request the request line
+     * @return the reply line
+     */
+    String handle(String request)
+    {
+        String[] words = request.split(" +");
+        try {
+            switch (words[0]) {
+                case "NEW":
+                    if (words.length < 2) {
+                        return "ERR Usage: NEW seed name...";
+                    }
+                    List<String> names = new ArrayList<>(Arrays.asList(words).subList(2, words.length));
+                    return "OK " + create(Long.parseLong(words[1]), names);
+                case "ACT":
+                    if (words.length != 5) {
+                        return "ERR Usage: ACT game op first second";
+                    }
+                    Action action = new Action(Integer.parseInt(words[2]), Integer.parseInt(words[3]), Integer.parseInt(words[4]));
+                    ActionResult result = play(game(words[1]), action);
+                    String turn = result.getCurrentPlayer() + " " + result.getActionsRemaining();
+                    return result.isOk() ? "OK " + turn : "REFUSED " + result.getError() + " " + turn;
+                case "BATCH":
+                    if (words.length < 3) {
+                        return "ERR Usage: BATCH game op,first,second...";
+                    }
+                    List<Action> actions = new ArrayList<>(words.length - 2);
+                    for (int i = 2; i < words.length; i++) {
+                        actions.add(parseAction(words[i]));
+                    }
+                    BatchResult batch = playAll(game(words[1]), actions);
+                    ActionResult last = batch.getLast();
+                    String after = last.getCurrentPlayer() + " " + last.getActionsRemaining() + " " + describe(batch.getDiff());
+                    return batch.isComplete() ? "OK " + batch.appliedCount() + " " + after
+                        : "REFUSED " + batch.appliedCount() + " " + last.getError() + " " + after;
+                case "JOIN":
+                    if (words.length != 2) {
+                        return "ERR Usage: JOIN name";
+                    }
+                    Seat seat = lobby.join(words[1]).get();
+                    return "OK " + seat.getGame() + " " + seat.getIndex() + " " + seat.getTableSize();
+                case "STATS":
+                    return "OK create " + creation.getStats() + " queued " + creation.queuedCount()
+                        + " | action " + actionStats + " pending " + (MAX_PENDING_ACTIONS - actionPermits.availablePermits());
+                case "STATE":
+                    if (words.length != 2) {
+                        return "ERR Usage: STATE game";
+                    }
+                    return "OK " + describe(game(words[1]).getView());
+                case "SYNC":
+                    if (words.length != 3) {
+                        return "ERR Usage: SYNC game version";
+                    }
+                    return "OK " + describe(game(words[1]).resync(Long.parseLong(words[2])));
+                default:
+                    return "ERR Unknown request " + words[0];
+            }
+        } catch (IllegalArgumentException e) {
+            return "ERR " + e.getMessage();
+        } catch (RejectedExecutionException e) {
+            return "BUSY " + e.getMessage();
+        } catch (ExecutionException e) {
+            return "ERR " + e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERR Interrupted";
+        }
+    }
+
+    /**
+     * Creates a game for a request on the creation threads, counting it if the queue turns it away.
+     *
+     * @param seed the seed of the game's random number generator
+     * @param names the players
+     * @return the game id
+     * @throws RejectedExecutionException if the creation queue is full
+     * @throws ExecutionException if the game could not be created
+     * @throws InterruptedException if interrupted while waiting for the game
+     */
+    long create(long seed, List<String> names) throws ExecutionException, InterruptedException
+    {
+        CompletableFuture<long[]> created;
+        try {
+            created = scheduleGames(new long[] {seed}, Collections.singletonList(names));
+        } catch (RejectedExecutionException e) {
+            creation.getStats().rejected();
+            throw e;
+        }
+        return created.get()[0];
+    }
+
+    /**
+     * Applies an action for a request, unless too many actions are already waiting.
+     *
+     * @param actor the game
+     * @param action the action
+     * @return the result
+     * @throws RejectedExecutionException if too many actions are waiting
+     * @throws ExecutionException if the game failed
+     * @throws InterruptedException if interrupted while waiting for the game
+     */
+    ActionResult play(GameActor actor, Action action) throws ExecutionException, InterruptedException
+    {
+        if (!actionPermits.tryAcquire()) {
+            actionStats.rejected();
+            throw new RejectedExecutionException("Too many actions waiting");
+        }
+        try {
+            long queuedAt = System.nanoTime();
+            return actor.ask(game -> {
+                actionStats.started(System.nanoTime() - queuedAt);
+                return GameActor.apply(game, action);
+            }).get();
+        } finally {
+            actionPermits.release();
+        }
+    }
+
+    /**
+     * Applies a batch of actions for a request, unless too many actions are already waiting. The
+     * batch holds a permit for each of its actions.
+     *
+     * @param actor the game
+     * @param actions the actions, in order
+     * @return the batch's results
+     * @throws IllegalArgumentException if the batch is empty or longer than {@link #MAX_BATCH}
+     * @throws RejectedExecutionException if too many actions are waiting
+     * @throws ExecutionException if the game failed
+     * @throws InterruptedException if interrupted while waiting for the game
+     */
+    BatchResult playAll(GameActor actor, List<Action> actions) throws ExecutionException, InterruptedException
+    {
+        if (actions.isEmpty() || actions.size() > MAX_BATCH) {
+            throw new IllegalArgumentException("A batch takes 1 to " + MAX_BATCH + " actions, not " + actions.size());
+        }
+        if (!actionPermits.tryAcquire(actions.size())) {
+            actionStats.rejected();
+            throw new RejectedExecutionException("Too many actions waiting");
+        }
+        try {
+            long queuedAt = System.nanoTime();
+            List<Action> batch = List.copyOf(actions);
+            return actor.ask(game -> {
+                long wait = System.nanoTime() - queuedAt;
+                for (int i = 0; i < batch.size(); i++) {
+                    actionStats.started(wait);
+                }
+                return GameActor.applyAll(game, batch);
+            }).get();
+        } finally {
+            actionPermits.release(actions.size());
+        }
+    }
+
+    /**
+     * Reads an action written as {@code op,first,second}, with missing arguments taken as
+     * {@link Action#NONE}.
+     *
+     * @param word the action
+     * @return the action
+     * @throws IllegalArgumentException if the action is malformed or its operation unknown
+     */
+    static Action parseAction(String word)
+    {
+        String[] parts = word.split(",", -1);
+        if (parts.length > 3) {
+            throw new IllegalArgumentException("Malformed action " + word);
+        }
+        int first = parts.length > 1 ? Integer.parseInt(parts[1]) : Action.NONE;
+        int second = parts.length > 2 ? Integer.parseInt(parts[2]) : Action.NONE;
+        return new Action(Integer.parseInt(parts[0]), first, second);
+    }
+
+    /**
+     * Looks up the game named in a request.
+     *
+     * @param word the game id
+     * @return the game's actor
+     * @throws IllegalArgumentException if there is no such game
+     */
+    private GameActor game(String word)
+    {
+        GameActor actor = games.get(Long.parseLong(word));
+        if (actor == null) {
+            throw new IllegalArgumentException("No game " + word);
+        }
+        return actor;
+    }
+
+    /**
+     * Describes what a reconnecting client needs for a {@code SYNC} reply.
+     *
+     * @param diff the diff or snapshot from the client's version
+     * @return the changes since the client's version, or the state if it is too old
+     */
+    private static String describe(StateDiff diff)
+    {
+        GameView view = diff.getView();
+        if (diff.isSnapshot()) {
+            return "SNAPSHOT " + view.getVersion() + " " + describe(view);
+        }
+        StringBuilder reply = new StringBuilder("DIFF ").append(view.getVersion()).append(' ').append(view.getStateHash());
+        for (StateDiff.Change change : diff.getChanges()) {
+            reply.append(' ').append(change.getKind().ordinal()).append(',').append(change.getSubject())
+                .append(',').append(change.getFrom()).append(',').append(change.getTo());
+        }
+        return reply.toString();
+    }
+
+    /**
+     * Describes the state of a game for a {@code STATE} reply.
+     *
+     * @param view the latest view of the game
+     * @return the seat, actions remaining, state hash and pantry
+     */
+    private static String describe(GameView view)
+    {
+        CardCatalog catalog = view.getCardCatalog();
+        StringBuilder pantry = new StringBuilder();
+        for (Ingredient card : view.getPantry()) {
+            if (pantry.length() > 0) {
+                pantry.append(',');
+            }
+            pantry.append(catalog.cardId(card));
+        }
+        int seat = view.getCurrentPlayer();
+        return seat + " " + view.getActionsRemaining(seat) + " " + view.getStateHash() + " " + pantry;
+    }
+}
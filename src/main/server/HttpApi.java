@@ -0,0 +1,578 @@
+package server;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import bakery.CardCatalog;
+import bakery.CustomerOrder;
+import bakery.GameView;
+import bakery.Ingredient;
+import bakery.Layer;
+import bakery.MagicBakery;
+import bakery.StateDiff;
+
+/**
+ * Serves the games of a {@link GameServer} as JSON over HTTP on the loopback interface, for web
+ * clients.
+ *
+ * Every request is handled on its own thread, virtual where the runtime supports it (see
+ * {@link Threads}), which blocks on the game it talks to just as a line-protocol connection does.
+ * Replies are written with a {@link JsonWriter} straight to the response as they are produced.
+ * Cards, layers and customers are given as objects with their {@link CardCatalog} id and name, and
+ * request parameters go in the query string:
+ * <ul>
+ * <li>{@code POST /games?seed=s&players=a,b,...} creates a game and replies {@code 201} with
+ * {@code {"id":game}}</li>
+ * <li>{@code GET /games/game} replies with the game's latest {@link GameView}: its version and
+ * hash, the current player, every player's hand, the pantry, the layers and the customer row</li>
+ * <li>{@code POST /games/game/actions?op=o&first=f&second=s} applies an {@link Action}, with
+ * missing arguments taken as {@link Action#NONE}, and replies with whether the game accepted it,
+ * the error if not, and the current player and their actions afterwards</li>
+ * <li>{@code POST /games/game/batch?actions=o,f,s;o,f,s...} applies several actions in order in one
+ * message, stopping at the first the game refuses, and replies with the number applied, a result
+ * for each action attempted and one diff for the whole batch, its changes as in
+ * {@link StateDiff}</li>
+ * <li>{@code GET /games/game/bakeable} lists the layers the current player can bake</li>
+ * <li>{@code GET /games/game/fulfillable} lists the customers the current player can serve, and
+ * whether they can also garnish each order</li>
+ * </ul>
+ * A malformed request gets {@code 400}, an unknown game or path {@code 404}, the wrong method
+ * {@code 405}, a request turned away because the server is saturated {@code 503} and one that
+ * fails unexpectedly {@code 500}, each with {@code {"error":kind,"message":text}}.
+ *
+ * Usage: {@code java server.HttpApi [port] [shards]}
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class HttpApi implements Closeable {
+    /** Path the games are served under */
+    static final String GAMES = "/games";
+
+    /** Seconds a client turned away is told to wait before retrying */
+    private static final String RETRY_AFTER = "1";
+
+    /** The games */
+    private final GameServer games;
+
+    /** The HTTP server */
+    private final HttpServer http;
+
+    /** Threads handling requests */
+    private final ExecutorService handlers;
+
+    /**
+     * Starts serving a game server on the loopback interface.
+     *
+     * @param games the game server
+     * @param port the port, or 0 for any free port
+     * @throws IOException if the socket cannot be opened
+     */
+    public HttpApi(GameServer games, int port) throws IOException
+    {
+        this.games = games;
+        this.handlers = Threads.newPerTaskExecutor("bakery-http");
+        this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        this.http.createContext(GAMES, this::serve);
+        this.http.setExecutor(handlers);
+        this.http.start();
+    }
+
+    /**
+     * Runs a game server and its HTTP API until the process is stopped.
+     *
+     * The JDK server writes the headers and the body of a reply separately, and with Nagle's
+     * algorithm on the body waits for the client's delayed acknowledgement of the headers, about
+     * 40 ms on every request. Unless the launch sets {@code -Dsun.net.httpserver.nodelay} itself,
+     * this turns it on before the first server is created, since the JDK reads it only once.
+     *
+     * @param args optional HTTP port and number of shards
+     * @throws IOException if a socket cannot be opened
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int shards = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        HttpApi api = new HttpApi(new GameServer(0, shards), port);
+        System.out.printf("Serving HTTP on port %d with %d shards, %s threads per request%n", api.getPort(), shards,
+                Threads.virtualThreadsAvailable() ? "virtual" : "platform");
+    }
+
+    /**
+     * Gets the port the API listens on.
+     *
+     * @return the port
+     */
+    public int getPort()
+    {
+        return http.getAddress().getPort();
+    }
+
+    /**
+     * Stops serving requests. The game server is left running.
+     */
+    @Override
+    public void close()
+    {
+        http.stop(0);
+        handlers.shutdownNow();
+    }
+
+    /**
+     * Answers one request, turning failures into error replies.
+     *
+     * @param exchange the request and its response
+     */
+    private void serve(HttpExchange exchange)
+    {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (NoSuchElementException e) {
+                fail(exchange, 404, "NotFound", e.getMessage());
+            } catch (UnsupportedOperationException e) {
+                fail(exchange, 405, "MethodNotAllowed", e.getMessage());
+            } catch (IllegalArgumentException e) {
+                fail(exchange, 400, "BadRequest", e.getMessage());
+            } catch (RejectedExecutionException e) {
+                exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER);
+                fail(exchange, 503, "Busy", e.getMessage());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IllegalArgumentException) {
+                    fail(exchange, 400, "BadRequest", e.getCause().getMessage());
+                } else {
+                    fail(exchange, 500, e.getCause().getClass().getSimpleName(), e.getCause().getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(exchange, 503, "Interrupted", "Server is stopping");
+            } catch (RuntimeException e) {
+                fail(exchange, 500, e.getClass().getSimpleName(), e.getMessage());
+            }
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    /**
+     * Picks the handler for a request's method and path.
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response cannot be written
+     * @throws ExecutionException if the game failed
+     * @throws InterruptedException if interrupted while waiting for the game
+     */
+    private void route(HttpExchange exchange) throws IOException, ExecutionException, InterruptedException
+    {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String[] parts = path.substring(GAMES.length()).split("/");
+        // parts[0] is empty, as the path after /games starts with a slash or is empty
+        if (parts.length <= 1) {
+            if (!path.equals(GAMES) && !path.equals(GAMES + "/")) {
+                throw new NoSuchElementException("No resource " + path);
+            }
+            expect(method, "POST");
+            createGame(exchange, query);
+            return;
+        }
+        if (!parts[0].isEmpty() || parts.length > 3) {
+            throw new NoSuchElementException("No resource " + path);
+        }
+        GameActor actor = game(parts[1]);
+        String resource = parts.length == 3 ? parts[2] : "";
+        switch (resource) {
+            case "":
+                expect(method, "GET");
+                writeState(exchange, actor.getView());
+                break;
+            case "actions":
+                expect(method, "POST");
+                Action action = new Action(intParam(query, "op", null), intParam(query, "first", Action.NONE),
+                    intParam(query, "second", Action.NONE));
+                writeResult(exchange, games.play(actor, action));
+                break;
+            case "batch":
+                expect(method, "POST");
+                String batch = query.get("actions");
+                if (batch == null || batch.isEmpty()) {
+                    throw new IllegalArgumentException("Missing parameter actions");
+                }
+                List<Action> actions = new ArrayList<>();
+                for (String word : batch.split(";")) {
+                    actions.add(GameServer.parseAction(word));
+                }
+                writeBatch(exchange, games.playAll(actor, actions));
+                break;
+            case "bakeable":
+                expect(method, "GET");
+                writeBakeable(exchange, actor);
+                break;
+            case "fulfillable":
+                expect(method, "GET");
+                writeFulfillable(exchange, actor);
+                break;
+            default:
+                throw new NoSuchElementException("No resource " + path);
+        }
+    }
+
+    /**
+     * Creates a game and replies with its id.
+     *
+     * @param exchange the request and its response
+     * @param query the query parameters
+     * @throws IOException if the response cannot be written
+     * @throws ExecutionException if the game could not be created
+     * @throws InterruptedException if interrupted while waiting for the game
+     */
+    private void createGame(HttpExchange exchange, Map<String, String> query)
+        throws IOException, ExecutionException, InterruptedException
+    {
+        String players = query.get("players");
+        if (players == null || players.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter players");
+        }
+        long seed = query.containsKey("seed") ? Long.parseLong(query.get("seed")) : System.nanoTime();
+        long id = games.create(seed, new ArrayList<>(Arrays.asList(players.split(","))));
+        exchange.getResponseHeaders().set("Location", GAMES + "/" + id);
+        JsonWriter json = open(exchange, 201);
+        json.beginObject().name("id").value(id).endObject();
+        json.flush();
+    }
+
+    /**
+     * Replies with a view of a game.
+     *
+     * @param exchange the request and its response
+     * @param view the view
+     * @throws IOException if the response cannot be written
+     */
+    private static void writeState(HttpExchange exchange, GameView view) throws IOException
+    {
+        CardCatalog catalog = view.getCardCatalog();
+        JsonWriter json = open(exchange, 200);
+        json.beginObject();
+        json.name("version").value(view.getVersion());
+        // as a string, since JavaScript numbers cannot hold every 64-bit hash
+        json.name("hash").value(Long.toString(view.getStateHash()));
+        json.name("currentPlayer").value(view.getCurrentPlayer());
+        json.name("players").beginArray();
+        List<String> names = view.getPlayerNames();
+        for (int seat = 0; seat < names.size(); seat++) {
+            json.beginObject();
+            json.name("name").value(names.get(seat));
+            json.name("actions").value(view.getActionsRemaining(seat));
+            json.name("hand");
+            writeCards(json, catalog, view.getHand(seat));
+            json.endObject();
+        }
+        json.endArray();
+        json.name("pantry");
+        writeCards(json, catalog, view.getPantry());
+        json.name("layers");
+        writeCards(json, catalog, view.getLayers());
+        json.name("customers").beginArray();
+        List<CustomerOrder> row = view.getActiveCustomers();
+        for (int slot = 0; slot < row.size(); slot++) {
+            CustomerOrder order = row.get(slot);
+            if (order == null) {
+                json.nullValue();
+                continue;
+            }
+            json.beginObject();
+            json.name("slot").value(slot);
+            json.name("id").value(catalog.customerId(order));
+            json.name("name").value(order.toString());
+            json.name("status").value(String.valueOf(view.getCustomerStatus(slot)));
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    /**
+     * Replies with the result of an action.
+     *
+     * @param exchange the request and its response
+     * @param result the result
+     * @throws IOException if the response cannot be written
+     */
+    private static void writeResult(HttpExchange exchange, ActionResult result) throws IOException
+    {
+        JsonWriter json = open(exchange, 200);
+        writeResult(json, result);
+        json.flush();
+    }
+
+    /**
+     * Replies with the results of a batch of actions and the changes it made.
+     *
+     * @param exchange the request and its response
+     * @param batch the batch's results
+     * @throws IOException if the response cannot be written
+     */
+    private static void writeBatch(HttpExchange exchange, BatchResult batch) throws IOException
+    {
+        StateDiff diff = batch.getDiff();
+        JsonWriter json = open(exchange, 200);
+        json.beginObject();
+        json.name("applied").value(batch.appliedCount());
+        json.name("complete").value(batch.isComplete());
+        json.name("results").beginArray();
+        for (ActionResult result : batch.getResults()) {
+            writeResult(json, result);
+        }
+        json.endArray();
+        json.name("diff").beginObject();
+        json.name("from").value(diff.getFromVersion());
+        json.name("to").value(diff.getToVersion());
+        json.name("hash").value(Long.toString(diff.getView().getStateHash()));
+        json.name("changes").beginArray();
+        for (StateDiff.Change change : diff.getChanges()) {
+            json.beginObject();
+            json.name("kind").value(change.getKind().name());
+            json.name("subject").value(change.getSubject());
+            json.name("from").value(change.getFrom());
+            json.name("to").value(change.getTo());
+            json.endObject();
+        }
+        json.endArray().endObject();
+        json.endObject();
+        json.flush();
+    }
+
+    /**
+     * Writes the result of an action as an object.
+     *
+     * @param json the writer
+     * @param result the result
+     * @throws IOException if writing fails
+     */
+    private static void writeResult(JsonWriter json, ActionResult result) throws IOException
+    {
+        json.beginObject();
+        json.name("ok").value(result.isOk());
+        json.name("error").value(result.getError());
+        json.name("message").value(result.getMessage());
+        json.name("currentPlayer").value(result.getCurrentPlayer());
+        json.name("actionsRemaining").value(result.getActionsRemaining());
+        json.endObject();
+    }
+
+    /**
+     * Replies with the layers the current player can bake, asked of the game itself.
+     *
+     * @param exchange the request and its response
+     * @param actor the game
+     * @throws IOException if the response cannot be written
+     * @throws ExecutionException if the game failed
+     * @throws InterruptedException if interrupted while waiting for the game
+     */
+    private static void writeBakeable(HttpExchange exchange, GameActor actor)
+        throws IOException, ExecutionException, InterruptedException
+    {
+        List<Layer> layers = actor.ask(game -> new ArrayList<>(game.getBakeableLayers())).get();
+        JsonWriter json = open(exchange, 200);
+        json.beginObject().name("layers");
+        writeCards(json, actor.getView().getCardCatalog(), layers);
+        json.endObject();
+        json.flush();
+    }
+
+    /**
+     * Replies with the customers the current player can serve, asked of the game itself.
+     *
+     * @param exchange the request and its response
+     * @param actor the game
+     * @throws IOException if the response cannot be written
+     * @throws ExecutionException if the game failed
+     * @throws InterruptedException if interrupted while waiting for the game
+     */
+    private static void writeFulfillable(HttpExchange exchange, GameActor actor)
+        throws IOException, ExecutionException, InterruptedException
+    {
+        // slot, customer id and whether the order can be garnished too, for each order that can be served
+        List<int[]> servable = actor.ask(HttpApi::fulfillable).get();
+        CardCatalog catalog = actor.getView().getCardCatalog();
+        JsonWriter json = open(exchange, 200);
+        json.beginObject().name("customers").beginArray();
+        for (int[] order : servable) {
+            json.beginObject();
+            json.name("slot").value(order[0]);
+            json.name("id").value(order[1]);
+            json.name("name").value(catalog.customer(order[1]).toString());
+            json.name("garnish").value(order[2] == 1);
+            json.endObject();
+        }
+        json.endArray().endObject();
+        json.flush();
+    }
+
+    /**
+     * Finds the waiting customers the current player's hand can serve. Runs on the game's thread.
+     *
+     * @param game the game
+     * @return the slot, customer id and 1 if the order can also be garnished or 0 if not, for each
+     *         order in the row that can be fulfilled
+     */
+    private static List<int[]> fulfillable(MagicBakery game)
+    {
+        List<Ingredient> hand = game.getCurrentPlayer().getHand();
+        CardCatalog catalog = game.getCardCatalog();
+        List<int[]> servable = new ArrayList<>();
+        List<CustomerOrder> row = new ArrayList<>(game.getCustomers().getActiveCustomers());
+        for (int slot = 0; slot < row.size(); slot++) {
+            CustomerOrder order = row.get(slot);
+            if (order != null && order.canFulfill(hand)) {
+                servable.add(new int[] {slot, catalog.customerId(order), order.canGarnish(hand) ? 1 : 0});
+            }
+        }
+        return servable;
+    }
+
+    /**
+     * Writes cards as an array of objects with their ids and names.
+     *
+     * @param json the writer
+     * @param catalog the card catalog
+     * @param cards the cards
+     * @throws IOException if writing fails
+     */
+    private static void writeCards(JsonWriter json, CardCatalog catalog, List<? extends Ingredient> cards) throws IOException
+    {
+        json.beginArray();
+        for (Ingredient card : cards) {
+            json.beginObject().name("id").value(catalog.cardId(card)).name("name").value(card.toString()).endObject();
+        }
+        json.endArray();
+    }
+
+    /**
+     * Replies with an error.
+     *
+     * @param exchange the request and its response
+     * @param status the HTTP status
+     * @param error the kind of error
+     * @param message the error message, or null
+     * @throws IOException if the response cannot be written
+     */
+    private static void fail(HttpExchange exchange, int status, String error, String message) throws IOException
+    {
+        JsonWriter json = open(exchange, status);
+        json.beginObject().name("error").value(error).name("message").value(message).endObject();
+        json.flush();
+    }
+
+    /**
+     * Sends the response headers and opens the body for streaming.
+     *
+     * @param exchange the request and its response
+     * @param status the HTTP status
+     * @return a writer for the body
+     * @throws IOException if the headers cannot be sent
+     */
+    private static JsonWriter open(HttpExchange exchange, int status) throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        Writer body = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+        return new JsonWriter(body);
+    }
+
+    /**
+     * Checks a request's method.
+     *
+     * @param method the method used
+     * @param allowed the method the resource takes
+     * @throws UnsupportedOperationException if they differ
+     */
+    private static void expect(String method, String allowed)
+    {
+        if (!method.equals(allowed)) {
+            throw new UnsupportedOperationException(method + " not allowed, use " + allowed);
+        }
+    }
+
+    /**
+     * Looks up the game named in a path.
+     *
+     * @param word the game id
+     * @return the game's actor
+     * @throws NoSuchElementException if there is no such game
+     */
+    private GameActor game(String word)
+    {
+        GameActor actor = games.getGame(Long.parseLong(word));
+        if (actor == null) {
+            throw new NoSuchElementException("No game " + word);
+        }
+        return actor;
+    }
+
+    /**
+     * Reads an integer query parameter.
+     *
+     * @param query the query parameters
+     * @param name the parameter name
+     * @param fallback the value if the parameter is missing, or null if it is required
+     * @return the value
+     * @throws IllegalArgumentException if the parameter is required and missing, or not a number
+     */
+    private static int intParam(Map<String, String> query, String name, Integer fallback)
+    {
+        String value = query.get(name);
+        if (value == null) {
+            if (fallback == null) {
+                throw new IllegalArgumentException("Missing parameter " + name);
+            }
+            return fallback;
+        }
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * Splits a query string into its parameters.
+     *
+     * @param raw the encoded query string, or null
+     * @return the decoded parameters by name; a repeated parameter keeps its last value
+     */
+    static Map<String, String> parseQuery(String raw)
+    {
+        Map<String, String> query = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+}
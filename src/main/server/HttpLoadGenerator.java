@@ -0,0 +1,227 @@
+package server;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives an {@link HttpApi} with many concurrent clients and reports throughput and latency, in
+ * the same way as {@link LoadGenerator} drives the line protocol.
+ *
+ * Each client creates a game and plays it with random draws, refreshes and turn ends, reading the
+ * game's state at the start of every turn. The time from sending each request to reading its whole
+ * reply is recorded, and the percentiles are printed at the end. Without a port the server and its
+ * API are started in the same process, so the test needs no network beyond the loopback interface;
+ * as with {@link LoadGenerator}, the console is left as it is deployed.
+ *
+ * Usage: {@code java -Dsun.net.httpserver.nodelay=true server.HttpLoadGenerator [clients] [seconds] [players] [port]}
+ *
+ * The flag matters only for the API started in this process, as {@link HttpApi#main} sets it for
+ * a standalone one; without it every request waits about 40 ms on Nagle's algorithm.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class HttpLoadGenerator {
+    /** An id member of a JSON reply, a game id or a card id */
+    private static final Pattern CARD_ID = Pattern.compile("\"id\":(\\d+)");
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private HttpLoadGenerator()
+    {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args optional number of clients, seconds to run, players per game and API port
+     * @throws Exception if the server cannot be started or reached
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int numPlayers = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        GameServer local = args.length > 3 ? null : new GameServer(0, Runtime.getRuntime().availableProcessors());
+        HttpApi api = local == null ? null : new HttpApi(local, 0);
+        int port = api == null ? Integer.parseInt(args[3]) : api.getPort();
+
+        long[][] latencies = new long[clients][];
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        ExecutorService pool = Threads.newPerTaskExecutor("bakery-load");
+        HttpClient http = HttpClient.newHttpClient();
+        try {
+            Future<?>[] running = new Future<?>[clients];
+            for (int i = 0; i < clients; i++) {
+                int client = i;
+                running[i] = pool.submit(() -> {
+                    latencies[client] = play(http, "http://127.0.0.1:" + port + HttpApi.GAMES, client, numPlayers, end);
+                    return null;
+                });
+            }
+            for (Future<?> client : running) {
+                client.get();
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+            if (local != null) {
+                api.close();
+                local.close();
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        int total = 0;
+        for (long[] client : latencies) {
+            total += (int) client[0];
+        }
+        long[] all = new long[total];
+        int filled = 0;
+        for (long[] client : latencies) {
+            System.arraycopy(client, 1, all, filled, (int) client[0]);
+            filled += (int) client[0];
+        }
+        Arrays.sort(all);
+        System.out.printf("%d HTTP clients, %d players, %s threads: %.0f requests/s%n", clients, numPlayers,
+            Threads.virtualThreadsAvailable() ? "virtual" : "platform", total / elapsed);
+        System.out.printf("latency us: p50 %.0f, p90 %.0f, p99 %.0f, p99.9 %.0f, max %.0f%n",
+            percentile(all, 0.5), percentile(all, 0.9), percentile(all, 0.99), percentile(all, 0.999), percentile(all, 1));
+    }
+
+    /**
+     * Plays a random game over HTTP until a deadline.
+     *
+     * @param http the HTTP client
+     * @param games the URL of the games resource
+     * @param client the client number, used as the seed
+     * @param numPlayers the players per game
+     * @param end the deadline, in {@link System#nanoTime()} terms
+     * @return the number of requests followed by the latency of each in nanoseconds
+     * @throws IOException if a request fails
+     * @throws InterruptedException if interrupted while waiting for a reply
+     */
+    private static long[] play(HttpClient http, String games, int client, int numPlayers, long end)
+        throws IOException, InterruptedException
+    {
+        SplittableRandom random = new SplittableRandom(client);
+        long[] latencies = new long[1024];
+        int count = 0;
+        StringBuilder players = new StringBuilder();
+        for (int i = 0; i < numPlayers; i++) {
+            players.append(i == 0 ? "" : ",").append('P').append(i);
+        }
+        String created = request(http, "POST", games + "?seed=" + client + "&players=" + players);
+        Matcher id = CARD_ID.matcher(created);
+        if (!id.find()) {
+            throw new IOException("No game in " + created);
+        }
+        String game = games + "/" + id.group(1);
+        String[] pantry = new String[0];
+        boolean turnStarted = true;
+        while (System.nanoTime() < end) {
+            String method = "POST";
+            String url;
+            boolean endsTurn = false;
+            if (turnStarted) {
+                method = "GET";
+                url = game;
+            } else {
+                int choice = random.nextInt(4);
+                if (choice < 2 && pantry.length > 0) {
+                    url = game + "/actions?op=" + Action.draw(0).getOp() + "&first=" + pantry[random.nextInt(pantry.length)];
+                } else if (choice == 2) {
+                    url = game + "/actions?op=" + Action.refresh().getOp();
+                } else {
+                    url = game + "/actions?op=" + Action.END_TURN;
+                    endsTurn = true;
+                }
+            }
+            long sent = System.nanoTime();
+            String reply = request(http, method, url);
+            if (count + 1 == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[++count] = System.nanoTime() - sent;
+            if (turnStarted) {
+                pantry = pantryIds(reply);
+            }
+            turnStarted = endsTurn;
+        }
+        latencies[0] = count;
+        return latencies;
+    }
+
+    /**
+     * Sends one request and reads its whole reply.
+     *
+     * @param http the HTTP client
+     * @param method the method
+     * @param url the URL
+     * @return the reply body
+     * @throws IOException if the request fails or is refused
+     * @throws InterruptedException if interrupted while waiting for the reply
+     */
+    private static String request(HttpClient http, String method, String url) throws IOException, InterruptedException
+    {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).method(method, HttpRequest.BodyPublishers.noBody()).build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 400 && response.statusCode() != 503) {
+            throw new IOException(method + " " + url + ": " + response.statusCode() + " " + response.body());
+        }
+        return response.body();
+    }
+
+    /**
+     * Reads the pantry's card ids from a state reply.
+     *
+     * @param state the state reply
+     * @return the card ids
+     */
+    private static String[] pantryIds(String state)
+    {
+        int from = state.indexOf("\"pantry\":[");
+        if (from < 0) {
+            return new String[0];
+        }
+        Matcher ids = CARD_ID.matcher(state.substring(from, state.indexOf(']', from)));
+        String[] pantry = new String[8];
+        int count = 0;
+        while (ids.find()) {
+            if (count == pantry.length) {
+                pantry = Arrays.copyOf(pantry, count * 2);
+            }
+            pantry[count++] = ids.group(1);
+        }
+        return Arrays.copyOf(pantry, count);
+    }
+
+    /**
+     * Reads a percentile from sorted latencies.
+     *
+     * @param sorted the latencies in nanoseconds, in ascending order
+     * @param fraction the percentile as a fraction
+     * @return the latency in microseconds, or zero if there are none
+     */
+    private static double percentile(long[] sorted, double fraction)
+    {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e3;
+    }
+}
@@ -0,0 +1,236 @@
+package server;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes JSON straight to a {@link Writer} as it is produced, without building a tree or a string
+ * first and without reflection.
+ *
+ * Callers open and close objects and arrays themselves and give each member's name before its
+ * value; the writer only adds the commas, colons and quotes and escapes strings. It does not check
+ * that the calls form a valid document.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class JsonWriter implements Flushable {
+    /** Hexadecimal digits for {@code \\u} escapes */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Where the JSON goes */
+    private final Writer out;
+
+    /** Whether the next value or name follows another in the same object or array */
+    private boolean needComma;
+
+    /**
+     * Creates a writer.
+     *
+     * @param out where the JSON goes
+     */
+    public JsonWriter(Writer out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * Opens an object.
+     *
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter beginObject() throws IOException
+    {
+        separate();
+        out.write('{');
+        needComma = false;
+        return this;
+    }
+
+    /**
+     * Closes the innermost object.
+     *
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter endObject() throws IOException
+    {
+        out.write('}');
+        needComma = true;
+        return this;
+    }
+
+    /**
+     * Opens an array.
+     *
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter beginArray() throws IOException
+    {
+        separate();
+        out.write('[');
+        needComma = false;
+        return this;
+    }
+
+    /**
+     * Closes the innermost array.
+     *
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter endArray() throws IOException
+    {
+        out.write(']');
+        needComma = true;
+        return this;
+    }
+
+    /**
+     * Writes the name of the next member of an object.
+     *
+     * @param name the member name
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter name(String name) throws IOException
+    {
+        separate();
+        quote(name);
+        out.write(':');
+        needComma = false;
+        return this;
+    }
+
+    /**
+     * Writes a string, or null.
+     *
+     * @param value the string
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter value(String value) throws IOException
+    {
+        if (value == null) {
+            return nullValue();
+        }
+        separate();
+        quote(value);
+        needComma = true;
+        return this;
+    }
+
+    /**
+     * Writes a number.
+     *
+     * @param value the number
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter value(long value) throws IOException
+    {
+        separate();
+        out.write(Long.toString(value));
+        needComma = true;
+        return this;
+    }
+
+    /**
+     * Writes a boolean.
+     *
+     * @param value the boolean
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter value(boolean value) throws IOException
+    {
+        separate();
+        out.write(value ? "true" : "false");
+        needComma = true;
+        return this;
+    }
+
+    /**
+     * Writes null.
+     *
+     * @return this writer
+     * @throws IOException if writing fails
+     */
+    public JsonWriter nullValue() throws IOException
+    {
+        separate();
+        out.write("null");
+        needComma = true;
+        return this;
+    }
+
+    /**
+     * Flushes the underlying writer.
+     *
+     * @throws IOException if flushing fails
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    /**
+     * Writes a comma if the next value or name follows another.
+     *
+     * @throws IOException if writing fails
+     */
+    private void separate() throws IOException
+    {
+        if (needComma) {
+            out.write(',');
+        }
+    }
+
+    /**
+     * Writes a quoted string, escaping quotes, backslashes and control characters. Other
+     * characters, including non-ASCII ones, are written as they are.
+     *
+     * @param text the string
+     * @throws IOException if writing fails
+     */
+    private void quote(String text) throws IOException
+    {
+        out.write('"');
+        int written = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.write(text, written, i - written);
+            written = i + 1;
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    out.write("\\u00");
+                    out.write(HEX[c >> 4]);
+                    out.write(HEX[c & 0xf]);
+            }
+        }
+        out.write(text, written, text.length() - written);
+        out.write('"');
+    }
+}
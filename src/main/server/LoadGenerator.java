@@ -0,0 +1,194 @@
+package server;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a {@link GameServer} with many concurrent clients and reports throughput and latency.
+ *
+ * Each client opens its own connection, creates a game and plays it with random draws, refreshes
+ * and turn ends, reading the pantry with {@code STATE} at the start of every turn. The time from
+ * sending each request to reading its reply is recorded, and the percentiles are printed at the
+ * end. Without a port the server is started in the same process, with its console left as it is
+ * deployed, so any output the games produce is part of what is measured.
+ *
+ * Usage: {@code java server.LoadGenerator [clients] [seconds] [players] [port]}
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class LoadGenerator {
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private LoadGenerator()
+    {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args optional number of clients, seconds to run, players per game and server port
+     * @throws Exception if the server cannot be started or reached
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int numPlayers = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        GameServer local = args.length > 3 ? null : new GameServer(0, Runtime.getRuntime().availableProcessors());
+        int port = local == null ? Integer.parseInt(args[3]) : local.getPort();
+
+        long[][] latencies = new long[clients][];
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        ExecutorService pool = Threads.newPerTaskExecutor("bakery-load");
+        try {
+            Future<?>[] running = new Future<?>[clients];
+            for (int i = 0; i < clients; i++) {
+                int client = i;
+                running[i] = pool.submit(() -> {
+                    latencies[client] = play(port, client, numPlayers, end);
+                    return null;
+                });
+            }
+            for (Future<?> client : running) {
+                client.get();
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+            if (local != null) {
+                local.close();
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        int total = 0;
+        for (long[] client : latencies) {
+            total += (int) client[0];
+        }
+        long[] all = new long[total];
+        int filled = 0;
+        for (long[] client : latencies) {
+            System.arraycopy(client, 1, all, filled, (int) client[0]);
+            filled += (int) client[0];
+        }
+        Arrays.sort(all);
+        System.out.printf("%d clients, %d players, %s threads: %.0f requests/s%n", clients, numPlayers,
+            Threads.virtualThreadsAvailable() ? "virtual" : "platform", total / elapsed);
+        System.out.printf("latency us: p50 %.0f, p90 %.0f, p99 %.0f, p99.9 %.0f, max %.0f%n",
+            percentile(all, 0.5), percentile(all, 0.9), percentile(all, 0.99), percentile(all, 0.999), percentile(all, 1));
+    }
+
+    /**
+     * Plays random games on one connection until a deadline.
+     *
+     * @param port the server port
+     * @param client the client number, used as the seed
+     * @param numPlayers the players per game
+     * @param end the deadline, in {@link System#nanoTime()} terms
+     * @return the number of requests followed by the latency of each in nanoseconds
+     * @throws IOException if the connection fails
+     */
+    private static long[] play(int port, int client, int numPlayers, long end) throws IOException
+    {
+        SplittableRandom random = new SplittableRandom(client);
+        long[] latencies = new long[1024];
+        int count = 0;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            socket.setTcpNoDelay(true);
+            StringBuilder newGame = new StringBuilder("NEW ").append(client);
+            for (int i = 0; i < numPlayers; i++) {
+                newGame.append(" P").append(i);
+            }
+            String game = request(in, out, newGame.toString()).substring(3);
+            String[] pantry = new String[0];
+            boolean turnStarted = true;
+            while (System.nanoTime() < end) {
+                String line;
+                if (turnStarted) {
+                    line = "STATE " + game;
+                } else {
+                    int choice = random.nextInt(4);
+                    if (choice < 2 && pantry.length > 0) {
+                        line = "ACT " + game + " " + Action.draw(0).getOp() + " " + pantry[random.nextInt(pantry.length)] + " -1";
+                    } else if (choice == 2) {
+                        line = "ACT " + game + " " + Action.refresh().getOp() + " -1 -1";
+                    } else {
+                        line = "ACT " + game + " " + Action.END_TURN + " -1 -1";
+                    }
+                }
+                long sent = System.nanoTime();
+                String reply = request(in, out, line);
+                if (count + 1 == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, latencies.length * 2);
+                }
+                latencies[++count] = System.nanoTime() - sent;
+                if (reply.startsWith("ERR")) {
+                    throw new IOException(line + ": " + reply);
+                }
+                if (turnStarted) {
+                    String[] words = reply.split(" ");
+                    pantry = words.length > 4 ? words[4].split(",") : new String[0];
+                }
+                turnStarted = line.endsWith(Action.END_TURN + " -1 -1");
+            }
+            out.write("QUIT\n");
+            out.flush();
+        }
+        latencies[0] = count;
+        return latencies;
+    }
+
+    /**
+     * Sends one request and reads its reply.
+     *
+     * @param in the connection's input
+     * @param out the connection's output
+     * @param line the request
+     * @return the reply
+     * @throws IOException if the connection fails or closes
+     */
+    private static String request(BufferedReader in, Writer out, String line) throws IOException
+    {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+        String reply = in.readLine();
+        if (reply == null) {
+            throw new IOException("Server closed the connection");
+        }
+        return reply;
+    }
+
+    /**
+     * Reads a percentile from sorted latencies.
+     *
+     * @param sorted the latencies in nanoseconds, in ascending order
+     * @param fraction the percentile as a fraction
+     * @return the latency in microseconds, or zero if there are none
+     */
+    private static double percentile(long[] sorted, double fraction)
+    {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e3;
+    }
+}
@@ -0,0 +1,385 @@
+package server;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Groups waiting players into tables and starts a game for each table on a {@link GameServer}.
+ *
+ * A game takes two to five players. The lobby fills tables of its target size while enough players
+ * are waiting, and once the longest-waiting player has waited the maximum wait it seats whoever is
+ * left at a smaller table, so no one waits much longer than that once a second player has
+ * arrived. A lone player who has waited too long takes a player from the last full table formed
+ * with them, if that leaves it at least two.
+ *
+ * Joining only adds the player to a lock-free queue and wakes the matcher when a table's worth is
+ * queued, so any number of threads can join at once. The matcher is a single thread that drains
+ * the queue, forms every table it can and queues their games as one batch on the server's
+ * creation threads, dealt from the shared decks rather than from the deck files. When game
+ * creation is saturated the tables are put off and the players keep their place.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class Lobby implements Closeable {
+    /** Fewest players at a table */
+    public static final int MIN_TABLE = 2;
+
+    /** Most players at a table */
+    public static final int MAX_TABLE = 5;
+
+    /** Longest the matcher sleeps before checking waiting times again */
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * A player waiting for a seat.
+     */
+    private static final class Waiter {
+        /** The player's name */
+        private final String name;
+
+        /** When the player joined, in {@link System#nanoTime()} */
+        private final long joinedAt;
+
+        /** Completed with the player's seat */
+        private final CompletableFuture<Seat> seat = new CompletableFuture<>();
+
+        /**
+         * Creates a waiter.
+         *
+         * @param name the player's name
+         * @param joinedAt when the player joined
+         */
+        private Waiter(String name, long joinedAt)
+        {
+            this.name = name;
+            this.joinedAt = joinedAt;
+        }
+    }
+
+    /** The server the games are created on */
+    private final GameServer server;
+
+    /** Preferred number of players at a table */
+    private final int tableSize;
+
+    /** Longest a player waits for a full table before a smaller one is formed */
+    private final long maxWaitNanos;
+
+    /** Players who have joined and not yet been taken by the matcher */
+    private final Queue<Waiter> joins = new ConcurrentLinkedQueue<>();
+
+    /** Number of players in {@link #joins} */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /** Number of players who have joined and not yet been seated or turned away */
+    private final AtomicInteger unseated = new AtomicInteger();
+
+    /** Players taken by the matcher and not yet seated, oldest first, touched only by the matcher */
+    private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+
+    /** Source of game seeds, touched only by the matcher */
+    private final SplittableRandom seeds = new SplittableRandom();
+
+    /** Thread forming tables, or null if tables are formed only by calls to {@link #match(long)} */
+    private final Thread matcher;
+
+    /** Whether the lobby is closed */
+    private volatile boolean closed;
+
+    /** Number of tables formed */
+    private final AtomicLong tables = new AtomicLong();
+
+    /** Number of players seated */
+    private final AtomicLong seated = new AtomicLong();
+
+    /** Longest time a seated player waited, in nanoseconds */
+    private final AtomicLong longestWait = new AtomicLong();
+
+    /**
+     * Opens a lobby.
+     *
+     * @param server the server to create games on
+     * @param tableSize the preferred number of players at a table
+     * @param maxWaitMillis how long a player waits for a full table before a smaller one is formed
+     * @throws IllegalArgumentException if the table size is not allowed or the wait is negative
+     */
+    public Lobby(GameServer server, int tableSize, long maxWaitMillis)
+    {
+        this(server, tableSize, maxWaitMillis, true);
+    }
+
+    /**
+     * Opens a lobby, with or without its matcher thread. Without one, tables are formed only when
+     * {@link #match(long)} is called, which lets a test drive the lobby one pass at a time.
+     *
+     * @param server the server to create games on
+     * @param tableSize the preferred number of players at a table
+     * @param maxWaitMillis how long a player waits for a full table before a smaller one is formed
+     * @param startMatcher whether to start the matcher thread
+     * @throws IllegalArgumentException if the table size is not allowed or the wait is negative
+     */
+    Lobby(GameServer server, int tableSize, long maxWaitMillis, boolean startMatcher)
+    {
+        if (tableSize < MIN_TABLE || tableSize > MAX_TABLE) {
+            throw new IllegalArgumentException("Tables take " + MIN_TABLE + " to " + MAX_TABLE + " players, not " + tableSize);
+        }
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("Wait must not be negative");
+        }
+        this.server = server;
+        this.tableSize = tableSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        if (startMatcher) {
+            this.matcher = new Thread(this::run, "bakery-lobby");
+            this.matcher.setDaemon(true);
+            this.matcher.start();
+        } else {
+            this.matcher = null;
+        }
+    }
+
+    /**
+     * Adds a player to the lobby. Any thread may call this.
+     *
+     * @param name the player's name
+     * @return a future completed with the player's seat once their game has started, or
+     *         exceptionally if the game could not be created or the lobby closes first
+     */
+    public CompletableFuture<Seat> join(String name)
+    {
+        Waiter waiter = new Waiter(name, System.nanoTime());
+        if (closed) {
+            waiter.seat.completeExceptionally(new IllegalStateException("Lobby is closed"));
+            return waiter.seat;
+        }
+        unseated.incrementAndGet();
+        joins.offer(waiter);
+        if (queued.incrementAndGet() >= tableSize) {
+            LockSupport.unpark(matcher);
+        }
+        if (closed) {
+            failQueued();
+        }
+        return waiter.seat;
+    }
+
+    /**
+     * Gets the number of players waiting for a seat.
+     *
+     * @return the number of players
+     */
+    public int waitingCount()
+    {
+        return unseated.get();
+    }
+
+    /**
+     * Gets the number of tables formed.
+     *
+     * @return the number of games created by the lobby
+     */
+    public long tableCount()
+    {
+        return tables.get();
+    }
+
+    /**
+     * Gets the number of players seated.
+     *
+     * @return the number of players
+     */
+    public long seatedCount()
+    {
+        return seated.get();
+    }
+
+    /**
+     * Gets the longest time a seated player waited for their seat.
+     *
+     * @param unit the unit of the result
+     * @return the longest wait
+     */
+    public long longestWait(TimeUnit unit)
+    {
+        return unit.convert(longestWait.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops forming tables. Players still waiting are told the lobby has closed.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        if (matcher != null) {
+            LockSupport.unpark(matcher);
+            try {
+                matcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Waiter waiter : waiting) {
+            unseated.decrementAndGet();
+            waiter.seat.completeExceptionally(new IllegalStateException("Lobby is closed"));
+        }
+        waiting.clear();
+        failQueued();
+    }
+
+    /**
+     * Forms tables until the lobby closes, waking when a table's worth of players has joined and
+     * at least every {@link #TICK_NANOS} to check waiting times.
+     */
+    private void run()
+    {
+        while (!closed) {
+            match(System.nanoTime());
+            LockSupport.parkNanos(this, TICK_NANOS);
+        }
+    }
+
+    /**
+     * Takes the queued players and seats everyone it can. Only the matcher thread calls this, or
+     * a single caller when the lobby has no matcher.
+     *
+     * @param now the current time, in {@link System#nanoTime()}
+     */
+    void match(long now)
+    {
+        for (Waiter waiter = joins.poll(); waiter != null; waiter = joins.poll()) {
+            queued.decrementAndGet();
+            waiting.add(waiter);
+        }
+        for (Iterator<Waiter> it = waiting.iterator(); it.hasNext();) {
+            if (it.next().seat.isDone()) {
+                // the player gave up waiting
+                it.remove();
+                unseated.decrementAndGet();
+            }
+        }
+
+        List<List<Waiter>> formed = new ArrayList<>();
+        while (waiting.size() >= tableSize) {
+            formed.add(take(tableSize));
+        }
+        Waiter oldest = waiting.peek();
+        if (oldest != null && now - oldest.joinedAt >= maxWaitNanos) {
+            if (waiting.size() < MIN_TABLE && !formed.isEmpty() && formed.get(formed.size() - 1).size() > MIN_TABLE) {
+                List<Waiter> last = formed.get(formed.size() - 1);
+                waiting.addFirst(last.remove(last.size() - 1));
+            }
+            if (waiting.size() >= MIN_TABLE) {
+                formed.add(take(waiting.size()));
+            }
+        }
+        if (!formed.isEmpty()) {
+            seat(formed);
+        }
+    }
+
+    /**
+     * Takes the longest-waiting players for a table.
+     *
+     * @param size the number of players
+     * @return the players in the order they joined
+     */
+    private List<Waiter> take(int size)
+    {
+        List<Waiter> table = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            table.add(waiting.poll());
+        }
+        return table;
+    }
+
+    /**
+     * Queues the games for a batch of tables, telling the players their seats once the games are
+     * created. If game creation is saturated the players go back to waiting.
+     *
+     * @param formed the tables
+     */
+    private void seat(List<List<Waiter>> formed)
+    {
+        long[] gameSeeds = new long[formed.size()];
+        List<List<String>> names = new ArrayList<>(formed.size());
+        for (int t = 0; t < formed.size(); t++) {
+            gameSeeds[t] = seeds.nextLong();
+            List<String> table = new ArrayList<>();
+            for (Waiter waiter : formed.get(t)) {
+                table.add(waiter.name);
+            }
+            names.add(table);
+        }
+        CompletableFuture<long[]> created;
+        try {
+            created = server.scheduleGames(gameSeeds, names);
+        } catch (RejectedExecutionException e) {
+            // creation is saturated, so the players wait for a later pass, oldest first as before
+            server.getCreationStats().deferred();
+            for (int t = formed.size() - 1; t >= 0; t--) {
+                List<Waiter> table = formed.get(t);
+                for (int i = table.size() - 1; i >= 0; i--) {
+                    waiting.addFirst(table.get(i));
+                }
+            }
+            return;
+        }
+        created.whenComplete((ids, error) -> {
+            if (error != null) {
+                for (List<Waiter> table : formed) {
+                    for (Waiter waiter : table) {
+                        unseated.decrementAndGet();
+                        waiter.seat.completeExceptionally(error);
+                    }
+                }
+                return;
+            }
+            long now = System.nanoTime();
+            long wait = 0;
+            int players = 0;
+            for (List<Waiter> table : formed) {
+                for (Waiter waiter : table) {
+                    wait = Math.max(wait, now - waiter.joinedAt);
+                }
+                players += table.size();
+            }
+            // counted before the players hear, so a seated player never sees themselves waiting
+            seated.addAndGet(players);
+            unseated.addAndGet(-players);
+            tables.addAndGet(formed.size());
+            longestWait.accumulateAndGet(wait, Math::max);
+            for (int t = 0; t < formed.size(); t++) {
+                List<Waiter> table = formed.get(t);
+                for (int i = 0; i < table.size(); i++) {
+                    table.get(i).seat.complete(new Seat(ids[t], i, table.size()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Tells the players still in the join queue that the lobby has closed.
+     */
+    private void failQueued()
+    {
+        for (Waiter waiter = joins.poll(); waiter != null; waiter = joins.poll()) {
+            queued.decrementAndGet();
+            unseated.decrementAndGet();
+            waiter.seat.completeExceptionally(new IllegalStateException("Lobby is closed"));
+        }
+    }
+}
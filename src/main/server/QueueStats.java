@@ -0,0 +1,158 @@
+package server;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the work admitted to and turned away from a queue, and how long admitted work waited
+ * before it started.
+ *
+ * Waiting times go into power-of-two buckets, so recording is a few atomic increments with no
+ * locks or allocation and percentiles are exact to within a factor of two, which is enough to
+ * tell a queue that is keeping up from one that is not.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class QueueStats {
+    /** Number of waits in each bucket; bucket b holds waits below 2^b nanoseconds */
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    /** Number of waits recorded */
+    private final AtomicLong started = new AtomicLong();
+
+    /** Sum of the waits recorded, in nanoseconds */
+    private final AtomicLong totalWait = new AtomicLong();
+
+    /** Longest wait recorded, in nanoseconds */
+    private final AtomicLong longestWait = new AtomicLong();
+
+    /** Number of items turned away */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** Number of items put off until later */
+    private final AtomicLong deferred = new AtomicLong();
+
+    /**
+     * Records that an item started after waiting in the queue.
+     *
+     * @param waitNanos how long it waited, in nanoseconds
+     */
+    public void started(long waitNanos)
+    {
+        long wait = Math.max(0, waitNanos);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(wait));
+        started.incrementAndGet();
+        totalWait.addAndGet(wait);
+        longestWait.accumulateAndGet(wait, Math::max);
+    }
+
+    /**
+     * Records that an item was turned away because the queue was full.
+     */
+    public void rejected()
+    {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Records that an item was put off to be tried again later because the queue was full.
+     */
+    public void deferred()
+    {
+        deferred.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of items that started.
+     *
+     * @return the number of items
+     */
+    public long startedCount()
+    {
+        return started.get();
+    }
+
+    /**
+     * Gets the number of items turned away.
+     *
+     * @return the number of items
+     */
+    public long rejectedCount()
+    {
+        return rejected.get();
+    }
+
+    /**
+     * Gets the number of times an item was put off.
+     *
+     * @return the number of deferrals
+     */
+    public long deferredCount()
+    {
+        return deferred.get();
+    }
+
+    /**
+     * Gets the mean wait of the items that started.
+     *
+     * @param unit the unit of the result
+     * @return the mean wait, or 0 if none started
+     */
+    public long meanWait(TimeUnit unit)
+    {
+        long count = started.get();
+        return count == 0 ? 0 : unit.convert(totalWait.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the longest wait of the items that started.
+     *
+     * @param unit the unit of the result
+     * @return the longest wait
+     */
+    public long longestWait(TimeUnit unit)
+    {
+        return unit.convert(longestWait.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets an upper bound on a percentile of the waits, to within a factor of two.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @param unit the unit of the result
+     * @return a wait at least as long as that percentile, or 0 if none started
+     */
+    public long percentileWait(double percentile, TimeUnit unit)
+    {
+        long count = started.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int b = 0; b < buckets.length(); b++) {
+            seen += buckets.get(b);
+            if (seen >= rank) {
+                long bound = b == 0 ? 0 : b >= 63 ? Long.MAX_VALUE : (1L << b) - 1;
+                return unit.convert(Math.min(bound, longestWait.get()), TimeUnit.NANOSECONDS);
+            }
+        }
+        return longestWait(unit);
+    }
+
+    /**
+     * Summarises the counts and waits.
+     *
+     * @return the started, rejected and deferred counts and the mean, 99th percentile and longest
+     *         waits in microseconds
+     */
+    @Override
+    public String toString()
+    {
+        return "started " + startedCount() + " rejected " + rejectedCount() + " deferred " + deferredCount()
+            + " mean " + meanWait(TimeUnit.MICROSECONDS) + " p99 " + percentileWait(99, TimeUnit.MICROSECONDS)
+            + " max " + longestWait(TimeUnit.MICROSECONDS);
+    }
+}
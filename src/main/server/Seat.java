@@ -0,0 +1,75 @@
+package server;
+
+/**
+ * Where the {@link Lobby} seated a player: the game, the player's seat in it and the size of the
+ * table.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class Seat {
+    /** The game id */
+    private final long game;
+
+    /** The player's seat, which is their index in the game's players */
+    private final int index;
+
+    /** The number of players at the table */
+    private final int tableSize;
+
+    /**
+     * Creates a seat.
+     *
+     * @param game the game id
+     * @param index the seat
+     * @param tableSize the number of players at the table
+     */
+    public Seat(long game, int index, int tableSize)
+    {
+        this.game = game;
+        this.index = index;
+        this.tableSize = tableSize;
+    }
+
+    /**
+     * Gets the game.
+     *
+     * @return the game id
+     */
+    public long getGame()
+    {
+        return game;
+    }
+
+    /**
+     * Gets the seat.
+     *
+     * @return the player's index in the game
+     */
+    public int getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * Gets the size of the table.
+     *
+     * @return the number of players
+     */
+    public int getTableSize()
+    {
+        return tableSize;
+    }
+
+    /**
+     * Describes the seat.
+     *
+     * @return the game, seat and table size
+     */
+    @Override
+    public String toString()
+    {
+        return "game " + game + " seat " + index + " of " + tableSize;
+    }
+}
@@ -0,0 +1,307 @@
+package server;
+import java.io.Closeable;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs game actors on a fixed set of worker shards, one thread per shard, with each game homed on
+ * the shard chosen by the hash of its id.
+ *
+ * {@link #forKey} gives a game an executor that queues its work on the home shard, so a game's
+ * messages are normally processed by the same thread and its state stays in that core's cache.
+ * Each shard takes work from the head of its own queue; a shard whose queue is empty steals from
+ * the tail of another's. A queued task is a whole game's turn at running (see {@link GameActor}),
+ * and an actor is queued on at most one shard at a time, so stealing moves a game between threads
+ * without ever running it on two at once or reordering its messages.
+ *
+ * A shard with nothing to run or steal parks until work is queued for it, or until another shard
+ * has a backlog worth stealing from.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class ShardedScheduler implements Executor, Closeable {
+    /** Longest a shard sleeps before looking for work to steal again */
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    /** The shards */
+    private final Shard[] shards;
+
+    /** Shard for tasks queued without a key, round robin */
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /** Whether the scheduler accepts work */
+    private volatile boolean running = true;
+
+    /**
+     * One worker thread and its queue.
+     */
+    private final class Shard implements Runnable {
+        /** Index of the shard */
+        private final int index;
+
+        /** Tasks homed on the shard, taken from the head by the owner and the tail by thieves */
+        private final Deque<Runnable> queue = new ConcurrentLinkedDeque<>();
+
+        /** Number of tasks in the queue */
+        private final AtomicInteger queued = new AtomicInteger();
+
+        /** Tasks run by the shard, its own and stolen */
+        private final AtomicLong executed = new AtomicLong();
+
+        /** Tasks the shard stole from others */
+        private final AtomicLong stolen = new AtomicLong();
+
+        /** The worker thread */
+        private final Thread thread;
+
+        /** Whether the worker is parked */
+        private volatile boolean idle;
+
+        /**
+         * Creates a shard and starts its thread.
+         *
+         * @param index the index of the shard
+         */
+        private Shard(int index)
+        {
+            this.index = index;
+            this.thread = new Thread(this, "bakery-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Queues a task and wakes whoever should run it.
+         *
+         * @param task the task
+         */
+        private void push(Runnable task)
+        {
+            queue.addLast(task);
+            int backlog = queued.incrementAndGet();
+            if (idle) {
+                LockSupport.unpark(thread);
+            } else if (backlog > 1) {
+                wakeThief(index);
+            }
+        }
+
+        /**
+         * Takes a task from the head of the queue, for the owner.
+         *
+         * @return the task, or null if the queue is empty
+         */
+        private Runnable poll()
+        {
+            Runnable task = queue.pollFirst();
+            if (task != null) {
+                queued.decrementAndGet();
+            }
+            return task;
+        }
+
+        /**
+         * Takes a task from the tail of the queue, for a thief.
+         *
+         * @return the task, or null if the queue is empty
+         */
+        private Runnable steal()
+        {
+            Runnable task = queue.pollLast();
+            if (task != null) {
+                queued.decrementAndGet();
+            }
+            return task;
+        }
+
+        /**
+         * Runs tasks until the scheduler is closed.
+         */
+        @Override
+        public void run()
+        {
+            while (running) {
+                Runnable task = poll();
+                if (task == null) {
+                    task = stealFor(index);
+                    if (task != null) {
+                        stolen.incrementAndGet();
+                    }
+                }
+                if (task == null) {
+                    idle = true;
+                    if (queued.get() == 0 && running) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    idle = false;
+                    continue;
+                }
+                executed.incrementAndGet();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a scheduler and starts its shards.
+     *
+     * @param shards the number of shards, normally the number of cores
+     * @throws IllegalArgumentException if the number of shards is not positive
+     */
+    public ShardedScheduler(int shards)
+    {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Need at least one shard");
+        }
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(i);
+        }
+        for (Shard shard : this.shards) {
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Gets the shard a key is homed on.
+     *
+     * @param key the key, normally a game id
+     * @return the shard index
+     */
+    public int shardOf(long key)
+    {
+        return (int) (((key * 0x9E3779B97F4A7C15L) >>> 32) % shards.length);
+    }
+
+    /**
+     * Gets an executor that queues work on the home shard of a key.
+     *
+     * @param key the key, normally a game id
+     * @return the executor
+     */
+    public Executor forKey(long key)
+    {
+        Shard home = shards[shardOf(key)];
+        return task -> submit(home, task);
+    }
+
+    /**
+     * Queues a task on the next shard in turn.
+     *
+     * @param task the task
+     * @throws RejectedExecutionException if the scheduler is closed
+     */
+    @Override
+    public void execute(Runnable task)
+    {
+        submit(shards[Math.floorMod(nextShard.getAndIncrement(), shards.length)], task);
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int shardCount()
+    {
+        return shards.length;
+    }
+
+    /**
+     * Gets the number of tasks a shard has run.
+     *
+     * @param shard the shard index
+     * @return the number of tasks, its own and stolen
+     */
+    public long executedCount(int shard)
+    {
+        return shards[shard].executed.get();
+    }
+
+    /**
+     * Gets the number of tasks stolen by all shards.
+     *
+     * @return the number of steals
+     */
+    public long stealCount()
+    {
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.stolen.get();
+        }
+        return total;
+    }
+
+    /**
+     * Stops the shards once they finish their current tasks. Queued tasks are not run.
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+    }
+
+    /**
+     * Queues a task on a shard.
+     *
+     * @param shard the shard
+     * @param task the task
+     * @throws RejectedExecutionException if the scheduler is closed
+     */
+    private void submit(Shard shard, Runnable task)
+    {
+        if (!running) {
+            throw new RejectedExecutionException("Scheduler is closed");
+        }
+        shard.push(task);
+    }
+
+    /**
+     * Steals a task for an idle shard from the other shards, starting after it.
+     *
+     * @param thief the index of the idle shard
+     * @return the task, or null if every other queue is empty
+     */
+    private Runnable stealFor(int thief)
+    {
+        for (int i = 1; i < shards.length; i++) {
+            Shard victim = shards[(thief + i) % shards.length];
+            if (victim.queued.get() > 0) {
+                Runnable task = victim.steal();
+                if (task != null) {
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wakes one parked shard other than a busy one, so it can steal from it.
+     *
+     * @param busy the index of the shard with a backlog
+     */
+    private void wakeThief(int busy)
+    {
+        for (int i = 1; i < shards.length; i++) {
+            Shard shard = shards[(busy + i) % shards.length];
+            if (shard.idle) {
+                LockSupport.unpark(shard.thread);
+                return;
+            }
+        }
+    }
+}
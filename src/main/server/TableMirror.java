@@ -0,0 +1,310 @@
+package server;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import bakery.StateDiff;
+
+/**
+ * A front end's copy of one game's visible state, kept up to date from the snapshot and diff
+ * frames of {@link WireCodec}.
+ *
+ * The mirror knows cards and customers only by their catalog ids, and hands, pantry and layer
+ * stock only as counts per card id, which is all a diff describes. A diff is applied only on top
+ * of the version it was worked out from; anything else means updates were lost, and the mirror
+ * refuses it so that the front end asks for a fresh snapshot.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class TableMirror {
+    /** Number of card ids */
+    private final int cardCount;
+
+    /** Version of the last snapshot or diff applied, or -1 before the first snapshot */
+    private long version = -1;
+
+    /** State hash of the last snapshot or diff applied */
+    private long stateHash;
+
+    /** Player names in seat order */
+    private List<String> playerNames = Collections.emptyList();
+
+    /** Card counts per zone, indexed by zone minus {@link StateDiff#SUPPLY} and then by card id */
+    private int[][] zones = new int[0][];
+
+    /** Actions each player has left */
+    private int[] actions = new int[0];
+
+    /** Seat of the current player */
+    private int currentPlayer;
+
+    /** Customer id in each slot of the row, or -1 */
+    private int[] customers = new int[0];
+
+    /** Status ordinal of the customer in each slot, or -1 */
+    private int[] statuses = new int[0];
+
+    /**
+     * Creates an empty mirror.
+     *
+     * @param cardCount the number of card ids in the game's catalog
+     */
+    public TableMirror(int cardCount)
+    {
+        this.cardCount = cardCount;
+    }
+
+    /**
+     * Replaces the whole state, as read from a snapshot frame.
+     *
+     * @param version the version of the snapshot
+     * @param stateHash the state hash
+     * @param names the player names
+     * @param currentPlayer the current seat
+     */
+    void reset(long version, long stateHash, List<String> names, int currentPlayer)
+    {
+        this.version = version;
+        this.stateHash = stateHash;
+        this.playerNames = Collections.unmodifiableList(new ArrayList<>(names));
+        this.currentPlayer = currentPlayer;
+        this.zones = new int[names.size() - StateDiff.SUPPLY][cardCount];
+        this.actions = new int[names.size()];
+    }
+
+    /**
+     * Sets a player's actions, while reading a snapshot frame.
+     *
+     * @param seat the seat
+     * @param remaining the actions remaining
+     */
+    void setActions(int seat, int remaining)
+    {
+        actions[seat] = remaining;
+    }
+
+    /**
+     * Adds a card to a zone, while reading a snapshot frame.
+     *
+     * @param zone the zone
+     * @param card the card id
+     */
+    void addCard(int zone, int card)
+    {
+        zones[zone - StateDiff.SUPPLY][card]++;
+    }
+
+    /**
+     * Sets the customer row, while reading a snapshot frame.
+     *
+     * @param ids the customer id in each slot, or -1
+     * @param statusOrdinals the status ordinal in each slot, or -1
+     */
+    void setCustomers(int[] ids, int[] statusOrdinals)
+    {
+        customers = ids;
+        statuses = statusOrdinals;
+    }
+
+    /**
+     * Checks that a diff follows the current state, before any of it is applied.
+     *
+     * @param fromVersion the version the diff starts from
+     * @throws IllegalStateException if the mirror is not at that version
+     */
+    void expect(long fromVersion)
+    {
+        if (fromVersion != version) {
+            throw new IllegalStateException("Diff from version " + fromVersion + " does not follow version " + version);
+        }
+    }
+
+    /**
+     * Applies one change of a diff.
+     *
+     * @param kind the kind of change
+     * @param subject the card, customer or seat
+     * @param from the source zone or slot
+     * @param to the target zone, slot or actions remaining
+     */
+    void apply(StateDiff.Change.Kind kind, int subject, int from, int to)
+    {
+        switch (kind) {
+            case CARD_MOVED:
+            case LAYER_BAKED:
+                if (from != StateDiff.SUPPLY) {
+                    zones[from - StateDiff.SUPPLY][subject]--;
+                }
+                if (to != StateDiff.SUPPLY) {
+                    zones[to - StateDiff.SUPPLY][subject]++;
+                }
+                break;
+            case CUSTOMER_ARRIVED:
+                growRow(to);
+                customers[to] = subject;
+                statuses[to] = 0;
+                break;
+            case CUSTOMER_LEFT:
+                customers[from] = -1;
+                statuses[from] = -1;
+                break;
+            case CUSTOMER_MOVED:
+                growRow(to);
+                customers[to] = subject;
+                statuses[to] = statuses[from];
+                customers[from] = -1;
+                statuses[from] = -1;
+                break;
+            case CUSTOMER_STATUS:
+                statuses[from] = to;
+                break;
+            case ACTIONS_CHANGED:
+                actions[subject] = to;
+                break;
+            default:
+                currentPlayer = subject;
+                actions[subject] = to;
+        }
+    }
+
+    /**
+     * Makes sure the customer row has a slot, filling any new slots as empty.
+     *
+     * @param slot the slot needed
+     */
+    private void growRow(int slot)
+    {
+        if (slot >= customers.length) {
+            int length = customers.length;
+            customers = Arrays.copyOf(customers, slot + 1);
+            statuses = Arrays.copyOf(statuses, slot + 1);
+            Arrays.fill(customers, length, slot + 1, -1);
+            Arrays.fill(statuses, length, slot + 1, -1);
+        }
+    }
+
+    /**
+     * Records the version a diff led to, after all its changes are applied.
+     *
+     * @param toVersion the new version
+     * @param hash the new state hash
+     */
+    void advance(long toVersion, long hash)
+    {
+        version = toVersion;
+        stateHash = hash;
+    }
+
+    /**
+     * Gets the version of the state.
+     *
+     * @return the version, or -1 before the first snapshot
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Gets the state hash.
+     *
+     * @return the hash sent with the last snapshot or diff
+     */
+    public long getStateHash()
+    {
+        return stateHash;
+    }
+
+    /**
+     * Gets the player names.
+     *
+     * @return an unmodifiable list of names in seat order
+     */
+    public List<String> getPlayerNames()
+    {
+        return playerNames;
+    }
+
+    /**
+     * Counts the copies of a card in a zone.
+     *
+     * @param zone a seat, {@link StateDiff#PANTRY} or {@link StateDiff#LAYERS}
+     * @param card the card id
+     * @return the number of copies
+     */
+    public int count(int zone, int card)
+    {
+        return zones[zone - StateDiff.SUPPLY][card];
+    }
+
+    /**
+     * Counts the cards in a zone.
+     *
+     * @param zone a seat, {@link StateDiff#PANTRY} or {@link StateDiff#LAYERS}
+     * @return the number of cards
+     */
+    public int size(int zone)
+    {
+        int total = 0;
+        for (int count : zones[zone - StateDiff.SUPPLY]) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the seat of the current player.
+     *
+     * @return the seat
+     */
+    public int getCurrentPlayer()
+    {
+        return currentPlayer;
+    }
+
+    /**
+     * Gets the actions a player has left.
+     *
+     * @param seat the seat
+     * @return the actions remaining
+     */
+    public int getActionsRemaining(int seat)
+    {
+        return actions[seat];
+    }
+
+    /**
+     * Gets the number of slots in the customer row.
+     *
+     * @return the number of slots
+     */
+    public int customerSlots()
+    {
+        return customers.length;
+    }
+
+    /**
+     * Gets the customer in a slot of the row.
+     *
+     * @param slot the slot
+     * @return the customer id, or -1 for an empty slot
+     */
+    public int getCustomer(int slot)
+    {
+        return customers[slot];
+    }
+
+    /**
+     * Gets the status of the customer in a slot of the row.
+     *
+     * @param slot the slot
+     * @return the {@link bakery.CustomerOrder.CustomerOrderStatus} ordinal, or -1 for an empty slot
+     */
+    public int getCustomerStatus(int slot)
+    {
+        return statuses[slot];
+    }
+}
@@ -0,0 +1,91 @@
+package server;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors the server runs its connections and spectator feeds on.
+ *
+ * Connections block on their sockets, and spectators may block in their subscribers, so each one
+ * gets its own thread. On a runtime with virtual
+ * threads (Java 21 and later) these are virtual threads, looked up by reflection so that the code
+ * still compiles and runs on Java 17, where a cached pool of daemon platform threads is used
+ * instead.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class Threads {
+    /** Factory method for a virtual thread per task executor, or null if the runtime has none */
+    private static final Method VIRTUAL_EXECUTOR = findVirtualExecutor();
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private Threads()
+    {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Checks whether the runtime supports virtual threads.
+     *
+     * @return true if {@link #newPerTaskExecutor} creates virtual threads
+     */
+    public static boolean virtualThreadsAvailable()
+    {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that starts a new thread for every task: a virtual thread where the
+     * runtime supports them, a daemon platform thread otherwise.
+     *
+     * @param name the prefix of the names of platform threads
+     * @return the executor
+     */
+    public static ExecutorService newPerTaskExecutor(String name)
+    {
+        if (VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // fall back to platform threads
+            }
+        }
+        return Executors.newCachedThreadPool(daemonFactory(name));
+    }
+
+    /**
+     * Creates a factory of numbered daemon threads.
+     *
+     * @param name the prefix of the thread names
+     * @return the factory
+     */
+    private static ThreadFactory daemonFactory(String name)
+    {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Looks up {@code Executors.newVirtualThreadPerTaskExecutor}.
+     *
+     * @return the method, or null if the runtime has no virtual threads
+     */
+    private static Method findVirtualExecutor()
+    {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
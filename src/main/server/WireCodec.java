@@ -0,0 +1,600 @@
+package server;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import bakery.CardCatalog;
+import bakery.CustomerOrder;
+import bakery.CustomerOrder.CustomerOrderStatus;
+import bakery.GameView;
+import bakery.Ingredient;
+import bakery.StateDiff;
+
+/**
+ * Encodes actions, their results and state updates as compact binary frames for a networked front
+ * end, and decodes them again.
+ *
+ * A frame is a varint body length followed by the body, whose first byte is the frame type and
+ * whose next varint is the game id. Cards and customers travel as {@link CardCatalog} ids, small
+ * numbers as varints, and signed numbers as zigzag varints, so a typical action is six bytes and
+ * the diff after a draw a dozen or so, against hundreds for ingredient names in text or Java
+ * serialization. The bodies are:
+ * <ul>
+ * <li>{@link #ACTION}: operation byte, first and second arguments</li>
+ * <li>{@link #RESULT}: operation byte, error code, current seat, actions remaining</li>
+ * <li>{@link #SNAPSHOT}: version, state hash, player names, current seat, then per seat the
+ * actions and hand, then the pantry, the layer stock and the customer row</li>
+ * <li>{@link #DIFF}: from and to versions, state hash, then each change as a kind byte and three
+ * numbers</li>
+ * </ul>
+ *
+ * Encoders write into a caller's buffer, normally one from a {@link BufferPool}, and leave it
+ * untouched if the frame does not fit. Decoders read with plain buffer operations and never use
+ * reflection.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class WireCodec {
+    /** Frame type of an action sent by a player */
+    public static final int ACTION = 1;
+
+    /** Frame type of the result of an action */
+    public static final int RESULT = 2;
+
+    /** Frame type of a full state update */
+    public static final int SNAPSHOT = 3;
+
+    /** Frame type of a state diff */
+    public static final int DIFF = 4;
+
+    /** Bytes reserved for the body length, which limits a body to 2 MB */
+    private static final int LENGTH_BYTES = 3;
+
+    /** Exception names with their own error code, indexed by code; code 0 means accepted */
+    private static final String[] ERRORS = {
+        null, "WrongIngredientsException", "TooManyActionsException", "EmptyPantryException", "IllegalArgumentException"
+    };
+
+    /** Error code followed by the exception name written out */
+    private static final int OTHER_ERROR = ERRORS.length;
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private WireCodec()
+    {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Writes an action frame.
+     *
+     * @param out the buffer to write to
+     * @param game the game id
+     * @param action the action
+     * @throws BufferOverflowException if the frame does not fit, leaving the buffer as it was
+     */
+    public static void writeAction(ByteBuffer out, long game, Action action)
+    {
+        int start = begin(out, ACTION, game);
+        try {
+            out.put((byte) action.getOp());
+            writeSigned(out, action.getFirst());
+            writeSigned(out, action.getSecond());
+        } catch (BufferOverflowException e) {
+            out.position(start);
+            throw e;
+        }
+        end(out, start);
+    }
+
+    /**
+     * Writes a result frame.
+     *
+     * @param out the buffer to write to
+     * @param game the game id
+     * @param result the result
+     * @throws BufferOverflowException if the frame does not fit, leaving the buffer as it was
+     */
+    public static void writeResult(ByteBuffer out, long game, ActionResult result)
+    {
+        int start = begin(out, RESULT, game);
+        try {
+            out.put((byte) result.getAction().getOp());
+            writeSigned(out, result.getAction().getFirst());
+            writeSigned(out, result.getAction().getSecond());
+            int code = errorCode(result.getError());
+            out.put((byte) code);
+            if (code == OTHER_ERROR) {
+                writeString(out, result.getError());
+            }
+            writeSigned(out, result.getCurrentPlayer());
+            writeSigned(out, result.getActionsRemaining());
+        } catch (BufferOverflowException e) {
+            out.position(start);
+            throw e;
+        }
+        end(out, start);
+    }
+
+    /**
+     * Writes a snapshot frame of a view.
+     *
+     * @param out the buffer to write to
+     * @param game the game id
+     * @param view the view
+     * @throws BufferOverflowException if the frame does not fit, leaving the buffer as it was
+     */
+    public static void writeSnapshot(ByteBuffer out, long game, GameView view)
+    {
+        CardCatalog catalog = view.getCardCatalog();
+        int start = begin(out, SNAPSHOT, game);
+        try {
+            writeVarint(out, view.getVersion());
+            out.putLong(view.getStateHash());
+            List<String> names = view.getPlayerNames();
+            writeVarint(out, names.size());
+            for (String name : names) {
+                writeString(out, name);
+            }
+            writeVarint(out, view.getCurrentPlayer());
+            for (int seat = 0; seat < names.size(); seat++) {
+                writeSigned(out, view.getActionsRemaining(seat));
+                writeCards(out, catalog, view.getHand(seat));
+            }
+            writeCards(out, catalog, view.getPantry());
+            writeCards(out, catalog, view.getLayers());
+            List<CustomerOrder> row = view.getActiveCustomers();
+            writeVarint(out, row.size());
+            for (int slot = 0; slot < row.size(); slot++) {
+                CustomerOrder order = row.get(slot);
+                writeVarint(out, catalog.customerId(order) + 1);
+                if (order != null) {
+                    out.put((byte) view.getCustomerStatus(slot).ordinal());
+                }
+            }
+        } catch (BufferOverflowException e) {
+            out.position(start);
+            throw e;
+        }
+        end(out, start);
+    }
+
+    /**
+     * Writes a diff frame, or a snapshot frame if the diff is a snapshot.
+     *
+     * @param out the buffer to write to
+     * @param game the game id
+     * @param diff the diff
+     * @throws BufferOverflowException if the frame does not fit, leaving the buffer as it was
+     */
+    public static void writeDiff(ByteBuffer out, long game, StateDiff diff)
+    {
+        if (diff.isSnapshot()) {
+            writeSnapshot(out, game, diff.getView());
+            return;
+        }
+        int start = begin(out, DIFF, game);
+        try {
+            writeVarint(out, diff.getFromVersion());
+            writeVarint(out, diff.getToVersion());
+            out.putLong(diff.getView().getStateHash());
+            writeVarint(out, diff.getChanges().size());
+            for (StateDiff.Change change : diff.getChanges()) {
+                out.put((byte) change.getKind().ordinal());
+                writeSigned(out, change.getSubject());
+                writeSigned(out, change.getFrom());
+                writeSigned(out, change.getTo());
+            }
+        } catch (BufferOverflowException e) {
+            out.position(start);
+            throw e;
+        }
+        end(out, start);
+    }
+
+    /**
+     * Takes the next whole frame from a buffer of received bytes.
+     *
+     * @param in the received bytes, from position to limit
+     * @return the frame body, or null if the buffer does not yet hold a whole frame, in which
+     *         case its position is unchanged
+     * @throws IllegalArgumentException if the length prefix is malformed
+     */
+    public static ByteBuffer nextFrame(ByteBuffer in)
+    {
+        int start = in.position();
+        long length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (!in.hasRemaining()) {
+                in.position(start);
+                return null;
+            }
+            if (shift >= 7 * LENGTH_BYTES) {
+                throw new IllegalArgumentException("Frame length is too long");
+            }
+            int b = in.get();
+            length |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (in.remaining() < length) {
+            in.position(start);
+            return null;
+        }
+        ByteBuffer frame = in.slice();
+        frame.limit((int) length);
+        in.position(in.position() + (int) length);
+        return frame;
+    }
+
+    /**
+     * Gets the type of a frame.
+     *
+     * @param frame the frame body
+     * @return one of the frame type constants
+     */
+    public static int type(ByteBuffer frame)
+    {
+        return frame.get(0);
+    }
+
+    /**
+     * Gets the game a frame is about.
+     *
+     * @param frame the frame body
+     * @return the game id
+     * @throws IllegalArgumentException if the frame is malformed
+     */
+    public static long gameOf(ByteBuffer frame)
+    {
+        try {
+            return readVarint(frame.duplicate().position(1));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Malformed frame", e);
+        }
+    }
+
+    /**
+     * Reads an action frame.
+     *
+     * @param frame the frame body
+     * @return the action
+     * @throws IllegalArgumentException if the frame is not a well-formed action
+     */
+    public static Action readAction(ByteBuffer frame)
+    {
+        ByteBuffer in = open(frame, ACTION);
+        try {
+            return new Action(in.get(), readSigned(in), readSigned(in));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Malformed action frame", e);
+        }
+    }
+
+    /**
+     * Reads a result frame.
+     *
+     * @param frame the frame body
+     * @return the result, without the exception message
+     * @throws IllegalArgumentException if the frame is not a well-formed result
+     */
+    public static ActionResult readResult(ByteBuffer frame)
+    {
+        ByteBuffer in = open(frame, RESULT);
+        try {
+            Action action = new Action(in.get(), readSigned(in), readSigned(in));
+            int code = in.get();
+            String error;
+            if (code == OTHER_ERROR) {
+                error = readString(in);
+            } else if (code >= 0 && code < ERRORS.length) {
+                error = ERRORS[code];
+            } else {
+                throw new IllegalArgumentException("Unknown error code " + code);
+            }
+            return new ActionResult(action, error, null, readSigned(in), readSigned(in));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Malformed result frame", e);
+        }
+    }
+
+    /**
+     * Reads a snapshot or diff frame into a mirror of the game.
+     *
+     * @param frame the frame body
+     * @param mirror the mirror to update
+     * @throws IllegalStateException if a diff does not follow the mirror's version, leaving the mirror unchanged
+     * @throws IllegalArgumentException if the frame is not a well-formed snapshot or diff
+     */
+    public static void readState(ByteBuffer frame, TableMirror mirror)
+    {
+        int type = type(frame);
+        ByteBuffer in = open(frame, type == SNAPSHOT ? SNAPSHOT : DIFF);
+        try {
+            if (type == SNAPSHOT) {
+                readSnapshot(in, mirror);
+            } else {
+                readDiff(in, mirror);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed state frame", e);
+        }
+    }
+
+    /**
+     * Reads the body of a snapshot frame.
+     *
+     * @param in the body, after the game id
+     * @param mirror the mirror to reset
+     */
+    private static void readSnapshot(ByteBuffer in, TableMirror mirror)
+    {
+        long version = readVarint(in);
+        long hash = in.getLong();
+        int seats = (int) readVarint(in);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < seats; i++) {
+            names.add(readString(in));
+        }
+        mirror.reset(version, hash, names, (int) readVarint(in));
+        for (int seat = 0; seat < seats; seat++) {
+            mirror.setActions(seat, readSigned(in));
+            readCards(in, mirror, seat);
+        }
+        readCards(in, mirror, StateDiff.PANTRY);
+        readCards(in, mirror, StateDiff.LAYERS);
+        int slots = (int) readVarint(in);
+        int[] ids = new int[slots];
+        int[] statuses = new int[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            ids[slot] = (int) readVarint(in) - 1;
+            statuses[slot] = ids[slot] < 0 ? -1 : in.get();
+        }
+        mirror.setCustomers(ids, statuses);
+    }
+
+    /**
+     * Reads the body of a diff frame, checking it follows the mirror before changing anything.
+     *
+     * @param in the body, after the game id
+     * @param mirror the mirror to update
+     */
+    private static void readDiff(ByteBuffer in, TableMirror mirror)
+    {
+        long from = readVarint(in);
+        long to = readVarint(in);
+        long hash = in.getLong();
+        int count = (int) readVarint(in);
+        StateDiff.Change.Kind[] kinds = StateDiff.Change.Kind.values();
+        int[] changes = new int[count * 4];
+        for (int i = 0; i < changes.length; i += 4) {
+            changes[i] = in.get();
+            if (changes[i] < 0 || changes[i] >= kinds.length) {
+                throw new IllegalArgumentException("Unknown change kind " + changes[i]);
+            }
+            changes[i + 1] = readSigned(in);
+            changes[i + 2] = readSigned(in);
+            changes[i + 3] = readSigned(in);
+        }
+        mirror.expect(from);
+        for (int i = 0; i < changes.length; i += 4) {
+            mirror.apply(kinds[changes[i]], changes[i + 1], changes[i + 2], changes[i + 3]);
+        }
+        mirror.advance(to, hash);
+    }
+
+    /**
+     * Positions a reader after the type and game id of a frame.
+     *
+     * @param frame the frame body
+     * @param expected the frame type expected
+     * @return a reader over the rest of the body
+     * @throws IllegalArgumentException if the frame has another type or is malformed
+     */
+    private static ByteBuffer open(ByteBuffer frame, int expected)
+    {
+        ByteBuffer in = frame.duplicate();
+        try {
+            if (in.get() != expected) {
+                throw new IllegalArgumentException("Expected a frame of type " + expected + ", got " + frame.get(0));
+            }
+            readVarint(in);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Malformed frame", e);
+        }
+        return in;
+    }
+
+    /**
+     * Starts a frame, leaving room for the body length.
+     *
+     * @param out the buffer
+     * @param type the frame type
+     * @param game the game id
+     * @return the position the frame starts at
+     * @throws BufferOverflowException if the header does not fit, leaving the buffer as it was
+     */
+    private static int begin(ByteBuffer out, int type, long game)
+    {
+        int start = out.position();
+        try {
+            out.position(start + LENGTH_BYTES);
+            out.put((byte) type);
+            writeVarint(out, game);
+        } catch (BufferOverflowException | IllegalArgumentException e) {
+            out.position(start);
+            throw new BufferOverflowException();
+        }
+        return start;
+    }
+
+    /**
+     * Finishes a frame by writing the body length in front of it and closing up the space left
+     * for a longer length.
+     *
+     * @param out the buffer, positioned after the body
+     * @param start the position the frame starts at
+     */
+    private static void end(ByteBuffer out, int start)
+    {
+        int bodyStart = start + LENGTH_BYTES;
+        int length = out.position() - bodyStart;
+        int at = start;
+        int value = length;
+        while ((value & ~0x7F) != 0) {
+            out.put(at++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put(at++, (byte) value);
+        if (at < bodyStart) {
+            for (int i = 0; i < length; i++) {
+                out.put(at + i, out.get(bodyStart + i));
+            }
+        }
+        out.position(at + length);
+    }
+
+    /**
+     * Maps an exception name to its error code.
+     *
+     * @param error the simple name of the exception, or null if the action was accepted
+     * @return the code
+     */
+    private static int errorCode(String error)
+    {
+        if (error == null) {
+            return 0;
+        }
+        for (int code = 1; code < ERRORS.length; code++) {
+            if (ERRORS[code].equals(error)) {
+                return code;
+            }
+        }
+        return OTHER_ERROR;
+    }
+
+    /**
+     * Writes a list of cards as a count followed by card ids.
+     *
+     * @param out the buffer
+     * @param catalog the card catalog
+     * @param cards the cards
+     */
+    private static void writeCards(ByteBuffer out, CardCatalog catalog, List<? extends Ingredient> cards)
+    {
+        writeVarint(out, cards.size());
+        for (Ingredient card : cards) {
+            writeVarint(out, catalog.cardId(card));
+        }
+    }
+
+    /**
+     * Reads a list of cards into a zone of a mirror.
+     *
+     * @param in the buffer
+     * @param mirror the mirror
+     * @param zone the zone
+     */
+    private static void readCards(ByteBuffer in, TableMirror mirror, int zone)
+    {
+        int count = (int) readVarint(in);
+        for (int i = 0; i < count; i++) {
+            mirror.addCard(zone, (int) readVarint(in));
+        }
+    }
+
+    /**
+     * Writes a string as a length followed by its UTF-8 bytes.
+     *
+     * @param out the buffer
+     * @param text the string
+     */
+    private static void writeString(ByteBuffer out, String text)
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.put(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}.
+     *
+     * @param in the buffer
+     * @return the string
+     */
+    private static String readString(ByteBuffer in)
+    {
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a signed number as a zigzag varint, so that small negative numbers stay short.
+     *
+     * @param out the buffer
+     * @param value the number
+     */
+    private static void writeSigned(ByteBuffer out, int value)
+    {
+        writeVarint(out, ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Reads a number written by {@link #writeSigned}.
+     *
+     * @param in the buffer
+     * @return the number
+     */
+    private static int readSigned(ByteBuffer in)
+    {
+        int encoded = (int) readVarint(in);
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    /**
+     * Writes an unsigned varint, seven bits per byte with the high bit marking more bytes.
+     *
+     * @param out the buffer
+     * @param value the non-negative number
+     * @throws IllegalArgumentException if the number is negative
+     */
+    private static void writeVarint(ByteBuffer out, long value)
+    {
+        if (value < 0) {
+            throw new IllegalArgumentException("Varint must not be negative");
+        }
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     *
+     * @param in the buffer
+     * @return the number
+     * @throws IllegalArgumentException if the varint is longer than ten bytes
+     */
+    private static long readVarint(ByteBuffer in)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint is too long");
+    }
+}
@@ -0,0 +1,569 @@
+package sim;
+import java.util.Arrays;
+import java.util.Random;
+
+import bakery.CardCatalog;
+import bakery.MagicBakery.ActionType;
+
+/**
+ * Advances many independent games one action at a time, in lockstep.
+ *
+ * State is stored column-wise: for every field, the values of all games sit next to each other,
+ * so for example the flour counts of player 0 in every game form one contiguous run. Rule checks
+ * such as {@link #canBake(int, boolean[])} become tight loops over contiguous memory instead of a
+ * walk over one object graph per game. Every game in a batch has the same number of players.
+ *
+ * The rules are those of {@link GameKernel}, and a game copied in with {@link #load} and back out
+ * with {@link #store} after the same actions is identical to one stepped by a {@link GameKernel}.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class BatchKernel {
+    /** Operation code that ends the current player's turn, after the {@link ActionType} ordinals */
+    public static final int END_TURN = ActionType.values().length;
+
+    /** The action types by ordinal, read once rather than cloned on every step */
+    private static final ActionType[] ACTION_TYPES = ActionType.values();
+
+    /** Number of games */
+    private final int games;
+
+    /** Number of card ids */
+    private final int cards;
+
+    /** Number of players in every game */
+    private final int players;
+
+    /** Recipe card ids of each layer, shared with the kernels copied in */
+    private final int[][] recipes;
+
+    /** Random number generator per game */
+    private final Random[] randoms;
+
+    /** Current player per game */
+    private final int[] current;
+
+    /** Actions remaining, indexed by player * games + game */
+    private final int[] actions;
+
+    /** Hand counts, indexed by (card * players + player) * games + game */
+    private final int[] hands;
+
+    /** Layer stock, indexed by card * games + game */
+    private final int[] layerStock;
+
+    /** Ordered lists, indexed by position * games + game, with their sizes and capacities */
+    private int[] pantry;
+    private final int[] pantrySize;
+    private int pantryCapacity;
+    private int[] discard;
+    private final int[] discardSize;
+    private int discardCapacity;
+    private int[] deck;
+    private final int[] deckSize;
+    private int deckCapacity;
+
+    /** Customer fields, which no action changes, kept per game for the round trip */
+    private final int[][][] customers;
+
+    /**
+     * Creates a batch of empty games.
+     *
+     * @param catalog the card catalog
+     * @param games the number of games
+     * @param players the number of players in every game
+     */
+    public BatchKernel(CardCatalog catalog, int games, int players)
+    {
+        this.games = games;
+        this.cards = catalog.cardCount();
+        this.players = players;
+        this.recipes = new GameKernel(catalog).recipes;
+        this.randoms = new Random[games];
+        this.current = new int[games];
+        this.actions = new int[players * games];
+        this.hands = new int[cards * players * games];
+        this.layerStock = new int[cards * games];
+        this.pantryCapacity = 16;
+        this.pantry = new int[pantryCapacity * games];
+        this.pantrySize = new int[games];
+        this.discardCapacity = 32;
+        this.discard = new int[discardCapacity * games];
+        this.discardSize = new int[games];
+        this.deckCapacity = 128;
+        this.deck = new int[deckCapacity * games];
+        this.deckSize = new int[games];
+        this.customers = new int[games][][];
+    }
+
+    /**
+     * Gets the number of games in the batch.
+     *
+     * @return the number of games
+     */
+    public int size()
+    {
+        return games;
+    }
+
+    /**
+     * Copies a game into a slot of the batch. The batch takes over the kernel's random number generator.
+     *
+     * @param game the slot
+     * @param kernel the game to copy
+     * @throws IllegalArgumentException if the kernel has a different number of players
+     */
+    public void load(int game, GameKernel kernel)
+    {
+        if (kernel.players != players) {
+            throw new IllegalArgumentException("Batch games have " + players + " players, not " + kernel.players);
+        }
+        randoms[game] = kernel.random;
+        current[game] = kernel.current;
+        for (int p = 0; p < players; p++) {
+            actions[p * games + game] = kernel.actions[p];
+            for (int card = 0; card < cards; card++) {
+                hands[(card * players + p) * games + game] = kernel.hands[p * cards + card];
+            }
+        }
+        for (int card = 0; card < cards; card++) {
+            layerStock[card * games + game] = kernel.layerStock[card];
+        }
+        pantrySize[game] = 0;
+        for (int i = 0; i < kernel.pantrySize; i++) {
+            appendPantry(game, kernel.pantry[i]);
+        }
+        discardSize[game] = 0;
+        for (int i = 0; i < kernel.discardSize; i++) {
+            appendDiscard(game, kernel.discard[i]);
+        }
+        deckSize[game] = 0;
+        for (int i = 0; i < kernel.deckSize; i++) {
+            appendDeck(game, kernel.deck[i]);
+        }
+        customers[game] = new int[][] {kernel.rowIds, kernel.rowStatus, kernel.customerDeckIds,
+            kernel.customerDeckStatus, kernel.inactiveIds, kernel.inactiveStatus};
+    }
+
+    /**
+     * Copies a game out of a slot of the batch.
+     *
+     * @param game the slot
+     * @param kernel the kernel to overwrite, which also gets the game's random number generator
+     */
+    public void store(int game, GameKernel kernel)
+    {
+        kernel.random = randoms[game];
+        kernel.players = players;
+        kernel.current = current[game];
+        kernel.actions = new int[players];
+        kernel.hands = new int[players * cards];
+        for (int p = 0; p < players; p++) {
+            kernel.actions[p] = actions[p * games + game];
+            for (int card = 0; card < cards; card++) {
+                kernel.hands[p * cards + card] = hands[(card * players + p) * games + game];
+            }
+        }
+        for (int card = 0; card < cards; card++) {
+            kernel.layerStock[card] = layerStock[card * games + game];
+        }
+        kernel.pantry = column(pantry, game, pantrySize[game]);
+        kernel.pantrySize = pantrySize[game];
+        kernel.discard = column(discard, game, discardSize[game]);
+        kernel.discardSize = discardSize[game];
+        kernel.deck = column(deck, game, deckSize[game]);
+        kernel.deckSize = deckSize[game];
+        int[][] fields = customers[game];
+        kernel.rowIds = fields[0];
+        kernel.rowStatus = fields[1];
+        kernel.customerDeckIds = fields[2];
+        kernel.customerDeckStatus = fields[3];
+        kernel.inactiveIds = fields[4];
+        kernel.inactiveStatus = fields[5];
+    }
+
+    /**
+     * Gathers one game's ordered list out of a column-wise array.
+     *
+     * @param list the column-wise array
+     * @param game the game
+     * @param size the length of the game's list
+     * @return the list, with at least one spare element
+     */
+    private int[] column(int[] list, int game, int size)
+    {
+        int[] out = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            out[i] = list[i * games + game];
+        }
+        return out;
+    }
+
+    /**
+     * Applies one action to every game. Game {@code g} performs {@code ops[g]}, an
+     * {@link ActionType} ordinal or {@link #END_TURN}, with card argument {@code cardArgs[g]}
+     * (the card to draw or pass, or the layer to bake) and {@code targets[g]} (the player receiving
+     * a pass, or the customer slot to fulfil).
+     *
+     * @param ops the operation per game
+     * @param cardArgs the card argument per game
+     * @param targets the target argument per game
+     * @param results receives the {@link GameKernel} result code per game
+     * @throws IllegalArgumentException if an operation is neither an action type nor
+     *         {@link #END_TURN}, in which case no game is stepped
+     */
+    public void step(int[] ops, int[] cardArgs, int[] targets, int[] results)
+    {
+        for (int g = 0; g < games; g++) {
+            if (ops[g] != END_TURN && (ops[g] < 0 || ops[g] >= ACTION_TYPES.length)) {
+                throw new IllegalArgumentException("Unknown operation " + ops[g] + " for game " + g);
+            }
+        }
+        for (int g = 0; g < games; g++) {
+            if (ops[g] == END_TURN) {
+                endTurn(g);
+                results[g] = GameKernel.OK;
+                continue;
+            }
+            switch (ACTION_TYPES[ops[g]]) {
+                case DRAW_INGREDIENT:
+                    results[g] = drawFromPantry(g, cardArgs[g]);
+                    break;
+                case PASS_INGREDIENT:
+                    results[g] = passCard(g, cardArgs[g], targets[g]);
+                    break;
+                case BAKE_LAYER:
+                    results[g] = bakeLayer(g, cardArgs[g]);
+                    break;
+                case FULFIL_ORDER:
+                    results[g] = GameKernel.OK;
+                    break;
+                case REFRESH_PANTRY:
+                    results[g] = refreshPantry(g);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported action type " + ACTION_TYPES[ops[g]]);
+            }
+        }
+    }
+
+    /**
+     * Checks, for every game, whether the current player can bake a layer.
+     *
+     * @param layer the layer card id
+     * @param out receives the answer per game
+     */
+    public void canBake(int layer, boolean[] out)
+    {
+        Arrays.fill(out, 0, games, recipes[layer].length > 0);
+        for (int ingredient : recipes[layer]) {
+            int base = ingredient * players * games;
+            for (int g = 0; g < games; g++) {
+                out[g] &= hands[base + current[g] * games + g] > 0;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of actions the current player has left in a game.
+     *
+     * @param game the game
+     * @return the actions remaining
+     */
+    public int getActionsRemaining(int game)
+    {
+        return actions[current[game] * games + game];
+    }
+
+    /**
+     * Gets the current player of a game.
+     *
+     * @param game the game
+     * @return the index of the current player
+     */
+    public int getCurrentPlayer(int game)
+    {
+        return current[game];
+    }
+
+    /**
+     * Gets the number of copies of a card in a player's hand.
+     *
+     * @param game the game
+     * @param player the player index
+     * @param card the card id
+     * @return the number of copies
+     */
+    public int handCount(int game, int player, int card)
+    {
+        return hands[(card * players + player) * games + game];
+    }
+
+    /**
+     * Gets the number of cards in a game's pantry.
+     *
+     * @param game the game
+     * @return the pantry size
+     */
+    public int pantrySize(int game)
+    {
+        return pantrySize[game];
+    }
+
+    /**
+     * Gets the card id at a position of a game's pantry.
+     *
+     * @param game the game
+     * @param index the pantry position
+     * @return the card id
+     */
+    public int pantryCard(int game, int index)
+    {
+        return pantry[index * games + game];
+    }
+
+    /**
+     * Draws an ingredient from the pantry, as {@link GameKernel#drawFromPantry}.
+     *
+     * @param g the game
+     * @param card the card id
+     * @return the result code
+     */
+    private int drawFromPantry(int g, int card)
+    {
+        int size = pantrySize[g];
+        int index = -1;
+        for (int i = 0; i < size; i++) {
+            if (pantry[i * games + g] == card) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return GameKernel.WRONG_INGREDIENTS;
+        }
+        int slot = current[g] * games + g;
+        if (actions[slot] <= 0 || actions[slot] > actionsPermitted()) {
+            return GameKernel.TOO_MANY_ACTIONS;
+        }
+        for (int i = index; i < size - 1; i++) {
+            pantry[i * games + g] = pantry[(i + 1) * games + g];
+        }
+        pantrySize[g] = size - 1;
+        hands[(card * players + current[g]) * games + g]++;
+        if (!drawFromPantryDeck(g)) {
+            return GameKernel.EMPTY_PANTRY;
+        }
+        actions[slot]--;
+        return GameKernel.OK;
+    }
+
+    /**
+     * Passes a card to another player, as {@link GameKernel#passCard}.
+     *
+     * @param g the game
+     * @param card the card id
+     * @param recipient the receiving player
+     * @return the result code
+     */
+    private int passCard(int g, int card, int recipient)
+    {
+        if (recipient < 0 || recipient >= players || recipient == current[g]) {
+            return GameKernel.WRONG_INGREDIENTS;
+        }
+        int from = (card * players + current[g]) * games + g;
+        if (card < 0 || hands[from] == 0) {
+            return GameKernel.WRONG_INGREDIENTS;
+        }
+        hands[from]--;
+        hands[(card * players + recipient) * games + g]++;
+        int slot = current[g] * games + g;
+        actions[slot]--;
+        return actions[slot] < 0 ? GameKernel.TOO_MANY_ACTIONS : GameKernel.OK;
+    }
+
+    /**
+     * Bakes a layer, as {@link GameKernel#bakeLayer}.
+     *
+     * @param g the game
+     * @param layer the layer card id
+     * @return the result code
+     */
+    private int bakeLayer(int g, int layer)
+    {
+        int slot = current[g] * games + g;
+        if (actions[slot] <= 0) {
+            return GameKernel.TOO_MANY_ACTIONS;
+        }
+        int[] recipe = recipes[layer];
+        boolean canBake = recipe.length > 0;
+        for (int ingredient : recipe) {
+            canBake &= hands[(ingredient * players + current[g]) * games + g] > 0;
+        }
+        if (!canBake) {
+            return GameKernel.WRONG_INGREDIENTS;
+        }
+        for (int ingredient : recipe) {
+            appendDiscard(g, ingredient);
+            hands[(ingredient * players + current[g]) * games + g]--;
+        }
+        hands[(layer * players + current[g]) * games + g]++;
+        if (layerStock[layer * games + g] > 0) {
+            layerStock[layer * games + g]--;
+        }
+        actions[slot]--;
+        return GameKernel.OK;
+    }
+
+    /**
+     * Discards the pantry and deals a new one, as {@link GameKernel#refreshPantry}.
+     *
+     * @param g the game
+     * @return the result code
+     */
+    private int refreshPantry(int g)
+    {
+        int slot = current[g] * games + g;
+        if (actions[slot] <= 0) {
+            return GameKernel.TOO_MANY_ACTIONS;
+        }
+        for (int i = 0; i < pantrySize[g]; i++) {
+            appendDiscard(g, pantry[i * games + g]);
+        }
+        pantrySize[g] = 0;
+        if (deckSize[g] > 0) {
+            shufflePantryDeck(g);
+        }
+        for (int i = 0; i < GameKernel.PANTRY_SIZE; i++) {
+            if (!drawFromPantryDeck(g)) {
+                return GameKernel.EMPTY_PANTRY;
+            }
+        }
+        actions[slot]--;
+        return GameKernel.OK;
+    }
+
+    /**
+     * Ends the current player's turn, as {@link GameKernel#endTurn}.
+     *
+     * @param g the game
+     */
+    private void endTurn(int g)
+    {
+        if (current[g] == players - 1) {
+            current[g] = 0;
+            int permitted = actionsPermitted();
+            if (permitted != -1) {
+                for (int p = 0; p < players; p++) {
+                    actions[p * games + g] = permitted;
+                }
+            }
+        } else {
+            current[g]++;
+        }
+    }
+
+    /**
+     * Adds the top card of the pantry deck to the pantry, as the game does.
+     *
+     * @param g the game
+     * @return false if both the deck and the discard pile are empty
+     */
+    private boolean drawFromPantryDeck(int g)
+    {
+        if (deckSize[g] == 0 && discardSize[g] == 0) {
+            return false;
+        }
+        if (deckSize[g] == 0) {
+            shufflePantryDeck(g);
+        }
+        appendPantry(g, deck[g]);
+        return true;
+    }
+
+    /**
+     * Moves the discard pile under the pantry deck and shuffles the deck.
+     *
+     * @param g the game
+     */
+    private void shufflePantryDeck(int g)
+    {
+        if (discardSize[g] == 0) {
+            return;
+        }
+        for (int i = 0; i < discardSize[g]; i++) {
+            appendDeck(g, discard[i * games + g]);
+        }
+        discardSize[g] = 0;
+        Random random = randoms[g];
+        for (int i = deckSize[g]; i > 1; i--) {
+            int a = (i - 1) * games + g;
+            int b = random.nextInt(i) * games + g;
+            int temp = deck[a];
+            deck[a] = deck[b];
+            deck[b] = temp;
+        }
+    }
+
+    /**
+     * Gets the number of actions permitted per turn.
+     *
+     * @return the number of actions permitted, or -1 for an unsupported number of players
+     */
+    private int actionsPermitted()
+    {
+        if (players <= 3 && players > 0) {
+            return 3;
+        } else if (players <= 5 && players > 3) {
+            return 2;
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a card to a game's pantry, widening the column if needed.
+     *
+     * @param g the game
+     * @param card the card id
+     */
+    private void appendPantry(int g, int card)
+    {
+        if (pantrySize[g] == pantryCapacity) {
+            pantryCapacity *= 2;
+            pantry = Arrays.copyOf(pantry, pantryCapacity * games);
+        }
+        pantry[pantrySize[g]++ * games + g] = card;
+    }
+
+    /**
+     * Appends a card to a game's discard pile, widening the column if needed.
+     *
+     * @param g the game
+     * @param card the card id
+     */
+    private void appendDiscard(int g, int card)
+    {
+        if (discardSize[g] == discardCapacity) {
+            discardCapacity *= 2;
+            discard = Arrays.copyOf(discard, discardCapacity * games);
+        }
+        discard[discardSize[g]++ * games + g] = card;
+    }
+
+    /**
+     * Appends a card to the bottom of a game's pantry deck, widening the column if needed.
+     *
+     * @param g the game
+     * @param card the card id
+     */
+    private void appendDeck(int g, int card)
+    {
+        if (deckSize[g] == deckCapacity) {
+            deckCapacity *= 2;
+            deck = Arrays.copyOf(deck, deckCapacity * games);
+        }
+        deck[deckSize[g]++ * games + g] = card;
+    }
+}
@@ -0,0 +1,692 @@
+package sim;
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import bakery.CardCatalog;
+import bakery.Ingredient;
+import bakery.Layer;
+import bakery.MagicBakery;
+import bakery.StateCodec;
+import util.BitBuffer;
+
+/**
+ * A data-oriented copy of the game rules for bulk simulation.
+ *
+ * The whole game is held in primitive arrays of catalog card ids: hands and the layer stock
+ * as count vectors, and the pantry, discard pile and pantry deck as ordered lists, since their
+ * order decides the outcome of a shuffle. The actions follow the same rules as
+ * {@link MagicBakery}, including the order in which random numbers are drawn, so a kernel and a
+ * game sharing a random number generator state stay in step. Actions report failures with a
+ * result code rather than an exception, and nothing is printed.
+ *
+ * Converting to and from a {@link MagicBakery} goes through the {@link StateCodec} layout.
+ * The state fields are package-private so that {@link BatchKernel} can copy games in and out.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class GameKernel {
+    /** Result of an action that was carried out */
+    public static final int OK = 0;
+
+    /** Result of an action refused because the ingredients are wrong, as {@code WrongIngredientsException} */
+    public static final int WRONG_INGREDIENTS = 1;
+
+    /** Result of an action refused for lack of actions, as {@code TooManyActionsException} */
+    public static final int TOO_MANY_ACTIONS = 2;
+
+    /** Result of an action that ran out of pantry cards, as {@code EmptyPantryException} */
+    public static final int EMPTY_PANTRY = 3;
+
+    /** Number of cards dealt into the pantry by a refresh */
+    static final int PANTRY_SIZE = 5;
+
+    /** The card catalog the ids refer to */
+    private final CardCatalog catalog;
+
+    /** Number of card ids */
+    private final int cards;
+
+    /** Recipe card ids of each layer, indexed by layer card id, empty for ingredients */
+    final int[][] recipes;
+
+    /** The random number generator, consumed exactly as the game consumes it */
+    Random random;
+
+    /** Number of players */
+    int players;
+
+    /** Index of the current player */
+    int current;
+
+    /** Actions remaining per player */
+    int[] actions;
+
+    /** Card counts per hand, indexed by player * cards + card */
+    int[] hands;
+
+    /** Layer cards still available to bake, indexed by card id */
+    int[] layerStock;
+
+    /** Pantry cards in order, and how many there are */
+    int[] pantry;
+    int pantrySize;
+
+    /** Discarded cards in order, and how many there are */
+    int[] discard;
+    int discardSize;
+
+    /** Pantry deck cards in draw order, and how many there are */
+    int[] deck;
+    int deckSize;
+
+    /** Customer row, customer deck and departed customers as customer id plus one, with statuses */
+    int[] rowIds;
+    int[] rowStatus;
+    int[] customerDeckIds;
+    int[] customerDeckStatus;
+    int[] inactiveIds;
+    int[] inactiveStatus;
+
+    /**
+     * Creates an empty kernel for a catalog.
+     *
+     * @param catalog the card catalog
+     */
+    public GameKernel(CardCatalog catalog)
+    {
+        this.catalog = catalog;
+        this.cards = catalog.cardCount();
+        this.recipes = new int[cards][];
+        for (int id = 0; id < cards; id++) {
+            Ingredient card = catalog.card(id);
+            if (card instanceof Layer) {
+                List<Ingredient> recipe = ((Layer) card).getRecipe();
+                recipes[id] = new int[recipe.size()];
+                for (int i = 0; i < recipe.size(); i++) {
+                    recipes[id][i] = catalog.cardId(recipe.get(i));
+                }
+            } else {
+                recipes[id] = new int[0];
+            }
+        }
+        this.actions = new int[0];
+        this.hands = new int[0];
+        this.layerStock = new int[cards];
+        this.pantry = new int[16];
+        this.discard = new int[64];
+        this.deck = new int[128];
+    }
+
+    /**
+     * Creates a kernel holding the position of a game.
+     *
+     * @param game the started game to copy
+     * @param random the random number generator the kernel will use from now on
+     * @return the kernel
+     */
+    public static GameKernel fromGame(MagicBakery game, Random random)
+    {
+        GameKernel kernel = new GameKernel(game.getCardCatalog());
+        kernel.load(StateCodec.encode(game));
+        kernel.random = random;
+        return kernel;
+    }
+
+    /**
+     * Creates a live game holding the position of this kernel.
+     *
+     * @param playerNames the names of the players, in seat order
+     * @param seed the seed for the random number generator of the game
+     * @return the game
+     * @throws FileNotFoundException if the deck files cannot be read
+     */
+    public MagicBakery toGame(List<String> playerNames, long seed) throws FileNotFoundException
+    {
+        return StateCodec.decode(encode(), playerNames, seed);
+    }
+
+    /**
+     * Makes this kernel an exact copy of another, reusing its arrays where possible.
+     * The random number generator is not copied.
+     *
+     * @param other the kernel to copy
+     */
+    public void copyFrom(GameKernel other)
+    {
+        players = other.players;
+        current = other.current;
+        actions = copy(other.actions, actions, other.players);
+        hands = copy(other.hands, hands, other.hands.length);
+        System.arraycopy(other.layerStock, 0, layerStock, 0, cards);
+        pantry = copy(other.pantry, pantry, other.pantrySize);
+        pantrySize = other.pantrySize;
+        discard = copy(other.discard, discard, other.discardSize);
+        discardSize = other.discardSize;
+        deck = copy(other.deck, deck, other.deckSize);
+        deckSize = other.deckSize;
+        rowIds = other.rowIds;
+        rowStatus = other.rowStatus;
+        customerDeckIds = other.customerDeckIds;
+        customerDeckStatus = other.customerDeckStatus;
+        inactiveIds = other.inactiveIds;
+        inactiveStatus = other.inactiveStatus;
+    }
+
+    /**
+     * Copies the first elements of an array into a target, growing the target if needed.
+     *
+     * @param from the source array
+     * @param to the target array
+     * @param length the number of elements to copy
+     * @return the target, or a larger replacement
+     */
+    private static int[] copy(int[] from, int[] to, int length)
+    {
+        if (to.length < length) {
+            to = new int[Math.max(length, from.length)];
+        }
+        System.arraycopy(from, 0, to, 0, length);
+        return to;
+    }
+
+    /**
+     * Sets the random number generator.
+     *
+     * @param random the random number generator
+     */
+    public void setRandom(Random random)
+    {
+        this.random = random;
+    }
+
+    /**
+     * Draws an ingredient from the pantry into the current player's hand, as
+     * {@link MagicBakery#drawFromPantry(String)}.
+     *
+     * @param card the card id to draw
+     * @return the result code
+     */
+    public int drawFromPantry(int card)
+    {
+        int index = indexOf(pantry, pantrySize, card);
+        if (index < 0) {
+            return WRONG_INGREDIENTS;
+        }
+        int remaining = actions[current];
+        if (remaining <= 0 || remaining > getActionsPermitted()) {
+            return TOO_MANY_ACTIONS;
+        }
+        removeAt(pantry, pantrySize--, index);
+        hands[current * cards + card]++;
+        if (!drawFromPantryDeck()) {
+            return EMPTY_PANTRY;
+        }
+        actions[current]--;
+        return OK;
+    }
+
+    /**
+     * Passes an ingredient from the current player to another player, as {@link MagicBakery#passCard}.
+     *
+     * @param card the card id to pass
+     * @param recipient the index of the receiving player
+     * @return the result code, {@link #WRONG_INGREDIENTS} for a card not in hand or a recipient that
+     *         is not another player at the table
+     */
+    public int passCard(int card, int recipient)
+    {
+        if (recipient < 0 || recipient >= players || recipient == current) {
+            return WRONG_INGREDIENTS;
+        }
+        int from = current * cards + card;
+        if (card < 0 || hands[from] == 0) {
+            return WRONG_INGREDIENTS;
+        }
+        hands[from]--;
+        hands[recipient * cards + card]++;
+        actions[current]--;
+        return actions[current] < 0 ? TOO_MANY_ACTIONS : OK;
+    }
+
+    /**
+     * Checks whether the current player can bake a layer, as {@link Layer#canBake}.
+     *
+     * @param layer the layer card id
+     * @return true if every recipe ingredient is in the current player's hand
+     */
+    public boolean canBake(int layer)
+    {
+        int base = current * cards;
+        for (int ingredient : recipes[layer]) {
+            if (hands[base + ingredient] == 0) {
+                return false;
+            }
+        }
+        return recipes[layer].length > 0;
+    }
+
+    /**
+     * Bakes a layer from the current player's hand, as {@link MagicBakery#bakeLayer}.
+     *
+     * @param layer the layer card id
+     * @return the result code
+     */
+    public int bakeLayer(int layer)
+    {
+        if (actions[current] <= 0) {
+            return TOO_MANY_ACTIONS;
+        }
+        if (!canBake(layer)) {
+            return WRONG_INGREDIENTS;
+        }
+        int base = current * cards;
+        for (int ingredient : recipes[layer]) {
+            discard = append(discard, discardSize++, ingredient);
+            hands[base + ingredient]--;
+        }
+        hands[base + layer]++;
+        if (layerStock[layer] > 0) {
+            layerStock[layer]--;
+        }
+        actions[current]--;
+        return OK;
+    }
+
+    /**
+     * Fulfils a customer order, as {@link MagicBakery#fulfillOrder}. The game does not yet
+     * change any state when an order is fulfilled, so neither does the kernel.
+     *
+     * @param slot the customer row slot
+     * @param garnish whether to garnish the order
+     * @return the result code
+     */
+    public int fulfilOrder(int slot, boolean garnish)
+    {
+        return OK;
+    }
+
+    /**
+     * Discards the pantry and deals a new one, as {@link MagicBakery#refreshPantry}.
+     *
+     * @return the result code
+     */
+    public int refreshPantry()
+    {
+        if (actions[current] <= 0) {
+            return TOO_MANY_ACTIONS;
+        }
+        for (int i = 0; i < pantrySize; i++) {
+            discard = append(discard, discardSize++, pantry[i]);
+        }
+        pantrySize = 0;
+        if (deckSize > 0) {
+            shufflePantryDeck();
+        }
+        for (int i = 0; i < PANTRY_SIZE; i++) {
+            if (!drawFromPantryDeck()) {
+                return EMPTY_PANTRY;
+            }
+        }
+        actions[current]--;
+        return OK;
+    }
+
+    /**
+     * Ends the current player's turn, as {@link MagicBakery#endTurn}, without printing.
+     */
+    public void endTurn()
+    {
+        if (current == players - 1) {
+            current = 0;
+            int permitted = getActionsPermitted();
+            if (permitted != -1) {
+                Arrays.fill(actions, 0, players, permitted);
+            }
+        } else {
+            current++;
+        }
+    }
+
+    /**
+     * Adds the top card of the pantry deck to the pantry, shuffling in the discard pile
+     * first if the deck is empty. Like the game, the card is left on the deck.
+     *
+     * @return false if both the deck and the discard pile are empty
+     */
+    private boolean drawFromPantryDeck()
+    {
+        if (deckSize == 0 && discardSize == 0) {
+            return false;
+        }
+        if (deckSize == 0) {
+            shufflePantryDeck();
+        }
+        pantry = append(pantry, pantrySize++, deck[0]);
+        return true;
+    }
+
+    /**
+     * Moves the discard pile under the pantry deck and shuffles the deck the way
+     * {@code Collections.shuffle} does.
+     */
+    private void shufflePantryDeck()
+    {
+        if (discardSize == 0) {
+            return;
+        }
+        for (int i = 0; i < discardSize; i++) {
+            deck = append(deck, deckSize++, discard[i]);
+        }
+        discardSize = 0;
+        for (int i = deckSize; i > 1; i--) {
+            int j = random.nextInt(i);
+            int temp = deck[i - 1];
+            deck[i - 1] = deck[j];
+            deck[j] = temp;
+        }
+    }
+
+    /**
+     * Gets the number of actions permitted per turn, as {@link MagicBakery#getActionsPermitted}.
+     *
+     * @return the number of actions permitted, or -1 for an unsupported number of players
+     */
+    public int getActionsPermitted()
+    {
+        if (players <= 3 && players > 0) {
+            return 3;
+        } else if (players <= 5 && players > 3) {
+            return 2;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the number of actions the current player has left.
+     *
+     * @return the actions remaining
+     */
+    public int getActionsRemaining()
+    {
+        return actions[current];
+    }
+
+    /**
+     * Gets the index of the current player.
+     *
+     * @return the current player
+     */
+    public int getCurrentPlayer()
+    {
+        return current;
+    }
+
+    /**
+     * Gets the number of players.
+     *
+     * @return the number of players
+     */
+    public int getPlayerCount()
+    {
+        return players;
+    }
+
+    /**
+     * Gets the number of copies of a card in a player's hand.
+     *
+     * @param player the player index
+     * @param card the card id
+     * @return the number of copies
+     */
+    public int handCount(int player, int card)
+    {
+        return hands[player * cards + card];
+    }
+
+    /**
+     * Gets the number of cards in the pantry.
+     *
+     * @return the pantry size
+     */
+    public int pantrySize()
+    {
+        return pantrySize;
+    }
+
+    /**
+     * Gets the card id at a position of the pantry.
+     *
+     * @param index the pantry position
+     * @return the card id
+     */
+    public int pantryCard(int index)
+    {
+        return pantry[index];
+    }
+
+    /**
+     * Gets the card catalog the ids refer to.
+     *
+     * @return the card catalog
+     */
+    public CardCatalog getCatalog()
+    {
+        return catalog;
+    }
+
+    /**
+     * Replaces the position with one packed by {@link StateCodec#encode}. The pantry and discard
+     * pile are laid out in card id order, as {@link StateCodec#decode} does.
+     *
+     * @param packed the packed position
+     * @throws IllegalArgumentException if the layout or catalog does not match
+     */
+    public void load(long[] packed)
+    {
+        BitBuffer in = new BitBuffer(packed);
+        if (in.readInt(StateCodec.VERSION_BITS) != StateCodec.FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unknown state layout version");
+        }
+        if (in.read(StateCodec.CATALOG_BITS) != (catalog.version() & 0xFFFF)) {
+            throw new IllegalArgumentException("State was encoded with a different card catalog");
+        }
+        players = in.readInt(StateCodec.PLAYER_BITS);
+        current = in.readInt(StateCodec.PLAYER_BITS);
+        actions = new int[players];
+        for (int i = 0; i < players; i++) {
+            actions[i] = in.readInt(StateCodec.ACTION_BITS) - 1;
+        }
+        pantrySize = readList(in, true);
+        discardSize = readList(in, false);
+        hands = new int[players * cards];
+        for (int i = 0; i < players * cards; i++) {
+            hands[i] = in.readInt(StateCodec.COUNT_BITS);
+        }
+        for (int id = 0; id < cards; id++) {
+            layerStock[id] = in.readInt(StateCodec.COUNT_BITS);
+        }
+        int cardBits = BitBuffer.bitsFor(cards - 1);
+        deckSize = 0;
+        int size = in.readInt(StateCodec.DECK_BITS);
+        for (int i = 0; i < size; i++) {
+            deck = append(deck, deckSize++, in.readInt(cardBits));
+        }
+        int customerBits = BitBuffer.bitsFor(catalog.customerCount());
+        int[][] customers = readCustomers(in, customerBits);
+        rowIds = customers[0];
+        rowStatus = customers[1];
+        customers = readCustomers(in, customerBits);
+        customerDeckIds = customers[0];
+        customerDeckStatus = customers[1];
+        customers = readCustomers(in, customerBits);
+        inactiveIds = customers[0];
+        inactiveStatus = customers[1];
+    }
+
+    /**
+     * Packs the position in the {@link StateCodec} layout.
+     *
+     * @return the packed position
+     */
+    public long[] encode()
+    {
+        BitBuffer out = new BitBuffer();
+        out.write(StateCodec.FORMAT_VERSION, StateCodec.VERSION_BITS);
+        out.write(catalog.version() & 0xFFFF, StateCodec.CATALOG_BITS);
+        out.write(players, StateCodec.PLAYER_BITS);
+        out.write(current, StateCodec.PLAYER_BITS);
+        for (int i = 0; i < players; i++) {
+            out.write(Math.max(0, actions[i] + 1), StateCodec.ACTION_BITS);
+        }
+        writeCounts(out, pantry, pantrySize);
+        writeCounts(out, discard, discardSize);
+        for (int i = 0; i < players * cards; i++) {
+            out.write(hands[i], StateCodec.COUNT_BITS);
+        }
+        for (int id = 0; id < cards; id++) {
+            out.write(layerStock[id], StateCodec.COUNT_BITS);
+        }
+        int cardBits = BitBuffer.bitsFor(cards - 1);
+        out.write(deckSize, StateCodec.DECK_BITS);
+        for (int i = 0; i < deckSize; i++) {
+            out.write(deck[i], cardBits);
+        }
+        int customerBits = BitBuffer.bitsFor(catalog.customerCount());
+        writeCustomers(out, rowIds, rowStatus, customerBits);
+        writeCustomers(out, customerDeckIds, customerDeckStatus, customerBits);
+        writeCustomers(out, inactiveIds, inactiveStatus, customerBits);
+        return out.toArray();
+    }
+
+    /**
+     * Reads a count vector into the pantry or discard pile as an ordered list.
+     *
+     * @param in the buffer to read from
+     * @param intoPantry true to fill the pantry, false to fill the discard pile
+     * @return the new list size
+     */
+    private int readList(BitBuffer in, boolean intoPantry)
+    {
+        int length = 0;
+        for (int id = 0; id < cards; id++) {
+            int count = in.readInt(StateCodec.COUNT_BITS);
+            for (int i = 0; i < count; i++) {
+                if (intoPantry) {
+                    pantry = append(pantry, length++, id);
+                } else {
+                    discard = append(discard, length++, id);
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes an ordered list of card ids as a count vector.
+     *
+     * @param out the buffer to write to
+     * @param list the card ids
+     * @param size the number of card ids
+     */
+    private void writeCounts(BitBuffer out, int[] list, int size)
+    {
+        int[] counts = new int[cards];
+        for (int i = 0; i < size; i++) {
+            counts[list[i]]++;
+        }
+        for (int count : counts) {
+            out.write(count, StateCodec.COUNT_BITS);
+        }
+    }
+
+    /**
+     * Reads a customer collection.
+     *
+     * @param in the buffer to read from
+     * @param customerBits the bits used for a customer id
+     * @return the customer ids plus one, and the statuses
+     */
+    private static int[][] readCustomers(BitBuffer in, int customerBits)
+    {
+        int size = in.readInt(customerBits);
+        int[] ids = new int[size];
+        int[] status = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = in.readInt(customerBits);
+            if (ids[i] != 0) {
+                status[i] = in.readInt(StateCodec.STATUS_BITS);
+            }
+        }
+        return new int[][] {ids, status};
+    }
+
+    /**
+     * Writes a customer collection.
+     *
+     * @param out the buffer to write to
+     * @param ids customer id plus one per entry, zero for an empty slot
+     * @param status the status per entry
+     * @param customerBits the bits used for a customer id
+     */
+    private static void writeCustomers(BitBuffer out, int[] ids, int[] status, int customerBits)
+    {
+        out.write(status.length, customerBits);
+        for (int i = 0; i < status.length; i++) {
+            out.write(ids[i], customerBits);
+            if (ids[i] != 0) {
+                out.write(status[i], StateCodec.STATUS_BITS);
+            }
+        }
+    }
+
+    /**
+     * Appends a value to a list, growing the array if it is full.
+     *
+     * @param list the array
+     * @param size the number of values in use
+     * @param value the value to append
+     * @return the array, or a larger replacement
+     */
+    private static int[] append(int[] list, int size, int value)
+    {
+        if (size == list.length) {
+            list = Arrays.copyOf(list, list.length * 2 + 1);
+        }
+        list[size] = value;
+        return list;
+    }
+
+    /**
+     * Finds the first position of a value in a list.
+     *
+     * @param list the array
+     * @param size the number of values in use
+     * @param value the value to look for
+     * @return the position, or -1 if absent
+     */
+    private static int indexOf(int[] list, int size, int value)
+    {
+        for (int i = 0; i < size; i++) {
+            if (list[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the value at a position of a list, keeping the order of the rest.
+     *
+     * @param list the array
+     * @param size the number of values in use before the removal
+     * @param index the position to remove
+     */
+    private static void removeAt(int[] list, int size, int index)
+    {
+        System.arraycopy(list, index + 1, list, index, size - index - 1);
+    }
+}
@@ -0,0 +1,115 @@
+package sim;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import bakery.MagicBakery;
+import util.XoroshiroRandom;
+
+/**
+ * Measures how many random playouts per second a single thread gets out of the {@link GameKernel}.
+ * Each playout restarts from the same position and plays a fixed number of turns, choosing
+ * uniformly among the actions that are legal at each point.
+ *
+ * Usage: {@code java sim.PlayoutBenchmark [players] [turns] [seconds] [jdk|xoroshiro]}
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class PlayoutBenchmark {
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private PlayoutBenchmark()
+    {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Plays one random playout from the current position of a kernel.
+     *
+     * @param kernel the kernel to play on
+     * @param turns the number of turns to play
+     * @param policy the source of the random choices
+     * @return the number of actions carried out
+     */
+    public static int playout(GameKernel kernel, int turns, SplittableRandom policy)
+    {
+        int cards = kernel.getCatalog().cardCount();
+        int ingredientKinds = kernel.getCatalog().ingredientKinds();
+        int players = kernel.getPlayerCount();
+        int done = 0;
+        for (int turn = 0; turn < turns; turn++) {
+            while (kernel.getActionsRemaining() > 0) {
+                int current = kernel.getCurrentPlayer();
+                int result;
+                switch (policy.nextInt(4)) {
+                    case 0:
+                        result = kernel.drawFromPantry(kernel.pantryCard(policy.nextInt(kernel.pantrySize())));
+                        break;
+                    case 1:
+                        int card = policy.nextInt(cards);
+                        while (kernel.handCount(current, card) == 0 && ++card < cards) {
+                            // find the next card in hand
+                        }
+                        result = card == cards ? GameKernel.WRONG_INGREDIENTS
+                            : kernel.passCard(card, (current + 1 + policy.nextInt(players - 1)) % players);
+                        break;
+                    case 2:
+                        int layer = ingredientKinds + policy.nextInt(cards - ingredientKinds);
+                        result = kernel.bakeLayer(layer);
+                        break;
+                    default:
+                        result = kernel.refreshPantry();
+                }
+                if (result == GameKernel.OK) {
+                    done++;
+                }
+            }
+            kernel.endTurn();
+        }
+        return done;
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional number of players, turns per playout, seconds to run and generator for the shuffles
+     * @throws Exception if the deck files cannot be read
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int numPlayers = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int turns = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        boolean jdk = args.length > 3 && args[3].equals("jdk");
+
+        MagicBakery bakery = new MagicBakery(1, "./io/ingredients.csv", "./io/layers.csv");
+        List<String> names = new java.util.ArrayList<>();
+        for (int i = 0; i < numPlayers; i++) {
+            names.add("Player " + (i + 1));
+        }
+        bakery.startGame(names, "./io/customers.csv");
+
+        GameKernel root = GameKernel.fromGame(bakery, new Random(1));
+        GameKernel kernel = new GameKernel(bakery.getCardCatalog());
+        kernel.setRandom(jdk ? new Random(2) : new XoroshiroRandom(2));
+        SplittableRandom policy = new SplittableRandom(3);
+
+        long playouts = 0;
+        long actions = 0;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 1000; i++) {
+                kernel.copyFrom(root);
+                actions += playout(kernel, turns, policy);
+            }
+            playouts += 1000;
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d players, %d turns, %s: %.0f playouts/s, %.0f actions/s%n",
+            numPlayers, turns, jdk ? "jdk" : "xoroshiro", playouts / elapsed, actions / elapsed);
+    }
+}
@@ -0,0 +1,365 @@
+package sim;
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import bakery.CardDecks;
+import bakery.MagicBakery;
+import bakery.StateCodec;
+
+/**
+ * Keeps packed game positions outside the Java heap, so that millions of parked positions
+ * cost the garbage collector nothing to trace.
+ *
+ * Positions are stored as {@link StateCodec} encodings in fixed-size records, carved out of
+ * direct buffers ("slabs") that are allocated as the arena grows. Each record holds the length
+ * of the encoding followed by its words. A position is identified by the handle returned from
+ * {@link #allocate}; freed handles are reused before the arena grows. Rehydrated games are dealt
+ * from decks the arena reads once, so rebuilding a position never goes back to the deck files.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class StateArena {
+    /** Words per record, including the length word */
+    private final int recordWords;
+
+    /** Records per slab */
+    private final int recordsPerSlab;
+
+    /** Slabs allocated so far, as word views of direct buffers */
+    private final List<LongBuffer> slabs;
+
+    /** Handles of the records in use */
+    private final BitSet live;
+
+    /** Freed handles waiting to be reused */
+    private int[] freeList;
+
+    /** Number of handles on the free list */
+    private int freeCount;
+
+    /** Number of handles ever handed out, the next fresh handle */
+    private int highWater;
+
+    /** Decks rehydrated games are dealt from, or null until the standard decks are first needed */
+    private CardDecks decks;
+
+    /**
+     * Creates an empty arena.
+     *
+     * @param maxWords the longest encoding a record must hold, in words
+     * @param recordsPerSlab the number of records in each slab
+     * @throws IllegalArgumentException if either size is not positive, or a slab would exceed 2 GB
+     */
+    public StateArena(int maxWords, int recordsPerSlab)
+    {
+        this(maxWords, recordsPerSlab, null);
+    }
+
+    /**
+     * Creates an empty arena whose positions are rehydrated from decks already read.
+     *
+     * @param maxWords the longest encoding a record must hold, in words
+     * @param recordsPerSlab the number of records in each slab
+     * @param decks the decks the positions were encoded from, or null to read the standard decks
+     *        when a position is first rehydrated
+     * @throws IllegalArgumentException if either size is not positive, or a slab would exceed 2 GB
+     */
+    public StateArena(int maxWords, int recordsPerSlab, CardDecks decks)
+    {
+        if (maxWords <= 0 || recordsPerSlab <= 0) {
+            throw new IllegalArgumentException("Record and slab sizes must be positive");
+        }
+        if ((long) (maxWords + 1) * recordsPerSlab * Long.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Slab would exceed 2 GB");
+        }
+        this.recordWords = maxWords + 1;
+        this.recordsPerSlab = recordsPerSlab;
+        this.slabs = new ArrayList<>();
+        this.live = new BitSet();
+        this.freeList = new int[16];
+        this.decks = decks;
+    }
+
+    /**
+     * Stores a position in a free record.
+     *
+     * @param packed the position, as encoded by {@link StateCodec#encode}
+     * @return the handle of the record
+     * @throws IllegalArgumentException if the encoding does not fit in a record
+     */
+    public int allocate(long[] packed)
+    {
+        checkFits(packed);
+        int handle;
+        if (freeCount > 0) {
+            handle = freeList[--freeCount];
+        } else {
+            handle = highWater++;
+            if (handle / recordsPerSlab == slabs.size()) {
+                ByteBuffer slab = ByteBuffer.allocateDirect(recordWords * recordsPerSlab * Long.BYTES);
+                slabs.add(slab.order(ByteOrder.nativeOrder()).asLongBuffer());
+            }
+        }
+        live.set(handle);
+        write(handle, packed);
+        return handle;
+    }
+
+    /**
+     * Overwrites the position held in a record.
+     *
+     * @param handle the handle of the record
+     * @param packed the new position
+     * @throws IllegalArgumentException if the encoding does not fit in a record
+     * @throws IllegalStateException if the handle is not in use
+     */
+    public void set(int handle, long[] packed)
+    {
+        checkLive(handle);
+        checkFits(packed);
+        write(handle, packed);
+    }
+
+    /**
+     * Copies the position held in a record onto the heap.
+     *
+     * @param handle the handle of the record
+     * @return the packed position
+     * @throws IllegalStateException if the handle is not in use
+     */
+    public long[] get(int handle)
+    {
+        checkLive(handle);
+        LongBuffer slab = slab(handle);
+        int base = base(handle);
+        long[] packed = new long[(int) slab.get(base)];
+        slab.get(base + 1, packed);
+        return packed;
+    }
+
+    /**
+     * Releases a record for reuse.
+     *
+     * @param handle the handle of the record
+     * @throws IllegalStateException if the handle is not in use
+     */
+    public void free(int handle)
+    {
+        checkLive(handle);
+        live.clear(handle);
+        if (freeCount == freeList.length) {
+            freeList = Arrays.copyOf(freeList, freeCount * 2);
+        }
+        freeList[freeCount++] = handle;
+    }
+
+    /**
+     * Checks whether a handle refers to a record in use.
+     *
+     * @param handle the handle
+     * @return true if the record holds a position
+     */
+    public boolean isLive(int handle)
+    {
+        return handle >= 0 && live.get(handle);
+    }
+
+    /**
+     * Gets the number of records in use.
+     *
+     * @return the number of stored positions
+     */
+    public int size()
+    {
+        return live.cardinality();
+    }
+
+    /**
+     * Gets the number of off-heap bytes reserved by the arena.
+     *
+     * @return the total size of the slabs in bytes
+     */
+    public long reservedBytes()
+    {
+        return (long) slabs.size() * recordWords * recordsPerSlab * Long.BYTES;
+    }
+
+    /**
+     * Creates a view of one record.
+     *
+     * @param handle the handle of the record
+     * @return a view positioned on the record
+     * @throws IllegalStateException if the handle is not in use
+     */
+    public View view(int handle)
+    {
+        checkLive(handle);
+        View view = new View();
+        view.handle = handle;
+        return view;
+    }
+
+    /**
+     * Visits every record in use, in handle order. A single view is moved from record to record,
+     * so the action must not keep it.
+     *
+     * @param action the action to run on each record
+     */
+    public void forEach(Consumer<View> action)
+    {
+        View view = new View();
+        for (int handle = live.nextSetBit(0); handle >= 0; handle = live.nextSetBit(handle + 1)) {
+            view.handle = handle;
+            action.accept(view);
+        }
+    }
+
+    /**
+     * A read-only window onto one record of the arena, which reads words in place and rebuilds a
+     * live game only when asked.
+     */
+    public final class View {
+        /** The handle of the record */
+        private int handle;
+
+        /**
+         * Private constructor, views are created by the arena.
+         */
+        private View()
+        {
+        }
+
+        /**
+         * Gets the handle of the record.
+         *
+         * @return the handle
+         */
+        public int handle()
+        {
+            return handle;
+        }
+
+        /**
+         * Gets the length of the encoding held in the record.
+         *
+         * @return the number of words
+         */
+        public int length()
+        {
+            return (int) slab(handle).get(base(handle));
+        }
+
+        /**
+         * Reads one word of the encoding in place.
+         *
+         * @param index the word index
+         * @return the word
+         * @throws IndexOutOfBoundsException if the index is outside the encoding
+         */
+        public long word(int index)
+        {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("Word " + index + " of " + length());
+            }
+            return slab(handle).get(base(handle) + 1 + index);
+        }
+
+        /**
+         * Copies the encoding onto the heap.
+         *
+         * @return the packed position
+         */
+        public long[] toArray()
+        {
+            return get(handle);
+        }
+
+        /**
+         * Rebuilds a live game from the record, see {@link StateCodec#decode}.
+         *
+         * @param playerNames the names of the players, in seat order
+         * @param seed the seed for the random number generator of the new game
+         * @return the rebuilt game
+         * @throws FileNotFoundException if the arena was given no decks and the standard deck
+         *         files cannot be read
+         */
+        public MagicBakery rehydrate(List<String> playerNames, long seed) throws FileNotFoundException
+        {
+            if (decks == null) {
+                decks = CardDecks.loadStandard();
+            }
+            return StateCodec.decode(get(handle), playerNames, seed, decks);
+        }
+    }
+
+    /**
+     * Writes an encoding into a record.
+     *
+     * @param handle the handle of the record
+     * @param packed the encoding
+     */
+    private void write(int handle, long[] packed)
+    {
+        LongBuffer slab = slab(handle);
+        int base = base(handle);
+        slab.put(base, packed.length);
+        slab.put(base + 1, packed);
+    }
+
+    /**
+     * Gets the slab holding a record.
+     *
+     * @param handle the handle of the record
+     * @return the slab
+     */
+    private LongBuffer slab(int handle)
+    {
+        return slabs.get(handle / recordsPerSlab);
+    }
+
+    /**
+     * Gets the word offset of a record within its slab.
+     *
+     * @param handle the handle of the record
+     * @return the offset of the length word
+     */
+    private int base(int handle)
+    {
+        return (handle % recordsPerSlab) * recordWords;
+    }
+
+    /**
+     * Checks that an encoding fits in a record.
+     *
+     * @param packed the encoding
+     * @throws IllegalArgumentException if the encoding is too long
+     */
+    private void checkFits(long[] packed)
+    {
+        if (packed.length > recordWords - 1) {
+            throw new IllegalArgumentException("Encoding of " + packed.length + " words does not fit in records of " + (recordWords - 1));
+        }
+    }
+
+    /**
+     * Checks that a handle refers to a record in use.
+     *
+     * @param handle the handle
+     * @throws IllegalStateException if the record is not in use
+     */
+    private void checkLive(int handle)
+    {
+        if (!isLive(handle)) {
+            throw new IllegalStateException("No position stored under handle " + handle);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package util;
+import java.util.Arrays;
+
+/**
+ * A growable sequence of bits packed into a {@code long[]}.
+ * Values are written and read back in order, each using a caller chosen number of bits.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public final class BitBuffer {
+    /** The packed words */
+    private long[] words;
+
+    /** Number of bits written */
+    private int writePos;
+
+    /** Number of bits read */
+    private int readPos;
+
+    /**
+     * Creates an empty buffer for writing.
+     */
+    public BitBuffer()
+    {
+        words = new long[8];
+    }
+
+    /**
+     * Wraps packed words for reading.
+     *
+     * @param packed the words to read from
+     */
+    public BitBuffer(long[] packed)
+    {
+        words = packed;
+        writePos = packed.length * 64;
+    }
+
+    /**
+     * Gets the number of bits needed to store values from 0 up to and including a maximum.
+     *
+     * @param maxValue the largest value that will be stored
+     * @return the number of bits, at least 1
+     */
+    public static int bitsFor(int maxValue)
+    {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(maxValue));
+    }
+
+    /**
+     * Appends the low bits of a value.
+     *
+     * @param value the value to write
+     * @param bits the number of bits to use, between 1 and 64
+     * @throws IllegalArgumentException if the value does not fit in the number of bits
+     */
+    public void write(long value, int bits)
+    {
+        if (bits < 64 && (value >>> bits) != 0) {
+            throw new IllegalArgumentException("Value " + value + " does not fit in " + bits + " bits");
+        }
+        int word = writePos >>> 6;
+        int offset = writePos & 63;
+        if (word + 1 >= words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        words[word] |= value << offset;
+        if (offset + bits > 64) {
+            words[word + 1] |= value >>> (64 - offset);
+        }
+        writePos += bits;
+    }
+
+    /**
+     * Reads the next value.
+     *
+     * @param bits the number of bits the value was written with, between 1 and 64
+     * @return the value
+     * @throws IllegalStateException if there are not enough bits left
+     */
+    public long read(int bits)
+    {
+        if (readPos + bits > writePos) {
+            throw new IllegalStateException("Read past the end of the buffer");
+        }
+        int word = readPos >>> 6;
+        int offset = readPos & 63;
+        long value = words[word] >>> offset;
+        if (offset + bits > 64) {
+            value |= words[word + 1] << (64 - offset);
+        }
+        readPos += bits;
+        return bits == 64 ? value : value & ((1L << bits) - 1);
+    }
+
+    /**
+     * Reads the next value as an int.
+     *
+     * @param bits the number of bits the value was written with, at most 31
+     * @return the value
+     */
+    public int readInt(int bits)
+    {
+        return (int) read(bits);
+    }
+
+    /**
+     * Gets the number of bits written.
+     *
+     * @return the length in bits
+     */
+    public int bitLength()
+    {
+        return writePos;
+    }
+
+    /**
+     * Copies out the written bits, using as few words as possible.
+     *
+     * @return the packed words
+     */
+    public long[] toArray()
+    {
+        return Arrays.copyOf(words, (writePos + 63) >>> 6);
+    }
+}
@@ -131,7 +131,6 @@ public class CardUtils {
         String[] parts = str.split(",");
         if (parts.length == 3 || parts.length == 4)
         {
-            List<Ingredient> ingredients = readIngredientFile("io/ingredients.csv");
             int level = Integer.parseInt(parts[0].trim());
             String name = parts[1].trim();
             String[] recipe = parts[2].split(";");
@@ -0,0 +1,111 @@
+package util;
+import java.util.Random;
+
+/**
+ * A {@link RandomSource} using the {@link Random} algorithm itself. It produces exactly the
+ * values of {@code new Random(seed)}, so games that use it play out as they always have. The
+ * linear congruential state is kept here rather than in {@link Random}, so that it can be saved.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public class JdkRandomSource extends Random implements RandomSource {
+    private static final long serialVersionUID = 1L;
+
+    /** Multiplier of the linear congruential generator, as in {@link Random} */
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+
+    /** Increment of the linear congruential generator, as in {@link Random} */
+    private static final long ADDEND = 0xBL;
+
+    /** Mask of the 48 state bits */
+    private static final long MASK = (1L << 48) - 1;
+
+    /** The seed the source was created with, used to derive child streams */
+    private final long seed;
+
+    /** The 48 bits of generator state */
+    private long state;
+
+    /**
+     * Creates a source with the given seed.
+     *
+     * @param seed the seed
+     */
+    public JdkRandomSource(long seed)
+    {
+        super(seed);
+        this.seed = seed;
+    }
+
+    /**
+     * Reseeds the generator. Called by the {@link Random} constructor.
+     *
+     * @param seed the new seed
+     */
+    @Override
+    public void setSeed(long seed)
+    {
+        super.setSeed(seed);
+        this.state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int next(int bits)
+    {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] getState()
+    {
+        return new long[] {state};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setState(long[] state)
+    {
+        if (state.length != 1 || (state[0] & ~MASK) != 0) {
+            throw new IllegalArgumentException("Not a JdkRandomSource state");
+        }
+        this.state = state[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long seed()
+    {
+        return seed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RandomSource child(long stream)
+    {
+        return new JdkRandomSource(RandomSource.mix(seed, stream));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Random asRandom()
+    {
+        return this;
+    }
+}
@@ -0,0 +1,99 @@
+package util;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A source of randomness for shuffles and draws.
+ *
+ * Every source is also a {@link Random}, so it can be handed to {@code Collections.shuffle} and
+ * to the game classes, which keep their generator in a {@code Random} field. Sources can derive
+ * child streams: the children of one source depend only on its seed and the stream number, so a
+ * batch of games seeded from one master seed can run in parallel and still be reproduced.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public interface RandomSource {
+    /**
+     * Returns a uniformly distributed value between zero (inclusive) and the bound (exclusive).
+     *
+     * @param bound the upper bound, which must be positive
+     * @return the next value
+     */
+    int nextInt(int bound);
+
+    /**
+     * Returns a uniformly distributed long value.
+     *
+     * @return the next value
+     */
+    long nextLong();
+
+    /**
+     * Gets the seed this source was created with. A new source of the same kind with this seed
+     * produces the same values from the start.
+     *
+     * @return the seed
+     */
+    long seed();
+
+    /**
+     * Gets the internal state of the generator, from which {@link #setState(long[])} resumes
+     * the same sequence.
+     *
+     * @return the state words
+     */
+    long[] getState();
+
+    /**
+     * Resumes the sequence from a state returned by {@link #getState()}.
+     *
+     * @param state the state words
+     * @throws IllegalArgumentException if the state does not belong to this kind of generator
+     */
+    void setState(long[] state);
+
+    /**
+     * Derives an independent stream of the same kind. The result depends only on the seed this
+     * source was created with and the stream number, not on how much of this source has been used.
+     *
+     * @param stream the stream number, for example the index of a game in a batch
+     * @return the child source
+     */
+    RandomSource child(long stream);
+
+    /**
+     * Gets this source as a {@link Random}.
+     *
+     * @return this source
+     */
+    Random asRandom();
+
+    /**
+     * Shuffles a list in place, in the same way as {@code Collections.shuffle}.
+     *
+     * @param list the list to shuffle
+     * @param source the source of randomness
+     */
+    static void shuffle(List<?> list, RandomSource source)
+    {
+        Collections.shuffle(list, source.asRandom());
+    }
+
+    /**
+     * Combines a seed and a stream number into a well mixed seed, using the SplitMix64 finaliser.
+     *
+     * @param seed the seed
+     * @param stream the stream number
+     * @return the mixed seed
+     */
+    static long mix(long seed, long stream)
+    {
+        long z = seed + (stream + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
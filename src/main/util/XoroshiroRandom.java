@@ -0,0 +1,160 @@
+package util;
+import java.util.Random;
+
+/**
+ * A fast {@link RandomSource} using the xoroshiro128++ generator, seeded through SplitMix64.
+ *
+ * Unlike {@link Random} it keeps its state in two plain fields rather than an atomically updated
+ * seed, and its period is 2<sup>128</sup> - 1. It is not safe to share between threads; give each
+ * thread or game its own {@link #child(long) child stream} instead.
+ *
+ * @author Sahil Saxena
+ * @version 1.0
+ * @since 1.0
+ */
+public class XoroshiroRandom extends Random implements RandomSource {
+    private static final long serialVersionUID = 1L;
+
+    /** The seed the generator was last seeded with, used to derive child streams */
+    private long seed;
+
+    /** First half of the generator state */
+    private long s0;
+
+    /** Second half of the generator state */
+    private long s1;
+
+    /**
+     * Creates a generator with the given seed.
+     *
+     * @param seed the seed
+     */
+    public XoroshiroRandom(long seed)
+    {
+        super(seed);
+    }
+
+    /**
+     * Reseeds the generator. Called by the {@link Random} constructor.
+     *
+     * @param seed the new seed
+     */
+    @Override
+    public void setSeed(long seed)
+    {
+        super.setSeed(seed);
+        this.seed = seed;
+        this.s0 = RandomSource.mix(seed, 0);
+        this.s1 = RandomSource.mix(seed, 1);
+        if ((s0 | s1) == 0) {
+            s1 = 1;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long nextLong()
+    {
+        long a = s0;
+        long b = s1;
+        long result = Long.rotateLeft(a + b, 17) + a;
+        b ^= a;
+        s0 = Long.rotateLeft(a, 49) ^ b ^ (b << 21);
+        s1 = Long.rotateLeft(b, 28);
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int next(int bits)
+    {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int nextInt()
+    {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * Returns a uniformly distributed value between zero (inclusive) and the bound (exclusive),
+     * using a multiply and a rare rejection instead of a division.
+     *
+     * @param bound the upper bound, which must be positive
+     * @return the next value
+     * @throws IllegalArgumentException if the bound is not positive
+     */
+    @Override
+    public int nextInt(int bound)
+    {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        long product = (nextLong() >>> 32) * bound;
+        if ((product & 0xFFFF_FFFFL) < bound) {
+            // the low half may have fallen in the biased remainder, draw again while it has
+            long threshold = 0x1_0000_0000L % bound;
+            while ((product & 0xFFFF_FFFFL) < threshold) {
+                product = (nextLong() >>> 32) * bound;
+            }
+        }
+        return (int) (product >>> 32);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long seed()
+    {
+        return seed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] getState()
+    {
+        return new long[] {s0, s1};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setState(long[] state)
+    {
+        if (state.length != 2 || (state[0] | state[1]) == 0) {
+            throw new IllegalArgumentException("Not a XoroshiroRandom state");
+        }
+        s0 = state[0];
+        s1 = state[1];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RandomSource child(long stream)
+    {
+        return new XoroshiroRandom(RandomSource.mix(seed, stream ^ 0x5DEECE66DL));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Random asRandom()
+    {
+        return this;
+    }
+}
@@ -3,7 +3,6 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Random;;
 
 public class collectionFunctions {
 
@@ -54,16 +53,15 @@ public class collectionFunctions {
     }
 
 
-    public static void shuffleCollection(List<? extends Object> collection)
+    /**
+     * Shuffles a list in place, drawing from the given source.
+     *
+     * @param collection the list to shuffle
+     * @param random the source of randomness
+     */
+    public static void shuffleCollection(List<? extends Object> collection, RandomSource random)
     {
-        Random random = new Random();
-        Collection<Object> collection2 = new ArrayList<>(collection);
-        for (int i = collection.size() - 1; i > 0; i--) {
-            int j = random.nextInt(i + 1);
-            Object temp = collectionFunctions.getElementAt(collection2, i);
-            collectionFunctions.setElementAt(collection2, i,collectionFunctions.getElementAt(collection2, j));
-            collectionFunctions.setElementAt(collection2, j, temp);
-        }
+        RandomSource.shuffle(collection, random);
     }
     
 }
@@ -0,0 +1,140 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import server.Action;
+import server.CreationScheduler;
+import server.GameServer;
+import server.QueueStats;
+
+@Tag("functional")
+@Tag("Admission")
+public class AdmissionTest {
+
+	@Test
+	public void testQueueStatsPercentiles() {
+		QueueStats stats = new QueueStats();
+		assertEquals(0, stats.percentileWait(99, TimeUnit.NANOSECONDS));
+		for (long micros = 1; micros <= 1000; micros++) {
+			stats.started(TimeUnit.MICROSECONDS.toNanos(micros));
+		}
+		stats.rejected();
+		stats.deferred();
+		stats.deferred();
+		assertEquals(1000, stats.startedCount());
+		assertEquals(1, stats.rejectedCount());
+		assertEquals(2, stats.deferredCount());
+		assertEquals(1000, stats.longestWait(TimeUnit.MICROSECONDS));
+		assertEquals(500, stats.meanWait(TimeUnit.MICROSECONDS), 1);
+		long median = stats.percentileWait(50, TimeUnit.MICROSECONDS);
+		assertTrue(median >= 500 && median <= 1000, "median " + median);
+		long tail = stats.percentileWait(99, TimeUnit.MICROSECONDS);
+		assertTrue(tail >= 990 && tail <= 1000, "p99 " + tail);
+		assertEquals(1000, stats.percentileWait(100, TimeUnit.MICROSECONDS));
+	}
+
+	@Test
+	public void testCreationQueueIsBounded() throws Exception {
+		CreationScheduler scheduler = new CreationScheduler(1, 2);
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			CompletableFuture<String> first = scheduler.submit(() -> {
+				running.countDown();
+				release.await();
+				return "first";
+			});
+			assertTrue(running.await(5, TimeUnit.SECONDS));
+			List<CompletableFuture<String>> queued = new ArrayList<>();
+			queued.add(scheduler.submit(() -> "second"));
+			queued.add(scheduler.submit(() -> "third"));
+			assertEquals(2, scheduler.queuedCount());
+			assertThrows(RejectedExecutionException.class, () -> scheduler.submit(() -> "fourth"));
+			Thread.sleep(20);
+			release.countDown();
+			assertEquals("first", first.get(5, TimeUnit.SECONDS));
+			assertEquals("second", queued.get(0).get(5, TimeUnit.SECONDS));
+			assertEquals("third", queued.get(1).get(5, TimeUnit.SECONDS));
+			assertEquals(3, scheduler.getStats().startedCount());
+			assertTrue(scheduler.getStats().longestWait(TimeUnit.MILLISECONDS) >= 20);
+		} finally {
+			release.countDown();
+			scheduler.close();
+		}
+	}
+
+	@Test
+	public void testCreationFailureAndClose() throws Exception {
+		CreationScheduler scheduler = new CreationScheduler(1, 4);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Object> failing = scheduler.submit(() -> {
+			throw new IllegalArgumentException("bad table");
+		});
+		ExecutionException failure = assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+		assertTrue(failure.getCause() instanceof IllegalArgumentException);
+		scheduler.submit(() -> {
+			release.await();
+			return null;
+		});
+		CompletableFuture<String> stranded = scheduler.submit(() -> "never");
+		scheduler.close();
+		ExecutionException stopped = assertThrows(ExecutionException.class, () -> stranded.get(5, TimeUnit.SECONDS));
+		assertTrue(stopped.getCause() instanceof RejectedExecutionException);
+		assertThrows(RejectedExecutionException.class, () -> scheduler.submit(() -> "late"));
+	}
+
+	@Test
+	public void testServerRecordsQueueTimes() throws Exception {
+		try (GameServer server = new GameServer(0, 1);
+			 Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			 Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+			List<String> games = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				out.write("NEW " + i + " Player0 Player1\n");
+				out.flush();
+				String reply = in.readLine();
+				assertTrue(reply.startsWith("OK "), reply);
+				games.add(reply.substring(3));
+			}
+			for (String game : games) {
+				out.write("ACT " + game + " " + Action.END_TURN + " -1 -1\n");
+				out.flush();
+				assertTrue(in.readLine().startsWith("OK "));
+			}
+			out.write("NEW 9 Player0\n");
+			out.flush();
+			assertTrue(in.readLine().startsWith("ERR "));
+			out.write("STATS\n");
+			out.flush();
+			String stats = in.readLine();
+			assertTrue(stats.startsWith("OK create started 6 rejected 0"), stats);
+			assertTrue(stats.contains("| action started 5 rejected 0"), stats);
+			assertTrue(stats.endsWith("pending 0"), stats);
+			assertEquals(6, server.getCreationStats().startedCount());
+			assertEquals(5, server.getActionStats().startedCount());
+			assertFalse(server.getActionStats().longestWait(TimeUnit.SECONDS) > 5);
+		}
+	}
+}
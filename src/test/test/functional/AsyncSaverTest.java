@@ -0,0 +1,129 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import bakery.CardCatalog;
+import bakery.EmptyPantryException;
+import bakery.MagicBakery;
+import bakery.StateCodec;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import persistence.AsyncSaver;
+
+@Tag("functional")
+@Tag("AsyncSaver")
+public class AsyncSaverTest {
+
+	@TempDir
+	Path dir;
+
+	private void step(MagicBakery bakery, Random choices) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		try {
+			switch (choices.nextInt(3)) {
+				case 0:
+					bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+					break;
+				case 1:
+					bakery.refreshPantry();
+					break;
+				default:
+					bakery.endTurn();
+			}
+		} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+			// refused by the rules
+		}
+	}
+
+	@Test
+	public void testSaveWritesSnapshotTakenAtCall() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(7, 3);
+		Random choices = new Random(1);
+		for (int i = 0; i < 40; i++) {
+			step(bakery, choices);
+		}
+		long[] expected = StateCodec.encode(bakery);
+		File file = dir.resolve("game.bin").toFile();
+		try (AsyncSaver saver = new AsyncSaver((f, e) -> { })) {
+			CompletableFuture<File> done = saver.save(bakery, file);
+			for (int i = 0; i < 40; i++) {
+				step(bakery, choices);
+			}
+			assertEquals(file, done.get(10, TimeUnit.SECONDS));
+		}
+		assertArrayEquals(expected, StateCodec.encode(MagicBakery.loadState(file)));
+	}
+
+	@Test
+	public void testRepeatedSavesKeepLatest() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(11, 4);
+		Random choices = new Random(2);
+		File file = dir.resolve("game.bin").toFile();
+		List<CompletableFuture<File>> futures = new ArrayList<CompletableFuture<File>>();
+		try (AsyncSaver saver = new AsyncSaver((f, e) -> { })) {
+			for (int i = 0; i < 50; i++) {
+				step(bakery, choices);
+				futures.add(saver.save(bakery, file));
+			}
+		}
+		for (CompletableFuture<File> future : futures) {
+			assertTrue(future.isDone());
+			assertFalse(future.isCompletedExceptionally());
+		}
+		assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(MagicBakery.loadState(file)));
+	}
+
+	@Test
+	public void testFailureReportedToCallback() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(3, 2);
+		File file = dir.resolve("missing").resolve("game.bin").toFile();
+		AtomicReference<File> failed = new AtomicReference<File>();
+		try (AsyncSaver saver = new AsyncSaver((f, e) -> failed.set(f))) {
+			CompletableFuture<File> done = saver.save(bakery, file);
+			ExecutionException e = assertThrows(ExecutionException.class, () -> done.get(10, TimeUnit.SECONDS));
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		assertEquals(file, failed.get());
+	}
+
+	@Test
+	public void testUnexpectedFailureCompletesSave() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(3, 2);
+		File file = new File(dir.toFile(), "bad\0name");
+		try (AsyncSaver saver = new AsyncSaver((f, e) -> { })) {
+			CompletableFuture<File> done = saver.save(bakery, file);
+			ExecutionException e = assertThrows(ExecutionException.class, () -> done.get(10, TimeUnit.SECONDS));
+			assertTrue(e.getCause() instanceof RuntimeException, e.getCause().toString());
+			File good = dir.resolve("game.bin").toFile();
+			assertEquals(good, saver.save(bakery, good).get(10, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void testSaveAfterCloseRejected() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(3, 2);
+		AsyncSaver saver = new AsyncSaver((f, e) -> { });
+		saver.close();
+		assertThrows(IllegalStateException.class, () -> saver.save(bakery, dir.resolve("game.bin").toFile()));
+		assertEquals(0, saver.pendingCount());
+	}
+}
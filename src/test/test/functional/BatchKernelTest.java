@@ -0,0 +1,136 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardCatalog;
+import bakery.MagicBakery;
+import bakery.MagicBakery.ActionType;
+import sim.BatchKernel;
+import sim.GameKernel;
+
+@Tag("functional")
+@Tag("BatchKernel")
+public class BatchKernelTest {
+
+	private GameKernel kernel(long seed, int numPlayers) throws IOException {
+		MagicBakery bakery = new MagicBakery(seed, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(numPlayers), "./io/customers.csv");
+		return GameKernel.fromGame(bakery, new Random(seed));
+	}
+
+	private int apply(GameKernel kernel, int op, int card, int target) {
+		switch (op) {
+			case 0:
+				return kernel.drawFromPantry(card);
+			case 1:
+				return kernel.passCard(card, target);
+			case 2:
+				return kernel.bakeLayer(card);
+			case 3:
+				return kernel.fulfilOrder(target, false);
+			case 4:
+				return kernel.refreshPantry();
+			default:
+				kernel.endTurn();
+				return GameKernel.OK;
+		}
+	}
+
+	private void lockstep(int numPlayers, int games, int steps) throws IOException {
+		GameKernel[] expected = new GameKernel[games];
+		BatchKernel batch = null;
+		for (int g = 0; g < games; g++) {
+			expected[g] = kernel(100 + g, numPlayers);
+			if (batch == null) {
+				batch = new BatchKernel(expected[g].getCatalog(), games, numPlayers);
+			}
+			GameKernel copy = new GameKernel(expected[g].getCatalog());
+			copy.copyFrom(expected[g]);
+			copy.setRandom(new Random(100 + g));
+			batch.load(g, copy);
+		}
+		CardCatalog catalog = expected[0].getCatalog();
+
+		Random choices = new Random(numPlayers);
+		int[] ops = new int[games];
+		int[] cards = new int[games];
+		int[] targets = new int[games];
+		int[] results = new int[games];
+		boolean[] bakeable = new boolean[games];
+		GameKernel out = new GameKernel(catalog);
+		for (int step = 0; step < steps; step++) {
+			for (int g = 0; g < games; g++) {
+				ops[g] = choices.nextInt(BatchKernel.END_TURN + 1);
+				cards[g] = ops[g] == ActionType.BAKE_LAYER.ordinal()
+					? catalog.ingredientKinds() + choices.nextInt(catalog.layerKinds())
+					: choices.nextInt(ops[g] == ActionType.DRAW_INGREDIENT.ordinal() ? catalog.ingredientKinds() : catalog.cardCount());
+				targets[g] = choices.nextInt(numPlayers);
+			}
+			int layer = catalog.ingredientKinds() + step % catalog.layerKinds();
+			batch.canBake(layer, bakeable);
+			batch.step(ops, cards, targets, results);
+			for (int g = 0; g < games; g++) {
+				assertEquals(expected[g].canBake(layer), bakeable[g], "canBake of game " + g + " at step " + step);
+				assertEquals(apply(expected[g], ops[g], cards[g], targets[g]), results[g], "result of game " + g + " at step " + step);
+				batch.store(g, out);
+				assertArrayEquals(expected[g].encode(), out.encode(), "state of game " + g + " after step " + step);
+			}
+		}
+	}
+
+	@Test
+	public void testLockstepMatchesKernelThreePlayers() throws IOException {
+		lockstep(3, 8, 300);
+	}
+
+	@Test
+	public void testLockstepMatchesKernelFivePlayers() throws IOException {
+		lockstep(5, 5, 300);
+	}
+
+	@Test
+	public void testStoreLoadRoundTrip() throws IOException {
+		GameKernel kernel = kernel(3, 4);
+		BatchKernel batch = new BatchKernel(kernel.getCatalog(), 3, 4);
+		batch.load(1, kernel);
+		GameKernel out = new GameKernel(kernel.getCatalog());
+		batch.store(1, out);
+		assertArrayEquals(kernel.encode(), out.encode());
+		assertEquals(kernel.getCurrentPlayer(), batch.getCurrentPlayer(1));
+		assertEquals(kernel.pantrySize(), batch.pantrySize(1));
+	}
+
+	@Test
+	public void testLoadWrongPlayerCount() throws IOException {
+		GameKernel kernel = kernel(3, 2);
+		BatchKernel batch = new BatchKernel(kernel.getCatalog(), 4, 3);
+		assertThrows(IllegalArgumentException.class, () -> batch.load(0, kernel));
+	}
+
+	@Test
+	public void testUnknownOperationRejected() throws IOException {
+		GameKernel kernel = kernel(5, 3);
+		BatchKernel batch = new BatchKernel(kernel.getCatalog(), 2, 3);
+		batch.load(0, kernel);
+		batch.load(1, kernel);
+		int pantry = batch.pantrySize(0);
+		int[] results = new int[2];
+		int[] ops = { ActionType.REFRESH_PANTRY.ordinal(), BatchKernel.END_TURN + 1 };
+		assertThrows(IllegalArgumentException.class, () -> batch.step(ops, new int[2], new int[2], results));
+		int[] negative = { -1, ActionType.REFRESH_PANTRY.ordinal() };
+		assertThrows(IllegalArgumentException.class, () -> batch.step(negative, new int[2], new int[2], results));
+		assertEquals(0, batch.getCurrentPlayer(0));
+		assertEquals(pantry, batch.pantrySize(0));
+		GameKernel out = new GameKernel(kernel.getCatalog());
+		batch.store(0, out);
+		assertArrayEquals(kernel.encode(), out.encode(), "no game is stepped");
+	}
+}
@@ -0,0 +1,168 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardCatalog;
+import bakery.GameView;
+import bakery.StateDiff;
+import server.Action;
+import server.ActionResult;
+import server.BatchResult;
+import server.GameActor;
+import server.GameServer;
+import server.ShardedScheduler;
+
+@Tag("functional")
+@Tag("Batch")
+public class BatchTest {
+
+	private Action randomAction(GameView view, Random choices) {
+		CardCatalog catalog = view.getCardCatalog();
+		switch (choices.nextInt(4)) {
+			case 0:
+			case 1:
+				return Action.draw(catalog.cardId(view.getPantry().get(choices.nextInt(view.getPantry().size()))));
+			case 2:
+				return Action.refresh();
+			default:
+				return Action.endTurn();
+		}
+	}
+
+	@Test
+	public void testBatchMatchesSingleActions() throws Exception {
+		try (ShardedScheduler shards = new ShardedScheduler(1)) {
+			for (long seed = 0; seed < 5; seed++) {
+				GameActor batched = new GameActor(1, FunctionalHelper.newGame(seed, 3), shards.forKey(1));
+				GameActor single = new GameActor(2, FunctionalHelper.newGame(seed, 3), shards.forKey(2));
+				Random choices = new Random(seed);
+				for (int round = 0; round < 30; round++) {
+					GameView before = batched.getView();
+					List<Action> actions = new ArrayList<>();
+					for (int i = 0, n = 1 + choices.nextInt(4); i < n; i++) {
+						actions.add(randomAction(before, choices));
+					}
+					BatchResult batch = batched.submitAll(actions).get(5, TimeUnit.SECONDS);
+					List<ActionResult> expected = new ArrayList<>();
+					for (Action action : actions) {
+						ActionResult result = single.submit(action).get(5, TimeUnit.SECONDS);
+						expected.add(result);
+						if (!result.isOk()) {
+							break;
+						}
+					}
+					assertEquals(expected.size(), batch.getResults().size());
+					for (int i = 0; i < expected.size(); i++) {
+						assertEquals(expected.get(i).getAction(), batch.getResults().get(i).getAction());
+						assertEquals(expected.get(i).getError(), batch.getResults().get(i).getError());
+						assertEquals(expected.get(i).getCurrentPlayer(), batch.getResults().get(i).getCurrentPlayer());
+						assertEquals(expected.get(i).getActionsRemaining(), batch.getResults().get(i).getActionsRemaining());
+					}
+					GameView after = batched.getView();
+					assertEquals(single.getView().getStateHash(), after.getStateHash());
+					assertEquals(StateDiff.between(before, after).getChanges(), batch.getDiff().getChanges());
+					assertEquals(before.getVersion(), batch.getDiff().getFromVersion());
+					assertEquals(after.getVersion(), batch.getDiff().getToVersion());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBatchStopsAtFirstRefusal() throws Exception {
+		try (ShardedScheduler shards = new ShardedScheduler(1)) {
+			GameActor actor = new GameActor(1, FunctionalHelper.newGame(7, 3), shards.forKey(1));
+			GameView start = actor.getView();
+			CardCatalog catalog = start.getCardCatalog();
+			int card = catalog.cardId(start.getPantry().get(0));
+
+			List<Action> tooMany = List.of(Action.refresh(), Action.refresh(), Action.refresh(), Action.refresh(), Action.endTurn());
+			BatchResult stopped = actor.submitAll(tooMany).get(5, TimeUnit.SECONDS);
+			assertFalse(stopped.isComplete());
+			assertEquals(3, stopped.appliedCount());
+			assertEquals(4, stopped.getResults().size());
+			assertEquals("TooManyActionsException", stopped.getFailure().getError());
+			assertEquals(0, stopped.getLast().getCurrentPlayer(), "the turn end after the refusal is not attempted");
+			assertEquals(start.getVersion() + 3, actor.getView().getVersion());
+
+			card = catalog.cardId(actor.getView().getPantry().get(0));
+			BatchResult ended = actor.submitAll(List.of(Action.endTurn(), Action.draw(card))).get(5, TimeUnit.SECONDS);
+			assertTrue(ended.isComplete());
+			assertNull(ended.getFailure());
+			assertEquals(2, ended.appliedCount());
+			assertEquals(1, ended.getLast().getCurrentPlayer());
+			assertEquals(2, ended.getLast().getActionsRemaining());
+
+			int absent = 0;
+			while (actor.getView().getPantry().contains(catalog.card(absent))) {
+				absent++;
+			}
+			BatchResult wrong = actor.submitAll(List.of(Action.draw(absent), Action.endTurn())).get(5, TimeUnit.SECONDS);
+			assertEquals(0, wrong.appliedCount());
+			assertEquals("WrongIngredientsException", wrong.getFailure().getError());
+			assertTrue(wrong.getDiff().getChanges().isEmpty());
+			assertEquals(1, actor.getView().getCurrentPlayer());
+		}
+	}
+
+	@Test
+	public void testServerBatchRequest() throws Exception {
+		try (GameServer server = new GameServer(0, 1);
+			 Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			 Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+			out.write("NEW 5 A B C\n");
+			out.flush();
+			String game = in.readLine().substring(3);
+			GameView start = server.getGame(Long.parseLong(game)).getView();
+			int card = start.getCardCatalog().cardId(start.getPantry().get(0));
+
+			out.write("BATCH " + game + " 0," + card + " " + Action.END_TURN + "\n");
+			out.flush();
+			String reply = in.readLine();
+			GameView after = server.getGame(Long.parseLong(game)).getView();
+			assertTrue(reply.startsWith("OK 2 1 3 DIFF " + after.getVersion() + " " + after.getStateHash() + " "), reply);
+			assertEquals(start.getVersion() + 2, after.getVersion());
+
+			String refresh = Action.refresh().getOp() + ",-1,-1";
+			out.write("BATCH " + game + " " + refresh + " " + refresh + " " + refresh + " " + refresh + " " + Action.END_TURN + "\n");
+			out.flush();
+			reply = in.readLine();
+			assertTrue(reply.startsWith("REFUSED 3 TooManyActionsException 1 0 DIFF "), reply);
+
+			out.write("BATCH " + game + "\n");
+			out.flush();
+			assertTrue(in.readLine().startsWith("ERR "));
+			out.write("BATCH " + game + " 1,2,3,4\n");
+			out.flush();
+			assertTrue(in.readLine().startsWith("ERR "));
+			StringBuilder tooLong = new StringBuilder("BATCH ").append(game);
+			for (int i = 0; i < 100; i++) {
+				tooLong.append(' ').append(Action.END_TURN);
+			}
+			out.write(tooLong + "\n");
+			out.flush();
+			assertTrue(in.readLine().startsWith("ERR "));
+			assertEquals(after.getVersion() + 3, server.getGame(Long.parseLong(game)).getView().getVersion());
+			assertEquals(7, server.getActionStats().startedCount());
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import bakery.CardCatalog;
+import bakery.CustomerOrder;
+import bakery.Ingredient;
+import bakery.Layer;
+import util.CardUtils;
+
+@Tag("functional")
+@Tag("CardCatalog")
+public class CardCatalogTest {
+
+	static List<Ingredient> ingredients;
+	static List<Layer> layers;
+	static List<CustomerOrder> customers;
+	static CardCatalog catalog;
+
+	@BeforeAll
+	public static void setUp() throws FileNotFoundException {
+		ingredients = CardUtils.readIngredientFile("./io/ingredients.csv");
+		layers = CardUtils.readLayerFile("./io/layers.csv");
+		customers = CardUtils.readCustomerFile("./io/customers.csv", layers);
+		catalog = new CardCatalog(ingredients, layers, customers);
+	}
+
+	@Test
+	public void testCounts() {
+		assertEquals(7, catalog.ingredientKinds());
+		assertEquals(6, catalog.layerKinds());
+		assertEquals(13, catalog.cardCount());
+		assertEquals(25, catalog.customerCount());
+	}
+
+	@Test
+	public void testIdsRoundTrip() {
+		for (int id = 0; id < catalog.cardCount(); id++) {
+			assertEquals(id, catalog.cardId(catalog.card(id)));
+		}
+		for (int id = 0; id < catalog.customerCount(); id++) {
+			assertEquals(id, catalog.customerId(catalog.customer(id)));
+		}
+	}
+
+	@Test
+	public void testLayersAfterIngredients() {
+		for (Layer layer: layers) {
+			assertTrue(catalog.cardId(layer) >= catalog.ingredientKinds());
+		}
+		assertEquals(-1, catalog.cardId(new Ingredient("jam")));
+		assertEquals(-1, catalog.cardId(new Ingredient("not a card")));
+	}
+
+	@Test
+	public void testVersionIsStable() throws FileNotFoundException {
+		CardCatalog again = new CardCatalog(CardUtils.readIngredientFile("./io/ingredients.csv"), CardUtils.readLayerFile("./io/layers.csv"), customers);
+		assertEquals(catalog.version(), again.version());
+	}
+}
@@ -0,0 +1,138 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import bakery.CardCatalog;
+import bakery.EmptyPantryException;
+import bakery.MagicBakery;
+import bakery.SaveFormat;
+import bakery.StateCodec;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import persistence.ByteDelta;
+import persistence.DeltaSaveLog;
+
+@Tag("functional")
+@Tag("DeltaSaveLog")
+public class DeltaSaveLogTest {
+
+	@TempDir
+	Path dir;
+
+	private void step(MagicBakery bakery, Random choices) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		try {
+			switch (choices.nextInt(3)) {
+				case 0:
+					bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+					break;
+				case 1:
+					bakery.refreshPantry();
+					break;
+				default:
+					bakery.endTurn();
+			}
+		} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+			// refused by the rules
+		}
+	}
+
+	@Test
+	public void testDeltaRoundTrip() {
+		Random random = new Random(4);
+		for (int i = 0; i < 50; i++) {
+			byte[] base = new byte[random.nextInt(300)];
+			random.nextBytes(base);
+			byte[] target = base.clone();
+			for (int edits = random.nextInt(5); edits > 0 && target.length > 0; edits--) {
+				target[random.nextInt(target.length)] ^= 0x5A;
+			}
+			byte[] longer = new byte[target.length + random.nextInt(20)];
+			System.arraycopy(target, 0, longer, longer.length - target.length, target.length);
+			assertArrayEquals(target, ByteDelta.apply(base, ByteDelta.encode(base, target)));
+			assertArrayEquals(longer, ByteDelta.apply(base, ByteDelta.encode(base, longer)));
+		}
+	}
+
+	@Test
+	public void testEverySaveRestoresAndStorageShrinks() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(21, 4);
+		Random choices = new Random(6);
+		Path file = dir.resolve("game.delta");
+		List<long[]> states = new ArrayList<long[]>();
+		long fullBytes = 0;
+		try (DeltaSaveLog log = DeltaSaveLog.open(file, 20)) {
+			for (int i = 0; i < 60; i++) {
+				step(bakery, choices);
+				log.save(bakery);
+				states.add(StateCodec.encode(bakery));
+				fullBytes += SaveFormat.toBytes(bakery).length;
+			}
+			for (int i = 0; i < 60; i++) {
+				assertArrayEquals(states.get(i), StateCodec.encode(log.load(i)), "save " + i);
+			}
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(log.load()));
+		}
+		assertTrue(Files.size(file) * 3 < fullBytes, Files.size(file) + " bytes against " + fullBytes);
+	}
+
+	@Test
+	public void testReopenContinuesChainAndDropsTornFrame() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(2, 3);
+		Random choices = new Random(7);
+		Path file = dir.resolve("game.delta");
+		try (DeltaSaveLog log = DeltaSaveLog.open(file, 8)) {
+			assertNull(log.load());
+			for (int i = 0; i < 13; i++) {
+				step(bakery, choices);
+				log.save(bakery);
+			}
+		}
+		long size = Files.size(file);
+		Files.write(file, new byte[] {1, 0, 0, 0, 40, 3}, StandardOpenOption.APPEND);
+		try (DeltaSaveLog log = DeltaSaveLog.open(file, 8)) {
+			assertEquals(13, log.size());
+			assertEquals(size, Files.size(file));
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(log.load()));
+			step(bakery, choices);
+			log.save(bakery);
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(log.load(13)));
+		}
+	}
+
+	@Test
+	public void testReopenDropsCorruptFrame() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(5, 2);
+		Random choices = new Random(8);
+		Path file = dir.resolve("game.delta");
+		long[] beforeLast = null;
+		try (DeltaSaveLog log = DeltaSaveLog.open(file, 4)) {
+			for (int i = 0; i < 6; i++) {
+				beforeLast = StateCodec.encode(bakery);
+				step(bakery, choices);
+				log.save(bakery);
+			}
+		}
+		byte[] data = Files.readAllBytes(file);
+		data[data.length - 1] ^= 0x20;
+		Files.write(file, data);
+		try (DeltaSaveLog log = DeltaSaveLog.open(file, 4)) {
+			assertEquals(5, log.size());
+			assertArrayEquals(beforeLast, StateCodec.encode(log.load()));
+		}
+	}
+}
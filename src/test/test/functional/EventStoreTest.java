@@ -0,0 +1,142 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import bakery.CardCatalog;
+import bakery.EmptyPantryException;
+import bakery.MagicBakery;
+import bakery.SaveFormat;
+import bakery.StateCodec;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import persistence.EventStore;
+
+@Tag("functional")
+@Tag("EventStore")
+public class EventStoreTest {
+
+	@TempDir
+	Path dir;
+
+	private void step(MagicBakery bakery, Random choices) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		try {
+			switch (choices.nextInt(3)) {
+				case 0:
+					bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+					break;
+				case 1:
+					bakery.refreshPantry();
+					break;
+				default:
+					bakery.endTurn();
+			}
+		} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+			// failed attempts are logged too
+		}
+	}
+
+	@Test
+	public void testAppendAndLoad() throws IOException {
+		MagicBakery bakery = FunctionalHelper.newGame(3, 3);
+		Random choices = new Random(1);
+		try (EventStore store = EventStore.create(dir, bakery, 25)) {
+			for (int i = 0; i < 110; i++) {
+				step(bakery, choices);
+				store.append(bakery);
+			}
+			assertEquals(110, store.size());
+			assertEquals(100, store.getSnapshotActions());
+			MagicBakery loaded = store.load();
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(loaded));
+			assertEquals(bakery.getStateHash(), loaded.getStateHash());
+			assertEquals(110, loaded.getGameLog().size());
+		}
+	}
+
+	@Test
+	public void testLoadedGameContinuesIdentically() throws IOException {
+		MagicBakery bakery = FunctionalHelper.newGame(12854, 4);
+		Random choices = new Random(2);
+		MagicBakery loaded;
+		try (EventStore store = EventStore.create(dir, bakery, 10)) {
+			for (int i = 0; i < 57; i++) {
+				step(bakery, choices);
+				store.append(bakery);
+			}
+			loaded = store.load();
+		}
+		Random again = new Random(3);
+		Random same = new Random(3);
+		for (int i = 0; i < 100; i++) {
+			step(bakery, again);
+			step(loaded, same);
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(loaded), "after " + i + " more actions");
+		}
+	}
+
+	@Test
+	public void testReopenDiscardsTornAction() throws IOException {
+		MagicBakery bakery = FunctionalHelper.newGame(8, 2);
+		Random choices = new Random(4);
+		try (EventStore store = EventStore.create(dir, bakery, 50)) {
+			for (int i = 0; i < 30; i++) {
+				step(bakery, choices);
+				store.append(bakery);
+			}
+		}
+		Files.write(dir.resolve(EventStore.LOG_FILE), new byte[] {5, 0}, StandardOpenOption.APPEND);
+		try (EventStore store = EventStore.open(dir, 50)) {
+			assertEquals(30, store.size());
+			for (int i = 0; i < 30; i++) {
+				step(bakery, choices);
+			}
+			store.append(bakery);
+			assertEquals(60, store.size());
+			assertEquals(60, store.getSnapshotActions());
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(store.load()));
+		}
+	}
+
+	@Test
+	public void testAppendWritesOnlyNewActions() throws IOException {
+		MagicBakery bakery = FunctionalHelper.newGame(5, 5);
+		Random choices = new Random(5);
+		try (EventStore store = EventStore.create(dir, bakery, 1000)) {
+			long before = Files.size(dir.resolve(EventStore.LOG_FILE));
+			step(bakery, choices);
+			store.append(bakery);
+			assertEquals(before + 3, Files.size(dir.resolve(EventStore.LOG_FILE)));
+			assertTrue(Files.exists(dir.resolve(EventStore.SNAPSHOT_FILE)));
+		}
+	}
+
+	@Test
+	public void testSnapshotLeavesOutLog() throws IOException {
+		MagicBakery bakery = FunctionalHelper.newGame(6, 3);
+		Random choices = new Random(6);
+		try (EventStore store = EventStore.create(dir, bakery, 100)) {
+			for (int i = 0; i < 400; i++) {
+				step(bakery, choices);
+				store.append(bakery);
+			}
+			assertEquals(400, store.getSnapshotActions());
+			int position = SaveFormat.toBytes(bakery).length - 4 - bakery.getGameLog().toBytes().length;
+			assertEquals(13 + position, Files.size(dir.resolve(EventStore.SNAPSHOT_FILE)));
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(store.load()));
+			assertEquals(400, store.load().getGameLog().size());
+		}
+	}
+}
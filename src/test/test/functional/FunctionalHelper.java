@@ -1,10 +1,29 @@
 package test.functional;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import bakery.MagicBakery;
 
 public class FunctionalHelper {
 
+	public static MagicBakery newGame(long seed, int numPlayers) throws IOException {
+		MagicBakery bakery = new MagicBakery(seed, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(names(numPlayers), "./io/customers.csv");
+		return bakery;
+	}
+
+	public static List<String> names(int count) {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			names.add("Player" + i);
+		}
+		return names;
+	}
+
 	public static Object getFieldValue(Object obj, String fieldName) throws NoSuchFieldException, IllegalAccessException {
 		Field field = obj.getClass().getDeclaredField(fieldName);
 		field.setAccessible(true);
@@ -0,0 +1,310 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardCatalog;
+import bakery.EmptyPantryException;
+import bakery.GameView;
+import bakery.Ingredient;
+import bakery.MagicBakery;
+import bakery.StateDiff;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import server.Action;
+import server.ActionResult;
+import server.GameActor;
+import server.GameFeed;
+import server.ShardedScheduler;
+
+@Tag("functional")
+@Tag("GameFeed")
+public class GameFeedTest {
+
+	private static final class Recorder implements Flow.Subscriber<StateDiff> {
+		final List<StateDiff> received = new ArrayList<>();
+		final CountDownLatch completed = new CountDownLatch(1);
+		Flow.Subscription subscription;
+		Throwable error;
+		long initialDemand;
+
+		Recorder(long initialDemand) {
+			this.initialDemand = initialDemand;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if (initialDemand > 0) {
+				subscription.request(initialDemand);
+			}
+		}
+
+		@Override
+		public synchronized void onNext(StateDiff item) {
+			received.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			completed.countDown();
+		}
+
+		synchronized List<StateDiff> items() {
+			return new ArrayList<>(received);
+		}
+	}
+
+	private void step(MagicBakery bakery, Random choices) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		try {
+			switch (choices.nextInt(3)) {
+				case 0:
+					bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+					break;
+				case 1:
+					bakery.refreshPantry();
+					break;
+				default:
+					bakery.endTurn();
+			}
+		} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+			// refused by the rules
+		}
+	}
+
+	private int[][] zoneCounts(GameView view) {
+		CardCatalog catalog = view.getCardCatalog();
+		int seats = view.getPlayerNames().size();
+		int[][] counts = new int[seats - StateDiff.SUPPLY][catalog.cardCount()];
+		for (int seat = 0; seat < seats; seat++) {
+			for (Ingredient card : view.getHand(seat)) {
+				counts[seat - StateDiff.SUPPLY][catalog.cardId(card)]++;
+			}
+		}
+		for (Ingredient card : view.getPantry()) {
+			counts[StateDiff.PANTRY - StateDiff.SUPPLY][catalog.cardId(card)]++;
+		}
+		for (Ingredient card : view.getLayers()) {
+			counts[StateDiff.LAYERS - StateDiff.SUPPLY][catalog.cardId(card)]++;
+		}
+		return counts;
+	}
+
+	@Test
+	public void testDiffReplaysEveryAction() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(12, 3);
+		Random choices = new Random(3);
+		GameView before = bakery.getView();
+		for (int i = 0; i < 400; i++) {
+			step(bakery, choices);
+			GameView after = bakery.getView();
+			StateDiff diff = StateDiff.between(before, after);
+			assertEquals(before.getVersion(), diff.getFromVersion());
+			assertEquals(after.getVersion(), diff.getToVersion());
+			assertFalse(diff.isSnapshot());
+
+			int[][] counts = zoneCounts(before);
+			boolean turnChanged = false;
+			for (StateDiff.Change change : diff.getChanges()) {
+				switch (change.getKind()) {
+					case CARD_MOVED:
+					case LAYER_BAKED:
+						if (change.getFrom() != StateDiff.SUPPLY) {
+							counts[change.getFrom() - StateDiff.SUPPLY][change.getSubject()]--;
+						}
+						if (change.getTo() != StateDiff.SUPPLY) {
+							counts[change.getTo() - StateDiff.SUPPLY][change.getSubject()]++;
+						}
+						break;
+					case TURN_CHANGED:
+						turnChanged = true;
+						assertEquals(after.getCurrentPlayer(), change.getSubject());
+						assertEquals(after.getActionsRemaining(after.getCurrentPlayer()), change.getTo());
+						break;
+					default:
+				}
+			}
+			int[][] expected = zoneCounts(after);
+			for (int z = 0; z < expected.length; z++) {
+				for (int card = 0; card < expected[z].length; card++) {
+					assertEquals(expected[z][card], counts[z][card], "zone " + (z + StateDiff.SUPPLY) + " card " + card);
+				}
+			}
+			boolean turnDiffers = before.getCurrentPlayer() != after.getCurrentPlayer()
+				|| before.getActionsRemaining(after.getCurrentPlayer()) != after.getActionsRemaining(after.getCurrentPlayer());
+			assertEquals(turnDiffers, turnChanged);
+			before = after;
+		}
+	}
+
+	@Test
+	public void testDrawDescribedAsMoves() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(13, 2);
+		GameView before = bakery.getView();
+		Ingredient card = bakery.getPantry().iterator().next();
+		int id = bakery.getCardCatalog().cardId(card);
+		bakery.drawFromPantry(card);
+		StateDiff diff = StateDiff.between(before, bakery.getView());
+		// the replacement from the deck may be the same kind of card, leaving the pantry unchanged
+		assertTrue(diff.getChanges().contains(new StateDiff.Change(StateDiff.Change.Kind.CARD_MOVED, id, StateDiff.PANTRY, 0))
+			|| diff.getChanges().contains(new StateDiff.Change(StateDiff.Change.Kind.CARD_MOVED, id, StateDiff.SUPPLY, 0)));
+		assertTrue(diff.getChanges().contains(new StateDiff.Change(StateDiff.Change.Kind.TURN_CHANGED, 0, -1, bakery.getActionsRemaining())));
+		for (StateDiff.Change change : diff.getChanges()) {
+			assertTrue(change.getKind() == StateDiff.Change.Kind.CARD_MOVED || change.getKind() == StateDiff.Change.Kind.TURN_CHANGED);
+		}
+	}
+
+	@Test
+	public void testSubscribersGetSnapshotThenEveryDiff() throws Exception {
+		ExecutorService workers = Executors.newFixedThreadPool(3);
+		try {
+			MagicBakery bakery = FunctionalHelper.newGame(14, 3);
+			CardCatalog catalog = bakery.getCardCatalog();
+			GameActor actor = new GameActor(1, bakery, workers);
+			List<Recorder> watchers = new ArrayList<>();
+			for (int i = 0; i < 50; i++) {
+				Recorder watcher = new Recorder(Long.MAX_VALUE);
+				actor.getFeed().subscribe(watcher);
+				watchers.add(watcher);
+			}
+			Random choices = new Random(1);
+			List<CompletableFuture<ActionResult>> results = new ArrayList<>();
+			for (int i = 0; i < 40; i++) {
+				int choice = choices.nextInt(3);
+				results.add(actor.submit(choice == 0 ? Action.draw(choices.nextInt(catalog.ingredientKinds()))
+					: choice == 1 ? Action.refresh() : Action.endTurn()));
+			}
+			results.get(results.size() - 1).get();
+			actor.ask(game -> null).get();
+			GameView last = actor.getView();
+			actor.getFeed().close();
+			for (Recorder watcher : watchers) {
+				assertTrue(watcher.completed.await(5, TimeUnit.SECONDS));
+				List<StateDiff> items = watcher.items();
+				assertTrue(items.get(0).isSnapshot());
+				for (int i = 1; i < items.size(); i++) {
+					assertFalse(items.get(i).isSnapshot());
+					assertEquals(items.get(i - 1).getToVersion(), items.get(i).getFromVersion());
+				}
+				assertSame(last, items.get(items.size() - 1).getView());
+			}
+			assertEquals(0, actor.getFeed().coalesceCount());
+		} finally {
+			workers.shutdown();
+		}
+	}
+
+	@Test
+	public void testBlockingSpectatorDoesNotDelayGame() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch blocked = new CountDownLatch(1);
+		try (ShardedScheduler shards = new ShardedScheduler(1)) {
+			GameActor actor = new GameActor(1, FunctionalHelper.newGame(15, 3), shards.forKey(1));
+			actor.getFeed().subscribe(new Flow.Subscriber<StateDiff>() {
+				@Override
+				public void onSubscribe(Flow.Subscription subscription) {
+					subscription.request(Long.MAX_VALUE);
+				}
+
+				@Override
+				public void onNext(StateDiff item) {
+					blocked.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+				}
+
+				@Override
+				public void onComplete() {
+				}
+			});
+			assertTrue(blocked.await(5, TimeUnit.SECONDS));
+			for (int i = 0; i < 10; i++) {
+				assertTrue(actor.submit(Action.endTurn()).get(5, TimeUnit.SECONDS).isOk());
+			}
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testSlowSubscriberCoalescedIntoSnapshot() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(15, 2);
+		long initialVersion = bakery.getView().getVersion();
+		GameFeed feed = new GameFeed(bakery.getView(), Runnable::run, 8);
+		Recorder slow = new Recorder(1);
+		Recorder fast = new Recorder(Long.MAX_VALUE);
+		feed.subscribe(slow);
+		feed.subscribe(fast);
+		Random choices = new Random(6);
+		for (int i = 0; i < 100; i++) {
+			step(bakery, choices);
+			feed.publish(bakery.getView());
+		}
+		assertEquals(1, slow.items().size());
+		assertTrue(feed.coalesceCount() > 0);
+		slow.subscription.request(Long.MAX_VALUE);
+		List<StateDiff> items = slow.items();
+		assertTrue(items.size() <= 1 + 8, "queue stayed bounded");
+		assertTrue(items.get(1).isSnapshot());
+		for (int i = 2; i < items.size(); i++) {
+			assertEquals(items.get(i - 1).getToVersion(), items.get(i).getFromVersion());
+		}
+		assertSame(bakery.getView(), items.get(items.size() - 1).getView());
+		assertSame(bakery.getView(), fast.items().get(fast.items().size() - 1).getView());
+		assertEquals(1 + bakery.getView().getVersion() - initialVersion, fast.items().size());
+	}
+
+	@Test
+	public void testBadDemandCancelAndComplete() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(16, 2);
+		GameFeed feed = new GameFeed(bakery.getView(), Runnable::run, 4);
+		Recorder bad = new Recorder(0);
+		feed.subscribe(bad);
+		bad.subscription.request(0);
+		assertTrue(bad.error instanceof IllegalArgumentException);
+		assertEquals(0, feed.subscriberCount());
+
+		Recorder leaving = new Recorder(Long.MAX_VALUE);
+		feed.subscribe(leaving);
+		assertEquals(1, feed.subscriberCount());
+		leaving.subscription.cancel();
+		assertEquals(0, feed.subscriberCount());
+		bakery.drawFromPantry(bakery.getPantry().iterator().next());
+		feed.publish(bakery.getView());
+		assertEquals(1, leaving.items().size());
+
+		Recorder staying = new Recorder(Long.MAX_VALUE);
+		feed.subscribe(staying);
+		feed.close();
+		assertTrue(staying.completed.await(1, TimeUnit.SECONDS));
+		assertEquals(1, staying.items().size());
+	}
+}
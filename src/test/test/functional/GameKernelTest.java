@@ -0,0 +1,176 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardCatalog;
+import bakery.EmptyPantryException;
+import bakery.Layer;
+import bakery.MagicBakery;
+import bakery.Player;
+import bakery.StateCodec;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import sim.GameKernel;
+
+@Tag("functional")
+@Tag("GameKernel")
+public class GameKernelTest {
+
+	private Random copyOf(Random random) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(random);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return (Random)in.readObject();
+		}
+	}
+
+	/* Starts a game whose pantry and discard pile are in card id order, like the kernel's. */
+	private MagicBakery normalisedGame(long seed, List<String> names) throws IOException {
+		MagicBakery bakery = new MagicBakery(seed, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(names, "./io/customers.csv");
+		return StateCodec.decode(StateCodec.encode(bakery), names, seed);
+	}
+
+	private int applyToGame(MagicBakery bakery, int action, int card, int recipient) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		try {
+			switch (action) {
+				case 0:
+					bakery.drawFromPantry(catalog.card(card).toString());
+					break;
+				case 1:
+					Player player = new ArrayList<Player>(bakery.getPlayers()).get(recipient);
+					bakery.passCard(catalog.card(card), player);
+					break;
+				case 2:
+					bakery.bakeLayer((Layer)catalog.card(card));
+					break;
+				case 3:
+					bakery.refreshPantry();
+					break;
+				case 4:
+					bakery.fulfillOrder(null, false);
+					break;
+				default:
+					bakery.endTurn();
+			}
+		} catch (WrongIngredientsException e) {
+			return GameKernel.WRONG_INGREDIENTS;
+		} catch (TooManyActionsException e) {
+			return GameKernel.TOO_MANY_ACTIONS;
+		} catch (EmptyPantryException e) {
+			return GameKernel.EMPTY_PANTRY;
+		}
+		return GameKernel.OK;
+	}
+
+	private int applyToKernel(GameKernel kernel, int action, int card, int recipient) {
+		switch (action) {
+			case 0:
+				return kernel.drawFromPantry(card);
+			case 1:
+				return kernel.passCard(card, recipient);
+			case 2:
+				return kernel.bakeLayer(card);
+			case 3:
+				return kernel.refreshPantry();
+			case 4:
+				return kernel.fulfilOrder(0, false);
+			default:
+				kernel.endTurn();
+				return GameKernel.OK;
+		}
+	}
+
+	private void replay(long seed, int numPlayers, int steps) throws IOException, ClassNotFoundException, NoSuchFieldException, IllegalAccessException {
+		List<String> names = FunctionalHelper.names(numPlayers);
+		MagicBakery bakery = normalisedGame(seed, names);
+		Random gameRandom = (Random)FunctionalHelper.getFieldValue(bakery, "random");
+		GameKernel kernel = GameKernel.fromGame(bakery, copyOf(gameRandom));
+		assertArrayEquals(StateCodec.encode(bakery), kernel.encode());
+
+		CardCatalog catalog = bakery.getCardCatalog();
+		Random actions = new Random(seed * 31 + numPlayers);
+		for (int step = 0; step < steps; step++) {
+			int action = actions.nextInt(6);
+			int card = action == 2
+				? catalog.ingredientKinds() + actions.nextInt(catalog.layerKinds())
+				: actions.nextInt(action == 0 ? catalog.ingredientKinds() : catalog.cardCount());
+			int recipient = actions.nextInt(numPlayers);
+
+			int expected = applyToGame(bakery, action, card, recipient);
+			int actual = applyToKernel(kernel, action, card, recipient);
+			assertEquals(expected, actual, "result of step " + step);
+			assertArrayEquals(StateCodec.encode(bakery), kernel.encode(), "state after step " + step);
+		}
+	}
+
+	@Test
+	public void testConformanceTwoPlayers() throws Exception {
+		replay(1, 2, 400);
+	}
+
+	@Test
+	public void testConformanceThreePlayers() throws Exception {
+		replay(12854, 3, 400);
+	}
+
+	@Test
+	public void testConformanceFivePlayers() throws Exception {
+		replay(77, 5, 400);
+	}
+
+	@Test
+	public void testPassToInvalidSeatRefused() throws IOException {
+		MagicBakery bakery = normalisedGame(3, FunctionalHelper.names(3));
+		GameKernel kernel = GameKernel.fromGame(bakery, new Random(3));
+		int card = bakery.getCardCatalog().cardId(bakery.getCurrentPlayer().getHand().get(0));
+		long[] before = kernel.encode();
+		assertEquals(GameKernel.WRONG_INGREDIENTS, kernel.passCard(card, -1));
+		assertEquals(GameKernel.WRONG_INGREDIENTS, kernel.passCard(card, 3));
+		assertEquals(GameKernel.WRONG_INGREDIENTS, kernel.passCard(card, 0));
+		assertArrayEquals(before, kernel.encode());
+		assertEquals(GameKernel.OK, kernel.passCard(card, 2));
+	}
+
+	@Test
+	public void testToGameRoundTrip() throws IOException {
+		List<String> names = FunctionalHelper.names(4);
+		MagicBakery bakery = normalisedGame(5, names);
+		GameKernel kernel = GameKernel.fromGame(bakery, new Random(5));
+		MagicBakery copy = kernel.toGame(names, 5);
+		assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(copy));
+		assertEquals(bakery.getStateHash(), copy.getStateHash());
+	}
+
+	@Test
+	public void testCopyFrom() throws IOException {
+		MagicBakery bakery = normalisedGame(9, FunctionalHelper.names(3));
+		GameKernel root = GameKernel.fromGame(bakery, new Random(9));
+		GameKernel copy = new GameKernel(bakery.getCardCatalog());
+		copy.copyFrom(root);
+		copy.setRandom(new Random(9));
+		assertArrayEquals(root.encode(), copy.encode());
+
+		copy.refreshPantry();
+		copy.endTurn();
+		root.refreshPantry();
+		root.endTurn();
+		assertArrayEquals(root.encode(), copy.encode());
+	}
+}
@@ -0,0 +1,128 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import bakery.CardCatalog;
+import bakery.EmptyPantryException;
+import bakery.MagicBakery;
+import bakery.StateCodec;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import persistence.GameRegistry;
+import persistence.MappedSaveStore;
+
+@Tag("functional")
+@Tag("GameRegistry")
+public class GameRegistryTest {
+
+	@TempDir
+	Path dir;
+
+	private long[] play(MagicBakery bakery, Random choices, int actions) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		for (int i = 0; i < actions; i++) {
+			try {
+				switch (choices.nextInt(3)) {
+					case 0:
+						bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+						break;
+					case 1:
+						bakery.refreshPantry();
+						break;
+					default:
+						bakery.endTurn();
+				}
+			} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+				// refused by the rules
+			}
+		}
+		return StateCodec.encode(bakery);
+	}
+
+	@Test
+	public void testIdleGamesEvictedAndRehydrated() throws Exception {
+		AtomicLong now = new AtomicLong();
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 64, 1 << 16)) {
+			GameRegistry registry = new GameRegistry(store, 10, 1000, now::get);
+			MagicBakery twin = FunctionalHelper.newGame(5, 3);
+			registry.register(1, FunctionalHelper.newGame(5, 3));
+			registry.register(2, FunctionalHelper.newGame(6, 2));
+			now.set(500);
+			registry.withGame(2, bakery -> play(bakery, new Random(1), 10));
+			now.set(1200);
+			assertEquals(1, registry.sweep());
+			assertFalse(registry.isResident(1));
+			assertTrue(registry.isResident(2));
+
+			long[] expected = play(twin, new Random(2), 30);
+			long[] actual = registry.withGame(1, bakery -> play(bakery, new Random(2), 30));
+			assertArrayEquals(expected, actual);
+			assertTrue(registry.isResident(1));
+			assertEquals(1, registry.rehydrationCount());
+			assertTrue(registry.maxRehydrateNanos() > 0);
+		}
+	}
+
+	@Test
+	public void testResidentLimitEvictsLeastRecentlyUsed() throws Exception {
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 64, 1 << 16)) {
+			GameRegistry registry = new GameRegistry(store, 2, Long.MAX_VALUE);
+			for (long id = 0; id < 4; id++) {
+				registry.register(id, FunctionalHelper.newGame(id + 1, 2));
+			}
+			assertEquals(2, registry.residentCount());
+			assertEquals(4, registry.size());
+			assertTrue(registry.isResident(2));
+			assertTrue(registry.isResident(3));
+
+			registry.withGame(0, bakery -> bakery.getActionsRemaining());
+			assertTrue(registry.isResident(0));
+			assertFalse(registry.isResident(2));
+			assertEquals(3, registry.evictionCount());
+		}
+	}
+
+	@Test
+	public void testRemoveAndUnknownGame() throws Exception {
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 64, 1 << 16)) {
+			GameRegistry registry = new GameRegistry(store, 1, Long.MAX_VALUE);
+			registry.register(7, FunctionalHelper.newGame(1, 2));
+			registry.register(8, FunctionalHelper.newGame(2, 2));
+			assertTrue(store.contains(7));
+			assertTrue(registry.remove(7));
+			assertFalse(store.contains(7));
+			assertFalse(registry.remove(7));
+			assertThrows(IllegalArgumentException.class, () -> registry.withGame(7, bakery -> null));
+			assertThrows(IllegalArgumentException.class, () -> registry.register(8, null));
+		}
+	}
+
+	@Test
+	public void testFailedEvictionIsReported() throws Exception {
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 4, 1 << 16)) {
+			GameRegistry registry = new GameRegistry(store, 1, Long.MAX_VALUE);
+			assertNull(registry.lastEvictionFailure());
+			for (long id = 0; id < 4; id++) {
+				registry.register(id, FunctionalHelper.newGame(id + 1, 2));
+			}
+			assertEquals(2, registry.evictionCount());
+			assertTrue(registry.evictionFailureCount() > 0);
+			assertTrue(registry.lastEvictionFailure() instanceof IllegalStateException);
+			assertTrue(registry.isResident(2));
+			assertEquals(2, registry.residentCount());
+		}
+	}
+}
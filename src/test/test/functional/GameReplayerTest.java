@@ -0,0 +1,149 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardCatalog;
+import bakery.EmptyPantryException;
+import bakery.GameLog;
+import bakery.GameReplayer;
+import bakery.Layer;
+import bakery.MagicBakery;
+import bakery.Player;
+import bakery.StateCodec;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import util.JdkRandomSource;
+import util.XoroshiroRandom;
+
+@Tag("functional")
+@Tag("GameReplayer")
+public class GameReplayerTest {
+
+	/* Plays random actions and returns the encoded position after each of them, starting with the initial one. */
+	private List<long[]> play(MagicBakery bakery, int steps, long seed) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		List<Player> players = new ArrayList<Player>(bakery.getPlayers());
+		Random choices = new Random(seed);
+		List<long[]> positions = new ArrayList<long[]>();
+		positions.add(StateCodec.encode(bakery));
+		for (int step = 0; step < steps; step++) {
+			int card = choices.nextInt(catalog.cardCount());
+			try {
+				switch (choices.nextInt(7)) {
+					case 0:
+						bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+						break;
+					case 1:
+						bakery.passCard(catalog.card(card), players.get(choices.nextInt(players.size())));
+						break;
+					case 2:
+						bakery.bakeLayer((Layer)catalog.card(catalog.ingredientKinds() + choices.nextInt(catalog.layerKinds())));
+						break;
+					case 3:
+						bakery.refreshPantry();
+						break;
+					case 4:
+						bakery.fulfillOrder(null, false);
+						break;
+					case 5:
+						bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())));
+						break;
+					default:
+						bakery.endTurn();
+				}
+			} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+				// failed attempts are part of the game too
+			}
+			positions.add(StateCodec.encode(bakery));
+		}
+		return positions;
+	}
+
+	@Test
+	public void testLogRecordsGame() throws IOException {
+		MagicBakery bakery = new MagicBakery(12, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(3), "./io/customers.csv");
+		play(bakery, 50, 1);
+		GameLog log = bakery.getGameLog();
+		assertEquals(50, log.size());
+		assertEquals(12, log.getSeed());
+		assertEquals(GameLog.GENERATOR_JDK, log.getGenerator());
+		assertEquals(FunctionalHelper.names(3), log.getPlayerNames());
+		assertEquals(bakery.getCardCatalog().version(), log.getCatalogVersion());
+	}
+
+	@Test
+	public void testReplayReachesEveryPosition() throws IOException {
+		MagicBakery bakery = new MagicBakery(12854, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(4), "./io/customers.csv");
+		List<long[]> positions = play(bakery, 300, 2);
+		GameLog log = bakery.getGameLog();
+		for (int i = 0; i <= 300; i += 15) {
+			assertArrayEquals(positions.get(i), StateCodec.encode(GameReplayer.replay(log, i)), "position after " + i + " actions");
+		}
+		MagicBakery replayed = GameReplayer.replay(log);
+		assertArrayEquals(positions.get(300), StateCodec.encode(replayed));
+		assertEquals(bakery.getStateHash(), replayed.getStateHash());
+	}
+
+	@Test
+	public void testReplayWithXoroshiro() throws IOException {
+		MagicBakery bakery = new MagicBakery(new XoroshiroRandom(5).child(2), "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(5), "./io/customers.csv");
+		List<long[]> positions = play(bakery, 200, 3);
+		GameLog log = bakery.getGameLog();
+		assertEquals(GameLog.GENERATOR_XOROSHIRO, log.getGenerator());
+		assertArrayEquals(positions.get(200), StateCodec.encode(GameReplayer.replay(log)));
+	}
+
+	@Test
+	public void testOtherGeneratorRefused() throws IOException {
+		MagicBakery bakery = new MagicBakery(new JdkRandomSource(6) {
+			private static final long serialVersionUID = 1L;
+		}, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(2), "./io/customers.csv");
+		play(bakery, 20, 5);
+		GameLog log = bakery.getGameLog();
+		assertEquals(GameLog.GENERATOR_OTHER, log.getGenerator());
+		assertThrows(IllegalArgumentException.class, () -> GameReplayer.replay(log));
+		assertThrows(IllegalStateException.class, log::newRandomSource);
+		assertEquals(GameLog.GENERATOR_OTHER, GameLog.fromBytes(log.toBytes()).getGenerator());
+	}
+
+	@Test
+	public void testReplayToTurn() throws IOException {
+		MagicBakery bakery = new MagicBakery(7, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(2), "./io/customers.csv");
+		List<long[]> positions = play(bakery, 200, 4);
+		GameLog log = bakery.getGameLog();
+		int start = log.turnStart(5);
+		assertEquals(GameLog.END_TURN, log.getOp(start - 1));
+		MagicBakery replayed = GameReplayer.replayToTurn(log, 5);
+		assertArrayEquals(positions.get(start), StateCodec.encode(replayed));
+		assertEquals(0, log.turnStart(0));
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws IOException {
+		MagicBakery bakery = new MagicBakery(99, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(3), "./io/customers.csv");
+		List<long[]> positions = play(bakery, 400, 5);
+		byte[] bytes = bakery.getGameLog().toBytes();
+		assertTrue(bytes.length < 1300, "log of 400 actions takes " + bytes.length + " bytes");
+		GameLog copy = GameLog.fromBytes(bytes);
+		assertEquals(400, copy.size());
+		assertArrayEquals(positions.get(400), StateCodec.encode(GameReplayer.replay(copy)));
+		assertThrows(IllegalArgumentException.class, () -> GameLog.fromBytes(new byte[] {1, 2, 3}));
+	}
+}
@@ -0,0 +1,183 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardCatalog;
+import bakery.Ingredient;
+import bakery.MagicBakery;
+import server.Action;
+import server.ActionResult;
+import server.GameActor;
+import server.GameServer;
+
+@Tag("functional")
+@Tag("GameServer")
+public class GameServerTest {
+
+	private Action randomAction(Random choices, CardCatalog catalog) {
+		switch (choices.nextInt(3)) {
+			case 0:
+				return Action.draw(choices.nextInt(catalog.ingredientKinds()));
+			case 1:
+				return Action.refresh();
+			default:
+				return Action.endTurn();
+		}
+	}
+
+	private String request(BufferedReader in, Writer out, String line) throws IOException {
+		out.write(line + "\n");
+		out.flush();
+		return in.readLine();
+	}
+
+	@Test
+	public void testActorMatchesDirectPlay() throws Exception {
+		ExecutorService workers = Executors.newFixedThreadPool(2);
+		try {
+			MagicBakery twin = FunctionalHelper.newGame(3, 3);
+			GameActor actor = new GameActor(1, FunctionalHelper.newGame(3, 3), workers);
+			CardCatalog catalog = twin.getCardCatalog();
+			Random choices = new Random(9);
+			List<CompletableFuture<ActionResult>> results = new ArrayList<>();
+			List<Boolean> expected = new ArrayList<>();
+			for (int i = 0; i < 500; i++) {
+				Action action = randomAction(choices, catalog);
+				results.add(actor.submit(action));
+				try {
+					action.applyTo(twin);
+					expected.add(true);
+				} catch (RuntimeException e) {
+					expected.add(false);
+				}
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(expected.get(i), results.get(i).get().isOk(), "action " + i);
+			}
+			assertEquals(twin.getStateHash(), (long) actor.ask(MagicBakery::getStateHash).get());
+		} finally {
+			workers.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentSendersSerialised() throws Exception {
+		ExecutorService workers = Executors.newFixedThreadPool(4);
+		ExecutorService senders = Executors.newFixedThreadPool(8);
+		try {
+			GameActor actor = new GameActor(1, FunctionalHelper.newGame(4, 3), workers);
+			List<CompletableFuture<ActionResult>> results = new ArrayList<>();
+			List<CompletableFuture<?>> sent = new ArrayList<>();
+			for (int s = 0; s < 8; s++) {
+				sent.add(CompletableFuture.runAsync(() -> {
+					for (int i = 0; i < 250; i++) {
+						CompletableFuture<ActionResult> result = actor.submit(Action.endTurn());
+						synchronized (results) {
+							results.add(result);
+						}
+					}
+				}, senders));
+			}
+			CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0])).get();
+			for (CompletableFuture<ActionResult> result : results) {
+				assertTrue(result.get().isOk());
+			}
+			assertEquals(2000, results.size());
+			assertEquals(2000 % 3, (int) actor.ask(bakery -> new ArrayList<>(bakery.getPlayers()).indexOf(bakery.getCurrentPlayer())).get());
+			assertEquals(2000, (int) actor.ask(bakery -> bakery.getGameLog().size()).get());
+		} finally {
+			senders.shutdown();
+			workers.shutdown();
+			assertTrue(workers.awaitTermination(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void testActorRunsAfterMessageThrowsError() throws Exception {
+		List<Throwable> escaped = new ArrayList<>();
+		GameActor actor = new GameActor(1, FunctionalHelper.newGame(5, 3), task -> {
+			try {
+				task.run();
+			} catch (Throwable e) {
+				escaped.add(e);
+			}
+		});
+		CompletableFuture<Object> failed = actor.ask(bakery -> {
+			throw new AssertionError("boom");
+		});
+		assertFalse(failed.isDone());
+		assertEquals(1, escaped.size());
+		CompletableFuture<ActionResult> result = actor.submit(Action.endTurn());
+		assertTrue(result.get(5, TimeUnit.SECONDS).isOk());
+		assertEquals(0, actor.pendingCount());
+	}
+
+	@Test
+	public void testSocketRoundTrip() throws Exception {
+		try (GameServer server = new GameServer(0, 2);
+			 Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			 Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+			MagicBakery twin = FunctionalHelper.newGame(11, 2);
+			CardCatalog catalog = twin.getCardCatalog();
+			String created = request(in, out, "NEW 11 Player0 Player1");
+			assertTrue(created.startsWith("OK "), created);
+			String game = created.substring(3);
+
+			String[] state = request(in, out, "STATE " + game).split(" ");
+			assertEquals(5, state.length);
+			assertEquals(Long.toString(twin.getStateHash()), state[3]);
+			String[] pantry = state[4].split(",");
+			assertEquals(twin.getPantry().size(), pantry.length);
+
+			Ingredient drawn = catalog.card(Integer.parseInt(pantry[0]));
+			twin.drawFromPantry(drawn);
+			assertEquals("OK 0 " + twin.getActionsRemaining(), request(in, out, "ACT " + game + " 0 " + pantry[0] + " -1"));
+			twin.endTurn();
+			assertEquals("OK 1 " + twin.getActionsRemaining(), request(in, out, "ACT " + game + " " + Action.END_TURN + " -1 -1"));
+			assertEquals(Long.toString(twin.getStateHash()), request(in, out, "STATE " + game).split(" ")[3]);
+			assertEquals(1, server.gameCount());
+		}
+	}
+
+	@Test
+	public void testRefusedAndMalformedRequests() throws Exception {
+		try (GameServer server = new GameServer(0, 1);
+			 Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			 Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+			String game = request(in, out, "NEW 1 Player0 Player1 Player2").substring(3);
+			assertTrue(request(in, out, "ACT " + game + " 0 9999 -1").startsWith("REFUSED IllegalArgumentException 0 "));
+			assertTrue(request(in, out, "ACT " + game + " 1 0 7").startsWith("REFUSED "));
+			assertTrue(request(in, out, "ACT 404 0 0 -1").startsWith("ERR "));
+			assertTrue(request(in, out, "ACT " + game + " 99 0 -1").startsWith("ERR "));
+			assertTrue(request(in, out, "NEW x Player0").startsWith("ERR "));
+			assertTrue(request(in, out, "HELLO").startsWith("ERR "));
+			assertFalse(request(in, out, "STATE " + game).startsWith("ERR"));
+			out.write("QUIT\n");
+			out.flush();
+			assertEquals(null, in.readLine());
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardCatalog;
+import bakery.EmptyPantryException;
+import bakery.GameView;
+import bakery.Ingredient;
+import bakery.Layer;
+import bakery.MagicBakery;
+import bakery.Player;
+import bakery.SaveFormat;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+
+@Tag("functional")
+@Tag("GameView")
+public class GameViewTest {
+
+	private void step(MagicBakery bakery, Random choices) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		try {
+			switch (choices.nextInt(3)) {
+				case 0:
+					bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+					break;
+				case 1:
+					bakery.refreshPantry();
+					break;
+				default:
+					bakery.endTurn();
+			}
+		} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+			// refused by the rules
+		}
+	}
+
+	private void assertMatches(MagicBakery bakery, GameView view) {
+		assertEquals(bakery.getStateHash(), view.getStateHash());
+		assertEquals(new ArrayList<>(bakery.getPantry()), view.getPantry());
+		assertEquals(new ArrayList<>(bakery.getCustomers().getActiveCustomers()), view.getActiveCustomers());
+		List<Layer> distinct = new ArrayList<>();
+		for (Layer layer : view.getLayers()) {
+			if (!distinct.contains(layer)) {
+				distinct.add(layer);
+			}
+		}
+		assertEquals(bakery.getLayers(), distinct);
+		int seat = 0;
+		for (Player player : bakery.getPlayers()) {
+			assertEquals(player.getName(), view.getPlayerNames().get(seat));
+			assertEquals(player.getHand(), view.getHand(seat));
+			if (player == bakery.getCurrentPlayer()) {
+				assertEquals(seat, view.getCurrentPlayer());
+				assertEquals(bakery.getActionsRemaining(), view.getActionsRemaining(seat));
+			}
+			seat++;
+		}
+	}
+
+	@Test
+	public void testViewFollowsEveryAction() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(6, 3);
+		Random choices = new Random(2);
+		assertMatches(bakery, bakery.getView());
+		for (int i = 0; i < 300; i++) {
+			step(bakery, choices);
+			assertMatches(bakery, bakery.getView());
+		}
+	}
+
+	@Test
+	public void testOldViewsDoNotChange() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(7, 2);
+		GameView before = bakery.getView();
+		List<Ingredient> pantry = new ArrayList<>(before.getPantry());
+		List<Ingredient> hand = new ArrayList<>(before.getHand(0));
+		long hash = before.getStateHash();
+
+		bakery.drawFromPantry(bakery.getPantry().iterator().next());
+		bakery.refreshPantry();
+		GameView after = bakery.getView();
+
+		assertEquals(before.getVersion() + 2, after.getVersion());
+		assertEquals(pantry, before.getPantry());
+		assertEquals(hand, before.getHand(0));
+		assertEquals(hash, before.getStateHash());
+		assertEquals(hand.size() + 1, after.getHand(0).size());
+		assertThrows(UnsupportedOperationException.class, () -> after.getPantry().clear());
+		assertThrows(UnsupportedOperationException.class, () -> after.getHand(0).add(null));
+	}
+
+	@Test
+	public void testUnchangedPartsShared() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(8, 3);
+		GameView start = bakery.getView();
+		bakery.endTurn();
+		GameView ended = bakery.getView();
+		assertSame(start.getPantry(), ended.getPantry());
+		assertSame(start.getHand(0), ended.getHand(0));
+		assertSame(start.getActiveCustomers(), ended.getActiveCustomers());
+		assertSame(start.getLayers(), ended.getLayers());
+		assertEquals(1, ended.getCurrentPlayer());
+
+		bakery.drawFromPantry(bakery.getPantry().iterator().next());
+		GameView drawn = bakery.getView();
+		assertNotSame(ended.getPantry(), drawn.getPantry());
+		assertNotSame(ended.getHand(1), drawn.getHand(1));
+		assertSame(ended.getHand(0), drawn.getHand(0));
+		assertSame(ended.getHand(2), drawn.getHand(2));
+		assertSame(ended.getPlayerNames(), drawn.getPlayerNames());
+	}
+
+	@Test
+	public void testRestoredGamePublishesView() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(9, 4);
+		Random choices = new Random(4);
+		for (int i = 0; i < 40; i++) {
+			step(bakery, choices);
+		}
+		MagicBakery restored = SaveFormat.fromBytes(SaveFormat.toBytes(bakery));
+		assertMatches(restored, restored.getView());
+		assertEquals(bakery.getView().getStateHash(), restored.getView().getStateHash());
+	}
+
+	@Test
+	public void testReadersSeeWholeActions() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(10, 3);
+		int cardsInPlay = bakery.getView().getPantry().size();
+		for (int seat = 0; seat < 3; seat++) {
+			cardsInPlay += bakery.getView().getHand(seat).size();
+		}
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicReference<String> failure = new AtomicReference<>();
+		int expected = cardsInPlay;
+		List<Thread> readers = new ArrayList<>();
+		for (int r = 0; r < 3; r++) {
+			Thread reader = new Thread(() -> {
+				long version = -1;
+				while (!done.get()) {
+					GameView view = bakery.getView();
+					if (view.getVersion() < version) {
+						failure.set("version went backwards");
+					}
+					version = view.getVersion();
+					int draws = 0;
+					for (int seat = 0; seat < 3; seat++) {
+						draws += view.getHand(seat).size();
+					}
+					if (view.getPantry().size() != 5 || draws < expected - 5) {
+						failure.set("half-applied action in version " + version);
+					}
+				}
+			});
+			reader.start();
+			readers.add(reader);
+		}
+		Random choices = new Random(5);
+		try {
+			for (int i = 0; i < 20000; i++) {
+				step(bakery, choices);
+			}
+		} finally {
+			done.set(true);
+			for (Thread reader : readers) {
+				reader.join();
+			}
+		}
+		assertEquals(null, failure.get());
+		assertTrue(bakery.getView().getVersion() > 1000);
+	}
+}
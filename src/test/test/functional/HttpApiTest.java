@@ -0,0 +1,171 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardCatalog;
+import bakery.CustomerOrder;
+import bakery.Ingredient;
+import bakery.Layer;
+import server.Action;
+import server.GameActor;
+import server.GameServer;
+import server.HttpApi;
+import server.JsonWriter;
+
+@Tag("functional")
+@Tag("HttpApi")
+public class HttpApiTest {
+
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	private HttpResponse<String> send(String method, String url) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(url)).method(method, HttpRequest.BodyPublishers.noBody()).build();
+		return client.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	private List<Integer> ids(String json) {
+		List<Integer> ids = new ArrayList<>();
+		Matcher id = Pattern.compile("\"id\":(\\d+)").matcher(json);
+		while (id.find()) {
+			ids.add(Integer.parseInt(id.group(1)));
+		}
+		return ids;
+	}
+
+	@Test
+	public void testJsonWriterEscapes() throws Exception {
+		StringWriter out = new StringWriter();
+		JsonWriter json = new JsonWriter(out);
+		json.beginObject();
+		json.name("text").value("a \"quoted\" \\ line\nwith\ttab \u0001 and duck 𓅭");
+		json.name("none").value((String) null);
+		json.name("list").beginArray().value(1).value(-2).value(true).beginObject().endObject().beginArray().endArray().endArray();
+		json.name("empty").nullValue();
+		json.endObject();
+		json.flush();
+		assertEquals("{\"text\":\"a \\\"quoted\\\" \\\\ line\\nwith\\ttab \\u0001 and duck 𓅭\",\"none\":null,"
+			+ "\"list\":[1,-2,true,{},[]],\"empty\":null}", out.toString());
+	}
+
+	@Test
+	public void testCreatePlayAndRead() throws Exception {
+		try (GameServer server = new GameServer(0, 1);
+			 HttpApi api = new HttpApi(server, 0)) {
+			String games = "http://127.0.0.1:" + api.getPort() + "/games";
+			HttpResponse<String> created = send("POST", games + "?seed=3&players=Ann,Bob%20B,Cat");
+			assertEquals(201, created.statusCode(), created.body());
+			assertTrue(created.headers().firstValue("Content-Type").get().startsWith("application/json"));
+			long id = ids(created.body()).get(0);
+			assertEquals("/games/" + id, created.headers().firstValue("Location").get());
+			GameActor actor = server.getGame(id);
+
+			HttpResponse<String> state = send("GET", games + "/" + id);
+			assertEquals(200, state.statusCode());
+			assertTrue(state.body().startsWith("{\"version\":" + actor.getView().getVersion() + ",\"hash\":\"" + actor.getView().getStateHash() + "\""), state.body());
+			assertTrue(state.body().contains("\"name\":\"Bob B\""), state.body());
+			assertTrue(state.body().contains("\"currentPlayer\":0"), state.body());
+
+			HttpResponse<String> ended = send("POST", games + "/" + id + "/actions?op=" + Action.END_TURN);
+			assertEquals(200, ended.statusCode());
+			assertEquals("{\"ok\":true,\"error\":null,\"message\":null,\"currentPlayer\":1,\"actionsRemaining\":3}", ended.body());
+			assertTrue(send("GET", games + "/" + id).body().contains("\"currentPlayer\":1"));
+
+			HttpResponse<String> refused = send("POST", games + "/" + id + "/actions?op=" + Action.bake(0).getOp() + "&first=0");
+			assertEquals(200, refused.statusCode());
+			assertTrue(refused.body().startsWith("{\"ok\":false,"), refused.body());
+		}
+	}
+
+	@Test
+	public void testBakeableAndFulfillableMatchTheGame() throws Exception {
+		try (GameServer server = new GameServer(0, 1);
+			 HttpApi api = new HttpApi(server, 0)) {
+			String games = "http://127.0.0.1:" + api.getPort() + "/games";
+			for (int seed = 0; seed < 5; seed++) {
+				long id = ids(send("POST", games + "?seed=" + seed + "&players=A,B").body()).get(0);
+				GameActor actor = server.getGame(id);
+				for (int turn = 0; turn < 4; turn++) {
+					List<Integer> expectedLayers = actor.ask(game -> {
+						List<Integer> layers = new ArrayList<>();
+						for (Layer layer : game.getBakeableLayers()) {
+							layers.add(game.getCardCatalog().cardId(layer));
+						}
+						return layers;
+					}).get();
+					HttpResponse<String> bakeable = send("GET", games + "/" + id + "/bakeable");
+					assertEquals(200, bakeable.statusCode());
+					assertEquals(expectedLayers, ids(bakeable.body()));
+
+					List<Integer> expectedCustomers = actor.ask(game -> {
+						List<Ingredient> hand = game.getCurrentPlayer().getHand();
+						CardCatalog catalog = game.getCardCatalog();
+						List<Integer> customers = new ArrayList<>();
+						for (CustomerOrder order : game.getCustomers().getActiveCustomers()) {
+							if (order != null && order.canFulfill(hand)) {
+								customers.add(catalog.customerId(order));
+							}
+						}
+						return customers;
+					}).get();
+					HttpResponse<String> fulfillable = send("GET", games + "/" + id + "/fulfillable");
+					assertEquals(200, fulfillable.statusCode());
+					assertTrue(fulfillable.body().startsWith("{\"customers\":["), fulfillable.body());
+					assertEquals(expectedCustomers, ids(fulfillable.body()));
+
+					send("POST", games + "/" + id + "/actions?op=" + Action.END_TURN);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		try (GameServer server = new GameServer(0, 1);
+			 HttpApi api = new HttpApi(server, 0)) {
+			String games = "http://127.0.0.1:" + api.getPort() + "/games";
+			assertEquals(404, send("GET", games + "/99").statusCode());
+			assertEquals(404, send("GET", games + "/99/actions").statusCode());
+			assertEquals(400, send("GET", games + "/x").statusCode());
+			assertEquals(405, send("GET", games).statusCode());
+			assertEquals(400, send("POST", games).statusCode());
+			HttpResponse<String> tooFew = send("POST", games + "?seed=1&players=Solo");
+			assertEquals(400, tooFew.statusCode());
+			assertTrue(tooFew.body().startsWith("{\"error\":\"BadRequest\",\"message\":"), tooFew.body());
+			assertEquals(0, server.gameCount());
+
+			long id = ids(send("POST", games + "?players=A,B").body()).get(0);
+			assertEquals(404, send("GET", games + "/" + id + "/nothing").statusCode());
+			assertEquals(405, send("POST", games + "/" + id).statusCode());
+			assertEquals(405, send("GET", games + "/" + id + "/actions?op=0").statusCode());
+			assertEquals(400, send("POST", games + "/" + id + "/actions").statusCode());
+			assertEquals(400, send("POST", games + "/" + id + "/actions?op=99").statusCode());
+			assertEquals(400, send("POST", games + "/" + id + "/actions?op=one").statusCode());
+			HttpResponse<String> unknownCard = send("POST", games + "/" + id + "/actions?op=0&first=9999");
+			assertEquals(200, unknownCard.statusCode());
+			assertTrue(unknownCard.body().startsWith("{\"ok\":false,\"error\":\"IllegalArgumentException\""), unknownCard.body());
+		}
+	}
+
+	@Test
+	public void testUnexpectedFailureIsServerError() throws Exception {
+		try (HttpApi api = new HttpApi(null, 0)) {
+			HttpResponse<String> broken = send("GET", "http://127.0.0.1:" + api.getPort() + "/games/1");
+			assertEquals(500, broken.statusCode());
+			assertTrue(broken.body().startsWith("{\"error\":\"NullPointerException\",\"message\":"), broken.body());
+		}
+	}
+}
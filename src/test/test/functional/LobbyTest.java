@@ -0,0 +1,262 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardCatalog;
+import bakery.CardDecks;
+import bakery.CustomerOrder;
+import bakery.EmptyPantryException;
+import bakery.MagicBakery;
+import bakery.Player;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import server.GameServer;
+import server.Lobby;
+import server.Seat;
+import util.JdkRandomSource;
+
+@Tag("functional")
+@Tag("Lobby")
+public class LobbyTest {
+
+	private void step(MagicBakery bakery, Random choices) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		try {
+			switch (choices.nextInt(3)) {
+				case 0:
+					bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+					break;
+				case 1:
+					bakery.refreshPantry();
+					break;
+				default:
+					bakery.endTurn();
+			}
+		} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+			// refused by the rules
+		}
+	}
+
+	private List<String> seatedNames(GameServer server, long game) throws Exception {
+		return server.getGame(game).ask(bakery -> {
+			List<String> seated = new ArrayList<>();
+			for (Player player : bakery.getPlayers()) {
+				seated.add(player.toString());
+			}
+			return seated;
+		}).get();
+	}
+
+	@Test
+	public void testSharedDecksDealTheSameGame() throws IOException {
+		CardDecks decks = CardDecks.load("./io/ingredients.csv", "./io/layers.csv", "./io/customers.csv");
+		for (int players = 2; players <= 5; players++) {
+			MagicBakery fromFiles = new MagicBakery(40 + players, "./io/ingredients.csv", "./io/layers.csv");
+			fromFiles.startGame(FunctionalHelper.names(players), "./io/customers.csv");
+			MagicBakery shared = new MagicBakery(new JdkRandomSource(40 + players), decks);
+			shared.startGame(FunctionalHelper.names(players), "./io/customers.csv");
+			assertSame(decks.getCardCatalog(), shared.getCardCatalog());
+			assertEquals(fromFiles.getCardCatalog().version(), shared.getCardCatalog().version());
+			Random left = new Random(players);
+			Random right = new Random(players);
+			for (int i = 0; i < 200; i++) {
+				assertEquals(fromFiles.getStateHash(), shared.getStateHash(), "step " + i);
+				step(fromFiles, left);
+				step(shared, right);
+			}
+		}
+	}
+
+	@Test
+	public void testSharedDecksDoNotShareCustomers() throws IOException {
+		CardDecks decks = CardDecks.load("./io/ingredients.csv", "./io/layers.csv", "./io/customers.csv");
+		MagicBakery first = new MagicBakery(new JdkRandomSource(7), decks);
+		first.startGame(FunctionalHelper.names(3), "./io/customers.csv");
+		MagicBakery second = new MagicBakery(new JdkRandomSource(7), decks);
+		second.startGame(FunctionalHelper.names(3), "./io/customers.csv");
+		CustomerOrder mine = first.getCustomers().getActiveCustomers().stream().filter(o -> o != null).findFirst().get();
+		CustomerOrder theirs = second.getCustomers().getActiveCustomers().stream().filter(o -> o != null).findFirst().get();
+		assertEquals(mine.toString(), theirs.toString());
+		assertNotSame(mine, theirs);
+		mine.setStatus(CustomerOrder.CustomerOrderStatus.GIVEN_UP);
+		assertEquals(CustomerOrder.CustomerOrderStatus.WAITING, theirs.getStatus());
+	}
+
+	@Test
+	public void testFullTablesOfTargetSize() throws Exception {
+		try (GameServer server = new GameServer(0, 1);
+			 Lobby lobby = new Lobby(server, 4, 60_000)) {
+			List<CompletableFuture<Seat>> seats = new ArrayList<>();
+			for (int i = 0; i < 12; i++) {
+				seats.add(lobby.join("P" + i));
+			}
+			Map<Long, Set<Integer>> tables = new HashMap<>();
+			for (int i = 0; i < seats.size(); i++) {
+				Seat seat = seats.get(i).get(5, TimeUnit.SECONDS);
+				assertEquals(4, seat.getTableSize());
+				assertTrue(tables.computeIfAbsent(seat.getGame(), g -> new HashSet<>()).add(seat.getIndex()));
+				assertEquals("P" + i, seatedNames(server, seat.getGame()).get(seat.getIndex()));
+			}
+			assertEquals(3, tables.size());
+			assertEquals(3, lobby.tableCount());
+			assertEquals(12, lobby.seatedCount());
+			assertEquals(0, lobby.waitingCount());
+		}
+	}
+
+	@Test
+	public void testSmallerTableAfterMaxWait() throws Exception {
+		try (GameServer server = new GameServer(0, 1);
+			 Lobby lobby = new Lobby(server, 5, 300)) {
+			CompletableFuture<Seat> first = lobby.join("First");
+			CompletableFuture<Seat> second = lobby.join("Second");
+			CompletableFuture<Seat> third = lobby.join("Third");
+			Thread.sleep(50);
+			assertFalse(first.isDone(), "no full table yet");
+			assertEquals(3, first.get(5, TimeUnit.SECONDS).getTableSize());
+			assertEquals(first.get().getGame(), second.get().getGame());
+			assertEquals(first.get().getGame(), third.get().getGame());
+			assertEquals(List.of("First", "Second", "Third"), seatedNames(server, first.get().getGame()));
+			assertTrue(lobby.longestWait(TimeUnit.MILLISECONDS) >= 300);
+		}
+	}
+
+	@Test
+	public void testLonePlayerWaitsForCompany() throws Exception {
+		try (GameServer server = new GameServer(0, 1);
+			 Lobby lobby = new Lobby(server, 5, 0)) {
+			CompletableFuture<Seat> alone = lobby.join("Alone");
+			Thread.sleep(50);
+			assertFalse(alone.isDone(), "no table for one player");
+			assertEquals(1, lobby.waitingCount());
+			CompletableFuture<Seat> company = lobby.join("Company");
+			assertEquals(2, alone.get(5, TimeUnit.SECONDS).getTableSize());
+			assertEquals(alone.get().getGame(), company.get(5, TimeUnit.SECONDS).getGame());
+		}
+	}
+
+	@Test
+	public void testLonePlayerTakesSeatFromFullTable() throws Exception {
+		Constructor<Lobby> manual = Lobby.class.getDeclaredConstructor(GameServer.class, int.class, long.class, boolean.class);
+		manual.setAccessible(true);
+		Method match = FunctionalHelper.getMethod(Lobby.class, "match", long.class);
+		try (GameServer server = new GameServer(0, 1);
+			 Lobby lobby = manual.newInstance(server, 4, 1000L, false)) {
+			List<CompletableFuture<Seat>> seats = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				seats.add(lobby.join("P" + i));
+			}
+			// one pass after the wait is over: four fill a table, and the fifth takes its last seat
+			match.invoke(lobby, System.nanoTime() + TimeUnit.SECONDS.toNanos(2));
+			List<Seat> taken = new ArrayList<>();
+			for (CompletableFuture<Seat> seat : seats) {
+				taken.add(seat.get(5, TimeUnit.SECONDS));
+			}
+			for (int i = 0; i < 3; i++) {
+				assertEquals(3, taken.get(i).getTableSize(), "P" + i);
+				assertEquals(i, taken.get(i).getIndex());
+			}
+			assertEquals(2, taken.get(3).getTableSize());
+			assertEquals(2, taken.get(4).getTableSize());
+			assertEquals(taken.get(3).getGame(), taken.get(4).getGame());
+			assertNotEquals(taken.get(0).getGame(), taken.get(3).getGame());
+			assertEquals(2, lobby.tableCount());
+			assertEquals(5, lobby.seatedCount());
+			assertEquals(0, lobby.waitingCount());
+		}
+	}
+
+	@Test
+	public void testConcurrentJoins() throws Exception {
+		ExecutorService joiners = Executors.newFixedThreadPool(8);
+		try (GameServer server = new GameServer(0, 2);
+			 Lobby lobby = new Lobby(server, 5, 20)) {
+			List<Future<List<Seat>>> batches = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				int thread = t;
+				batches.add(joiners.submit(() -> {
+					List<CompletableFuture<Seat>> pending = new ArrayList<>();
+					for (int i = 0; i < 250; i++) {
+						pending.add(lobby.join("T" + thread + "-" + i));
+					}
+					List<Seat> seats = new ArrayList<>();
+					for (CompletableFuture<Seat> seat : pending) {
+						seats.add(seat.get(10, TimeUnit.SECONDS));
+					}
+					return seats;
+				}));
+			}
+			Map<Long, Set<Integer>> tables = new HashMap<>();
+			Map<Long, Integer> sizes = new HashMap<>();
+			for (Future<List<Seat>> batch : batches) {
+				for (Seat seat : batch.get()) {
+					assertTrue(tables.computeIfAbsent(seat.getGame(), g -> new HashSet<>()).add(seat.getIndex()));
+					sizes.put(seat.getGame(), seat.getTableSize());
+				}
+			}
+			int seated = 0;
+			for (Map.Entry<Long, Set<Integer>> table : tables.entrySet()) {
+				int size = sizes.get(table.getKey());
+				assertTrue(size >= Lobby.MIN_TABLE && size <= Lobby.MAX_TABLE);
+				assertEquals(size, table.getValue().size());
+				seated += size;
+			}
+			assertEquals(2000, seated);
+			assertEquals(2000, lobby.seatedCount());
+			assertEquals(tables.size(), lobby.tableCount());
+			assertEquals(tables.size(), server.gameCount());
+		} finally {
+			joiners.shutdown();
+		}
+	}
+
+	@Test
+	public void testClosedLobbyTurnsPlayersAway() throws Exception {
+		try (GameServer server = new GameServer(0, 1)) {
+			Lobby lobby = new Lobby(server, 4, 60_000);
+			CompletableFuture<Seat> waiting = lobby.join("Early");
+			lobby.close();
+			ExecutionException early = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+			assertTrue(early.getCause() instanceof IllegalStateException);
+			assertThrows(ExecutionException.class, () -> lobby.join("Late").get(5, TimeUnit.SECONDS));
+			assertEquals(0, lobby.waitingCount());
+		}
+	}
+
+	@Test
+	public void testBadTableSize() throws Exception {
+		try (GameServer server = new GameServer(0, 1)) {
+			assertThrows(IllegalArgumentException.class, () -> new Lobby(server, 1, 10));
+			assertThrows(IllegalArgumentException.class, () -> new Lobby(server, 6, 10));
+			assertThrows(IllegalArgumentException.class, () -> server.createGames(new long[] {1, 2}, List.of(FunctionalHelper.names(3))));
+			assertThrows(IllegalArgumentException.class, () -> server.createGames(new long[] {1, 2}, List.of(FunctionalHelper.names(3), FunctionalHelper.names(6))));
+			assertEquals(0, server.gameCount());
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import bakery.CardCatalog;
+import bakery.CardDecks;
+import bakery.EmptyPantryException;
+import bakery.MagicBakery;
+import bakery.SaveFormat;
+import bakery.StateCodec;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import persistence.MappedSaveStore;
+import util.JdkRandomSource;
+
+@Tag("functional")
+@Tag("MappedSaveStore")
+public class MappedSaveStoreTest {
+
+	@TempDir
+	Path dir;
+
+	private void play(MagicBakery bakery, Random choices, int actions) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		for (int i = 0; i < actions; i++) {
+			try {
+				switch (choices.nextInt(3)) {
+					case 0:
+						bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+						break;
+					case 1:
+						bakery.refreshPantry();
+						break;
+					default:
+						bakery.endTurn();
+				}
+			} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+				// refused by the rules
+			}
+		}
+	}
+
+	@Test
+	public void testSaveLoadAndReopen() throws Exception {
+		List<MagicBakery> games = new ArrayList<MagicBakery>();
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 64, 1 << 16)) {
+			for (int g = 0; g < 10; g++) {
+				MagicBakery bakery = FunctionalHelper.newGame(g + 1, 2 + g % 4);
+				play(bakery, new Random(g), 30);
+				games.add(bakery);
+				store.saveState(1000L * g, bakery);
+			}
+			assertEquals(10, store.size());
+			assertArrayEquals(StateCodec.encode(games.get(4)), StateCodec.encode(store.loadState(4000)));
+			assertNull(store.loadState(1));
+		}
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 8, 1024)) {
+			assertEquals(10, store.size());
+			assertEquals(10, new HashSet<Long>(store.gameIds()).size());
+			for (int g = 0; g < 10; g++) {
+				assertArrayEquals(StateCodec.encode(games.get(g)), StateCodec.encode(store.loadState(1000L * g)));
+			}
+		}
+	}
+
+	@Test
+	public void testResaveReplacesRecord() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(5, 3);
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 16, 1 << 16)) {
+			store.saveState(7, bakery);
+			play(bakery, new Random(1), 40);
+			store.saveState(7, bakery);
+			assertEquals(1, store.size());
+			assertArrayEquals(SaveFormat.toBytes(bakery), toArray(store, 7));
+		}
+	}
+
+	@Test
+	public void testCompactDropsDeadSegments() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(8, 4);
+		int recordBytes = SaveFormat.toBytes(bakery).length;
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 64, 8 + 3 * (12 + recordBytes))) {
+			for (int round = 0; round < 4; round++) {
+				for (long id = 0; id < 3; id++) {
+					store.saveState(id, bakery);
+				}
+			}
+			assertTrue(store.remove(2));
+			assertFalse(store.remove(2));
+			int before = store.segmentCount();
+			assertTrue(store.compact() > 0);
+			assertTrue(store.segmentCount() < before);
+			assertEquals(2, store.size());
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(store.loadState(0)));
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(store.loadState(1)));
+			assertFalse(store.contains(2));
+		}
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 8, 1024)) {
+			assertEquals(2, store.size());
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(store.loadState(1)));
+		}
+	}
+
+	@Test
+	public void testCompactRollingOverKeepsEveryRecord() throws Exception {
+		List<MagicBakery> games = new ArrayList<MagicBakery>();
+		for (int id = 0; id < 6; id++) {
+			games.add(FunctionalHelper.newGame(20 + id, 4));
+		}
+		int recordBytes = SaveFormat.toBytes(games.get(0)).length;
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 64, 8 + 5 * (12 + recordBytes))) {
+			for (int id = 0; id < 5; id++) {
+				store.saveState(id, games.get(id));
+			}
+			for (int id = 0; id < 3; id++) {
+				store.saveState(id, games.get(id));
+			}
+			store.saveState(5, games.get(5));
+			assertEquals(2, store.segmentCount());
+			assertEquals(1, store.compact());
+			assertEquals(2, store.segmentCount());
+			assertFalse(Files.exists(dir.resolve("data-000000.seg")));
+		}
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 64, 8 + 5 * (12 + recordBytes))) {
+			for (int id = 0; id < 6; id++) {
+				assertArrayEquals(SaveFormat.toBytes(games.get(id)), toArray(store, id), "game " + id);
+			}
+		}
+	}
+
+	@Test
+	public void testLoadDealsFromGivenDecks() throws Exception {
+		CardDecks decks = CardDecks.loadStandard();
+		MagicBakery bakery = new MagicBakery(new JdkRandomSource(4), decks);
+		bakery.startGame(List.of("A", "B", "C"), "./io/customers.csv");
+		play(bakery, new Random(4), 25);
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 16, 1 << 16, decks)) {
+			store.saveState(1, bakery);
+			MagicBakery loaded = store.loadState(1);
+			assertSame(decks.getCardCatalog(), loaded.getCardCatalog());
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(loaded));
+			assertEquals(bakery.getStateHash(), loaded.getStateHash());
+		}
+		MagicBakery decoded = StateCodec.decode(StateCodec.encode(bakery), List.of("A", "B", "C"), 4, decks);
+		assertSame(decks.getCardCatalog(), decoded.getCardCatalog());
+		assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(decoded));
+	}
+
+	@Test
+	public void testCompactDeletesRetiredFilesAndCloseReleases() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(8, 4);
+		int recordBytes = SaveFormat.toBytes(bakery).length;
+		MappedSaveStore store = MappedSaveStore.open(dir, 64, 8 + 3 * (12 + recordBytes));
+		for (int round = 0; round < 4; round++) {
+			for (long id = 0; id < 3; id++) {
+				store.saveState(id, bakery);
+			}
+		}
+		assertTrue(Files.exists(dir.resolve("data-000000.seg")));
+		assertTrue(store.compact() > 0);
+		assertFalse(Files.exists(dir.resolve("data-000000.seg")));
+		try (Stream<Path> files = Files.list(dir)) {
+			assertEquals(store.segmentCount(), files.filter(file -> file.toString().endsWith(".seg")).count());
+		}
+		store.close();
+		store.close();
+		assertThrows(IllegalStateException.class, () -> store.record(0));
+		assertThrows(IllegalStateException.class, () -> store.saveState(0, bakery));
+		try (MappedSaveStore reopened = MappedSaveStore.open(dir, 64, 1 << 16)) {
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(reopened.loadState(2)));
+		}
+	}
+
+	@Test
+	public void testFullIndexRejected() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(8, 2);
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 4, 1 << 16)) {
+			store.saveState(1, bakery);
+			store.saveState(2, bakery);
+			assertThrows(IllegalStateException.class, () -> store.saveState(3, bakery));
+			store.saveState(2, bakery);
+		}
+	}
+
+	private byte[] toArray(MappedSaveStore store, long gameId) {
+		java.nio.ByteBuffer record = store.record(gameId);
+		byte[] data = new byte[record.remaining()];
+		record.get(data);
+		return data;
+	}
+}
@@ -0,0 +1,111 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.MagicBakery;
+import bakery.StateCodec;
+import util.JdkRandomSource;
+import util.RandomSource;
+import util.XoroshiroRandom;
+import util.collectionFunctions;
+
+@Tag("functional")
+@Tag("RandomSource")
+public class RandomSourceTest {
+
+	private long[] draws(RandomSource source, int count) {
+		long[] values = new long[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = source.nextInt(1000);
+		}
+		return values;
+	}
+
+	@Test
+	public void testJdkSourceMatchesRandom() {
+		Random expected = new Random(12345);
+		JdkRandomSource source = new JdkRandomSource(12345);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(expected.nextInt(37), source.nextInt(37));
+		}
+	}
+
+	@Test
+	public void testSeededGameUnchanged() throws IOException {
+		MagicBakery seeded = new MagicBakery(42, "./io/ingredients.csv", "./io/layers.csv");
+		seeded.startGame(FunctionalHelper.names(3), "./io/customers.csv");
+		MagicBakery sourced = new MagicBakery(new JdkRandomSource(42), "./io/ingredients.csv", "./io/layers.csv");
+		sourced.startGame(FunctionalHelper.names(3), "./io/customers.csv");
+		assertArrayEquals(StateCodec.encode(seeded), StateCodec.encode(sourced));
+	}
+
+	@Test
+	public void testXoroshiroIsReproducible() {
+		assertArrayEquals(draws(new XoroshiroRandom(7), 50), draws(new XoroshiroRandom(7), 50));
+		assertFalse(Arrays.equals(draws(new XoroshiroRandom(7), 50), draws(new XoroshiroRandom(8), 50)));
+	}
+
+	@Test
+	public void testXoroshiroBoundsAndSpread() {
+		XoroshiroRandom random = new XoroshiroRandom(1);
+		int[] counts = new int[6];
+		for (int i = 0; i < 60000; i++) {
+			int value = random.nextInt(6);
+			assertTrue(value >= 0 && value < 6);
+			counts[value]++;
+		}
+		for (int count : counts) {
+			assertTrue(Math.abs(count - 10000) < 500, "count " + count);
+		}
+	}
+
+	@Test
+	public void testChildStreamsAreDeterministic() {
+		XoroshiroRandom master = new XoroshiroRandom(99);
+		long[] first = draws(master.child(3), 20);
+		master.nextLong();
+		assertArrayEquals(first, draws(master.child(3), 20));
+		assertArrayEquals(first, draws(new XoroshiroRandom(99).child(3), 20));
+		assertFalse(Arrays.equals(first, draws(master.child(4), 20)));
+	}
+
+	@Test
+	public void testGamesFromChildStreamsReplay() throws IOException {
+		XoroshiroRandom master = new XoroshiroRandom(2024);
+		for (int game = 0; game < 3; game++) {
+			MagicBakery first = new MagicBakery(master.child(game), "./io/ingredients.csv", "./io/layers.csv");
+			first.startGame(FunctionalHelper.names(4), "./io/customers.csv");
+			MagicBakery second = new MagicBakery(new XoroshiroRandom(2024).child(game), "./io/ingredients.csv", "./io/layers.csv");
+			second.startGame(FunctionalHelper.names(4), "./io/customers.csv");
+			assertArrayEquals(StateCodec.encode(first), StateCodec.encode(second));
+			assertEquals(first.getStateHash(), second.getStateHash());
+		}
+	}
+
+	@Test
+	public void testShuffleCollectionIsSeeded() {
+		List<Integer> first = new ArrayList<Integer>();
+		List<Integer> second = new ArrayList<Integer>();
+		for (int i = 0; i < 20; i++) {
+			first.add(i);
+			second.add(i);
+		}
+		collectionFunctions.shuffleCollection(first, new XoroshiroRandom(5));
+		collectionFunctions.shuffleCollection(second, new XoroshiroRandom(5));
+		assertEquals(first, second);
+		assertNotEquals(List.of(0, 1, 2, 3, 4), first.subList(0, 5));
+	}
+}
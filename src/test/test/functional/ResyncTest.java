@@ -0,0 +1,199 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Flow;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardCatalog;
+import bakery.EmptyPantryException;
+import bakery.GameView;
+import bakery.Ingredient;
+import bakery.MagicBakery;
+import bakery.StateDiff;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import server.Action;
+import server.GameFeed;
+import server.GameServer;
+import server.TableMirror;
+import server.WireCodec;
+
+@Tag("functional")
+@Tag("Resync")
+public class ResyncTest {
+
+	private void play(MagicBakery bakery, GameFeed feed, Random choices, int steps) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		for (int i = 0; i < steps; i++) {
+			try {
+				switch (choices.nextInt(3)) {
+					case 0:
+						bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+						break;
+					case 1:
+						bakery.refreshPantry();
+						break;
+					default:
+						bakery.endTurn();
+				}
+			} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+				// refused by the rules
+			}
+			feed.publish(bakery.getView());
+		}
+	}
+
+	private void send(StateDiff diff, TableMirror mirror) {
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		WireCodec.writeDiff(buffer, 1, diff);
+		buffer.flip();
+		WireCodec.readState(WireCodec.nextFrame(buffer), mirror);
+	}
+
+	private void assertMirrors(GameView view, TableMirror mirror) {
+		CardCatalog catalog = view.getCardCatalog();
+		assertEquals(view.getVersion(), mirror.getVersion());
+		assertEquals(view.getStateHash(), mirror.getStateHash());
+		assertEquals(view.getCurrentPlayer(), mirror.getCurrentPlayer());
+		for (int seat = 0; seat < view.getPlayerNames().size(); seat++) {
+			assertEquals(view.getHand(seat).size(), mirror.size(seat));
+			for (Ingredient card : view.getHand(seat)) {
+				assertTrue(mirror.count(seat, catalog.cardId(card)) > 0);
+			}
+		}
+		assertEquals(view.getPantry().size(), mirror.size(StateDiff.PANTRY));
+		for (Ingredient card : view.getPantry()) {
+			assertTrue(mirror.count(StateDiff.PANTRY, catalog.cardId(card)) > 0);
+		}
+	}
+
+	@Test
+	public void testReconnectGetsOneDiff() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(31, 3);
+		GameFeed feed = new GameFeed(bakery.getView(), Runnable::run, 8, 64);
+		TableMirror mirror = new TableMirror(bakery.getCardCatalog().cardCount());
+		send(StateDiff.snapshot(bakery.getView()), mirror);
+		Random choices = new Random(4);
+		for (int round = 0; round < 10; round++) {
+			long seen = mirror.getVersion();
+			play(bakery, feed, choices, 1 + choices.nextInt(20));
+			StateDiff diff = feed.resync(seen);
+			assertFalse(diff.isSnapshot());
+			assertEquals(seen, diff.getFromVersion());
+			assertSame(bakery.getView(), diff.getView());
+			send(diff, mirror);
+			assertMirrors(bakery.getView(), mirror);
+		}
+		assertEquals(0, feed.resyncSnapshotCount());
+	}
+
+	@Test
+	public void testUpToDateGetsNoChanges() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(32, 2);
+		GameFeed feed = new GameFeed(bakery.getView(), Runnable::run, 8, 4);
+		play(bakery, feed, new Random(1), 5);
+		StateDiff diff = feed.resync(bakery.getView().getVersion());
+		assertFalse(diff.isSnapshot());
+		assertTrue(diff.getChanges().isEmpty());
+	}
+
+	@Test
+	public void testUnknownVersionGetsSnapshot() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(33, 2);
+		long first = bakery.getView().getVersion();
+		GameFeed feed = new GameFeed(bakery.getView(), Runnable::run, 8, 4);
+		play(bakery, feed, new Random(2), 40);
+		long latest = bakery.getView().getVersion();
+		assertTrue(latest - first > 4);
+		assertTrue(feed.resync(first).isSnapshot());
+		assertTrue(feed.resync(latest + 1).isSnapshot());
+		assertTrue(feed.resync(-1).isSnapshot());
+		assertEquals(3, feed.resyncSnapshotCount());
+		assertSame(bakery.getView(), feed.resync(first).getView());
+	}
+
+	@Test
+	public void testReconnectingSubscriberStartsWithDiff() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(34, 2);
+		GameFeed feed = new GameFeed(bakery.getView(), Runnable::run, 8, 16);
+		long seen = bakery.getView().getVersion();
+		play(bakery, feed, new Random(3), 6);
+		List<StateDiff> received = new ArrayList<>();
+		feed.subscribe(new Flow.Subscriber<StateDiff>() {
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				subscription.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(StateDiff item) {
+				received.add(item);
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+			}
+
+			@Override
+			public void onComplete() {
+			}
+		}, seen);
+		play(bakery, feed, new Random(5), 6);
+		assertFalse(received.get(0).isSnapshot());
+		assertEquals(seen, received.get(0).getFromVersion());
+		for (int i = 1; i < received.size(); i++) {
+			assertEquals(received.get(i - 1).getToVersion(), received.get(i).getFromVersion());
+		}
+		assertSame(bakery.getView(), received.get(received.size() - 1).getView());
+	}
+
+	@Test
+	public void testSyncOverSocket() throws Exception {
+		try (GameServer server = new GameServer(0, 1);
+			 Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			 Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+			MagicBakery twin = FunctionalHelper.newGame(35, 2);
+			out.write("NEW 35 Player0 Player1\n");
+			out.flush();
+			String game = in.readLine().substring(3);
+
+			out.write("SYNC " + game + " -1\n");
+			out.flush();
+			String[] snapshot = in.readLine().split(" ");
+			assertEquals("SNAPSHOT", snapshot[1]);
+			String version = snapshot[2];
+			assertEquals(Long.toString(twin.getStateHash()), snapshot[5]);
+
+			twin.endTurn();
+			out.write("ACT " + game + " " + Action.END_TURN + " -1 -1\n");
+			out.flush();
+			in.readLine();
+			out.write("SYNC " + game + " " + version + "\n");
+			out.flush();
+			String[] diff = in.readLine().split(" ");
+			assertEquals("OK", diff[0]);
+			assertEquals("DIFF", diff[1]);
+			assertTrue(Long.parseLong(diff[2]) > Long.parseLong(version));
+			assertEquals(Long.toString(twin.getStateHash()), diff[3]);
+			assertEquals(StateDiff.Change.Kind.TURN_CHANGED.ordinal() + ",1,-1," + twin.getActionsRemaining(), diff[diff.length - 1]);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardCatalog;
+import bakery.EmptyPantryException;
+import bakery.Ingredient;
+import bakery.MagicBakery;
+import bakery.Player;
+import bakery.SaveFormat;
+import bakery.StateCodec;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import util.XoroshiroRandom;
+
+@Tag("functional")
+@Tag("SaveFormat")
+public class SaveFormatTest {
+
+	private void play(MagicBakery bakery, Random choices, int steps) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		for (int i = 0; i < steps; i++) {
+			try {
+				switch (choices.nextInt(4)) {
+					case 0:
+						bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+						break;
+					case 1:
+						bakery.refreshPantry();
+						break;
+					case 2:
+						List<Player> players = new ArrayList<Player>(bakery.getPlayers());
+						bakery.passCard(catalog.card(choices.nextInt(catalog.cardCount())), players.get(choices.nextInt(players.size())));
+						break;
+					default:
+						bakery.endTurn();
+				}
+			} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+				// part of the game
+			}
+		}
+	}
+
+	private byte[] serialized(MagicBakery bakery) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(bakery);
+		}
+		return bytes.toByteArray();
+	}
+
+	private void assertSameGame(MagicBakery expected, MagicBakery actual) {
+		assertArrayEquals(StateCodec.encode(expected), StateCodec.encode(actual));
+		assertEquals(expected.getStateHash(), actual.getStateHash());
+		assertEquals(new ArrayList<Ingredient>(expected.getPantry()), new ArrayList<Ingredient>(actual.getPantry()));
+		assertEquals(expected.getPlayers().stream().map(Player::getHand).collect(Collectors.toList()),
+			actual.getPlayers().stream().map(Player::getHand).collect(Collectors.toList()));
+		assertEquals(expected.getGameLog().size(), actual.getGameLog().size());
+	}
+
+	@Test
+	public void testRoundTripPlaysOnIdentically() throws IOException {
+		MagicBakery bakery = new MagicBakery(12854, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(3), "./io/customers.csv");
+		play(bakery, new Random(1), 150);
+		MagicBakery loaded = SaveFormat.fromBytes(SaveFormat.toBytes(bakery));
+		assertSameGame(bakery, loaded);
+		play(bakery, new Random(2), 150);
+		play(loaded, new Random(2), 150);
+		assertSameGame(bakery, loaded);
+	}
+
+	@Test
+	public void testRoundTripWithXoroshiro() throws IOException {
+		MagicBakery bakery = new MagicBakery(new XoroshiroRandom(4), "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(5), "./io/customers.csv");
+		play(bakery, new Random(3), 100);
+		MagicBakery loaded = SaveFormat.fromBytes(SaveFormat.toBytes(bakery));
+		play(bakery, new Random(4), 100);
+		play(loaded, new Random(4), 100);
+		assertSameGame(bakery, loaded);
+	}
+
+	@Test
+	public void testSaveStateLoadState() throws IOException, ClassNotFoundException {
+		MagicBakery bakery = new MagicBakery(7, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(4), "./io/customers.csv");
+		play(bakery, new Random(5), 60);
+		File file = File.createTempFile("bakery", ".bin");
+		bakery.saveState(file);
+		assertSameGame(bakery, MagicBakery.loadState(file));
+		assertTrue(file.length() * 10 < serialized(bakery).length, "saved " + file.length() + " bytes");
+	}
+
+	@Test
+	public void testLoadsSerializedGame() throws IOException, ClassNotFoundException {
+		MagicBakery bakery = new MagicBakery(9, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(2), "./io/customers.csv");
+		play(bakery, new Random(6), 40);
+		File file = File.createTempFile("bakery", ".bin");
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(serialized(bakery));
+		}
+		assertSameGame(bakery, MagicBakery.loadState(file));
+	}
+
+	@Test
+	public void testUnknownCardFallsBackToSerialization() throws IOException, ClassNotFoundException {
+		MagicBakery bakery = new MagicBakery(9, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(2), "./io/customers.csv");
+		bakery.getCurrentPlayer().addToHand(new Ingredient("jam"));
+		assertThrows(IllegalArgumentException.class, () -> SaveFormat.toBytes(bakery));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SaveFormat.write(bakery, bytes);
+		MagicBakery loaded = SaveFormat.read(new ByteArrayInputStream(bytes.toByteArray()));
+		assertTrue(loaded.getCurrentPlayer().getHand().contains(new Ingredient("jam")));
+	}
+
+	@Test
+	public void testCorruptData() throws IOException {
+		MagicBakery bakery = new MagicBakery(9, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(2), "./io/customers.csv");
+		byte[] bytes = SaveFormat.toBytes(bakery);
+		bytes[4] = 99;
+		assertThrows(StreamCorruptedException.class, () -> SaveFormat.fromBytes(bytes));
+	}
+}
@@ -0,0 +1,333 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import bakery.CardCatalog;
+import bakery.EmptyPantryException;
+import bakery.MagicBakery;
+import bakery.SaveFormat;
+import bakery.StateCodec;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import persistence.SaveLog;
+
+@Tag("functional")
+@Tag("SaveLog")
+public class SaveLogTest {
+
+	@TempDir
+	Path dir;
+
+	private void play(MagicBakery bakery, Random choices, int actions) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		for (int i = 0; i < actions; i++) {
+			try {
+				switch (choices.nextInt(3)) {
+					case 0:
+						bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+						break;
+					case 1:
+						bakery.refreshPantry();
+						break;
+					default:
+						bakery.endTurn();
+				}
+			} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+				// refused by the rules
+			}
+		}
+	}
+
+	@Test
+	public void testSavesFromManyThreadsShareSyncs() throws Exception {
+		int games = 8;
+		int rounds = 20;
+		List<MagicBakery> bakeries = new ArrayList<MagicBakery>();
+		for (int g = 0; g < games; g++) {
+			bakeries.add(FunctionalHelper.newGame(g + 1, 2 + g % 4));
+		}
+		try (SaveLog log = SaveLog.open(dir, 1 << 20)) {
+			List<Thread> threads = new ArrayList<Thread>();
+			List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+			for (int g = 0; g < games; g++) {
+				final int id = g;
+				Thread thread = new Thread(() -> {
+					Random choices = new Random(id);
+					for (int r = 0; r < rounds; r++) {
+						play(bakeries.get(id), choices, 3);
+						CompletableFuture<Void> future = log.save(id, bakeries.get(id));
+						synchronized (futures) {
+							futures.add(future);
+						}
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+			assertTrue(log.syncCount() <= games * rounds);
+			assertEquals(games, log.gameIds().size());
+			for (int g = 0; g < games; g++) {
+				assertArrayEquals(StateCodec.encode(bakeries.get(g)), StateCodec.encode(log.load(g)));
+			}
+		}
+	}
+
+	@Test
+	public void testReopenRebuildsIndexAndDropsTornRecord() throws Exception {
+		MagicBakery first = FunctionalHelper.newGame(3, 3);
+		MagicBakery second = FunctionalHelper.newGame(4, 4);
+		try (SaveLog log = SaveLog.open(dir, 1 << 20)) {
+			log.save(1, first).join();
+			play(first, new Random(5), 20);
+			log.save(1, first).join();
+			log.save(2, second).join();
+		}
+		Path segment = dir.resolve("segment-000000.log");
+		long size = Files.size(segment);
+		Files.write(segment, new byte[] {0, 0, 1, 0, 0, 0}, StandardOpenOption.APPEND);
+		try (SaveLog log = SaveLog.open(dir, 1 << 20)) {
+			assertEquals(size, Files.size(segment));
+			assertArrayEquals(StateCodec.encode(first), StateCodec.encode(log.load(1)));
+			assertArrayEquals(StateCodec.encode(second), StateCodec.encode(log.load(2)));
+			assertNull(log.load(3));
+		}
+	}
+
+	@Test
+	public void testRollsToNewSegment() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(9, 2);
+		try (SaveLog log = SaveLog.open(dir, 1)) {
+			for (int i = 0; i < 3; i++) {
+				log.save(i, bakery).join();
+			}
+			assertEquals(2, log.currentSegment());
+		}
+		try (SaveLog log = SaveLog.open(dir, 1)) {
+			assertEquals(3, log.gameIds().size());
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(log.load(0)));
+		}
+	}
+
+	@Test
+	public void testSaveAfterCloseRejected() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(9, 2);
+		SaveLog log = SaveLog.open(dir, 1 << 20);
+		log.close();
+		assertThrows(IllegalStateException.class, () -> log.save(1, bakery));
+	}
+
+	@Test
+	public void testFailedSyncIsCutOff() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(9, 2);
+		Path segment = dir.resolve("segment-000000.log");
+		try (SaveLog log = SaveLog.open(dir, 1 << 20)) {
+			log.save(1, bakery).join();
+			long size = Files.size(segment);
+			FlakyChannel flaky = new FlakyChannel((FileChannel) FunctionalHelper.getFieldValue(log, "channel"));
+			FunctionalHelper.setFieldValue(log, "channel", flaky);
+			flaky.failForce = true;
+			assertThrows(CompletionException.class, () -> log.save(2, bakery).join());
+			assertEquals(size, Files.size(segment));
+			assertNull(log.getFailure());
+			flaky.failForce = false;
+			log.save(3, bakery).join();
+		}
+		try (SaveLog log = SaveLog.open(dir, 1 << 20)) {
+			assertEquals(Set.of(1L, 3L), log.gameIds());
+			assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(log.load(3)));
+		}
+	}
+
+	@Test
+	public void testFailedTruncateFailsLog() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(9, 2);
+		try (SaveLog log = SaveLog.open(dir, 1 << 20)) {
+			log.save(1, bakery).join();
+			FlakyChannel flaky = new FlakyChannel((FileChannel) FunctionalHelper.getFieldValue(log, "channel"));
+			FunctionalHelper.setFieldValue(log, "channel", flaky);
+			flaky.failForce = true;
+			flaky.failTruncate = true;
+			assertThrows(CompletionException.class, () -> log.save(2, bakery).join());
+			assertNotNull(log.getFailure());
+			assertThrows(IllegalStateException.class, () -> log.save(3, bakery));
+		}
+		try (SaveLog log = SaveLog.open(dir, 1 << 20)) {
+			assertTrue(log.gameIds().contains(1L));
+			assertNull(log.getFailure());
+		}
+	}
+
+	@Test
+	public void testCloseSettlesEveryAcceptedSave() throws Exception {
+		byte[] data = SaveFormat.toBytes(FunctionalHelper.newGame(9, 2));
+		SaveLog log = SaveLog.open(dir, 1 << 20);
+		List<CompletableFuture<Void>> accepted = new ArrayList<CompletableFuture<Void>>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final long base = t * 1_000_000L;
+			Thread thread = new Thread(() -> {
+				for (long id = base; ; id++) {
+					CompletableFuture<Void> future;
+					try {
+						future = log.save(id, data);
+					} catch (IllegalStateException e) {
+						return;
+					}
+					synchronized (accepted) {
+						accepted.add(future);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		Thread.sleep(50);
+		log.close();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (CompletableFuture<Void> future : accepted) {
+			future.get(5, TimeUnit.SECONDS);
+		}
+		try (SaveLog reopened = SaveLog.open(dir, 1 << 20)) {
+			assertEquals(accepted.size(), reopened.gameIds().size());
+		}
+	}
+
+	/**
+	 * A file channel that can be told to fail its syncs and truncations.
+	 */
+	private static final class FlakyChannel extends FileChannel {
+		private final FileChannel file;
+		private volatile boolean failForce;
+		private volatile boolean failTruncate;
+
+		private FlakyChannel(FileChannel file) {
+			this.file = file;
+		}
+
+		@Override
+		public void force(boolean metaData) throws IOException {
+			if (failForce) {
+				throw new IOException("Simulated sync failure");
+			}
+			file.force(metaData);
+		}
+
+		@Override
+		public FileChannel truncate(long size) throws IOException {
+			if (failTruncate) {
+				throw new IOException("Simulated truncate failure");
+			}
+			file.truncate(size);
+			return this;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			return file.read(dst);
+		}
+
+		@Override
+		public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+			return file.read(dsts, offset, length);
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			return file.write(src);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			return file.write(srcs, offset, length);
+		}
+
+		@Override
+		public long position() throws IOException {
+			return file.position();
+		}
+
+		@Override
+		public FileChannel position(long newPosition) throws IOException {
+			file.position(newPosition);
+			return this;
+		}
+
+		@Override
+		public long size() throws IOException {
+			return file.size();
+		}
+
+		@Override
+		public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+			return file.transferTo(position, count, target);
+		}
+
+		@Override
+		public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+			return file.transferFrom(src, position, count);
+		}
+
+		@Override
+		public int read(ByteBuffer dst, long position) throws IOException {
+			return file.read(dst, position);
+		}
+
+		@Override
+		public int write(ByteBuffer src, long position) throws IOException {
+			return file.write(src, position);
+		}
+
+		@Override
+		public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+			return file.map(mode, position, size);
+		}
+
+		@Override
+		public FileLock lock(long position, long size, boolean shared) throws IOException {
+			return file.lock(position, size, shared);
+		}
+
+		@Override
+		public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+			return file.tryLock(position, size, shared);
+		}
+
+		@Override
+		protected void implCloseChannel() throws IOException {
+			file.close();
+		}
+	}
+}
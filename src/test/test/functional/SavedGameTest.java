@@ -0,0 +1,120 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import bakery.CardCatalog;
+import bakery.CustomerOrder;
+import bakery.CustomerOrder.CustomerOrderStatus;
+import bakery.EmptyPantryException;
+import bakery.MagicBakery;
+import bakery.Player;
+import bakery.SaveFormat;
+import bakery.SavedGame;
+import bakery.StateCodec;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import persistence.MappedSaveStore;
+
+@Tag("functional")
+@Tag("SavedGame")
+public class SavedGameTest {
+
+	@TempDir
+	Path dir;
+
+	private void play(MagicBakery bakery, Random choices, int actions) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		for (int i = 0; i < actions; i++) {
+			try {
+				switch (choices.nextInt(3)) {
+					case 0:
+						bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+						break;
+					case 1:
+						bakery.refreshPantry();
+						break;
+					default:
+						bakery.endTurn();
+				}
+			} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+				// refused by the rules
+			}
+		}
+	}
+
+	@Test
+	public void testSectionsDecodedOnFirstAccess() throws IOException {
+		MagicBakery bakery = FunctionalHelper.newGame(13, 4);
+		play(bakery, new Random(1), 40);
+		SavedGame saved = new SavedGame(SaveFormat.toBytes(bakery), bakery.getCardCatalog());
+		for (int section = 0; section < SaveFormat.SECTION_COUNT; section++) {
+			assertFalse(saved.isDecoded(section));
+		}
+
+		List<String> names = new ArrayList<String>();
+		for (Player player : bakery.getPlayers()) {
+			names.add(player.getName());
+		}
+		assertEquals(names, saved.getPlayerNames());
+		assertEquals(new ArrayList<Object>(bakery.getCurrentPlayer().getHand()), new ArrayList<Object>(saved.getHand(saved.getCurrentPlayer())));
+		assertEquals(bakery.getActionsRemaining(), saved.getActionsRemaining(saved.getCurrentPlayer()));
+		List<String> row = new ArrayList<String>();
+		for (CustomerOrder order : bakery.getCustomers().getActiveCustomers()) {
+			row.add(String.valueOf(order));
+		}
+		List<String> savedRow = new ArrayList<String>();
+		for (CustomerOrder order : saved.getActiveCustomers()) {
+			savedRow.add(String.valueOf(order));
+		}
+		assertEquals(row, savedRow);
+		assertEquals(bakery.getCustomers().getInactiveCustomersWithStatus(CustomerOrderStatus.GIVEN_UP).size(),
+				saved.countInactiveCustomers(CustomerOrderStatus.GIVEN_UP));
+
+		assertTrue(saved.isDecoded(SaveFormat.SECTION_PLAYERS));
+		assertTrue(saved.isDecoded(SaveFormat.SECTION_CUSTOMERS));
+		assertFalse(saved.isDecoded(SaveFormat.SECTION_PANTRY));
+		assertFalse(saved.isDecoded(SaveFormat.SECTION_DECKS));
+		assertFalse(saved.isDecoded(SaveFormat.SECTION_HISTORY));
+
+		assertFalse(saved.getPantryDeck().isEmpty());
+		assertTrue(saved.isDecoded(SaveFormat.SECTION_DECKS));
+		assertEquals(bakery.getGameLog().size(), saved.getGameLog().size());
+		assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(saved.toBakery()));
+	}
+
+	@Test
+	public void testPeekFromMappedStore() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(2, 3);
+		play(bakery, new Random(2), 25);
+		try (MappedSaveStore store = MappedSaveStore.open(dir, 16, 1 << 16)) {
+			store.saveState(42, bakery);
+			SavedGame saved = store.peek(42, bakery.getCardCatalog());
+			assertEquals(3, saved.getPlayerNames().size());
+			assertEquals(new ArrayList<Object>(bakery.getPantry()), new ArrayList<Object>(saved.getPantry()));
+			assertEquals(null, store.peek(43, bakery.getCardCatalog()));
+		}
+	}
+
+	@Test
+	public void testRejectsSequentialVersion() throws IOException {
+		byte[] old = SaveFormat.toBytes(FunctionalHelper.newGame(6, 2));
+		old[4] = 1;
+		assertThrows(StreamCorruptedException.class, () -> SaveFormat.fromBytes(old));
+		assertThrows(StreamCorruptedException.class, () -> new SavedGame(old, FunctionalHelper.newGame(6, 2).getCardCatalog()));
+	}
+}
@@ -0,0 +1,111 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import server.Action;
+import server.ActionResult;
+import server.GameActor;
+import server.ShardedScheduler;
+
+@Tag("functional")
+@Tag("ShardedScheduler")
+public class ShardedSchedulerTest {
+
+	@Test
+	public void testShardOfIsStableAndInRange() {
+		try (ShardedScheduler scheduler = new ShardedScheduler(5)) {
+			int[] homed = new int[5];
+			for (long id = 0; id < 1000; id++) {
+				int shard = scheduler.shardOf(id);
+				assertTrue(shard >= 0 && shard < 5);
+				assertEquals(shard, scheduler.shardOf(id));
+				homed[shard]++;
+			}
+			for (int count : homed) {
+				assertTrue(count > 100, "games spread over the shards");
+			}
+		}
+	}
+
+	@Test
+	public void testPerGameOrderKeptWhileStealing() throws Exception {
+		try (ShardedScheduler scheduler = new ShardedScheduler(4)) {
+			List<Long> ids = new ArrayList<>();
+			for (long id = 0; ids.size() < 12; id++) {
+				if (scheduler.shardOf(id) == 0) {
+					ids.add(id);
+				}
+			}
+			List<GameActor> actors = new ArrayList<>();
+			List<List<Integer>> seen = new ArrayList<>();
+			for (long id : ids) {
+				actors.add(new GameActor(id, FunctionalHelper.newGame(id, 2), scheduler.forKey(id)));
+				seen.add(new ArrayList<>());
+			}
+			List<CompletableFuture<ActionResult>> results = new ArrayList<>();
+			for (int i = 0; i < 300; i++) {
+				for (int g = 0; g < actors.size(); g++) {
+					int step = i;
+					List<Integer> order = seen.get(g);
+					actors.get(g).ask(bakery -> {
+						order.add(step);
+						if (step % 50 == 0) {
+							try {
+								Thread.sleep(1);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+						}
+						return null;
+					});
+					results.add(actors.get(g).submit(Action.endTurn()));
+				}
+			}
+			for (CompletableFuture<ActionResult> result : results) {
+				assertTrue(result.get().isOk());
+			}
+			for (int g = 0; g < actors.size(); g++) {
+				List<Integer> order = seen.get(g);
+				assertEquals(300, order.size());
+				for (int i = 0; i < 300; i++) {
+					assertEquals(i, (int) order.get(i));
+				}
+				assertEquals(300, (int) actors.get(g).ask(bakery -> bakery.getGameLog().size()).get());
+			}
+			assertTrue(scheduler.stealCount() > 0, "idle shards took games from the busy one");
+			int busy = 0;
+			for (int s = 0; s < scheduler.shardCount(); s++) {
+				if (scheduler.executedCount(s) > 0) {
+					busy++;
+				}
+			}
+			assertTrue(busy > 1);
+		}
+	}
+
+	@Test
+	public void testExecuteRunsEveryTaskAndCloseRejects() throws Exception {
+		ShardedScheduler scheduler = new ShardedScheduler(3);
+		AtomicInteger runs = new AtomicInteger();
+		List<CompletableFuture<Void>> done = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			done.add(CompletableFuture.runAsync(runs::incrementAndGet, scheduler));
+		}
+		CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).get();
+		assertEquals(1000, runs.get());
+		scheduler.close();
+		assertThrows(RejectedExecutionException.class, () -> scheduler.execute(runs::incrementAndGet));
+		assertThrows(RejectedExecutionException.class, () -> scheduler.forKey(7).execute(runs::incrementAndGet));
+	}
+}
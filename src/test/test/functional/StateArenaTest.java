@@ -0,0 +1,107 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardDecks;
+import bakery.MagicBakery;
+import bakery.StateCodec;
+import sim.StateArena;
+
+@Tag("functional")
+@Tag("StateArena")
+public class StateArenaTest {
+
+	private long[] position(long seed, int numPlayers) throws IOException {
+		MagicBakery bakery = new MagicBakery(seed, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(FunctionalHelper.names(numPlayers), "./io/customers.csv");
+		return StateCodec.encode(bakery);
+	}
+
+	@Test
+	public void testAllocateAndGet() throws IOException {
+		StateArena arena = new StateArena(32, 4);
+		long[][] positions = new long[10][];
+		int[] handles = new int[10];
+		for (int i = 0; i < 10; i++) {
+			positions[i] = position(i, 2 + i % 4);
+			handles[i] = arena.allocate(positions[i]);
+		}
+		assertEquals(10, arena.size());
+		assertEquals(3L * 4 * 33 * Long.BYTES, arena.reservedBytes());
+		for (int i = 0; i < 10; i++) {
+			assertArrayEquals(positions[i], arena.get(handles[i]));
+		}
+	}
+
+	@Test
+	public void testFreedRecordsAreReused() throws IOException {
+		StateArena arena = new StateArena(32, 4);
+		long[] position = position(1, 3);
+		int first = arena.allocate(position);
+		int second = arena.allocate(position);
+		arena.free(first);
+		assertFalse(arena.isLive(first));
+		assertThrows(IllegalStateException.class, () -> arena.get(first));
+		assertEquals(first, arena.allocate(position(2, 5)));
+		assertArrayEquals(position, arena.get(second));
+		assertEquals(2, arena.size());
+	}
+
+	@Test
+	public void testForEachVisitsLiveRecords() throws IOException {
+		StateArena arena = new StateArena(32, 2);
+		for (int i = 0; i < 5; i++) {
+			arena.allocate(position(i, 2));
+		}
+		arena.free(1);
+		arena.free(3);
+		List<Integer> visited = new ArrayList<Integer>();
+		arena.forEach(view -> {
+			visited.add(view.handle());
+			assertEquals(StateCodec.FORMAT_VERSION, view.word(0) & 0xF);
+		});
+		assertEquals(List.of(0, 2, 4), visited);
+	}
+
+	@Test
+	public void testRehydrate() throws IOException {
+		StateArena arena = new StateArena(32, 8);
+		long[] position = position(12854, 4);
+		StateArena.View view = arena.view(arena.allocate(position));
+		assertEquals(position.length, view.length());
+		MagicBakery bakery = view.rehydrate(FunctionalHelper.names(4), 12854);
+		assertArrayEquals(position, StateCodec.encode(bakery));
+	}
+
+	@Test
+	public void testRehydrateReadsDecksOnce() throws IOException {
+		CardDecks decks = CardDecks.loadStandard();
+		StateArena given = new StateArena(32, 8, decks);
+		long[] position = position(12854, 4);
+		MagicBakery bakery = given.view(given.allocate(position)).rehydrate(FunctionalHelper.names(4), 12854);
+		assertSame(decks.getCardCatalog(), bakery.getCardCatalog());
+		assertArrayEquals(position, StateCodec.encode(bakery));
+
+		StateArena standard = new StateArena(32, 8);
+		StateArena.View first = standard.view(standard.allocate(position));
+		StateArena.View second = standard.view(standard.allocate(position(7, 3)));
+		assertSame(first.rehydrate(FunctionalHelper.names(4), 1).getCardCatalog(), second.rehydrate(FunctionalHelper.names(3), 2).getCardCatalog());
+	}
+
+	@Test
+	public void testRecordTooSmall() throws IOException {
+		StateArena arena = new StateArena(4, 8);
+		assertThrows(IllegalArgumentException.class, () -> arena.allocate(position(1, 5)));
+	}
+}
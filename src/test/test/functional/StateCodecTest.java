@@ -0,0 +1,137 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import bakery.Ingredient;
+import bakery.MagicBakery;
+import bakery.Player;
+import bakery.StateCodec;
+
+@Tag("functional")
+@Tag("StateCodec")
+public class StateCodecTest {
+
+	static List<String> playerNames;
+
+	private MagicBakery bakeryFactory() throws IOException, FileNotFoundException {
+		MagicBakery bakery = new MagicBakery(12854, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(playerNames, "./io/customers.csv");
+		return bakery;
+	}
+
+	private void playSomeActions(MagicBakery bakery) {
+		bakery.drawFromPantry(new ArrayList<Ingredient>(bakery.getPantry()).get(0));
+		Player recipient = new ArrayList<Player>(bakery.getPlayers()).get(1);
+		bakery.passCard(bakery.getCurrentPlayer().getHand().get(0), recipient);
+		bakery.endTurn();
+		bakery.refreshPantry();
+	}
+
+	@BeforeAll
+	public static void setUp() {
+		playerNames = new ArrayList<String>();
+		playerNames.add("PlayerA");
+		playerNames.add("PlayerB");
+		playerNames.add("PlayerC");
+		playerNames.add("PlayerD");
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		MagicBakery bakery = bakeryFactory();
+		playSomeActions(bakery);
+
+		long[] packed = StateCodec.encode(bakery);
+		MagicBakery decoded = StateCodec.decode(packed, playerNames, 1);
+
+		assertArrayEquals(packed, StateCodec.encode(decoded));
+		assertEquals(bakery.getStateHash(), decoded.getStateHash());
+		assertEquals(bakery.currentPlayerLoc, decoded.currentPlayerLoc);
+		assertEquals(bakery.getActionsRemaining(), decoded.getActionsRemaining());
+		assertEquals(bakery.getCurrentPlayer().getHandStr(), decoded.getCurrentPlayer().getHandStr());
+		assertEquals(bakery.getCustomers().getActiveCustomers().toString(), decoded.getCustomers().getActiveCustomers().toString());
+	}
+
+	@Test
+	public void testDecodedGameContinuesIdentically() throws IOException {
+		MagicBakery bakery = bakeryFactory();
+		MagicBakery decoded = StateCodec.decode(StateCodec.encode(bakery), playerNames, 1);
+
+		Ingredient choice = new ArrayList<Ingredient>(bakery.getPantry()).get(2);
+		bakery.drawFromPantry(choice);
+		decoded.drawFromPantry(choice.toString());
+
+		assertEquals(bakery.getStateHash(), decoded.getStateHash());
+		assertArrayEquals(StateCodec.encode(bakery), StateCodec.encode(decoded));
+	}
+
+	@Test
+	public void testCanonical() throws IOException {
+		MagicBakery first = bakeryFactory();
+		MagicBakery second = bakeryFactory();
+		Player recipient = new ArrayList<Player>(first.getPlayers()).get(1);
+		List<Ingredient> hand = new ArrayList<Ingredient>(first.getCurrentPlayer().getHand());
+
+		first.passCard(hand.get(0), recipient);
+		first.passCard(hand.get(1), recipient);
+		recipient = new ArrayList<Player>(second.getPlayers()).get(1);
+		second.passCard(hand.get(1), recipient);
+		second.passCard(hand.get(0), recipient);
+
+		assertArrayEquals(StateCodec.encode(first), StateCodec.encode(second));
+	}
+
+	@Test
+	public void testMuchSmallerThanSerialization() throws IOException {
+		MagicBakery bakery = bakeryFactory();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(bakery);
+		}
+		int packedBytes = StateCodec.encode(bakery).length * Long.BYTES;
+		assertTrue(packedBytes * 10 < bytes.size(), packedBytes + " bytes packed, " + bytes.size() + " serialized");
+	}
+
+	@Test
+	public void testFivePlayerLayoutSize() throws IOException {
+		MagicBakery bakery = new MagicBakery(12854, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(List.of("A", "B", "C", "D", "E"), "./io/customers.csv");
+		assertEquals(18, StateCodec.encode(bakery).length);
+	}
+
+	@Test
+	public void testDeckGrowsPastSixteenBits() throws Exception {
+		MagicBakery bakery = bakeryFactory();
+		long[] fresh = StateCodec.encode(bakery);
+		for (int i = 0; i < 14000; i++) {
+			bakery.refreshPantry();
+			bakery.endTurn();
+		}
+		int deck = ((Collection<?>) FunctionalHelper.getFieldValue(bakery, "pantryDeck")).size();
+		assertTrue(deck > 0xFFFF, "deck of " + deck);
+		long[] packed = StateCodec.encode(bakery);
+		assertTrue(packed.length > fresh.length);
+		assertArrayEquals(packed, StateCodec.encode(StateCodec.decode(packed, playerNames, 1)));
+	}
+
+	@Test
+	public void testWrongPlayerCount() throws IOException {
+		long[] packed = StateCodec.encode(bakeryFactory());
+		assertThrows(IllegalArgumentException.class, () -> StateCodec.decode(packed, playerNames.subList(0, 2), 1));
+	}
+}
@@ -0,0 +1,95 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import bakery.Ingredient;
+import bakery.MagicBakery;
+import bakery.Player;
+
+@Tag("functional")
+@Tag("MagicBakery")
+public class StateHashTest {
+
+	static List<String> playerNames;
+
+	private MagicBakery bakeryFactory() throws IOException, FileNotFoundException {
+		MagicBakery bakery = new MagicBakery(12854, "./io/ingredients.csv", "./io/layers.csv");
+		bakery.startGame(playerNames, "./io/customers.csv");
+		return bakery;
+	}
+
+	private long freshHash(MagicBakery bakery) throws IllegalAccessException, InvocationTargetException {
+		Method rehash = FunctionalHelper.getMethod(bakery, "rehash");
+		rehash.invoke(bakery);
+		return bakery.getStateHash();
+	}
+
+	private Player otherPlayer(MagicBakery bakery) {
+		for (Player player: bakery.getPlayers()) {
+			if (player != bakery.getCurrentPlayer()) {
+				return player;
+			}
+		}
+		return null;
+	}
+
+	@BeforeAll
+	public static void setUp() {
+		playerNames = new ArrayList<String>();
+		playerNames.add("PlayerA");
+		playerNames.add("PlayerB");
+		playerNames.add("PlayerC");
+	}
+
+	@Test
+	public void testSameSeedSameHash() throws IOException {
+		assertEquals(bakeryFactory().getStateHash(), bakeryFactory().getStateHash());
+	}
+
+	@Test
+	public void testIncrementalMatchesRecompute() throws IOException, IllegalAccessException, InvocationTargetException {
+		MagicBakery bakery = bakeryFactory();
+		long start = bakery.getStateHash();
+
+		bakery.drawFromPantry(new ArrayList<Ingredient>(bakery.getPantry()).get(0));
+		Ingredient card = bakery.getCurrentPlayer().getHand().get(0);
+		bakery.passCard(card, otherPlayer(bakery));
+		bakery.refreshPantry();
+		long afterActions = bakery.getStateHash();
+		assertNotEquals(start, afterActions);
+		assertEquals(afterActions, freshHash(bakery));
+
+		bakery.endTurn();
+		long afterTurn = bakery.getStateHash();
+		assertNotEquals(afterActions, afterTurn);
+		assertEquals(afterTurn, freshHash(bakery));
+	}
+
+	@Test
+	public void testTranspositionsHashEqual() throws IOException, IllegalAccessException, InvocationTargetException {
+		MagicBakery first = bakeryFactory();
+		MagicBakery second = bakeryFactory();
+
+		List<Ingredient> hand = new ArrayList<Ingredient>(first.getCurrentPlayer().getHand());
+		first.passCard(hand.get(0), otherPlayer(first));
+		first.passCard(hand.get(1), otherPlayer(first));
+
+		second.passCard(hand.get(1), otherPlayer(second));
+		second.passCard(hand.get(0), otherPlayer(second));
+
+		assertEquals(first.getStateHash(), second.getStateHash());
+		assertEquals(first.getStateHash(), freshHash(first));
+	}
+}
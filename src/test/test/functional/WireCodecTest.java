@@ -0,0 +1,316 @@
+package test.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import bakery.CardCatalog;
+import bakery.CustomerOrder;
+import bakery.EmptyPantryException;
+import bakery.GameView;
+import bakery.Ingredient;
+import bakery.MagicBakery;
+import bakery.StateDiff;
+import bakery.TooManyActionsException;
+import bakery.WrongIngredientsException;
+import server.Action;
+import server.ActionResult;
+import server.BufferPool;
+import server.TableMirror;
+import server.WireCodec;
+
+@Tag("functional")
+@Tag("WireCodec")
+public class WireCodecTest {
+
+	private void step(MagicBakery bakery, Random choices) {
+		CardCatalog catalog = bakery.getCardCatalog();
+		try {
+			switch (choices.nextInt(3)) {
+				case 0:
+					bakery.drawFromPantry(catalog.card(choices.nextInt(catalog.ingredientKinds())).toString());
+					break;
+				case 1:
+					bakery.refreshPantry();
+					break;
+				default:
+					bakery.endTurn();
+			}
+		} catch (WrongIngredientsException | TooManyActionsException | EmptyPantryException e) {
+			// refused by the rules
+		}
+	}
+
+	private void assertMirrors(GameView view, TableMirror mirror) {
+		CardCatalog catalog = view.getCardCatalog();
+		assertEquals(view.getVersion(), mirror.getVersion());
+		assertEquals(view.getStateHash(), mirror.getStateHash());
+		assertEquals(view.getPlayerNames(), mirror.getPlayerNames());
+		assertEquals(view.getCurrentPlayer(), mirror.getCurrentPlayer());
+		for (int seat = 0; seat < view.getPlayerNames().size(); seat++) {
+			assertEquals(view.getActionsRemaining(seat), mirror.getActionsRemaining(seat), "actions of seat " + seat);
+			assertZone(catalog, view.getHand(seat), mirror, seat);
+		}
+		assertZone(catalog, view.getPantry(), mirror, StateDiff.PANTRY);
+		assertZone(catalog, view.getLayers(), mirror, StateDiff.LAYERS);
+		List<CustomerOrder> row = view.getActiveCustomers();
+		for (int slot = 0; slot < row.size(); slot++) {
+			CustomerOrder order = row.get(slot);
+			assertEquals(catalog.customerId(order), mirror.getCustomer(slot), "customer in slot " + slot);
+			assertEquals(order == null ? -1 : view.getCustomerStatus(slot).ordinal(), mirror.getCustomerStatus(slot), "status in slot " + slot);
+		}
+		for (int slot = row.size(); slot < mirror.customerSlots(); slot++) {
+			assertEquals(-1, mirror.getCustomer(slot));
+		}
+	}
+
+	private void assertZone(CardCatalog catalog, List<? extends Ingredient> cards, TableMirror mirror, int zone) {
+		int[] counts = new int[catalog.cardCount()];
+		for (Ingredient card : cards) {
+			counts[catalog.cardId(card)]++;
+		}
+		for (int card = 0; card < counts.length; card++) {
+			assertEquals(counts[card], mirror.count(zone, card), "zone " + zone + " card " + card);
+		}
+		assertEquals(cards.size(), mirror.size(zone));
+	}
+
+	@Test
+	public void testActionRoundTrip() {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		List<Action> actions = List.of(Action.draw(3), Action.pass(7, 2), Action.bake(1),
+			Action.fulfil(4, true), Action.refresh(), Action.endTurn());
+		for (Action action : actions) {
+			WireCodec.writeAction(buffer, 300, action);
+		}
+		buffer.flip();
+		for (Action action : actions) {
+			ByteBuffer frame = WireCodec.nextFrame(buffer);
+			assertEquals(WireCodec.ACTION, WireCodec.type(frame));
+			assertEquals(300, WireCodec.gameOf(frame));
+			assertEquals(action, WireCodec.readAction(frame));
+		}
+		assertNull(WireCodec.nextFrame(buffer));
+	}
+
+	@Test
+	public void testActionIsAFewBytes() {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		WireCodec.writeAction(buffer, 5, Action.draw(3));
+		assertEquals(6, buffer.position());
+	}
+
+	@Test
+	public void testResultRoundTrip() {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		List<ActionResult> results = List.of(
+			new ActionResult(Action.draw(2), null, null, 1, 2),
+			new ActionResult(Action.bake(0), "WrongIngredientsException", "missing", 0, 3),
+			new ActionResult(Action.endTurn(), "IllegalStateException", "over", -1, 0));
+		for (ActionResult result : results) {
+			WireCodec.writeResult(buffer, 9, result);
+		}
+		buffer.flip();
+		for (ActionResult result : results) {
+			ActionResult read = WireCodec.readResult(WireCodec.nextFrame(buffer));
+			assertEquals(result.getAction(), read.getAction());
+			assertEquals(result.getError(), read.getError());
+			assertEquals(result.isOk(), read.isOk());
+			assertEquals(result.getCurrentPlayer(), read.getCurrentPlayer());
+			assertEquals(result.getActionsRemaining(), read.getActionsRemaining());
+		}
+	}
+
+	@Test
+	public void testPartialFrameWaitsForMoreBytes() {
+		ByteBuffer whole = ByteBuffer.allocate(64);
+		WireCodec.writeAction(whole, 1000, Action.pass(1, 2));
+		whole.flip();
+		ByteBuffer received = ByteBuffer.allocate(64);
+		for (int i = 0; i < whole.limit() - 1; i++) {
+			received.put(whole.get(i));
+			received.flip();
+			assertNull(WireCodec.nextFrame(received));
+			assertEquals(0, received.position());
+			received.compact();
+		}
+		received.put(whole.get(whole.limit() - 1));
+		received.flip();
+		assertEquals(Action.pass(1, 2), WireCodec.readAction(WireCodec.nextFrame(received)));
+	}
+
+	@Test
+	public void testOverflowLeavesBufferUnchanged() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(21, 4);
+		ByteBuffer buffer = ByteBuffer.allocate(40);
+		WireCodec.writeAction(buffer, 1, Action.refresh());
+		int position = buffer.position();
+		assertThrows(BufferOverflowException.class, () -> WireCodec.writeSnapshot(buffer, 1, bakery.getView()));
+		assertEquals(position, buffer.position());
+	}
+
+	@Test
+	public void testMirrorFollowsSnapshotAndDiffs() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(22, 3);
+		CardCatalog catalog = bakery.getCardCatalog();
+		TableMirror mirror = new TableMirror(catalog.cardCount());
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		GameView before = bakery.getView();
+		WireCodec.writeDiff(buffer, 4, StateDiff.snapshot(before));
+		buffer.flip();
+		ByteBuffer frame = WireCodec.nextFrame(buffer);
+		assertEquals(WireCodec.SNAPSHOT, WireCodec.type(frame));
+		WireCodec.readState(frame, mirror);
+		assertMirrors(before, mirror);
+
+		Random choices = new Random(8);
+		for (int i = 0; i < 300; i++) {
+			step(bakery, choices);
+			GameView after = bakery.getView();
+			if (after == before) {
+				continue;
+			}
+			buffer.clear();
+			WireCodec.writeDiff(buffer, 4, StateDiff.between(before, after));
+			buffer.flip();
+			frame = WireCodec.nextFrame(buffer);
+			assertEquals(WireCodec.DIFF, WireCodec.type(frame));
+			WireCodec.readState(frame, mirror);
+			assertMirrors(after, mirror);
+			before = after;
+		}
+	}
+
+	@Test
+	public void testMirrorFollowsActionsReset() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(25, 3);
+		TableMirror mirror = new TableMirror(bakery.getCardCatalog().cardCount());
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 14);
+		GameView before = bakery.getView();
+		WireCodec.writeSnapshot(buffer, 7, before);
+		buffer.flip();
+		WireCodec.readState(WireCodec.nextFrame(buffer), mirror);
+
+		for (int i = 0; i < 6; i++) {
+			bakery.refreshPantry();
+			bakery.endTurn();
+			GameView after = bakery.getView();
+			buffer.clear();
+			WireCodec.writeDiff(buffer, 7, StateDiff.between(before, after));
+			buffer.flip();
+			WireCodec.readState(WireCodec.nextFrame(buffer), mirror);
+			assertMirrors(after, mirror);
+			before = after;
+		}
+	}
+
+	@Test
+	public void testMirrorFollowsCustomerRow() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(24, 3);
+		TableMirror mirror = new TableMirror(bakery.getCardCatalog().cardCount());
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 14);
+		GameView before = bakery.getView();
+		WireCodec.writeSnapshot(buffer, 6, before);
+		buffer.flip();
+		WireCodec.readState(WireCodec.nextFrame(buffer), mirror);
+
+		Method next = FunctionalHelper.getMethod(GameView.class, "next", MagicBakery.class, int.class, int.class);
+		Set<StateDiff.Change.Kind> seen = EnumSet.noneOf(StateDiff.Change.Kind.class);
+		for (int round = 0; round < 8; round++) {
+			if (bakery.getCustomers().getCustomerDeck().isEmpty()) {
+				bakery.getCustomers().timePasses();
+			} else {
+				bakery.getCustomers().addCustomerOrder();
+			}
+			GameView after = (GameView) next.invoke(before, bakery, 2, 0);
+			StateDiff diff = StateDiff.between(before, after);
+			for (StateDiff.Change change : diff.getChanges()) {
+				seen.add(change.getKind());
+			}
+			buffer.clear();
+			WireCodec.writeDiff(buffer, 6, diff);
+			buffer.flip();
+			WireCodec.readState(WireCodec.nextFrame(buffer), mirror);
+			assertMirrors(after, mirror);
+			before = after;
+		}
+		assertTrue(seen.contains(StateDiff.Change.Kind.CUSTOMER_MOVED), seen.toString());
+		assertTrue(seen.contains(StateDiff.Change.Kind.CUSTOMER_STATUS), seen.toString());
+		assertTrue(seen.contains(StateDiff.Change.Kind.CUSTOMER_LEFT), seen.toString());
+	}
+
+	@Test
+	public void testDiffAfterGapRejected() throws Exception {
+		MagicBakery bakery = FunctionalHelper.newGame(23, 2);
+		TableMirror mirror = new TableMirror(bakery.getCardCatalog().cardCount());
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 14);
+		GameView first = bakery.getView();
+		WireCodec.writeSnapshot(buffer, 1, first);
+		buffer.flip();
+		WireCodec.readState(WireCodec.nextFrame(buffer), mirror);
+
+		bakery.drawFromPantry(bakery.getPantry().iterator().next());
+		GameView second = bakery.getView();
+		bakery.drawFromPantry(bakery.getPantry().iterator().next());
+		GameView third = bakery.getView();
+		buffer.clear();
+		WireCodec.writeDiff(buffer, 1, StateDiff.between(second, third));
+		buffer.flip();
+		ByteBuffer frame = WireCodec.nextFrame(buffer);
+		assertThrows(IllegalStateException.class, () -> WireCodec.readState(frame, mirror));
+		assertMirrors(first, mirror);
+	}
+
+	@Test
+	public void testMalformedFrameRejected() {
+		ByteBuffer buffer = ByteBuffer.allocate(16);
+		WireCodec.writeAction(buffer, 1, Action.refresh());
+		buffer.flip();
+		ByteBuffer frame = WireCodec.nextFrame(buffer);
+		assertThrows(IllegalArgumentException.class, () -> WireCodec.readResult(frame));
+		ByteBuffer truncated = frame.duplicate();
+		truncated.limit(3);
+		assertThrows(IllegalArgumentException.class, () -> WireCodec.readAction(truncated));
+	}
+
+	@Test
+	public void testPoolReusesBuffers() {
+		BufferPool pool = new BufferPool(256, 4, true);
+		for (int i = 0; i < 1000; i++) {
+			ByteBuffer buffer = pool.acquire();
+			assertEquals(0, buffer.position());
+			assertEquals(256, buffer.limit());
+			WireCodec.writeAction(buffer, i, Action.draw(i % 7));
+			pool.release(buffer);
+		}
+		assertEquals(1, pool.allocationCount());
+		List<ByteBuffer> held = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			held.add(pool.acquire());
+		}
+		for (ByteBuffer buffer : held) {
+			pool.release(buffer);
+		}
+		pool.release(ByteBuffer.allocate(128));
+		assertEquals(10, pool.allocationCount());
+		for (int i = 0; i < 4; i++) {
+			pool.acquire();
+		}
+		assertEquals(10, pool.allocationCount());
+		pool.acquire();
+		assertTrue(pool.allocationCount() > 10);
+	}
+}
@@ -1,8 +1,8 @@
 REM Remove previously compiled code
-rm ./bin/*.class ./bin/bakery/*.class ./bin/util/*.class ./bin/test/*/*.class
+rm ./bin/*.class ./bin/bakery/*.class ./bin/util/*.class ./bin/sim/*.class ./bin/persistence/*.class ./bin/server/*.class ./bin/test/*/*.class
 
 REM Compile the game
-javac src/main/*.java src/main/bakery/*.java src/main/util/*.java -d ./bin/
+javac src/main/*.java src/main/bakery/*.java src/main/util/*.java src/main/sim/*.java src/main/persistence/*.java src/main/server/*.java -d ./bin/
 
 REM Compile the tests... we'll compile all three types of test separately to maximise the chances of (at least partial) success
 javac -cp .;junit-platform-console-standalone.jar --source-path ./src/main/ ./src/test/test/structural/*.java -d ./bin/